@@ -46,6 +46,7 @@ import com.facebook.buck.step.fs.MkdirAndSymlinkFileStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.TouchStep;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.MoreIterables;
 import com.facebook.buck.zip.ZipScrubberStep;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
@@ -271,25 +272,30 @@ public class AaptPackageResources extends AbstractBuildRule
       buildableContext.recordArtifact(proguardConfigDir);
     }
 
+    // Crunching PNGs is by far the slowest part of running aapt, so crunch each PNG once into a
+    // cache shared by all rules, and have aapt package the crunched copies as they are.
+    ImmutableList<Path> resDirectories = ImmutableList.copyOf(
+        MoreIterables.dedupKeepLast(filteredResourcesProvider.getResDirectories()));
+    if (!skipCrunchPngs && !resDirectories.isEmpty()) {
+      CrunchPngsStep crunchPngsStep = new CrunchPngsStep(
+          getProjectFilesystem(),
+          resDirectories,
+          getPathToCrunchedResDirectory(),
+          CrunchPngsStep.DEFAULT_CACHE_DIRECTORY);
+      steps.add(crunchPngsStep);
+      resDirectories = crunchPngsStep.getOutputResDirectories();
+    }
+
     steps.add(
         new AaptStep(
             getProjectFilesystem().getRootPath(),
             getAndroidManifestXml(),
-            filteredResourcesProvider.getResDirectories(),
+            resDirectories,
             assetsDirectory,
             getResourceApkPath(),
             rDotTxtDir,
             pathToGeneratedProguardConfig,
-            /*
-             * In practice, it appears that if --no-crunch is used, resources will occasionally
-             * appear distorted in the APK produced by this command (and what's worse, a clean
-             * reinstall does not make the problem go away). This is not reliably reproducible, so
-             * for now, we categorically outlaw the use of --no-crunch so that developers do not get
-             * stuck in the distorted image state. One would expect the use of --no-crunch to allow
-             * for faster build times, so it would be nice to figure out a way to leverage it in
-             * debug mode that never results in distorted images.
-             */
-            !skipCrunchPngs /* && packageType.isCrunchPngFiles() */));
+            /* isCrunchPngFiles */ false));
 
     // If we had an empty res directory, we won't generate an R.txt file.  This ensures that it
     // always exists.
@@ -483,6 +489,11 @@ public class AaptPackageResources extends AbstractBuildRule
     return BuildTargets.getGenPath(getBuildTarget(), "%s.unsigned.ap_");
   }
 
+  @VisibleForTesting
+  Path getPathToCrunchedResDirectory() {
+    return BuildTargets.getScratchPath(getBuildTarget(), "__%s_crunched_res__");
+  }
+
   @VisibleForTesting
   Path getPathToAllAssetsDirectory() {
     return BuildTargets.getScratchPath(getBuildTarget(), "__assets_%s__");
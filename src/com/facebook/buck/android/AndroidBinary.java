@@ -47,12 +47,14 @@ import com.facebook.buck.shell.AbstractGenruleStep;
 import com.facebook.buck.shell.EchoStep;
 import com.facebook.buck.shell.SymlinkFilesIntoDirectoryStep;
 import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.CompositeStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.CopyStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.XzStep;
+import com.facebook.buck.zip.IncrementalZipalignStep;
 import com.facebook.buck.zip.RepackZipEntriesStep;
 import com.facebook.buck.zip.ZipScrubberStep;
 import com.google.common.annotations.VisibleForTesting;
@@ -206,6 +208,8 @@ public class AndroidBinary
   @AddToRuleKey
   private final Optional<Integer> xzCompressionLevel;
   @AddToRuleKey
+  private final Optional<Integer> xzBlockSize;
+  @AddToRuleKey
   private final Optional<Boolean> packageAssetLibraries;
   @AddToRuleKey
   private final Optional<Boolean> compressAssetLibraries;
@@ -234,6 +238,7 @@ public class AndroidBinary
       Optional<SourcePath> dexReorderToolFile,
       Optional<SourcePath> dexReorderDataDumpFile,
       Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzBlockSize,
       ListeningExecutorService dxExecutorService,
       Optional<Boolean> packageAssetLibraries,
       Optional<Boolean> compressAssetLibraries) {
@@ -261,6 +266,7 @@ public class AndroidBinary
     this.dexReorderDataDumpFile = dexReorderDataDumpFile;
     this.dxExecutorService = dxExecutorService;
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzBlockSize = xzBlockSize;
     this.packageAssetLibraries = packageAssetLibraries;
     this.compressAssetLibraries = compressAssetLibraries;
 
@@ -550,31 +556,19 @@ public class AndroidBinary
         /* debugMode */ false);
     steps.add(apkBuilderCommand);
 
-    // The `ApkBuilderStep` delegates to android tools to build a ZIP with timestamps in it, making
-    // the output non-deterministic.  So use an additional scrubbing step to zero these out.
-    steps.add(new ZipScrubberStep(getProjectFilesystem(), signedApkPath));
-
-    Path apkToAlign;
-    // Optionally, compress the resources file in the .apk.
-    if (this.isCompressResources()) {
-      Path compressedApkPath = getCompressedResourcesApkPath();
-      apkToAlign = compressedApkPath;
-      RepackZipEntriesStep arscComp = new RepackZipEntriesStep(
-          getProjectFilesystem(),
-          signedApkPath,
-          compressedApkPath,
-          ImmutableSet.of("resources.arsc"));
-      steps.add(arscComp);
-    } else {
-      apkToAlign = signedApkPath;
-    }
-
+    // Align the APK in process, writing over the APK from the last build so that only the entries
+    // from the first one that changed onwards are written again. This also scrubs the timestamps
+    // that the `ApkBuilderStep` puts in, and optionally compresses the resources file.
     Path apkPath = getApkPath();
-    ZipalignStep zipalign = new ZipalignStep(
-        getProjectFilesystem().getRootPath(),
-        apkToAlign,
-        apkPath);
-    steps.add(zipalign);
+    steps.add(
+        new IncrementalZipalignStep(
+            getProjectFilesystem(),
+            signedApkPath,
+            apkPath,
+            this.isCompressResources() ?
+                ImmutableSet.of("resources.arsc") :
+                ImmutableSet.<String>of(),
+            getFullZipalignStep(signedApkPath, apkPath)));
 
     // Inform the user where the APK can be found.
     EchoStep success = new EchoStep(
@@ -782,6 +776,36 @@ public class AndroidBinary
     return Paths.get(getUnsignedApkPath().replaceAll("\\.unsigned\\.apk$", ".signed.apk"));
   }
 
+  /**
+   * @return the steps that scrub, optionally compress the resources of, and align the APK by
+   *     writing each intermediate APK in full, for APKs that can't be aligned in process.
+   */
+  private Step getFullZipalignStep(Path signedApkPath, Path apkPath) {
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+
+    // The `ApkBuilderStep` delegates to android tools to build a ZIP with timestamps in it, making
+    // the output non-deterministic.  So use an additional scrubbing step to zero these out.
+    steps.add(new ZipScrubberStep(getProjectFilesystem(), signedApkPath));
+
+    Path apkToAlign;
+    // Optionally, compress the resources file in the .apk.
+    if (this.isCompressResources()) {
+      Path compressedApkPath = getCompressedResourcesApkPath();
+      apkToAlign = compressedApkPath;
+      RepackZipEntriesStep arscComp = new RepackZipEntriesStep(
+          getProjectFilesystem(),
+          signedApkPath,
+          compressedApkPath,
+          ImmutableSet.of("resources.arsc"));
+      steps.add(arscComp);
+    } else {
+      apkToAlign = signedApkPath;
+    }
+
+    steps.add(new ZipalignStep(getProjectFilesystem().getRootPath(), apkToAlign, apkPath));
+    return new CompositeStep(steps.build());
+  }
+
   /** The APK at this path will have compressed resources, but will not be zipaligned. */
   private Path getCompressedResourcesApkPath() {
     return Paths.get(getUnsignedApkPath().replaceAll("\\.unsigned\\.apk$", ".compressed.apk"));
@@ -1026,7 +1050,8 @@ public class AndroidBinary
         successDir,
         dxOptions,
         dxExecutorService,
-        xzCompressionLevel);
+        xzCompressionLevel,
+        xzBlockSize);
     steps.add(smartDexingCommand);
 
     if (isReorderingClasses()) {
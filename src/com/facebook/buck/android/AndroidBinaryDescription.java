@@ -197,6 +197,7 @@ public class AndroidBinaryDescription
         args.buildConfigValues.get(),
         args.buildConfigValuesFile,
         Optional.<Integer>absent(),
+        args.xzBlockSize,
         nativePlatforms,
         dxExecutorService);
     AndroidGraphEnhancementResult result = graphEnhancer.createAdditionalBuildables();
@@ -258,6 +259,7 @@ public class AndroidBinaryDescription
         args.dexReorderToolFile,
         args.dexReorderDataDumpFile,
         args.xzCompressionLevel,
+        args.xzBlockSize,
         dxExecutorService,
         args.packageAssetLibraries,
         args.compressAssetLibraries);
@@ -358,6 +360,7 @@ public class AndroidBinaryDescription
     public Optional<SourcePath> dexReorderToolFile;
     public Optional<SourcePath> dexReorderDataDumpFile;
     public Optional<Integer> xzCompressionLevel;
+    public Optional<Integer> xzBlockSize;
     public Optional<Boolean> packageAssetLibraries;
     public Optional<Boolean> compressAssetLibraries;
 
@@ -89,6 +89,7 @@ public class AndroidBinaryGraphEnhancer {
   private final BuildConfigFields buildConfigValues;
   private final Optional<SourcePath> buildConfigValuesFile;
   private final Optional<Integer> xzCompressionLevel;
+  private final Optional<Integer> xzBlockSize;
   private final AndroidNativeLibsPackageableGraphEnhancer  nativeLibsEnhancer;
 
   private final ListeningExecutorService dxExecutorService;
@@ -116,6 +117,7 @@ public class AndroidBinaryGraphEnhancer {
       BuildConfigFields buildConfigValues,
       Optional<SourcePath> buildConfigValuesFile,
       Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzBlockSize,
       ImmutableMap<TargetCpuType, NdkCxxPlatform> nativePlatforms,
       ListeningExecutorService dxExecutorService) {
     this.targetGraph = targetGraph;
@@ -143,6 +145,7 @@ public class AndroidBinaryGraphEnhancer {
     this.buildConfigValuesFile = buildConfigValuesFile;
     this.dxExecutorService = dxExecutorService;
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzBlockSize = xzBlockSize;
     this.nativeLibsEnhancer = new AndroidNativeLibsPackageableGraphEnhancer(
         ruleResolver,
         originalParams,
@@ -513,7 +516,8 @@ public class AndroidBinaryGraphEnhancer {
         allPreDexDeps,
         aaptPackageResources,
         dxExecutorService,
-        xzCompressionLevel);
+        xzCompressionLevel,
+        xzBlockSize);
     ruleResolver.addToIndex(preDexMerge);
 
     return preDexMerge;
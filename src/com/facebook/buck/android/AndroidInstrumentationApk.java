@@ -81,6 +81,7 @@ public class AndroidInstrumentationApk extends AndroidBinary {
         Optional.<SourcePath>absent(),
         Optional.<SourcePath>absent(),
         Optional.<Integer>absent(),
+        Optional.<Integer>absent(),
         dxExecutorService,
         Optional.<Boolean>absent(),
         Optional.<Boolean>absent());
@@ -137,6 +137,7 @@ public class AndroidInstrumentationApkDescription
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFile */ Optional.<SourcePath>absent(),
         /* xzCompressionLevel */ Optional.<Integer>absent(),
+        /* xzBlockSize */ Optional.<Integer>absent(),
         nativePlatforms,
         dxExecutorService);
 
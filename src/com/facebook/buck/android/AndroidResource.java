@@ -304,7 +304,11 @@ public class AndroidResource extends AbstractBuildRule
             getProjectFilesystem(),
             getResolver().getPath(Preconditions.checkNotNull(res)),
             Preconditions.checkNotNull(pathToTextSymbolsFile),
-            pathsToSymbolsOfDeps));
+            pathsToSymbolsOfDeps,
+            // Kept outside of the text symbols directory, which is cleaned before every build.
+            Optional.of(
+                BuildTargets.getScratchPath(getBuildTarget(), "__%s_resource_symbols__")
+                    .resolve("symbols.json"))));
 
     buildableContext.recordArtifact(Preconditions.checkNotNull(pathToTextSymbolsFile));
 
@@ -16,10 +16,12 @@
 
 package com.facebook.buck.android;
 
+import com.facebook.buck.util.concurrent.MoreExecutors;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
@@ -27,23 +29,40 @@ import org.objectweb.asm.tree.ClassNode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
  * This Supplier returns a list of all the ClassNode objects in a set of jar files.
+ * <p>
+ * The jars are read on the calling thread, but the classes in them may be parsed on several
+ * threads. The list is always in the order in which the classes appear in the jars.
  */
 class ClassNodeListSupplier implements Supplier<ImmutableList<ClassNode>> {
 
   private final Iterable<Path> jarPaths;
+  private final int threadCount;
 
-  private ClassNodeListSupplier(Iterable<Path> jarPaths) {
+  private ClassNodeListSupplier(Iterable<Path> jarPaths, int threadCount) {
     this.jarPaths = jarPaths;
+    this.threadCount = threadCount;
   }
 
   public static Supplier<ImmutableList<ClassNode>> createMemoized(Iterable<Path> jarPaths) {
-    return Suppliers.memoize(new ClassNodeListSupplier(jarPaths));
+    return createMemoized(jarPaths, 1);
+  }
+
+  public static Supplier<ImmutableList<ClassNode>> createMemoized(
+      Iterable<Path> jarPaths,
+      int threadCount) {
+    return Suppliers.memoize(new ClassNodeListSupplier(jarPaths, threadCount));
   }
 
   @Override
@@ -54,31 +73,75 @@ class ClassNodeListSupplier implements Supplier<ImmutableList<ClassNode>> {
   private ImmutableList<ClassNode> loadAllClassNodes() {
     ImmutableList.Builder<ClassNode> builder = ImmutableList.builder();
 
-    for (Path jarPath : jarPaths) {
-      try (JarFile jarFile = new JarFile(jarPath.toFile())) {
-        loadClassNodes(jarFile, builder);
-      } catch (IOException e) {
-        throw Throwables.propagate(e);
+    if (threadCount <= 1) {
+      for (Path jarPath : jarPaths) {
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+          for (byte[] classBytes : readClasses(jarFile)) {
+            builder.add(parse(classBytes));
+          }
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
       }
+      return builder.build();
+    }
+
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor("class-nodes", threadCount);
+    List<Future<ClassNode>> futures = new ArrayList<>();
+    try {
+      for (Path jarPath : jarPaths) {
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+          for (final byte[] classBytes : readClasses(jarFile)) {
+            futures.add(
+                executor.submit(
+                    new Callable<ClassNode>() {
+                      @Override
+                      public ClassNode call() {
+                        return parse(classBytes);
+                      }
+                    }));
+          }
+        }
+      }
+      for (Future<ClassNode> future : futures) {
+        builder.add(future.get());
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<ClassNode> future : futures) {
+        future.cancel(true);
+      }
+      executor.shutdownNow();
     }
 
     return builder.build();
   }
 
-  private void loadClassNodes(JarFile jarFile, ImmutableList.Builder<ClassNode> builder)
-      throws IOException {
+  private static ImmutableList<byte[]> readClasses(JarFile jarFile) throws IOException {
+    ImmutableList.Builder<byte[]> classes = ImmutableList.builder();
     for (JarEntry entry : Collections.list(jarFile.entries())) {
       String name = entry.getName();
       if (entry.isDirectory() || (name == null) || !name.endsWith(".class")) {
         continue;
       }
 
-      ClassNode node = new ClassNode();
       try (InputStream stream = jarFile.getInputStream(entry)) {
-        ClassReader reader = new ClassReader(stream);
-        reader.accept(node, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+        classes.add(ByteStreams.toByteArray(stream));
       }
-      builder.add(node);
     }
+    return classes.build();
+  }
+
+  private static ClassNode parse(byte[] classBytes) {
+    ClassNode node = new ClassNode();
+    ClassReader reader = new ClassReader(classBytes);
+    reader.accept(node, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+    return node;
   }
 }
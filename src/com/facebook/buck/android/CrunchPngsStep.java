@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.util.BuckConstant;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Crunches the PNGs in a list of {@code res/} directories with {@code aapt singlecrunch}, so that
+ * {@link AaptStep} can package them with {@code --no-crunch}.
+ * <p>
+ * Each directory is mirrored into {@code outputDirectory} by symlinks. Every PNG that {@code aapt}
+ * would crunch is linked to its crunched copy in a cache under {@code buck-out}, keyed by the hash
+ * of its contents, so a PNG is only crunched the first time any rule sees it. Nine-patches are left
+ * alone, since {@code aapt package} compiles them even with {@code --no-crunch}.
+ */
+public class CrunchPngsStep implements Step {
+
+  private static final Logger LOG = Logger.get(CrunchPngsStep.class);
+
+  /** Shared by all rules, so that each distinct PNG is only crunched once. */
+  public static final Path DEFAULT_CACHE_DIRECTORY =
+      BuckConstant.SCRATCH_PATH.resolve("__crunched_pngs__");
+
+  private final ProjectFilesystem filesystem;
+  private final ImmutableList<Path> resDirectories;
+  private final Path outputDirectory;
+  private final Path cacheDirectory;
+
+  public CrunchPngsStep(
+      ProjectFilesystem filesystem,
+      ImmutableList<Path> resDirectories,
+      Path outputDirectory,
+      Path cacheDirectory) {
+    this.filesystem = filesystem;
+    this.resDirectories = resDirectories;
+    this.outputDirectory = outputDirectory;
+    this.cacheDirectory = cacheDirectory;
+  }
+
+  /**
+   * @return the mirrors of {@code resDirectories}, in the same order.
+   */
+  public ImmutableList<Path> getOutputResDirectories() {
+    ImmutableList.Builder<Path> outputs = ImmutableList.builder();
+    for (int i = 0; i < resDirectories.size(); i++) {
+      outputs.add(outputDirectory.resolve(Integer.toString(i)));
+    }
+    return outputs.build();
+  }
+
+  @Override
+  public int execute(final ExecutionContext context) throws IOException, InterruptedException {
+    filesystem.deleteRecursivelyIfExists(outputDirectory);
+    filesystem.mkdirs(cacheDirectory);
+
+    // Maps each file in the output to the file it mirrors.
+    final ImmutableMap.Builder<Path, Path> filesToLink = ImmutableMap.builder();
+    final ImmutableMap.Builder<Path, Path> pngsToCrunch = ImmutableMap.builder();
+    ImmutableList<Path> outputResDirectories = getOutputResDirectories();
+    for (int i = 0; i < resDirectories.size(); i++) {
+      final Path resDirectory = resDirectories.get(i);
+      final Path outputResDirectory = outputResDirectories.get(i);
+      filesystem.mkdirs(outputResDirectory);
+      if (!filesystem.isDirectory(resDirectory)) {
+        continue;
+      }
+      filesystem.walkRelativeFileTree(
+          resDirectory,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              Path output = outputResDirectory.resolve(resDirectory.relativize(file));
+              if (isCrunchedByAapt(file)) {
+                pngsToCrunch.put(output, file);
+              } else {
+                filesToLink.put(output, file);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    }
+
+    for (Map.Entry<Path, Path> entry : filesToLink.build().entrySet()) {
+      link(entry.getKey(), entry.getValue());
+    }
+
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor(
+        "crunch_pngs",
+        context.getConcurrencyLimit().threadLimit);
+    List<Future<Boolean>> crunched = new ArrayList<>();
+    try {
+      for (final Map.Entry<Path, Path> entry : pngsToCrunch.build().entrySet()) {
+        crunched.add(
+            executor.submit(
+                new Callable<Boolean>() {
+                  @Override
+                  public Boolean call() throws IOException, InterruptedException {
+                    Path cached = getCachedPng(context, entry.getValue());
+                    if (!filesystem.isFile(cached)) {
+                      LOG.debug("Crunching %s into %s.", entry.getValue(), cached);
+                      // Write to a temporary file first, so that other builds never see a partly
+                      // written PNG in the cache.
+                      Path temp = cached.resolveSibling(
+                          cached.getFileName() + "." + UUID.randomUUID() + ".tmp");
+                      if (!crunch(context, entry.getValue(), temp)) {
+                        return false;
+                      }
+                      filesystem.move(
+                          temp,
+                          cached,
+                          StandardCopyOption.ATOMIC_MOVE,
+                          StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    link(entry.getKey(), cached);
+                    return true;
+                  }
+                }));
+      }
+
+      for (Future<Boolean> future : crunched) {
+        if (!future.get()) {
+          return 1;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<Boolean> future : crunched) {
+        future.cancel(true);
+      }
+      MoreExecutors.shutdown(executor);
+    }
+
+    return 0;
+  }
+
+  /**
+   * Crunches {@code source} into {@code destination}.
+   *
+   * @return whether it succeeded.
+   */
+  @VisibleForTesting
+  protected boolean crunch(ExecutionContext context, Path source, Path destination)
+      throws IOException, InterruptedException {
+    ProcessExecutor.Result result = context.getProcessExecutor().launchAndExecute(
+        ProcessExecutorParams.builder()
+            .addCommand(
+                getAaptExecutable(context).toString(),
+                "singlecrunch",
+                "-i", filesystem.resolve(source).toString(),
+                "-o", filesystem.resolve(destination).toString())
+            .setEnvironment(context.getEnvironment())
+            .setDirectory(filesystem.getRootPath().toFile())
+            .build());
+    if (result.getExitCode() != 0) {
+      context.getStdErr().printf(
+          "Unable to crunch %s:%n%s",
+          source,
+          result.getStderr().or(""));
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return where the crunched copy of {@code png} is cached. The key includes the path to
+   *     {@code aapt}, so that switching SDKs does not reuse PNGs crunched by another version.
+   */
+  private Path getCachedPng(ExecutionContext context, Path png) throws IOException {
+    String key = Hashing.sha1().newHasher()
+        .putString(getAaptExecutable(context).toString(), StandardCharsets.UTF_8)
+        .putString(filesystem.computeSha1(png), StandardCharsets.UTF_8)
+        .hash()
+        .toString();
+    return cacheDirectory.resolve(key + ".png");
+  }
+
+  @VisibleForTesting
+  protected Path getAaptExecutable(ExecutionContext context) {
+    return context.getAndroidPlatformTarget().getAaptExecutable();
+  }
+
+  private void link(Path output, Path target) throws IOException {
+    filesystem.mkdirs(output.getParent());
+    filesystem.createSymLink(output, filesystem.resolve(target), /* force */ true);
+  }
+
+  /**
+   * @return whether {@code aapt package} would crunch {@code file} unless given
+   *     {@code --no-crunch}: a PNG other than a nine-patch in a drawable or mipmap directory.
+   */
+  @VisibleForTesting
+  static boolean isCrunchedByAapt(Path file) {
+    String fileName = file.getFileName().toString();
+    if (!fileName.endsWith(".png") || fileName.endsWith(".9.png") || file.getParent() == null) {
+      return false;
+    }
+    String dirName = file.getParent().getFileName().toString();
+    return dirName.startsWith("drawable") || dirName.startsWith("mipmap");
+  }
+
+  @Override
+  public String getShortName() {
+    return "crunch_pngs";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("crunch_pngs %s -> %s", resDirectories, outputDirectory);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof CrunchPngsStep)) {
+      return false;
+    }
+
+    CrunchPngsStep that = (CrunchPngsStep) obj;
+    return Objects.equal(this.resDirectories, that.resDirectories) &&
+        Objects.equal(this.outputDirectory, that.outputDirectory) &&
+        Objects.equal(this.cacheDirectory, that.cacheDirectory);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(resDirectories, outputDirectory, cacheDirectory);
+  }
+}
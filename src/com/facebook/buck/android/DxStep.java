@@ -58,7 +58,8 @@ public class DxStep extends ShellStep {
     USE_CUSTOM_DX_IF_AVAILABLE,
 
     /**
-     * Execute DX in-process instead of fork/execing.
+     * Execute DX in-process instead of fork/execing, on a {@link DxWorkerPool} that is kept warm
+     * between builds.
      * This only works with custom dx.
      */
     RUN_IN_PROCESS,
@@ -190,7 +191,7 @@ public class DxStep extends ShellStep {
     ImmutableList<String> args = argv.subList(2, argv.size());
 
     try {
-      return new com.android.dx.command.dexer.Main().run(
+      return DxWorkerPool.get().run(
           args.toArray(new String[args.size()]),
           context.getStdOut(),
           context.getStdErr()
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+/**
+ * A pool of in-process dx instances that outlive a single build when Buck runs as a daemon.
+ * <p>
+ * Each worker loads its own copy of dx's classes, so the static state that dx accumulates (such
+ * as its intern tables) is private to the worker and is dropped along with it, while the classes
+ * themselves stay loaded and JIT-compiled from one job to the next. Every job gets a fresh
+ * {@code Main}, which resets dx's per-run state. A worker is thrown away when a job fails, when it
+ * has run {@code maxRunsPerWorker} jobs, or when live objects fill more than
+ * {@code maxHeapUsedFraction} of the heap after a job, in which case every idle worker is dropped
+ * too.
+ */
+public class DxWorkerPool {
+
+  private static final Logger LOG = Logger.get(DxWorkerPool.class);
+
+  private static final String DX_PACKAGE_PREFIX = "com.android.dx.";
+  private static final String DX_MAIN_CLASS_NAME = "com.android.dx.command.dexer.Main";
+
+  private static final int DEFAULT_MAX_RUNS_PER_WORKER = 500;
+  private static final double DEFAULT_MAX_HEAP_USED_FRACTION = 0.8;
+
+  private static final DxWorkerPool INSTANCE = new DxWorkerPool(
+      com.android.dx.command.dexer.Main.class.getProtectionDomain().getCodeSource().getLocation(),
+      DEFAULT_MAX_RUNS_PER_WORKER,
+      DEFAULT_MAX_HEAP_USED_FRACTION,
+      new CollectedHeapUsage());
+
+  private final URL dxClasses;
+  private final int maxRunsPerWorker;
+  private final double maxHeapUsedFraction;
+  private final HeapUsage heapUsage;
+  private final List<Worker> idleWorkers = Lists.newArrayList();
+
+  @VisibleForTesting
+  DxWorkerPool(
+      URL dxClasses,
+      int maxRunsPerWorker,
+      double maxHeapUsedFraction,
+      HeapUsage heapUsage) {
+    Preconditions.checkArgument(maxRunsPerWorker > 0);
+    Preconditions.checkArgument(maxHeapUsedFraction > 0 && maxHeapUsedFraction <= 1);
+    this.dxClasses = dxClasses;
+    this.maxRunsPerWorker = maxRunsPerWorker;
+    this.maxHeapUsedFraction = maxHeapUsedFraction;
+    this.heapUsage = heapUsage;
+  }
+
+  /**
+   * @return the pool shared by every build run by this process.
+   */
+  public static DxWorkerPool get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Runs the dexer (i.e. {@code dx --dex}) with {@code args} on an idle worker, starting a new one
+   * if there is none. Safe to call from several threads; each call gets a worker of its own.
+   *
+   * @return the exit code of dx.
+   */
+  public int run(String[] args, PrintStream stdOut, PrintStream stdErr) throws IOException {
+    Worker worker = acquire();
+    boolean reusable = false;
+    try {
+      int exitCode = worker.run(args, stdOut, stdErr);
+      reusable = exitCode == 0;
+      return exitCode;
+    } finally {
+      release(worker, reusable);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getIdleWorkerCount() {
+    return idleWorkers.size();
+  }
+
+  private Worker acquire() throws IOException {
+    synchronized (this) {
+      if (!idleWorkers.isEmpty()) {
+        return idleWorkers.remove(idleWorkers.size() - 1);
+      }
+    }
+    LOG.debug("Starting dx worker.");
+    return new Worker(new DxClassLoader(dxClasses, DxWorkerPool.class.getClassLoader()));
+  }
+
+  private void release(Worker worker, boolean reusable) {
+    worker.runs++;
+    if (heapUsage.exceeds(maxHeapUsedFraction)) {
+      LOG.debug("Heap is more than %f full, dropping all dx workers.", maxHeapUsedFraction);
+      List<Worker> toClose;
+      synchronized (this) {
+        toClose = Lists.newArrayList(idleWorkers);
+        idleWorkers.clear();
+      }
+      toClose.add(worker);
+      for (Worker idle : toClose) {
+        idle.close();
+      }
+      return;
+    }
+
+    if (reusable && worker.runs < maxRunsPerWorker) {
+      synchronized (this) {
+        idleWorkers.add(worker);
+      }
+      return;
+    }
+    worker.close();
+  }
+
+  /**
+   * How much of the heap live objects take up, which, unlike the heap's current usage, doesn't
+   * count the garbage that every dx job leaves behind.
+   */
+  @VisibleForTesting
+  interface HeapUsage {
+
+    /**
+     * @return whether live objects take up more than {@code fraction} of the heap.
+     */
+    boolean exceeds(double fraction);
+  }
+
+  /**
+   * Reads the usage of the tenured pool as of its last collection, which is what remains after
+   * dropping garbage and so only grows as live objects do. The pool's usage isn't known until it
+   * has been collected, but until then it can't be full either. JVMs without a tenured pool are
+   * collected only when the heap's current usage exceeds the fraction, to see if it still does.
+   */
+  private static class CollectedHeapUsage implements HeapUsage {
+
+    private final Optional<MemoryPoolMXBean> tenuredPool;
+
+    private CollectedHeapUsage() {
+      Optional<MemoryPoolMXBean> tenuredPool = Optional.absent();
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        // Of the heap's pools, only the tenured one supports both kinds of threshold.
+        if (pool.getType() == MemoryType.HEAP &&
+            pool.isUsageThresholdSupported() &&
+            pool.isCollectionUsageThresholdSupported()) {
+          tenuredPool = Optional.of(pool);
+          break;
+        }
+      }
+      this.tenuredPool = tenuredPool;
+    }
+
+    @Override
+    public boolean exceeds(double fraction) {
+      if (tenuredPool.isPresent()) {
+        MemoryUsage usage = tenuredPool.get().getCollectionUsage();
+        if (usage != null && usage.getMax() > 0) {
+          return usage.getUsed() > usage.getMax() * fraction;
+        }
+      }
+      if (!currentUsageExceeds(fraction)) {
+        return false;
+      }
+      System.gc();
+      return currentUsageExceeds(fraction);
+    }
+
+    private static boolean currentUsageExceeds(double fraction) {
+      Runtime runtime = Runtime.getRuntime();
+      long used = runtime.totalMemory() - runtime.freeMemory();
+      return used > runtime.maxMemory() * fraction;
+    }
+  }
+
+  /**
+   * A copy of dx's classes, loaded by a {@link DxClassLoader} of its own.
+   */
+  private static class Worker {
+    private final DxClassLoader loader;
+    private final Constructor<?> mainConstructor;
+    private final Method runMethod;
+    private int runs = 0;
+
+    private Worker(DxClassLoader loader) throws IOException {
+      this.loader = loader;
+      try {
+        Class<?> mainClass = loader.loadClass(DX_MAIN_CLASS_NAME);
+        this.mainConstructor = mainClass.getConstructor();
+        this.runMethod =
+            mainClass.getMethod("run", String[].class, PrintStream.class, PrintStream.class);
+      } catch (ReflectiveOperationException e) {
+        loader.close();
+        throw new IOException("Unable to load dx from " + loader.getURLs()[0], e);
+      }
+    }
+
+    private int run(String[] args, PrintStream stdOut, PrintStream stdErr) throws IOException {
+      try {
+        return (Integer) runMethod.invoke(mainConstructor.newInstance(), args, stdOut, stdErr);
+      } catch (InvocationTargetException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+        throw Throwables.propagate(e.getCause());
+      } catch (ReflectiveOperationException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    private void close() {
+      try {
+        loader.close();
+      } catch (IOException e) {
+        LOG.debug(e, "Error closing dx worker class loader.");
+      }
+    }
+  }
+
+  /**
+   * Loads dx's own classes itself, rather than delegating to its parent as usual, so that each
+   * worker gets copies of them. Everything else, such as the JDK and Guava, is shared.
+   */
+  private static class DxClassLoader extends URLClassLoader {
+
+    private DxClassLoader(URL dxClasses, ClassLoader parent) {
+      super(new URL[] {dxClasses}, parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.startsWith(DX_PACKAGE_PREFIX)) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded == null) {
+          loaded = findClass(name);
+        }
+        if (resolve) {
+          resolveClass(loaded);
+        }
+        return loaded;
+      }
+    }
+  }
+}
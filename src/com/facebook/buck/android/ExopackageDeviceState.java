@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.BuckConstant;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the last exopackage install left on a device for a package, recorded on the host: the
+ * files in each directory under the package's data root, and the hash of each directory's
+ * metadata.txt. Alongside is a hash of a long listing of the whole data root at that time. If the
+ * device still lists the same files, with the same sizes and modification times, it is assumed to
+ * be in the recorded state, so that the next
+ * install does not have to prepare and list each directory, or push metadata that has not
+ * changed.
+ */
+class ExopackageDeviceState {
+
+  private static final Logger LOG = Logger.get(ExopackageDeviceState.class);
+
+  /** Bump this whenever the meaning of the recorded state changes. */
+  private static final int VERSION = 2;
+
+  private static final Path STATE_DIR = BuckConstant.BUCK_OUTPUT_PATH.resolve("exopackage");
+
+  private final String listingHash;
+  private final ImmutableSortedMap<String, ImmutableList<String>> directoryFiles;
+  private final ImmutableSortedMap<String, String> metadataHashes;
+
+  ExopackageDeviceState(
+      String listingHash,
+      Map<String, ? extends List<String>> directoryFiles,
+      Map<String, String> metadataHashes) {
+    this.listingHash = listingHash;
+    ImmutableSortedMap.Builder<String, ImmutableList<String>> files =
+        ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<String, ? extends List<String>> entry : directoryFiles.entrySet()) {
+      files.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+    }
+    this.directoryFiles = files.build();
+    this.metadataHashes = ImmutableSortedMap.copyOf(metadataHashes);
+  }
+
+  @JsonCreator
+  static ExopackageDeviceState fromJson(
+      @JsonProperty("version") int version,
+      @JsonProperty("listingHash") String listingHash,
+      @JsonProperty("directoryFiles") Map<String, List<String>> directoryFiles,
+      @JsonProperty("metadataHashes") Map<String, String> metadataHashes) {
+    if (version != VERSION) {
+      // Never matches a real listing, so the state is ignored.
+      return new ExopackageDeviceState(
+          "",
+          ImmutableSortedMap.<String, List<String>>of(),
+          ImmutableSortedMap.<String, String>of());
+    }
+    return new ExopackageDeviceState(listingHash, directoryFiles, metadataHashes);
+  }
+
+  /**
+   * @return the state recorded for {@code packageName} on the device with {@code serialNumber},
+   *     or absent if there is none or it cannot be read.
+   */
+  static Optional<ExopackageDeviceState> readFrom(
+      ProjectFilesystem filesystem,
+      String serialNumber,
+      String packageName,
+      ObjectMapper mapper) {
+    Path stateFile = getStateFile(serialNumber, packageName);
+    if (!filesystem.isFile(stateFile)) {
+      return Optional.absent();
+    }
+    try (InputStream stream = filesystem.newFileInputStream(stateFile)) {
+      return Optional.of(mapper.readValue(stream, ExopackageDeviceState.class));
+    } catch (IOException e) {
+      // This is only a cache, so check the device afresh.
+      LOG.warn(e, "Unable to read exopackage device state from %s.", stateFile);
+      return Optional.absent();
+    }
+  }
+
+  void writeTo(
+      ProjectFilesystem filesystem,
+      String serialNumber,
+      String packageName,
+      ObjectMapper mapper) throws IOException {
+    Path stateFile = getStateFile(serialNumber, packageName);
+    filesystem.mkdirs(stateFile.getParent());
+    try (OutputStream stream = filesystem.newFileOutputStream(stateFile)) {
+      mapper.writeValue(stream, this);
+    }
+  }
+
+  /**
+   * Forgets the recorded state, e.g. before the device is changed, so that a failed install never
+   * leaves a stale record behind.
+   */
+  static void delete(ProjectFilesystem filesystem, String serialNumber, String packageName)
+      throws IOException {
+    filesystem.deleteFileAtPathIfExists(getStateFile(serialNumber, packageName));
+  }
+
+  /**
+   * @param listing output of recursively listing the package's data root on the device, including
+   *     the size and modification time of each file.
+   */
+  static String hashListing(String listing) {
+    return Hashing.sha1().hashString(listing, Charsets.UTF_8).toString();
+  }
+
+  static String hashMetadata(String metadataContents) {
+    return Hashing.sha1().hashString(metadataContents, Charsets.UTF_8).toString();
+  }
+
+  @JsonProperty("version")
+  int getVersion() {
+    return VERSION;
+  }
+
+  @JsonProperty("listingHash")
+  String getListingHash() {
+    return listingHash;
+  }
+
+  /**
+   * @return the names of the files in each directory, keyed by the directory's path relative to
+   *     the data root.
+   */
+  @JsonProperty("directoryFiles")
+  ImmutableSortedMap<String, ImmutableList<String>> getDirectoryFiles() {
+    return directoryFiles;
+  }
+
+  /**
+   * @return the hash of the metadata.txt in each directory, keyed by the directory's path relative
+   *     to the data root.
+   */
+  @JsonProperty("metadataHashes")
+  ImmutableSortedMap<String, String> getMetadataHashes() {
+    return metadataHashes;
+  }
+
+  private static Path getStateFile(String serialNumber, String packageName) {
+    // Serial numbers of devices connected over the network contain characters such as ':'.
+    String key = Hashing.sha1()
+        .hashString(serialNumber + "\0" + packageName, Charsets.UTF_8)
+        .toString();
+    return STATE_DIR.resolve(key + ".json");
+  }
+}
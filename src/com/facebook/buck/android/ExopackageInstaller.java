@@ -31,6 +31,7 @@ import com.facebook.buck.rules.ExopackageInfo;
 import com.facebook.buck.rules.InstallableApk;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.util.NamedTemporaryFile;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
@@ -48,6 +49,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -55,9 +57,11 @@ import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -94,6 +98,8 @@ public class ExopackageInstaller {
 
   private static final Path NATIVE_LIBS_DIR = Paths.get("native-libs");
 
+  private static final String METADATA_FILE_NAME = "metadata.txt";
+
   @VisibleForTesting
   static final Pattern DEX_FILE_PATTERN = Pattern.compile("secondary-([0-9a-f]+)\\.[\\w.-]*");
 
@@ -108,6 +114,7 @@ public class ExopackageInstaller {
   private final Path dataRoot;
 
   private final ExopackageInfo exopackageInfo;
+  private final ObjectMapper objectMapper;
 
   /**
    * The next port number to use for communicating with the agent on a device.
@@ -135,6 +142,7 @@ public class ExopackageInstaller {
     this.adbHelper = adbHelper;
     this.projectFilesystem = apkRule.getProjectFilesystem();
     this.eventBus = context.getBuckEventBus();
+    this.objectMapper = context.getObjectMapper();
     this.apkRule = apkRule;
     this.packageName = AdbHelper.tryToExtractPackageNameFromManifest(apkRule);
     this.dataRoot = Paths.get("/data/local/tmp/exopackage/").resolve(packageName);
@@ -204,6 +212,27 @@ public class ExopackageInstaller {
     @Nullable
     private String nativeAgentPath;
 
+    /**
+     * The state that the last install left on the device, if the device is still in it.
+     */
+    private Optional<ExopackageDeviceState> previousState = Optional.absent();
+
+    /**
+     * The files in each directory under {@link #dataRoot} as of this install, keyed by the
+     * directory's path relative to {@link #dataRoot}.
+     */
+    private final Map<String, List<String>> directoryFiles = new TreeMap<>();
+
+    /**
+     * The hash of the metadata.txt in each directory as of this install.
+     */
+    private final Map<String, String> metadataHashes = new TreeMap<>();
+
+    /**
+     * True iff this install has changed any file under {@link #dataRoot}.
+     */
+    private boolean changedDevice = false;
+
     private SingleDeviceInstaller(IDevice device, int agentPort) {
       this.device = device;
       this.agentPort = agentPort;
@@ -231,6 +260,12 @@ public class ExopackageInstaller {
         }
       }
 
+      boolean hasExoFiles =
+          exopackageInfo.getDexInfo().isPresent() || exopackageInfo.getNativeLibsInfo().isPresent();
+      if (hasExoFiles) {
+        readDeviceState();
+      }
+
       if (exopackageInfo.getDexInfo().isPresent()) {
         installSecondaryDexFiles();
       }
@@ -239,6 +274,10 @@ public class ExopackageInstaller {
         installNativeLibraryFiles();
       }
 
+      if (hasExoFiles) {
+        writeDeviceState();
+      }
+
       // TODO(user): Make this work on Gingerbread.
       try (TraceEventLogger ignored = TraceEventLogger.start(eventBus, "kill_app")) {
         AdbHelper.executeCommandWithErrorChecking(device, "am force-stop " + packageName);
@@ -247,15 +286,65 @@ public class ExopackageInstaller {
       return true;
     }
 
-    private void installSecondaryDexFiles() throws Exception {
-      final ImmutableMap<String, Path> hashToSources = getRequiredDexFiles();
-      final ImmutableSet<String> requiredHashes = hashToSources.keySet();
-      final ImmutableSet<String> presentHashes = prepareSecondaryDexDir(requiredHashes);
-      final Set<String> hashesToInstall = Sets.difference(requiredHashes, presentHashes);
+    /**
+     * Reads the state that the last install recorded for this device, and checks with a single
+     * listing of {@link #dataRoot} that the device is still in it.
+     */
+    private void readDeviceState() throws Exception {
+      Optional<ExopackageDeviceState> recordedState = ExopackageDeviceState.readFrom(
+          projectFilesystem,
+          device.getSerialNumber(),
+          packageName,
+          objectMapper);
+      if (!recordedState.isPresent()) {
+        return;
+      }
 
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(hashToSources, Predicates.in(hashesToInstall));
+      // Forget the state before anything on the device changes, so that an install that fails
+      // part way never leaves a stale record behind.
+      ExopackageDeviceState.delete(projectFilesystem, device.getSerialNumber(), packageName);
+
+      try (TraceEventLogger ignored = TraceEventLogger.start(eventBus, "verify_device_state")) {
+        String listingHash = ExopackageDeviceState.hashListing(listDataRoot());
+        if (listingHash.equals(recordedState.get().getListingHash())) {
+          LOG.debug("Device %s is as the last install left it.", device);
+          previousState = recordedState;
+          directoryFiles.putAll(recordedState.get().getDirectoryFiles());
+          metadataHashes.putAll(recordedState.get().getMetadataHashes());
+        } else {
+          LOG.debug("Device %s has changed since the last install.", device);
+        }
+      }
+    }
+
+    private void writeDeviceState() throws Exception {
+      String listingHash;
+      if (previousState.isPresent() && !changedDevice) {
+        listingHash = previousState.get().getListingHash();
+      } else {
+        try (TraceEventLogger ignored = TraceEventLogger.start(eventBus, "record_device_state")) {
+          listingHash = ExopackageDeviceState.hashListing(listDataRoot());
+        }
+      }
+      new ExopackageDeviceState(listingHash, directoryFiles, metadataHashes).writeTo(
+          projectFilesystem,
+          device.getSerialNumber(),
+          packageName,
+          objectMapper);
+    }
+
+    /**
+     * @return a long listing of {@link #dataRoot}, so that a file that was changed in place, such
+     *     as a metadata.txt written by something else, changes the listing along with its size or
+     *     modification time.
+     */
+    private String listDataRoot() throws Exception {
+      return AdbHelper.executeCommandWithErrorChecking(
+          device,
+          "ls -lR " + dataRoot + " 2>/dev/null || true");
+    }
 
+    private void installSecondaryDexFiles() throws Exception {
       // This is a bit gross.  It was a late addition.  Ideally, we could eliminate this, but
       // it wouldn't be terrible if we don't.  We store the dexed jars on the device
       // with the full SHA-1 hashes in their names.  This is the format that the loader uses
@@ -271,6 +360,15 @@ public class ExopackageInstaller {
               "secondary-(\\d+)\\.dex\\.jar (\\p{XDigit}{40}) ",
               "secondary-$2.dex.jar $2 ");
 
+      final ImmutableMap<String, Path> hashToSources = getRequiredDexFiles();
+      final ImmutableSet<String> requiredHashes = hashToSources.keySet();
+      final ImmutableSet<String> presentHashes =
+          prepareSecondaryDexDir(requiredHashes, metadataContents);
+      final Set<String> hashesToInstall = Sets.difference(requiredHashes, presentHashes);
+
+      Map<String, Path> filesToInstallByHash =
+          Maps.filterKeys(hashToSources, Predicates.in(hashesToInstall));
+
       installFiles(
           "secondary_dex",
           ImmutableMap.copyOf(filesToInstallByHash),
@@ -319,12 +417,6 @@ public class ExopackageInstaller {
         return;
       }
 
-      ImmutableSet<String> requiredHashes = libraries.keySet();
-      ImmutableSet<String> presentHashes = prepareNativeLibsDir(abi, requiredHashes);
-
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(libraries, Predicates.not(Predicates.in(presentHashes)));
-
       String metadataContents = Joiner.on('\n').join(
           FluentIterable.from(libraries.entrySet()).transform(
               new Function<Map.Entry<String, Path>, String>() {
@@ -338,6 +430,13 @@ public class ExopackageInstaller {
                 }
               }));
 
+      ImmutableSet<String> requiredHashes = libraries.keySet();
+      ImmutableSet<String> presentHashes =
+          prepareNativeLibsDir(abi, requiredHashes, metadataContents);
+
+      Map<String, Path> filesToInstallByHash =
+          Maps.filterKeys(libraries, Predicates.not(Predicates.in(presentHashes)));
+
       installFiles(
           "native_library",
           ImmutableMap.copyOf(filesToInstallByHash),
@@ -495,79 +594,131 @@ public class ExopackageInstaller {
       return builder.build();
     }
 
-    private ImmutableSet<String> prepareSecondaryDexDir(ImmutableSet<String> requiredHashes)
-        throws Exception {
-      return prepareDirectory("secondary-dex", DEX_FILE_PATTERN, requiredHashes);
+    private ImmutableSet<String> prepareSecondaryDexDir(
+        ImmutableSet<String> requiredHashes,
+        String metadataContents) throws Exception {
+      return prepareDirectory(
+          SECONDARY_DEX_DIR.toString(),
+          DEX_FILE_PATTERN,
+          requiredHashes,
+          metadataContents);
     }
 
     private ImmutableSet<String> prepareNativeLibsDir(
         String abi,
-        ImmutableSet<String> requiredHashes) throws Exception {
-      return prepareDirectory("native-libs/" + abi, NATIVE_LIB_PATTERN, requiredHashes);
+        ImmutableSet<String> requiredHashes,
+        String metadataContents) throws Exception {
+      return prepareDirectory(
+          NATIVE_LIBS_DIR.resolve(abi).toString(),
+          NATIVE_LIB_PATTERN,
+          requiredHashes,
+          metadataContents);
     }
 
     private ImmutableSet<String> prepareDirectory(
         String dirname,
         Pattern filePattern,
-        ImmutableSet<String> requiredHashes) throws Exception {
+        ImmutableSet<String> requiredHashes,
+        String metadataContents) throws Exception {
       try (TraceEventLogger ignored = TraceEventLogger.start(eventBus, "prepare_" + dirname)) {
         String dirPath = dataRoot.resolve(dirname).toString();
-        mkDirP(dirPath);
 
-        String output = AdbHelper.executeCommandWithErrorChecking(device, "ls " + dirPath);
+        String output;
+        if (directoryFiles.containsKey(dirname)) {
+          // The device is as the last install left it, so there is no need to look.
+          output = Joiner.on("\r\n").join(directoryFiles.get(dirname));
+        } else {
+          mkDirP(dirPath);
+          output = AdbHelper.executeCommandWithErrorChecking(device, "ls " + dirPath);
+        }
 
         ImmutableSet.Builder<String> foundHashes = ImmutableSet.builder();
-        ImmutableSet.Builder<String> filesToDelete = ImmutableSet.builder();
+        ImmutableSet.Builder<String> filesToDeleteBuilder = ImmutableSet.builder();
 
-        processLsOutput(output, filePattern, requiredHashes, foundHashes, filesToDelete);
+        processLsOutput(output, filePattern, requiredHashes, foundHashes, filesToDeleteBuilder);
+
+        Set<String> filesToDelete = filesToDeleteBuilder.build();
+        if (isMetadataInstalled(dirname, metadataContents)) {
+          filesToDelete = Sets.difference(filesToDelete, ImmutableSet.of(METADATA_FILE_NAME));
+        } else {
+          metadataHashes.remove(dirname);
+        }
 
         String commandPrefix = "cd " + dirPath + " && rm ";
         // Add a fudge factor for separators and error checking.
         final int overhead = commandPrefix.length() + 100;
         for (List<String> rmArgs :
-            chunkArgs(filesToDelete.build(), MAX_ADB_COMMAND_SIZE - overhead)) {
+            chunkArgs(filesToDelete, MAX_ADB_COMMAND_SIZE - overhead)) {
           String command = commandPrefix + Joiner.on(' ').join(rmArgs);
           LOG.debug("Executing %s", command);
           AdbHelper.executeCommandWithErrorChecking(device, command);
+          changedDevice = true;
         }
 
+        List<String> remainingFiles = new ArrayList<>();
+        for (String file : Splitter.on("\r\n").omitEmptyStrings().split(output)) {
+          if (!filesToDelete.contains(file)) {
+            remainingFiles.add(file);
+          }
+        }
+        directoryFiles.put(dirname, remainingFiles);
+
         return foundHashes.build();
       }
     }
 
+    /**
+     * @return whether the metadata.txt in {@code dirname} is known to have exactly
+     *     {@code metadataContents}.
+     */
+    private boolean isMetadataInstalled(String dirname, String metadataContents) {
+      return ExopackageDeviceState.hashMetadata(metadataContents)
+          .equals(metadataHashes.get(dirname));
+    }
+
     private void installFiles(
         String filesType,
         ImmutableMap<String, Path> filesToInstallByHash,
         String metadataFileContents,
         String filenameFormat,
         Path destinationDirRelativeToDataRoot) throws Exception {
+      String dirname = destinationDirRelativeToDataRoot.toString();
+      boolean installMetadata = !isMetadataInstalled(dirname, metadataFileContents);
+      if (filesToInstallByHash.isEmpty() && !installMetadata) {
+        LOG.debug("All %s files are already installed.", filesType);
+        return;
+      }
+
       try (TraceEventLogger ignored1 =
                TraceEventLogger.start(eventBus, "multi_install_" + filesType)) {
+        changedDevice = true;
+        List<String> installedFiles = new ArrayList<>();
         device.createForward(agentPort, agentPort);
-        try {
+        try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
+          // Every missing file goes to the device in a single agent session, rather than paying
+          // for a shell command and a connection per file.
+          ImmutableMap.Builder<Path, Path> sourcesByDestination = ImmutableMap.builder();
           for (Map.Entry<String, Path> entry : filesToInstallByHash.entrySet()) {
-            Path destination = destinationDirRelativeToDataRoot.resolve(
-                String.format(filenameFormat, entry.getKey()));
-            Path source = entry.getValue();
-
-            try (TraceEventLogger ignored2 =
-                     TraceEventLogger.start(eventBus, "install_" + filesType)) {
-              installFile(device, agentPort, destination, source);
-            }
+            String filename = String.format(filenameFormat, entry.getKey());
+            sourcesByDestination.put(
+                destinationDirRelativeToDataRoot.resolve(filename),
+                entry.getValue());
+            installedFiles.add(filename);
           }
-          try (TraceEventLogger ignored3 =
-                   TraceEventLogger.start(eventBus, "install_" + filesType + "_metadata")) {
-            try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
-              com.google.common.io.Files.write(
-                  metadataFileContents.getBytes(Charsets.UTF_8),
-                  temp.get().toFile());
-              installFile(
-                  device,
-                  agentPort,
-                  destinationDirRelativeToDataRoot.resolve("metadata.txt"),
-                  temp.get());
-            }
+          if (installMetadata) {
+            com.google.common.io.Files.write(
+                metadataFileContents.getBytes(Charsets.UTF_8),
+                temp.get().toFile());
+            sourcesByDestination.put(
+                destinationDirRelativeToDataRoot.resolve(METADATA_FILE_NAME),
+                temp.get());
+            installedFiles.add(METADATA_FILE_NAME);
           }
+          try (TraceEventLogger ignored2 =
+                   TraceEventLogger.start(eventBus, "install_" + filesType)) {
+            pushFiles(device, agentPort, sourcesByDestination.build());
+          }
+          makeReadable(dataRoot.resolve(destinationDirRelativeToDataRoot), installedFiles);
         } finally {
           try {
             device.removeForward(agentPort, agentPort);
@@ -581,14 +732,46 @@ public class ExopackageInstaller {
                     agentPort));
           }
         }
+
+        List<String> files = new ArrayList<>(directoryFiles.get(dirname));
+        for (String file : installedFiles) {
+          if (!files.contains(file)) {
+            files.add(file);
+          }
+        }
+        directoryFiles.put(dirname, files);
+        metadataHashes.put(dirname, ExopackageDeviceState.hashMetadata(metadataFileContents));
       }
     }
 
-    private void installFile(
+    /**
+     * The standard Java libraries on Android always create new files un-readable by other users.
+     * We use the shell user or root to create these files, so we need to explicitly set the mode
+     * to allow the app to read them.  Ideally, the agent would do this automatically, but
+     * there's no easy way to do this in Java.  We can drop this if we drop support for the
+     * Java agent.
+     */
+    private void makeReadable(Path dir, List<String> files) throws Exception {
+      String commandPrefix = "cd " + dir + " && chmod 644 ";
+      // Add a fudge factor for separators and error checking.
+      final int overhead = commandPrefix.length() + 100;
+      for (List<String> chmodArgs : chunkArgs(files, MAX_ADB_COMMAND_SIZE - overhead)) {
+        String command = commandPrefix + Joiner.on(' ').join(chmodArgs);
+        LOG.debug("Executing %s", command);
+        AdbHelper.executeCommandWithErrorChecking(device, command);
+      }
+    }
+
+    /**
+     * Pushes files to the device with the agent's multi-receive-file command, which takes each
+     * file's size and destination from a header sent ahead of its contents.
+     *
+     * @param sourcesByDestination the file to push to each path relative to {@link #dataRoot}.
+     */
+    private void pushFiles(
         IDevice device,
         final int port,
-        Path pathRelativeToDataRoot,
-        final Path source) throws Exception {
+        final ImmutableMap<Path, Path> sourcesByDestination) throws Exception {
       CollectingOutputReceiver receiver = new CollectingOutputReceiver() {
 
         private boolean sentPayload = false;
@@ -602,14 +785,22 @@ public class ExopackageInstaller {
             sentPayload = true;
             try (Socket clientSocket = new Socket("localhost", port)) {
               LOG.verbose("Connected");
-              OutputStream outToDevice = clientSocket.getOutputStream();
+              OutputStream outToDevice =
+                  new BufferedOutputStream(clientSocket.getOutputStream());
               outToDevice.write(
                   getOutput().substring(
                       0,
                       AgentUtil.TEXT_SECRET_KEY_SIZE).getBytes());
               LOG.verbose("Wrote key");
-              com.google.common.io.Files.asByteSource(source.toFile()).copyTo(outToDevice);
-              LOG.verbose("Wrote file");
+              for (Map.Entry<Path, Path> entry : sourcesByDestination.entrySet()) {
+                Path source = entry.getValue();
+                String header =
+                    Files.size(source) + " " + dataRoot.resolve(entry.getKey()) + "\n";
+                outToDevice.write(header.getBytes(Charsets.UTF_8));
+                com.google.common.io.Files.asByteSource(source.toFile()).copyTo(outToDevice);
+                LOG.verbose("Wrote %s", entry.getKey());
+              }
+              outToDevice.flush();
             } catch (IOException e) {
               throw new RuntimeException(e);
             }
@@ -617,14 +808,12 @@ public class ExopackageInstaller {
         }
       };
 
-      String targetFileName = dataRoot.resolve(pathRelativeToDataRoot).toString();
       String command =
           "umask 022 && " +
               getAgentCommand() +
-              "receive-file " + port + " " + Files.size(source) + " " +
-              targetFileName +
+              "multi-receive-file " + port +
               " ; echo -n :$?";
-      LOG.debug("Executing %s", command);
+      LOG.debug("Executing %s for %d files", command, sourcesByDestination.size());
 
       // If we fail to execute the command, stash the exception.  My experience during development
       // has been that the exception from checkReceiverOutput is more actionable.
@@ -647,13 +836,6 @@ public class ExopackageInstaller {
       if (shellException != null) {
         throw shellException;
       }
-
-      // The standard Java libraries on Android always create new files un-readable by other users.
-      // We use the shell user or root to create these files, so we need to explicitly set the mode
-      // to allow the app to read them.  Ideally, the agent would do this automatically, but
-      // there's no easy way to do this in Java.  We can drop this if we drop support for the
-      // Java agent.
-      AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
     }
 
     private String getProperty(String property) throws Exception {
@@ -25,31 +25,44 @@ import com.facebook.buck.rules.RuleKeyBuilder;
 import com.facebook.buck.shell.BashStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.util.BuckConstant;
 import com.facebook.buck.util.DefaultFilteredDirectoryCopier;
 import com.facebook.buck.util.Escaper;
 import com.facebook.buck.util.FilteredDirectoryCopier;
 import com.facebook.buck.util.Filters;
 import com.facebook.buck.util.Filters.Density;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.concurrent.MoreExecutors;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -69,6 +82,10 @@ public class FilterResourcesStep implements Step {
 
   private static final Logger LOG = Logger.get(FilterResourcesStep.class);
 
+  /** Shared by all rules, so that each distinct image is only scaled once by each factor. */
+  public static final Path DEFAULT_SCALED_IMAGE_CACHE_DIRECTORY =
+      BuckConstant.SCRATCH_PATH.resolve("__scaled_drawables__");
+
   @VisibleForTesting
   static final Pattern NON_ENGLISH_STRINGS_FILE_PATH = Pattern.compile(
       "\\b|.*/res/values-([a-z]{2})(?:-r([A-Z]{2}))*/strings.xml");
@@ -86,6 +103,7 @@ public class FilterResourcesStep implements Step {
   private final DrawableFinder drawableFinder;
   @Nullable
   private final ImageScaler imageScaler;
+  private final Optional<Path> scaledImageCacheDirectory;
 
   /**
    * Creates a command that filters a specified set of directories.
@@ -117,6 +135,38 @@ public class FilterResourcesStep implements Step {
       @Nullable Set<Filters.Density> targetDensities,
       @Nullable DrawableFinder drawableFinder,
       @Nullable ImageScaler imageScaler) {
+    this(
+        filesystem,
+        inResDirToOutResDirMap,
+        filterDrawables,
+        enableStringWhitelisting,
+        whitelistedStringDirs,
+        locales,
+        filteredDirectoryCopier,
+        targetDensities,
+        drawableFinder,
+        imageScaler,
+        Optional.<Path>absent());
+  }
+
+  /**
+   * @param scaledImageCacheDirectory if present, where images scaled by {@code imageScaler} are
+   *     kept, keyed by the hash of the original and the scaling factor, so that an image is only
+   *     scaled the first time any rule needs it scaled by that factor.
+   */
+  @VisibleForTesting
+  FilterResourcesStep(
+      ProjectFilesystem filesystem,
+      ImmutableBiMap<Path, Path> inResDirToOutResDirMap,
+      boolean filterDrawables,
+      boolean enableStringWhitelisting,
+      ImmutableSet<Path> whitelistedStringDirs,
+      ImmutableSet<String> locales,
+      FilteredDirectoryCopier filteredDirectoryCopier,
+      @Nullable Set<Filters.Density> targetDensities,
+      @Nullable DrawableFinder drawableFinder,
+      @Nullable ImageScaler imageScaler,
+      Optional<Path> scaledImageCacheDirectory) {
 
     Preconditions.checkArgument(filterDrawables || enableStringWhitelisting || !locales.isEmpty());
     Preconditions.checkArgument(!filterDrawables ||
@@ -132,6 +182,7 @@ public class FilterResourcesStep implements Step {
     this.targetDensities = targetDensities;
     this.drawableFinder = drawableFinder;
     this.imageScaler = imageScaler;
+    this.scaledImageCacheDirectory = scaledImageCacheDirectory;
   }
 
   @Override
@@ -232,8 +283,11 @@ public class FilterResourcesStep implements Step {
    * <p/>
    * Any drawables found by this step didn't have equivalents in the target density. If they are of
    * a higher density, we can replicate what Android does and downscale them at compile-time.
+   * <p/>
+   * The drawables are scaled in parallel, and only once they have all been scaled are the
+   * originals deleted.
    */
-  private void scaleUnmatchedDrawables(ExecutionContext context)
+  private void scaleUnmatchedDrawables(final ExecutionContext context)
       throws IOException, InterruptedException {
     Filters.Density targetDensity = Filters.Density.ORDERING.max(targetDensities);
 
@@ -242,7 +296,9 @@ public class FilterResourcesStep implements Step {
     Collection<Path> drawables = drawableFinder.findDrawables(
         inResDirToOutResDirMap.values(),
         filesystem);
-    for (Path drawable : drawables) {
+    List<Path> scaledDrawables = new ArrayList<>();
+    List<Callable<Void>> scalings = new ArrayList<>();
+    for (final Path drawable : drawables) {
       if (drawable.toString().endsWith(".9.png")) {
         // Skip nine-patch for now.
         continue;
@@ -258,11 +314,11 @@ public class FilterResourcesStep implements Step {
         // Replace density qualifier with target density using regular expression to match
         // the qualifier in the context of a path to a drawable.
         String fromDensity = (density == Density.NO_QUALIFIER ? "" : "-") + density.toString();
-        Path destination = Paths.get(MorePaths.pathWithUnixSeparators(drawable).replaceFirst(
+        final Path destination = Paths.get(MorePaths.pathWithUnixSeparators(drawable).replaceFirst(
             "((?:^|/)drawable[^/]*)" + Pattern.quote(fromDensity) + "(-|$|/)",
             "$1-" + targetDensity + "$2"));
 
-        double factor = targetDensity.value() / density.value();
+        final double factor = targetDensity.value() / density.value();
         if (factor >= 1.0) {
           // There is no point in up-scaling, or converting between drawable and drawable-mdpi.
           continue;
@@ -270,22 +326,89 @@ public class FilterResourcesStep implements Step {
 
         // Make sure destination folder exists and perform downscaling.
         filesystem.createParentDirs(destination);
-        Preconditions.checkNotNull(imageScaler);
-        imageScaler.scale(factor, drawable, destination, context);
+        scaledDrawables.add(drawable);
+        scalings.add(
+            new Callable<Void>() {
+              @Override
+              public Void call() throws IOException, InterruptedException {
+                scale(factor, drawable, destination, context);
+                return null;
+              }
+            });
+      }
+    }
 
-        // Delete source file.
-        filesystem.deleteFileAtPath(drawable);
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor(
+        "scale_drawables",
+        context.getConcurrencyLimit().threadLimit);
+    List<Future<Void>> futures = new ArrayList<>();
+    try {
+      for (Callable<Void> scaling : scalings) {
+        futures.add(executor.submit(scaling));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+      MoreExecutors.shutdown(executor);
+    }
 
-        // Delete newly-empty directories to prevent missing resources errors in apkbuilder.
-        Path parent = drawable.getParent();
-        if (filesystem.listFiles(parent).length == 0) {
-          filesystem.deleteFileAtPath(parent);
-        }
+    for (Path drawable : scaledDrawables) {
+      // Delete source file.
+      filesystem.deleteFileAtPath(drawable);
 
+      // Delete newly-empty directories to prevent missing resources errors in apkbuilder.
+      Path parent = drawable.getParent();
+      if (filesystem.listFiles(parent).length == 0) {
+        filesystem.deleteFileAtPath(parent);
       }
     }
   }
 
+  /**
+   * Scales {@code source} into {@code destination}, through the cache of scaled images if there
+   * is one.
+   */
+  private void scale(double factor, Path source, Path destination, ExecutionContext context)
+      throws IOException, InterruptedException {
+    Preconditions.checkNotNull(imageScaler);
+    if (!scaledImageCacheDirectory.isPresent()) {
+      imageScaler.scale(factor, source, destination, context);
+      return;
+    }
+
+    // The scaler decides the format from the extension, so the cached copy keeps it.
+    String key = Hashing.sha1().newHasher()
+        .putString(imageScaler.getClass().getName(), StandardCharsets.UTF_8)
+        .putDouble(factor)
+        .putString(filesystem.computeSha1(source), StandardCharsets.UTF_8)
+        .hash()
+        .toString();
+    String extension = MorePaths.getFileExtension(source);
+    Path cached = scaledImageCacheDirectory.get().resolve(key + "." + extension);
+    if (!filesystem.isFile(cached)) {
+      LOG.debug("Scaling %s by %s into %s.", source, factor, cached);
+      filesystem.mkdirs(cached.getParent());
+      // Write to a temporary file first, so that other builds never see a partly written image
+      // in the cache.
+      Path temp = cached.resolveSibling(key + "." + UUID.randomUUID() + ".tmp." + extension);
+      imageScaler.scale(factor, source, temp, context);
+      filesystem.move(
+          temp,
+          cached,
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    filesystem.copyFile(cached, destination);
+  }
+
   public interface DrawableFinder {
     public Set<Path> findDrawables(Collection<Path> dirs, ProjectFilesystem filesystem)
         throws IOException;
@@ -483,7 +606,8 @@ public class FilterResourcesStep implements Step {
           DefaultDrawableFinder.getInstance(),
           resourceFilter.shouldDownscale() ?
               new ImageMagickScaler(filesystem.getRootPath()) :
-              null);
+              null,
+          Optional.of(DEFAULT_SCALED_IMAGE_CACHE_DIRECTORY));
     }
   }
 }
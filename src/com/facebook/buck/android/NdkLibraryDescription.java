@@ -19,6 +19,7 @@ import com.facebook.buck.cxx.CxxHeaders;
 import com.facebook.buck.cxx.CxxPlatform;
 import com.facebook.buck.cxx.CxxPreprocessables;
 import com.facebook.buck.cxx.CxxPreprocessorInput;
+import com.facebook.buck.cxx.CxxSharedLibraryInterface;
 import com.facebook.buck.cxx.CxxSource;
 import com.facebook.buck.cxx.Linker;
 import com.facebook.buck.cxx.NativeLinkable;
@@ -232,7 +233,8 @@ public class NdkLibraryDescription implements Description<NdkLibraryDescription.
 
       // We add any dependencies from the native linkable input to this rule, even though
       // it technically should be added to the top-level rule.
-      deps.addAll(pathResolver.filterBuildRuleInputs(nativeLinkableInput.getInputs()));
+      deps.addAll(
+        CxxSharedLibraryInterface.getLinkDeps(pathResolver, nativeLinkableInput.getInputs()));
 
       // Add in the transitive native linkable flags contributed by C/C++ library rules into the
       // NDK build.
@@ -93,6 +93,8 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
   private final ListeningExecutorService dxExecutorService;
   private final BuildOutputInitializer<BuildOutput> buildOutputInitializer;
   private final Optional<Integer> xzCompressionLevel;
+  @AddToRuleKey
+  private final Optional<Integer> xzBlockSize;
 
   public PreDexMerge(
       BuildRuleParams params,
@@ -102,7 +104,8 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
       ImmutableSet<DexProducedFromJavaLibrary> preDexDeps,
       AaptPackageResources aaptPackageResources,
       ListeningExecutorService dxExecutorService,
-      Optional<Integer> xzCompressionLevel) {
+      Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzBlockSize) {
     super(params, resolver);
     this.primaryDexPath = primaryDexPath;
     this.dexSplitMode = dexSplitMode;
@@ -111,6 +114,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     this.dxExecutorService = dxExecutorService;
     this.buildOutputInitializer = new BuildOutputInitializer<>(params.getBuildTarget(), this);
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzBlockSize = xzBlockSize;
   }
 
   @Override
@@ -220,7 +224,8 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
             paths.successDir,
             DX_MERGE_OPTIONS,
             dxExecutorService,
-            xzCompressionLevel));
+            xzCompressionLevel,
+            xzBlockSize));
 
     // Record the primary dex SHA1 so exopackage apks can use it to compute their ABI keys.
     // Single dex apks cannot be exopackages, so they will never need ABI keys.
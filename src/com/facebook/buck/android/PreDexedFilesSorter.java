@@ -56,6 +56,15 @@ import java.util.Set;
  */
 public class PreDexedFilesSorter {
 
+  /**
+   * Once a secondary dex is this full, it is closed after the next pre-dexed file that is a
+   * boundary. See {@link #isSecondaryDexBoundary(DexWithClasses)}.
+   */
+  private static final double SECONDARY_DEX_FILL_BEFORE_BOUNDARY = 0.9;
+
+  /** About one in this many pre-dexed files is a boundary. */
+  private static final int SECONDARY_DEX_BOUNDARY_FREQUENCY = 4;
+
   private final Optional<DexWithClasses> rDotJavaDex;
   private final List<DexWithClasses> dexFilesToMerge;
   private final ClassNameFilter primaryDexFilter;
@@ -156,6 +165,16 @@ public class PreDexedFilesSorter {
         // Now add the contributions from the dexWithClasses entry.
         currentSecondaryDexContents.add(dexWithClasses);
         currentSecondaryDexSize += dexWithClasses.getSizeEstimate();
+
+        // Filling each secondary dex to the limit would mean that when one pre-dexed file grows,
+        // every file after it could move to a different secondary dex, and every one of those
+        // would have to be merged again. Instead, close secondary dexes at boundaries that do not
+        // depend on the sizes of the files before them, so that the packing after the next
+        // boundary is unaffected by the change.
+        if (currentSecondaryDexSize >= SECONDARY_DEX_FILL_BEFORE_BOUNDARY * linearAllocHardLimit &&
+            isSecondaryDexBoundary(dexWithClasses)) {
+          currentSecondaryDexContents = null;
+        }
       }
     }
 
@@ -196,6 +215,18 @@ public class PreDexedFilesSorter {
     return dexInputsHashes.build();
   }
 
+  /**
+   * Whether a secondary dex that is almost full may be closed after {@code dexWithClasses}. This
+   * depends only on the path of the pre-dexed file, so that it doesn't change when the file is
+   * edited.
+   */
+  private static boolean isSecondaryDexBoundary(DexWithClasses dexWithClasses) {
+    int hash = Hashing.murmur3_32()
+        .hashString(dexWithClasses.getPathToDexFile().toString(), Charsets.UTF_8)
+        .asInt();
+    return (hash & Integer.MAX_VALUE) % SECONDARY_DEX_BOUNDARY_FREQUENCY == 0;
+  }
+
   private boolean mustBeInPrimaryDex(DexWithClasses dexWithClasses) {
     for (String className : dexWithClasses.getClassNames()) {
       if (primaryDexFilter.matches(className)) {
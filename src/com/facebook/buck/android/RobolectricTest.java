@@ -97,6 +97,7 @@ public class RobolectricTest extends JavaTest {
       Optional<DummyRDotJava> optionalDummyRDotJava,
       Optional<Long> testRuleTimeoutMs,
       boolean runTestSeparately,
+      int shards,
       Optional<Level> stdOutLogLevel,
       Optional<Level> stdErrLogLevel,
       Optional<Path> testTempDirOverride) {
@@ -119,6 +120,7 @@ public class RobolectricTest extends JavaTest {
         mavenCoords,
         testRuleTimeoutMs,
         runTestSeparately,
+        shards,
         stdOutLogLevel,
         stdErrLogLevel,
         testTempDirOverride
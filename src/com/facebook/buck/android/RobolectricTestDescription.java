@@ -164,6 +164,7 @@ public class RobolectricTestDescription implements Description<RobolectricTestDe
                 dummyRDotJava,
                 testRuleTimeoutMs,
                 args.getRunTestSeparately(),
+                args.getShards(),
                 args.stdOutLogLevel,
                 args.stdErrLogLevel,
                 testTempDirOverride));
@@ -87,6 +87,7 @@ public class SmartDexingStep implements Step {
   private final EnumSet<DxStep.Option> dxOptions;
   private final ListeningExecutorService executorService;
   private final Optional<Integer> xzCompressionLevel;
+  private final Optional<Integer> xzBlockSize;
 
   /**
    * @param primaryOutputPath Path for the primary dex artifact.
@@ -100,6 +101,8 @@ public class SmartDexingStep implements Step {
    *     corresponding jar files (value) as the input.
    * @param successDir Directory where success artifacts are written.
    * @param executorService The thread pool to execute the dx command on.
+   * @param xzBlockSize If present, XZ compressed dex stores are split into blocks of this size
+   *     that are compressed in parallel.
    */
   public SmartDexingStep(
       ProjectFilesystem filesystem,
@@ -111,7 +114,8 @@ public class SmartDexingStep implements Step {
       Path successDir,
       EnumSet<Option> dxOptions,
       ListeningExecutorService executorService,
-      Optional<Integer> xzCompressionLevel) {
+      Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzBlockSize) {
     this.filesystem = filesystem;
     this.outputToInputsSupplier = Suppliers.memoize(
         new Supplier<Multimap<Path, Path>>() {
@@ -131,6 +135,7 @@ public class SmartDexingStep implements Step {
     this.dxOptions = dxOptions;
     this.executorService = executorService;
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzBlockSize = xzBlockSize;
   }
 
   public static int determineOptimalThreadCount() {
@@ -167,16 +172,12 @@ public class SmartDexingStep implements Step {
           // Concatenate the jars into a blob and compress it.
           StepRunner stepRunner = new DefaultStepRunner(context);
           Step concatStep = new ConcatStep(filesystem, secondaryDexJars, secondaryBlobOutput);
-          Step xzStep;
-          if (xzCompressionLevel.isPresent()) {
-            xzStep = new XzStep(
-                filesystem,
-                secondaryBlobOutput,
-                secondaryCompressedBlobOutput,
-                xzCompressionLevel.get().intValue());
-          } else {
-            xzStep = new XzStep(filesystem, secondaryBlobOutput, secondaryCompressedBlobOutput);
-          }
+          Step xzStep = new XzStep(
+              filesystem,
+              secondaryBlobOutput,
+              secondaryCompressedBlobOutput,
+              xzCompressionLevel.or(XzStep.DEFAULT_COMPRESSION_LEVEL),
+              xzBlockSize);
           stepRunner.runStepForBuildTarget(concatStep, Optional.<BuildTarget>absent());
           stepRunner.runStepForBuildTarget(xzStep, Optional.<BuildTarget>absent());
         }
@@ -266,7 +267,8 @@ public class SmartDexingStep implements Step {
               outputFile,
               successDir.resolve(outputFile.getFileName()),
               dxOptions,
-              xzCompressionLevel));
+              xzCompressionLevel,
+              xzBlockSize));
     }
 
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
@@ -299,6 +301,7 @@ public class SmartDexingStep implements Step {
     @Nullable
     private String newInputsHash;
     private final Optional<Integer> xzCompressionLevel;
+    private final Optional<Integer> xzBlockSize;
 
     public DxPseudoRule(
         ProjectFilesystem filesystem,
@@ -307,7 +310,8 @@ public class SmartDexingStep implements Step {
         Path outputPath,
         Path outputHashPath,
         EnumSet<Option> dxOptions,
-        Optional<Integer> xzCompressionLevel) {
+        Optional<Integer> xzCompressionLevel,
+        Optional<Integer> xzBlockSize) {
       this.filesystem = filesystem;
       this.dexInputHashes = ImmutableMap.copyOf(dexInputHashes);
       this.srcs = ImmutableSet.copyOf(srcs);
@@ -315,6 +319,7 @@ public class SmartDexingStep implements Step {
       this.outputHashPath = outputHashPath;
       this.dxOptions = dxOptions;
       this.xzCompressionLevel = xzCompressionLevel;
+      this.xzBlockSize = xzBlockSize;
     }
 
     /**
@@ -364,7 +369,8 @@ public class SmartDexingStep implements Step {
               srcs,
               outputPath,
               dxOptions,
-              xzCompressionLevel));
+              xzCompressionLevel,
+              xzBlockSize));
       steps.add(
           new WriteFileStep(filesystem, newInputsHash, outputHashPath, /* executable */ false));
 
@@ -387,7 +393,8 @@ public class SmartDexingStep implements Step {
       Collection<Path> filesToDex,
       Path outputPath,
       EnumSet<Option> dxOptions,
-      Optional<Integer> xzCompressionLevel) {
+      Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzBlockSize) {
 
     String output = outputPath.toString();
     List<Step> steps = Lists.newArrayList();
@@ -412,11 +419,13 @@ public class SmartDexingStep implements Step {
               repackedJar,
               repackedJar.resolveSibling(
                   repackedJar.getFileName() + ".meta")));
-      if (xzCompressionLevel.isPresent()) {
-        steps.add(new XzStep(filesystem, repackedJar, xzCompressionLevel.get().intValue()));
-      } else {
-        steps.add(new XzStep(filesystem, repackedJar));
-      }
+      steps.add(
+          new XzStep(
+              filesystem,
+              repackedJar,
+              Paths.get(repackedJar + ".xz"),
+              xzCompressionLevel.or(XzStep.DEFAULT_COMPRESSION_LEVEL),
+              xzBlockSize));
     } else if (DexStore.XZS.matchesPath(outputPath)) {
       // Essentially the same logic as the XZ case above, except we compress later.
       // The differences in output file names make it worth separating into a different case.
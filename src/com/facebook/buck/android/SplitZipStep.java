@@ -25,6 +25,7 @@ import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.util.BuckConstant;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
@@ -73,6 +74,13 @@ public class SplitZipStep implements Step {
    */
   private static final int ZIP_SIZE_HARD_LIMIT = ZIP_SIZE_SOFT_LIMIT + (2 * 1024 * 1024);
 
+  /**
+   * Linear alloc estimates of classes, keyed by their contents, shared by all binaries so that
+   * unchanged classes are not parsed again by later builds.
+   */
+  private static final Path DALVIK_STATS_STORE_PATH =
+      BuckConstant.SCRATCH_PATH.resolve("__dalvik_stats__/stats.bin");
+
   // Transform Function that calls String.trim()
   private static final Function<String, String> STRING_TRIM = new Function<String, String>() {
     @Override
@@ -185,7 +193,9 @@ public class SplitZipStep implements Step {
           .transform(filesystem.getAbsolutifier())
           .toSet();
       Supplier<ImmutableList<ClassNode>> classes =
-          ClassNodeListSupplier.createMemoized(inputJarPaths);
+          ClassNodeListSupplier.createMemoized(
+              inputJarPaths,
+              context.getConcurrencyLimit().threadLimit);
       ProguardTranslatorFactory translatorFactory = ProguardTranslatorFactory.create(
           filesystem,
           proguardFullConfigFile,
@@ -201,7 +211,9 @@ public class SplitZipStep implements Step {
       if (dexSplitMode.useLinearAllocSplitDex()) {
         zipSplitterFactory = new DalvikAwareZipSplitterFactory(
             dexSplitMode.getLinearAllocHardLimit(),
-            wantedInPrimaryZip);
+            wantedInPrimaryZip,
+            Optional.of(filesystem.resolve(DALVIK_STATS_STORE_PATH)),
+            context.getConcurrencyLimit().threadLimit);
       } else {
         zipSplitterFactory = new DefaultZipSplitterFactory(ZIP_SIZE_SOFT_LIMIT,
             ZIP_SIZE_HARD_LIMIT);
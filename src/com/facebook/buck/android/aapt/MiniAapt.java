@@ -17,25 +17,30 @@
 package com.facebook.buck.android.aapt;
 
 import com.facebook.buck.android.AaptStep;
-import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.util.MoreStrings;
 import com.facebook.buck.util.XmlDomParser;
+import com.facebook.buck.util.concurrent.MoreExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -43,12 +48,19 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.nio.file.Path;
-import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -59,9 +71,15 @@ import javax.xml.xpath.XPathFactory;
  * Step which parses resources in an android {@code res} directory and compiles them into a
  * {@code R.txt} file, following the exact same format as the Android build tool {@code aapt}.
  * <p>
+ * The xml files are parsed in parallel, and what was found in each of them can be cached between
+ * runs so that only the files that have changed are parsed again. What was found is then applied
+ * to the {@link AaptResourceCollector} one file after the other, in the order of their paths, so
+ * that resources are always given the same ids.
  */
 public class MiniAapt implements Step {
 
+  private static final Logger LOG = Logger.get(MiniAapt.class);
+
   /**
    * See {@link com.facebook.buck.android.AaptStep} for a list of files that we ignore.
    */
@@ -70,13 +88,14 @@ public class MiniAapt implements Step {
   private static final String ID_DEFINITION_PREFIX = "@+id/";
   private static final String ITEM_TAG = "item";
 
-  private static final XPathExpression ANDROID_ID_USAGE =
+  // XPathExpressions are not thread-safe.
+  private static final ThreadLocal<XPathExpression> ANDROID_ID_USAGE =
       createExpression("//@*[starts-with(., '@') and " +
               "not(starts-with(., '@+')) and " +
               "not(starts-with(., '@android:')) and " +
               "not(starts-with(., '@null'))]");
 
-  private static final XPathExpression ANDROID_ID_DEFINITION =
+  private static final ThreadLocal<XPathExpression> ANDROID_ID_DEFINITION =
       createExpression("//@*[starts-with(., '@+') and " +
               "not(starts-with(., '@+android:id'))]");
 
@@ -96,26 +115,54 @@ public class MiniAapt implements Step {
   private final Path resDirectory;
   private final Path pathToTextSymbolsFile;
   private final ImmutableSet<Path> pathsToSymblolsOfDeps;
+  private final Optional<Path> pathToSymbolCache;
   private final AaptResourceCollector resourceCollector;
 
+  /** The symbols of the xml files that have been parsed ahead of applying them. */
+  private final Map<Path, ImmutableList<ResourceSymbol>> parsedFiles = new ConcurrentHashMap<>();
+
   public MiniAapt(
       ProjectFilesystem filesystem,
       Path resDirectory,
       Path pathToTextSymbolsFile,
       ImmutableSet<Path> pathsToSymblolsOfDeps) {
+    this(
+        filesystem,
+        resDirectory,
+        pathToTextSymbolsFile,
+        pathsToSymblolsOfDeps,
+        Optional.<Path>absent());
+  }
+
+  /**
+   * @param pathToSymbolCache if present, where to keep what was found in each xml file between
+   *     runs.
+   */
+  public MiniAapt(
+      ProjectFilesystem filesystem,
+      Path resDirectory,
+      Path pathToTextSymbolsFile,
+      ImmutableSet<Path> pathsToSymblolsOfDeps,
+      Optional<Path> pathToSymbolCache) {
     this.filesystem = filesystem;
     this.resDirectory = resDirectory;
     this.pathToTextSymbolsFile = pathToTextSymbolsFile;
     this.pathsToSymblolsOfDeps = pathsToSymblolsOfDeps;
+    this.pathToSymbolCache = pathToSymbolCache;
     this.resourceCollector = new AaptResourceCollector();
   }
 
-  private static XPathExpression createExpression(String expressionStr) {
-    try {
-      return XPathFactory.newInstance().newXPath().compile(expressionStr);
-    } catch (XPathExpressionException e) {
-      throw new RuntimeException(e);
-    }
+  private static ThreadLocal<XPathExpression> createExpression(final String expressionStr) {
+    return new ThreadLocal<XPathExpression>() {
+      @Override
+      protected XPathExpression initialValue() {
+        try {
+          return XPathFactory.newInstance().newXPath().compile(expressionStr);
+        } catch (XPathExpressionException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
   }
 
   private static ImmutableMap<String, RType> getResourceTypes() {
@@ -137,8 +184,15 @@ public class MiniAapt implements Step {
   @Override
   public int execute(ExecutionContext context) throws InterruptedException {
     ImmutableSet.Builder<RDotTxtEntry> references = ImmutableSet.builder();
+    ResourceSymbolCache symbolCache = pathToSymbolCache.isPresent() ?
+        ResourceSymbolCache.readFrom(
+            filesystem,
+            pathToSymbolCache.get(),
+            context.getObjectMapper()) :
+        ResourceSymbolCache.empty();
 
     try {
+      parseXmlFiles(symbolCache, context.getConcurrencyLimit().threadLimit);
       collectResources(filesystem, context.getBuckEventBus());
       processXmlFilesForIds(filesystem, references);
     } catch (IOException | XPathExpressionException | ResourceParseException e) {
@@ -173,9 +227,73 @@ public class MiniAapt implements Step {
       return 1;
     }
 
+    if (pathToSymbolCache.isPresent()) {
+      try {
+        symbolCache.writeTo(filesystem, pathToSymbolCache.get(), context.getObjectMapper());
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to write resource symbols to %s.", pathToSymbolCache.get());
+      }
+    }
+
     return 0;
   }
 
+  /**
+   * Finds the symbols of every xml file under the {@code res} directory, on up to
+   * {@code threadCount} threads, taking them from {@code symbolCache} where possible. Files that
+   * cannot be parsed are skipped, so that the error is reported when they are parsed again while
+   * collecting resources.
+   */
+  private void parseXmlFiles(final ResourceSymbolCache symbolCache, int threadCount)
+      throws IOException, InterruptedException {
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor(getShortName(), threadCount);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (final Path path : filesystem.getFilesUnderPath(resDirectory, ENDS_WITH_XML)) {
+        final boolean isValuesFile = isAValuesDir(getResourceDirName(path));
+        if (isValuesFile && shouldIgnoreFile(path, filesystem)) {
+          continue;
+        }
+        futures.add(
+            executor.submit(
+                new Callable<Void>() {
+                  @Override
+                  public Void call() throws IOException {
+                    byte[] contents;
+                    try (InputStream stream = filesystem.newFileInputStream(path)) {
+                      contents = ByteStreams.toByteArray(stream);
+                    }
+                    String hash = Hashing.sha1().hashBytes(contents).toString();
+
+                    Optional<ImmutableList<ResourceSymbol>> symbols = symbolCache.get(path, hash);
+                    if (!symbols.isPresent()) {
+                      try {
+                        InputStream stream = new ByteArrayInputStream(contents);
+                        symbols = Optional.of(
+                            isValuesFile ?
+                                parseValuesFile(path, stream) :
+                                parseXmlFile(path, stream));
+                      } catch (ResourceParseException | XPathExpressionException e) {
+                        return null;
+                      }
+                      symbolCache.put(path, hash, symbols.get());
+                    }
+                    parsedFiles.put(path, symbols.get());
+                    return null;
+                  }
+                }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      MoreExecutors.shutdown(executor);
+    }
+  }
+
   /**
    * Collects file names under the {@code res} directory, except those under directories starting
    * with {@code values}, as resources based on their parent directory.
@@ -204,8 +322,7 @@ public class MiniAapt implements Step {
    */
   private void collectResources(ProjectFilesystem filesystem, BuckEventBus eventBus)
       throws IOException, ResourceParseException {
-    Collection<Path> contents = filesystem.getDirectoryContents(resDirectory);
-    for (Path dir : contents) {
+    for (Path dir : sorted(filesystem.getDirectoryContents(resDirectory))) {
       if (!filesystem.isDirectory(dir) && !filesystem.isIgnored(dir)) {
         if (!shouldIgnoreFile(dir, filesystem)) {
           eventBus.post(ConsoleEvent.warning("MiniAapt [warning]: ignoring file '%s'.", dir));
@@ -238,7 +355,7 @@ public class MiniAapt implements Step {
       throw new ResourceParseException("'%s' is not a valid resource sub-directory.", dir);
     }
 
-    for (Path resourceFile : filesystem.getDirectoryContents(dir)) {
+    for (Path resourceFile : sorted(filesystem.getDirectoryContents(dir))) {
       if (shouldIgnoreFile(resourceFile, filesystem)) {
         continue;
       }
@@ -255,7 +372,7 @@ public class MiniAapt implements Step {
 
   void processValues(ProjectFilesystem filesystem, BuckEventBus eventBus, Path valuesDir)
       throws IOException, ResourceParseException {
-    for (Path path : filesystem.getFilesUnderPath(valuesDir)) {
+    for (Path path : sorted(filesystem.getFilesUnderPath(valuesDir))) {
       if (shouldIgnoreFile(path, filesystem)) {
         continue;
       }
@@ -293,45 +410,63 @@ public class MiniAapt implements Step {
   @VisibleForTesting
   void processValuesFile(ProjectFilesystem filesystem, Path valuesFile)
       throws IOException, ResourceParseException {
-    try (InputStream stream = filesystem.newFileInputStream(valuesFile)) {
-      Document dom = parseXml(valuesFile, stream);
-      Element root = dom.getDocumentElement();
-
-      for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
-        if (node.getNodeType() != Node.ELEMENT_NODE) {
-          continue;
-        }
+    ImmutableList<ResourceSymbol> symbols = parsedFiles.get(valuesFile);
+    if (symbols == null) {
+      try (InputStream stream = filesystem.newFileInputStream(valuesFile)) {
+        symbols = parseValuesFile(valuesFile, stream);
+      }
+    }
+    ImmutableSet.Builder<RDotTxtEntry> references = ImmutableSet.builder();
+    for (ResourceSymbol symbol : symbols) {
+      symbol.applyTo(resourceCollector, references);
+    }
+  }
 
-        String resourceType = node.getNodeName();
-        if (resourceType.equals(ITEM_TAG)) {
-          Node typeNode = node.getAttributes().getNamedItem("type");
-          if (typeNode == null) {
-            throw new ResourceParseException(
-                "Error parsing file '%s', expected a 'type' attribute in: \n'%s'\n",
-                valuesFile,
-                node.toString());
-          }
-          resourceType = typeNode.getNodeValue();
-        }
+  private static ImmutableList<ResourceSymbol> parseValuesFile(
+      Path valuesFile,
+      InputStream stream) throws IOException, ResourceParseException {
+    ImmutableList.Builder<ResourceSymbol> symbols = ImmutableList.builder();
+    Document dom = parseXml(valuesFile, stream);
+    Element root = dom.getDocumentElement();
 
-        if (IGNORED_TAGS.contains(resourceType)) {
-          continue;
-        }
+    for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
 
-        if (!RESOURCE_TYPES.containsKey(resourceType)) {
+      String resourceType = node.getNodeName();
+      if (resourceType.equals(ITEM_TAG)) {
+        Node typeNode = node.getAttributes().getNamedItem("type");
+        if (typeNode == null) {
           throw new ResourceParseException(
-              "Invalid resource type '<%s>' in '%s'.",
-              resourceType,
-              valuesFile);
+              "Error parsing file '%s', expected a 'type' attribute in: \n'%s'\n",
+              valuesFile,
+              node.toString());
         }
+        resourceType = typeNode.getNodeValue();
+      }
 
-        RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(resourceType));
-        addToResourceCollector(node, rType);
+      if (IGNORED_TAGS.contains(resourceType)) {
+        continue;
       }
+
+      if (!RESOURCE_TYPES.containsKey(resourceType)) {
+        throw new ResourceParseException(
+            "Invalid resource type '<%s>' in '%s'.",
+            resourceType,
+            valuesFile);
+      }
+
+      RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(resourceType));
+      addSymbols(node, rType, symbols);
     }
+    return symbols.build();
   }
 
-  private void addToResourceCollector(Node node, RType rType) throws ResourceParseException {
+  private static void addSymbols(
+      Node node,
+      RType rType,
+      ImmutableList.Builder<ResourceSymbol> symbols) throws ResourceParseException {
     String resourceName = sanitizeName(extractNameAttribute(node));
     if (rType.equals(RType.STYLEABLE)) {
 
@@ -346,23 +481,24 @@ public class MiniAapt implements Step {
 
         String rawAttrName = extractNameAttribute(attrNode);
         String attrName = sanitizeName(rawAttrName);
-        resourceCollector.addResource(
-            RType.STYLEABLE,
-            IdType.INT,
-            String.format(
-                "%s_%s",
-                resourceName,
-                attrName),
-            Integer.toString(count++));
+        symbols.add(
+            new ResourceSymbol(
+                ResourceSymbol.Kind.STYLEABLE_ATTR,
+                RType.STYLEABLE,
+                String.format(
+                    "%s_%s",
+                    resourceName,
+                    attrName),
+                count++));
 
         if (!rawAttrName.startsWith("android:")) {
-          resourceCollector.addIntResourceIfNotPresent(RType.ATTR, attrName);
+          symbols.add(ResourceSymbol.of(ResourceSymbol.Kind.INT, RType.ATTR, attrName));
         }
       }
 
-      resourceCollector.addIntArrayResourceIfNotPresent(rType, resourceName, count);
+      symbols.add(new ResourceSymbol(ResourceSymbol.Kind.INT_ARRAY, rType, resourceName, count));
     } else {
-      resourceCollector.addIntResourceIfNotPresent(rType, resourceName);
+      symbols.add(ResourceSymbol.of(ResourceSymbol.Kind.INT, rType, resourceName));
     }
   }
 
@@ -370,9 +506,8 @@ public class MiniAapt implements Step {
       ProjectFilesystem filesystem,
       ImmutableSet.Builder<RDotTxtEntry> references)
       throws IOException, XPathExpressionException, ResourceParseException {
-    for (Path path : filesystem.getFilesUnderPath(resDirectory, ENDS_WITH_XML)) {
-      String dirname = resDirectory.relativize(path).getName(0).toString();
-      if (isAValuesDir(dirname)) {
+    for (Path path : sorted(filesystem.getFilesUnderPath(resDirectory, ENDS_WITH_XML))) {
+      if (isAValuesDir(getResourceDirName(path))) {
         // Ignore files under values* directories.
         continue;
       }
@@ -386,47 +521,62 @@ public class MiniAapt implements Step {
       Path xmlFile,
       ImmutableSet.Builder<RDotTxtEntry> references)
       throws IOException, XPathExpressionException, ResourceParseException {
-    try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
-      Document dom = parseXml(xmlFile, stream);
-      NodeList nodesWithIds =
-          (NodeList) ANDROID_ID_DEFINITION.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesWithIds.getLength(); i++) {
-        String resourceName = nodesWithIds.item(i).getNodeValue();
-        if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
-        Preconditions.checkState(resourceName.startsWith(ID_DEFINITION_PREFIX));
-
-        resourceCollector.addIntResourceIfNotPresent(
-            RType.ID,
-            resourceName.substring(ID_DEFINITION_PREFIX.length()));
+    ImmutableList<ResourceSymbol> symbols = parsedFiles.get(xmlFile);
+    if (symbols == null) {
+      try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
+        symbols = parseXmlFile(xmlFile, stream);
       }
+    }
+    for (ResourceSymbol symbol : symbols) {
+      symbol.applyTo(resourceCollector, references);
+    }
+  }
 
-      NodeList nodesUsingIds =
-          (NodeList) ANDROID_ID_USAGE.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesUsingIds.getLength(); i++) {
-        String resourceName = nodesUsingIds.item(i).getNodeValue();
-        int slashPosition = resourceName.indexOf('/');
-        if (resourceName.charAt(0) != '@' || slashPosition == -1) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
+  private static ImmutableList<ResourceSymbol> parseXmlFile(Path xmlFile, InputStream stream)
+      throws IOException, XPathExpressionException, ResourceParseException {
+    ImmutableList.Builder<ResourceSymbol> symbols = ImmutableList.builder();
+    Document dom = parseXml(xmlFile, stream);
+    NodeList nodesWithIds =
+        (NodeList) ANDROID_ID_DEFINITION.get().evaluate(dom, XPathConstants.NODESET);
+    for (int i = 0; i < nodesWithIds.getLength(); i++) {
+      String resourceName = nodesWithIds.item(i).getNodeValue();
+      if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
+      Preconditions.checkState(resourceName.startsWith(ID_DEFINITION_PREFIX));
 
-        String rawRType = resourceName.substring(1, slashPosition);
-        String name = resourceName.substring(slashPosition + 1);
+      symbols.add(
+          ResourceSymbol.of(
+              ResourceSymbol.Kind.INT,
+              RType.ID,
+              resourceName.substring(ID_DEFINITION_PREFIX.length())));
+    }
 
-        String nodeName = nodesUsingIds.item(i).getNodeName();
-        if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
-          continue;
-        }
-        if (!RESOURCE_TYPES.containsKey(rawRType)) {
-          throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
-        }
-        RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
+    NodeList nodesUsingIds =
+        (NodeList) ANDROID_ID_USAGE.get().evaluate(dom, XPathConstants.NODESET);
+    for (int i = 0; i < nodesUsingIds.getLength(); i++) {
+      String resourceName = nodesUsingIds.item(i).getNodeValue();
+      int slashPosition = resourceName.indexOf('/');
+      if (resourceName.charAt(0) != '@' || slashPosition == -1) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
 
+      String rawRType = resourceName.substring(1, slashPosition);
+      String name = resourceName.substring(slashPosition + 1);
 
-        references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+      String nodeName = nodesUsingIds.item(i).getNodeName();
+      if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
+        continue;
+      }
+      if (!RESOURCE_TYPES.containsKey(rawRType)) {
+        throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
       }
+      RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
+
+
+      symbols.add(ResourceSymbol.of(ResourceSymbol.Kind.REFERENCE, rType, sanitizeName(name)));
     }
+    return symbols.build();
   }
 
   private static Document parseXml(Path filepath, InputStream inputStream)
@@ -456,6 +606,18 @@ public class MiniAapt implements Step {
     return rawName.replaceAll("[.:]", "_");
   }
 
+  /**
+   * @return the name of the directory immediately under the {@code res} directory that
+   *     {@code path} is in, or of {@code path} itself if it is immediately under it.
+   */
+  private String getResourceDirName(Path path) {
+    return resDirectory.relativize(path).getName(0).toString();
+  }
+
+  private static ImmutableList<Path> sorted(Iterable<Path> paths) {
+    return Ordering.natural().immutableSortedCopy(paths);
+  }
+
   private static boolean isAValuesDir(String dirname) {
     return dirname.equals("values") || dirname.startsWith("values-");
   }
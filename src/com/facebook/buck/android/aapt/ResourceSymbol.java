@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Something that a single resource file defines or refers to, as found by {@link MiniAapt}.
+ * Parsing a file yields a list of these, which is independent of any other file, so that files can
+ * be parsed in parallel and the results cached. Applying the lists to an
+ * {@link AaptResourceCollector} in a fixed order then assigns the same ids as parsing the files
+ * one after the other would.
+ */
+class ResourceSymbol {
+
+  enum Kind {
+    /** See {@link AaptResourceCollector#addIntResourceIfNotPresent(RType, String)}. */
+    INT,
+
+    /** An attribute of a styleable, whose {@link #value} is its index within the styleable. */
+    STYLEABLE_ATTR,
+
+    /**
+     * See {@link AaptResourceCollector#addIntArrayResourceIfNotPresent(RType, String, int)}. The
+     * {@link #value} is the number of values in the array.
+     */
+    INT_ARRAY,
+
+    /** A use of a resource that must be defined by this resource or its dependencies. */
+    REFERENCE,
+  }
+
+  @JsonProperty
+  final Kind kind;
+
+  @JsonProperty
+  final RType type;
+
+  @JsonProperty
+  final String name;
+
+  @JsonProperty
+  final int value;
+
+  @JsonCreator
+  ResourceSymbol(
+      @JsonProperty("kind") Kind kind,
+      @JsonProperty("type") RType type,
+      @JsonProperty("name") String name,
+      @JsonProperty("value") int value) {
+    this.kind = kind;
+    this.type = type;
+    this.name = name;
+    this.value = value;
+  }
+
+  static ResourceSymbol of(Kind kind, RType type, String name) {
+    return new ResourceSymbol(kind, type, name, 0);
+  }
+
+  void applyTo(
+      AaptResourceCollector resourceCollector,
+      ImmutableSet.Builder<RDotTxtEntry> references) {
+    switch (kind) {
+      case INT:
+        resourceCollector.addIntResourceIfNotPresent(type, name);
+        break;
+      case STYLEABLE_ATTR:
+        resourceCollector.addResource(type, IdType.INT, name, Integer.toString(value));
+        break;
+      case INT_ARRAY:
+        resourceCollector.addIntArrayResourceIfNotPresent(type, name, value);
+        break;
+      case REFERENCE:
+        references.add(new FakeRDotTxtEntry(IdType.INT, type, name));
+        break;
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof ResourceSymbol)) {
+      return false;
+    }
+
+    ResourceSymbol that = (ResourceSymbol) obj;
+    return this.kind == that.kind &&
+        this.type == that.type &&
+        this.name.equals(that.name) &&
+        this.value == that.value;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(kind, type, name, value);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(ResourceSymbol.class)
+        .add("kind", kind)
+        .add("type", type)
+        .add("name", name)
+        .add("value", value)
+        .toString();
+  }
+}
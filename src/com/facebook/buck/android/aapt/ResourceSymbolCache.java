@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link ResourceSymbol}s of each resource file that {@link MiniAapt} parsed the last time it
+ * ran, keyed by the file's path and the hash of its contents, so that only files that have changed
+ * need to be parsed again. Only the files that are looked up or added are written back.
+ */
+class ResourceSymbolCache {
+
+  private static final Logger LOG = Logger.get(ResourceSymbolCache.class);
+
+  /** Bump this whenever {@link MiniAapt} changes what it finds in a file. */
+  private static final int VERSION = 1;
+
+  private final ImmutableMap<String, Entry> previousEntries;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private ResourceSymbolCache(Map<String, Entry> previousEntries) {
+    this.previousEntries = ImmutableMap.copyOf(previousEntries);
+  }
+
+  @JsonCreator
+  static ResourceSymbolCache fromJson(
+      @JsonProperty("version") int version,
+      @JsonProperty("files") Map<String, Entry> files) {
+    if (version != VERSION) {
+      return empty();
+    }
+    return new ResourceSymbolCache(files);
+  }
+
+  static ResourceSymbolCache empty() {
+    return new ResourceSymbolCache(ImmutableMap.<String, Entry>of());
+  }
+
+  /**
+   * @return the symbols recorded in {@code cacheFile}, or none if they cannot be read.
+   */
+  static ResourceSymbolCache readFrom(
+      ProjectFilesystem filesystem,
+      Path cacheFile,
+      ObjectMapper mapper) {
+    if (!filesystem.isFile(cacheFile)) {
+      return empty();
+    }
+    try (InputStream stream = filesystem.newFileInputStream(cacheFile)) {
+      return mapper.readValue(stream, ResourceSymbolCache.class);
+    } catch (IOException e) {
+      // This is only a cache, so parse everything afresh.
+      LOG.warn(e, "Unable to read resource symbols from %s.", cacheFile);
+      return empty();
+    }
+  }
+
+  void writeTo(ProjectFilesystem filesystem, Path cacheFile, ObjectMapper mapper)
+      throws IOException {
+    filesystem.mkdirs(cacheFile.getParent());
+    try (OutputStream stream = filesystem.newFileOutputStream(cacheFile)) {
+      mapper.writeValue(stream, this);
+    }
+  }
+
+  /**
+   * @return the symbols of {@code file} if it had the contents with {@code hash} when they were
+   *     recorded. Safe to call from several threads.
+   */
+  Optional<ImmutableList<ResourceSymbol>> get(Path file, String hash) {
+    Entry entry = previousEntries.get(file.toString());
+    if (entry == null || !entry.hash.equals(hash)) {
+      return Optional.absent();
+    }
+    entries.put(file.toString(), entry);
+    return Optional.of(entry.symbols);
+  }
+
+  /**
+   * Records the symbols of {@code file}, whose contents have {@code hash}. Safe to call from
+   * several threads.
+   */
+  void put(Path file, String hash, ImmutableList<ResourceSymbol> symbols) {
+    entries.put(file.toString(), new Entry(hash, symbols));
+  }
+
+  @JsonProperty("version")
+  int getVersion() {
+    return VERSION;
+  }
+
+  @JsonProperty("files")
+  ImmutableSortedMap<String, Entry> getFiles() {
+    return ImmutableSortedMap.copyOf(entries);
+  }
+
+  static class Entry {
+    @JsonProperty
+    final String hash;
+
+    @JsonProperty
+    final ImmutableList<ResourceSymbol> symbols;
+
+    @JsonCreator
+    Entry(
+        @JsonProperty("hash") String hash,
+        @JsonProperty("symbols") List<ResourceSymbol> symbols) {
+      this.hash = hash;
+      this.symbols = ImmutableList.copyOf(symbols);
+    }
+  }
+}
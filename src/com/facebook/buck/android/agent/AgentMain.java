@@ -19,9 +19,11 @@ package com.facebook.buck.android.agent;
 import com.facebook.buck.android.agent.util.AgentUtil;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ServerSocket;
@@ -68,6 +70,8 @@ public class AgentMain {
         doMkdirP(userArgs);
       } else if (command.equals("receive-file")) {
         doReceiveFile(userArgs);
+      } else if (command.equals("multi-receive-file")) {
+        doMultiReceiveFile(userArgs);
       } else {
         throw new IllegalArgumentException("Unknown command: " + command);
       }
@@ -155,6 +159,78 @@ public class AgentMain {
     }
   }
 
+  /**
+   * Receive any number of files over a single network connection and write them to disk.
+   *
+   * <p>The only argument is the port to listen on.  The caller must send the secret key first,
+   * as for receive-file.  Each file then follows as a header line of the form "SIZE PATH\n"
+   * and exactly SIZE bytes of contents.  The caller closes the connection after the last file.
+   */
+  private static void doMultiReceiveFile(List<String> userArgs) throws IOException {
+    if (userArgs.size() != 1) {
+      throw new IllegalArgumentException("usage: multi-receive-file PORT");
+    }
+
+    int port = Integer.parseInt(userArgs.get(0));
+
+    ServerSocket serverSocket = null;
+    try {
+      serverSocket = new ServerSocket(port);
+
+      byte[] secretKey = createAndSendSessionKey();
+
+      serverSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
+      Socket connectionSocket = serverSocket.accept();
+      connectionSocket.setSoTimeout(RECEIVE_TIMEOUT_MS);
+      InputStream input = new BufferedInputStream(connectionSocket.getInputStream());
+
+      receiveAndValidateSessionKey(secretKey, input);
+
+      while (true) {
+        String header = readFileHeader(input);
+        if (header == null) {
+          break;
+        }
+        int space = header.indexOf(' ');
+        if (space <= 0) {
+          throw new IllegalStateException("Malformed file header: " + header);
+        }
+        int size = Integer.parseInt(header.substring(0, space));
+        File path = new File(header.substring(space + 1));
+        doRawReceiveFile(path, size, new BoundedInputStream(input, size));
+      }
+    } finally {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    }
+  }
+
+  /**
+   * @return the next "SIZE PATH" header line sent by multi-receive-file's caller, without its
+   *     newline, or null if the caller has closed the connection.
+   */
+  private static String readFileHeader(InputStream clientInput) throws IOException {
+    final int maxHeaderSize = 4096;
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    while (true) {
+      int b = clientInput.read();
+      if (b == -1) {
+        if (header.size() == 0) {
+          return null;
+        }
+        throw new IllegalStateException("Connection closed within a file header.");
+      }
+      if (b == '\n') {
+        return header.toString("UTF-8");
+      }
+      if (header.size() == maxHeaderSize) {
+        throw new IllegalStateException("File header is too long.");
+      }
+      header.write(b);
+    }
+  }
+
   private static byte[] createAndSendSessionKey() throws IOException {
     // Generate a random key to authenticate the network connection.
     // On some devices, I had trouble using SecureRandom in a non-app context
@@ -238,4 +314,46 @@ public class AgentMain {
       throw new RuntimeException("Failed to rename temp file.");
     }
   }
+
+  /**
+   * Reads no more than a given number of bytes from another stream, so that each file sent to
+   * multi-receive-file can be read until its end, like the single file sent to receive-file.
+   */
+  private static class BoundedInputStream extends FilterInputStream {
+    private long remaining;
+
+    BoundedInputStream(InputStream in, long size) {
+      super(in);
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int b = super.read();
+      if (b != -1) {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buf, int offset, int length) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int got = super.read(buf, offset, (int) Math.min(length, remaining));
+      if (got > 0) {
+        remaining -= got;
+      }
+      return got;
+    }
+
+    @Override
+    public void close() {
+      // The underlying stream carries the files that follow.
+    }
+  }
 }
@@ -5,6 +5,7 @@
 int do_get_signature(int, char**);
 int do_mkdir_p(int, char**);
 int do_receive_file(int, char**);
+int do_multi_receive_file(int, char**);
 
 int main(int argc, char *argv[]) {
   if (argc < 2) {
@@ -21,6 +22,8 @@ int main(int argc, char *argv[]) {
     retcode = do_get_signature(count_user_args, user_args);
   } else if (strcmp(command, "receive-file") == 0) {
     retcode = do_receive_file(count_user_args, user_args);
+  } else if (strcmp(command, "multi-receive-file") == 0) {
+    retcode = do_multi_receive_file(count_user_args, user_args);
   } else if (strcmp(command, "mkdir-p") == 0) {
     retcode = do_mkdir_p(count_user_args, user_args);
   } else {
@@ -13,6 +13,18 @@
 #include "constants.h"
 
 
+// Return 0 on success
+static int parse_port(const char* port_str, uint16_t* out_port) {
+  char* endptr;
+  long port = strtol(port_str, &endptr, 10);
+  if (*port_str == '\0' || *endptr != '\0' || port <= 0 || port > USHRT_MAX) {
+    fprintf(stderr, "Invalid port: %s\n", port_str);
+    return -1;
+  }
+  *out_port = (uint16_t)port;
+  return 0;
+}
+
 // Return 0 on success
 static int parse_args(int num_args, char** args, uint16_t* out_port, int* out_size, const char** out_path) {
   if (num_args != 3) {
@@ -20,15 +32,12 @@ static int parse_args(int num_args, char** args, uint16_t* out_port, int* out_si
     return -1;
   }
 
-  char* endptr;
-
-  const char* port_str = args[0];
-  long port = strtol(port_str, &endptr, 10);
-  if (*port_str == '\0' || *endptr != '\0' || port <= 0 || port > USHRT_MAX) {
-    fprintf(stderr, "Invalid port: %s\n", port_str);
+  if (parse_port(args[0], out_port) != 0) {
     return -1;
   }
 
+  char* endptr;
+
   const char* size_str = args[1];
   long size = strtol(size_str, &endptr, 10);
   if (*size_str == '\0' || *endptr != '\0' || size <= 0 || size > INT_MAX) {
@@ -36,7 +45,6 @@ static int parse_args(int num_args, char** args, uint16_t* out_port, int* out_si
     return -1;
   }
 
-  *out_port = (uint16_t)port;
   *out_size = (int)size;
   *out_path = args[2];
   return 0;
@@ -199,7 +207,9 @@ static int receive_and_validate_session_key(char* expected_key, int sock) {
 }
 
 // Returns 0 on success.
-static int raw_receive_file(const char* path, int expected_size, int sock) {
+// If sized is nonzero, reads exactly expected_size bytes and leaves the rest of the stream
+// alone.  Otherwise, reads until EOF and checks that that was expected_size bytes.
+static int raw_receive_file(const char* path, int expected_size, int sock, int sized) {
   int ret;
 
   const char* slash = strrchr(path, '/');
@@ -229,7 +239,16 @@ static int raw_receive_file(const char* path, int expected_size, int sock) {
     // TODO: enforce global timeout
     const int buffer_size = 128 * 1024;
     uint8_t buffer[buffer_size];
-    ssize_t got = read(sock, buffer, buffer_size);
+    size_t to_read = buffer_size;
+    if (sized) {
+      if (total_size == expected_size) {
+        break;
+      }
+      if (expected_size - total_size < to_read) {
+        to_read = expected_size - total_size;
+      }
+    }
+    ssize_t got = read(sock, buffer, to_read);
     if (got < 0) {
       perror("read(file)");
       goto error;
@@ -299,7 +318,7 @@ int do_receive_file(int num_args, char** args) {
     goto fail1;
   }
 
-  if (raw_receive_file(path, size, client_socket) != 0) {
+  if (raw_receive_file(path, size, client_socket, 0) != 0) {
     goto fail1;
   }
 
@@ -316,3 +335,120 @@ fail1:
   return 1;
 }
 
+// Reads a "SIZE PATH\n" file header from multi-receive-file's caller.
+// Returns 1 and fills in *out_size and path_buffer on success.
+// Returns 0 if the caller closed the connection instead of sending another header.
+// Returns < 0 on failure.
+static int read_file_header(int sock, int* out_size, char* path_buffer, size_t path_buffer_size) {
+  char header[PATH_MAX + 32];
+  size_t header_size = 0;
+  for (;;) {
+    char c;
+    ssize_t got = read_all(sock, &c, 1);
+    if (got < 0) {
+      return -1;
+    }
+    if (got == 0) {
+      if (header_size == 0) {
+        return 0;
+      }
+      fprintf(stderr, "Connection closed within a file header.\n");
+      return -1;
+    }
+    if (c == '\n') {
+      break;
+    }
+    if (header_size == sizeof(header) - 1) {
+      fprintf(stderr, "File header is too long.\n");
+      return -1;
+    }
+    header[header_size++] = c;
+  }
+  header[header_size] = '\0';
+
+  char* space = strchr(header, ' ');
+  if (space == NULL || space == header) {
+    fprintf(stderr, "Malformed file header: %s\n", header);
+    return -1;
+  }
+  *space = '\0';
+
+  char* endptr;
+  long size = strtol(header, &endptr, 10);
+  if (*endptr != '\0' || size < 0 || size > INT_MAX) {
+    fprintf(stderr, "Invalid size: %s\n", header);
+    return -1;
+  }
+
+  int ret = snprintf(path_buffer, path_buffer_size, "%s", space + 1);
+  if (ret <= 0 || ret >= path_buffer_size) {
+    fprintf(stderr, "Invalid path: %s\n", space + 1);
+    return -1;
+  }
+
+  *out_size = (int)size;
+  return 1;
+}
+
+int do_multi_receive_file(int num_args, char** args) {
+  if (num_args != 1) {
+    fprintf(stderr, "usage: multi-receive-file PORT\n");
+    return 1;
+  }
+
+  uint16_t port;
+  if (parse_port(args[0], &port) != 0) {
+    return 1;
+  }
+
+  int listen_socket = -1;
+  int client_socket = -1;
+
+  if (bind_socket(port, &listen_socket) != 0) {
+    goto fail;
+  }
+
+  char secret_key[TEXT_SECRET_KEY_SIZE+1];
+  if (create_and_send_session_key(secret_key) != 0) {
+    goto fail;
+  }
+
+  if (get_client(listen_socket, &client_socket) != 0) {
+    goto fail;
+  }
+
+  close(listen_socket);
+  listen_socket = -1;
+
+  if (receive_and_validate_session_key(secret_key, client_socket) != 0) {
+    goto fail;
+  }
+
+  for (;;) {
+    int size;
+    char path[PATH_MAX];
+    int ret = read_file_header(client_socket, &size, path, sizeof(path));
+    if (ret < 0) {
+      goto fail;
+    }
+    if (ret == 0) {
+      break;
+    }
+    if (raw_receive_file(path, size, client_socket, 1) != 0) {
+      goto fail;
+    }
+  }
+
+  close(client_socket);
+  return 0;
+
+
+fail:
+  if (client_socket >= 0) {
+    close(client_socket);
+  }
+  if (listen_socket >= 0) {
+    close(listen_socket);
+  }
+  return 1;
+}
@@ -201,6 +201,7 @@ public class AppleDescriptions {
     output.headers = Optional.of(SourceList.ofNamedSources(headerMap));
     output.platformHeaders = Optional.of(PatternMatchedCollection.<SourceList>of());
     output.prefixHeader = arg.prefixHeader;
+    output.precompiledHeader = arg.precompiledHeader;
     output.compilerFlags = arg.compilerFlags;
     output.platformCompilerFlags = Optional.of(
         PatternMatchedCollection.<ImmutableList<String>>of());
@@ -578,6 +578,10 @@ public class BuckConfig {
    * @return the mode with which to run the build engine.
    */
   public CachingBuildEngine.DepFiles getBuildDepFiles() {
+    Optional<String> value = getValue("build", "depfiles");
+    if (value.isPresent() && value.get().equalsIgnoreCase("cache")) {
+      return CachingBuildEngine.DepFiles.CACHE;
+    }
     return getBooleanValue("build", "depfiles", true) ?
         CachingBuildEngine.DepFiles.ENABLED :
         CachingBuildEngine.DepFiles.DISABLED;
@@ -18,6 +18,7 @@ package com.facebook.buck.cli;
 
 import com.facebook.buck.command.Build;
 import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
@@ -43,6 +44,8 @@ import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.step.TargetDeviceOptions;
 import com.facebook.buck.test.CoverageReportFormat;
+import com.facebook.buck.test.TestDurations;
+import com.facebook.buck.test.TestRunnerWorkerPool;
 import com.facebook.buck.test.TestRunningOptions;
 import com.facebook.buck.util.BuckConstant;
 import com.facebook.buck.util.Console;
@@ -85,6 +88,8 @@ public class TestCommand extends BuildCommand {
 
   private static final Logger LOG = Logger.get(TestCommand.class);
 
+  private static final long DEFAULT_JVM_MAX_RUNS = 100;
+
   @Option(name = "--all",
           usage =
               "Whether all of the tests should be run. " +
@@ -113,7 +118,9 @@ public class TestCommand extends BuildCommand {
   @Nullable
   private String pathToJavaAgent = null;
 
-  @Option(name = "--no-results-cache", usage = "Whether to use cached test results.")
+  @Option(
+      name = "--no-results-cache",
+      usage = "Run tests even if their results are cached locally or in the artifact cache.")
   @Nullable
   private Boolean isResultsCacheDisabled = null;
 
@@ -240,7 +247,9 @@ public class TestCommand extends BuildCommand {
     return buckConfig.getNumThreads();
   }
 
-  private TestRunningOptions getTestRunningOptions(CommandRunnerParams params) {
+  private TestRunningOptions getTestRunningOptions(
+      CommandRunnerParams params,
+      Optional<TestRunnerWorkerPool> testRunnerWorkerPool) {
     return TestRunningOptions.builder()
         .setUsingOneTimeOutputDirectories(isUsingOneTimeOutput)
         .setCodeCoverageEnabled(isCodeCoverageEnabled)
@@ -249,15 +258,39 @@ public class TestCommand extends BuildCommand {
         .setShouldExplainTestSelectorList(testSelectorOptions.shouldExplain())
         .setIgnoreFailingDependencies(isIgnoreFailingDependencies)
         .setResultsCacheEnabled(isResultsCacheEnabled(params.getBuckConfig()))
+        .setResultsArtifactCacheEnabled(
+            params.getBuckConfig().getBooleanValue("test", "artifact_cache_results", false))
         .setDryRun(isDryRun)
         .setShufflingTests(isShufflingTests)
         .setPathToXmlTestOutput(Optional.fromNullable(pathToXmlTestOutput))
         .setPathToJavaAgent(Optional.fromNullable(pathToJavaAgent))
         .setCoverageReportFormat(coverageReportFormat)
         .setCoverageReportTitle(coverageReportTitle)
+        .setTestRunnerWorkerPool(testRunnerWorkerPool)
+        .setTestDurations(
+            TestDurations.readFrom(params.getCell().getFilesystem(), params.getObjectMapper()))
         .build();
   }
 
+  /**
+   * @return a pool of test runner JVMs that Java tests can share, if {@code [test] reuse_jvms} is
+   *     set.
+   */
+  private Optional<TestRunnerWorkerPool> createTestRunnerWorkerPool(CommandRunnerParams params)
+      throws IOException {
+    BuckConfig buckConfig = params.getBuckConfig();
+    if (!buckConfig.getBooleanValue("test", "reuse_jvms", false)) {
+      return Optional.absent();
+    }
+    ProjectFilesystem filesystem = params.getCell().getFilesystem();
+    filesystem.mkdirs(BuckConstant.LOG_PATH);
+    return Optional.of(
+        new TestRunnerWorkerPool(
+            filesystem.getRootPath(),
+            filesystem.resolve(BuckConstant.LOG_PATH.resolve("test-runner-workers.log")),
+            buckConfig.getLong("test", "jvm_max_runs").or(DEFAULT_JVM_MAX_RUNS).intValue()));
+  }
+
   private int runTestsInternal(
       CommandRunnerParams params,
       BuildEngine buildEngine,
@@ -267,6 +300,7 @@ public class TestCommand extends BuildCommand {
     ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(
         getNumTestThreads(params.getBuckConfig()),
         params.getBuckConfig().getLoadLimit());
+    Optional<TestRunnerWorkerPool> testRunnerWorkerPool = createTestRunnerWorkerPool(params);
     try (CommandThreadManager testPool =
              new CommandThreadManager("Test-Run", concurrencyLimit)) {
       return TestRunning.runTests(
@@ -274,13 +308,17 @@ public class TestCommand extends BuildCommand {
           testRules,
           Preconditions.checkNotNull(build.getBuildContext()),
           build.getExecutionContext(),
-          getTestRunningOptions(params),
+          getTestRunningOptions(params, testRunnerWorkerPool),
           testPool.getExecutor(),
           buildEngine,
           new DefaultStepRunner(build.getExecutionContext()));
     } catch (ExecutionException e) {
       params.getConsole().printBuildFailureWithoutStacktrace(e);
       return 1;
+    } finally {
+      if (testRunnerWorkerPool.isPresent()) {
+        testRunnerWorkerPool.get().close();
+      }
     }
   }
 
@@ -290,7 +328,8 @@ public class TestCommand extends BuildCommand {
       Iterable<String> command,
       Iterable<TestRule> testRules)
       throws InterruptedException, IOException {
-    TestRunningOptions options = getTestRunningOptions(params);
+    TestRunningOptions options =
+        getTestRunningOptions(params, Optional.<TestRunnerWorkerPool>absent());
 
     // Walk the test rules, collecting all the specs.
     List<ExternalTestRunnerTestSpec> specs = Lists.newArrayList();
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.BuildEngine;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.TestRule;
+import com.facebook.buck.zip.Unzip;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.annotation.Nullable;
+
+/**
+ * Shares the results of passing test runs through an {@link ArtifactCache}, so that a test whose
+ * rule key has not changed does not have to be run again on another machine, or after its local
+ * results have been cleaned away.
+ * <p>
+ * The whole of a test's output directory, including the rule key file written by
+ * {@link TestRuleKeyFileHelper}, is stored as a zip under a key derived from the test's rule key.
+ * Fetching it restores the directory exactly as if the test had just been run.
+ */
+public class TestResultsArtifactCache {
+
+  private static final Logger LOG = Logger.get(TestResultsArtifactCache.class);
+
+  /** Change this to invalidate every stored test result. */
+  private static final String KEY_HEADER = "test-results-v1";
+
+  private final ArtifactCache artifactCache;
+  private final BuildEngine buildEngine;
+
+  public TestResultsArtifactCache(ArtifactCache artifactCache, BuildEngine buildEngine) {
+    this.artifactCache = artifactCache;
+    this.buildEngine = buildEngine;
+  }
+
+  /**
+   * The key that the results of {@code test} are stored under. As well as the test's rule key,
+   * this covers the platform the test ran on, as that is not part of any rule key but can change
+   * whether a test passes.
+   */
+  @VisibleForTesting
+  RuleKey getResultsKey(TestRule test) {
+    Hasher hasher = Hashing.sha1().newHasher()
+        .putString(KEY_HEADER, Charsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(buildEngine.getRuleKey(test.getBuildTarget()).toString(), Charsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(System.getProperty("os.name"), Charsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(System.getProperty("os.arch"), Charsets.UTF_8);
+    return new RuleKey(hasher.hash().toString());
+  }
+
+  /**
+   * Replaces the output directory of {@code test} with stored results, if there are any.
+   *
+   * @return whether results were found.
+   */
+  public boolean fetch(TestRule test) throws InterruptedException {
+    RuleKey key = getResultsKey(test);
+    ProjectFilesystem filesystem = ((BuildRule) test).getProjectFilesystem();
+    Path zip = null;
+    try {
+      zip = Files.createTempFile(
+          "buck_test_results_" + MoreFiles.sanitize(test.getBuildTarget().getShortName()),
+          ".zip");
+      CacheResult result = artifactCache.fetch(key, zip);
+      if (!result.getType().isSuccess()) {
+        return false;
+      }
+      Unzip.extractZipFile(
+          zip.toAbsolutePath(),
+          filesystem,
+          Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+      LOG.debug("Fetched test results for %s with key %s.", test.getBuildTarget(), key);
+      return true;
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to fetch test results for %s.", test.getBuildTarget());
+      return false;
+    } finally {
+      deleteIfExists(zip);
+    }
+  }
+
+  /**
+   * Stores the output directory of {@code test}, which must have just been run successfully.
+   */
+  public void store(TestRule test) throws InterruptedException {
+    if (!artifactCache.isStoreSupported()) {
+      return;
+    }
+
+    ProjectFilesystem filesystem = ((BuildRule) test).getProjectFilesystem();
+    Path outputDirectory = test.getPathToTestOutputDirectory();
+    Path zip = null;
+    try {
+      // The directory itself comes first, so that it is cleaned out when the results are fetched.
+      ImmutableSet<Path> paths = ImmutableSet.<Path>builder()
+          .add(outputDirectory)
+          .addAll(filesystem.getFilesUnderPath(outputDirectory))
+          .build();
+      zip = Files.createTempFile(
+          "buck_test_results_" + MoreFiles.sanitize(test.getBuildTarget().getShortName()),
+          ".zip");
+      filesystem.createZip(paths, zip);
+      artifactCache.store(
+          ImmutableSet.of(getResultsKey(test)),
+          ImmutableMap.<String, String>of(),
+          zip);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to store test results for %s.", test.getBuildTarget());
+    } finally {
+      deleteIfExists(zip);
+    }
+  }
+
+  private static void deleteIfExists(@Nullable Path path) {
+    if (path == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to delete %s.", path);
+    }
+  }
+}
@@ -44,6 +44,7 @@ import com.facebook.buck.step.StepRunner;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.test.CoverageReportFormat;
 import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestDurations;
 import com.facebook.buck.test.TestResultSummary;
 import com.facebook.buck.test.TestResults;
 import com.facebook.buck.test.TestRuleEvent;
@@ -55,6 +56,7 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.Verbosity;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -66,8 +68,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -120,11 +124,11 @@ public class TestRunning {
   public static int runTests(
       final CommandRunnerParams params,
       Iterable<TestRule> tests,
-      BuildContext buildContext,
-      ExecutionContext executionContext,
+      final BuildContext buildContext,
+      final ExecutionContext executionContext,
       final TestRunningOptions options,
-      ListeningExecutorService service,
-      BuildEngine buildEngine,
+      final ListeningExecutorService service,
+      final BuildEngine buildEngine,
       final StepRunner stepRunner)
       throws IOException, ExecutionException, InterruptedException {
 
@@ -188,11 +192,32 @@ public class TestRunning {
       grouper = null;
     }
 
-    TestRuleKeyFileHelper testRuleKeyFileHelper = new TestRuleKeyFileHelper(buildEngine);
+    final TestRuleKeyFileHelper testRuleKeyFileHelper = new TestRuleKeyFileHelper(buildEngine);
+    final Optional<TestResultsArtifactCache> resultsArtifactCache =
+        getResultsArtifactCache(options, executionContext, buildContext, buildEngine);
     final AtomicInteger lastReportedTestSequenceNumber = new AtomicInteger();
-    final List<TestRun> separateTestRuns = Lists.newArrayList();
-    List<TestRun> parallelTestRuns = Lists.newArrayList();
-    for (final TestRule test : tests) {
+    final List<ListenableFuture<TestRun>> separateTestRuns = Lists.newArrayList();
+    final Set<BuildTarget> testsToRun = Sets.newConcurrentHashSet();
+
+    final StepRunner.StepRunningCallback testStepRunningCallback =
+        new StepRunner.StepRunningCallback() {
+          @Override
+          public void stepsWillRun(Optional<BuildTarget> buildTarget) {
+            Preconditions.checkState(buildTarget.isPresent());
+            LOG.debug("Test steps will run for %s", buildTarget);
+            params.getBuckEventBus().post(TestRuleEvent.started(buildTarget.get()));
+          }
+
+          @Override
+          public void stepsDidRun(Optional<BuildTarget> buildTarget) {
+            Preconditions.checkState(buildTarget.isPresent());
+            LOG.debug("Test steps did run for %s", buildTarget);
+            params.getBuckEventBus().post(TestRuleEvent.finished(buildTarget.get()));
+          }
+        };
+
+    // Start the slowest tests first, so that they don't end up on the critical path.
+    for (final TestRule test : longestFirst(options.getTestDurations()).sortedCopy(tests)) {
       // Determine whether the test needs to be executed.
       boolean isTestRunRequired;
       isTestRunRequired = isTestRunRequiredForTest(
@@ -202,89 +227,100 @@ public class TestRunning {
           testRuleKeyFileHelper,
           options.isResultsCacheEnabled(),
           !options.getTestSelectorList().isEmpty());
+      ListenableFuture<Boolean> isTestRunRequiredFuture;
+      if (isTestRunRequired && resultsArtifactCache.isPresent()) {
+        // Fetch the results of every test at once, rather than one after another, and start each
+        // test as soon as its own fetch has finished.
+        isTestRunRequiredFuture = service.submit(
+            new Callable<Boolean>() {
+              @Override
+              public Boolean call() throws InterruptedException {
+                return !fetchTestResults(
+                    resultsArtifactCache.get(),
+                    test,
+                    executionContext,
+                    testRuleKeyFileHelper);
+              }
+            });
+      } else {
+        isTestRunRequiredFuture = Futures.immediateFuture(isTestRunRequired);
+      }
 
       final Map<String, UUID> testUUIDMap = new HashMap<>();
-      TestRule.TestReportingCallback testReportingCallback = new TestRule.TestReportingCallback() {
-          @Override
-          public void testsDidBegin() {
-            LOG.debug("Tests for rule %s began", test.getBuildTarget());
-          }
-
-          @Override
-          public void testDidBegin(
-              String testCaseName,
-              String testName) {
-            LOG.debug(
-                "Test rule %s test case %s test name %s began",
-                test.getBuildTarget(),
-                testCaseName,
-                testName);
-            UUID testUUID = UUID.randomUUID();
-            // UUID is immutable and thread-safe as of Java 7, so it's
-            // safe to stash in a map and use later:
-            //
-            // http://bugs.java.com/view_bug.do?bug_id=6611830
-            testUUIDMap.put(testCaseName + ":" + testName, testUUID);
-            params.getBuckEventBus().post(
-                TestSummaryEvent.started(
-                    testUUID,
-                    testCaseName,
-                    testName));
-          }
-
-          @Override
-          public void testDidEnd(
-              TestResultSummary testResultSummary) {
-            LOG.debug(
-                "Test rule %s test did end: %s",
-                test.getBuildTarget(),
-                testResultSummary);
-            UUID testUUID = testUUIDMap.get(
-                testResultSummary.getTestCaseName() + ":" + testResultSummary.getTestName());
-            Preconditions.checkNotNull(testUUID);
-            params.getBuckEventBus().post(
-                TestSummaryEvent.finished(testUUID, testResultSummary));
-          }
+      final TestRule.TestReportingCallback testReportingCallback =
+          new TestRule.TestReportingCallback() {
+            @Override
+            public void testsDidBegin() {
+              LOG.debug("Tests for rule %s began", test.getBuildTarget());
+            }
 
-          @Override
-          public void testsDidEnd(
-              List<TestCaseSummary> testCaseSummaries) {
-            LOG.debug(
-                "Test rule %s tests did end: %s",
-                test.getBuildTarget(),
-                testCaseSummaries);
-          }
-        };
+            @Override
+            public void testDidBegin(
+                String testCaseName,
+                String testName) {
+              LOG.debug(
+                  "Test rule %s test case %s test name %s began",
+                  test.getBuildTarget(),
+                  testCaseName,
+                  testName);
+              UUID testUUID = UUID.randomUUID();
+              // UUID is immutable and thread-safe as of Java 7, so it's
+              // safe to stash in a map and use later:
+              //
+              // http://bugs.java.com/view_bug.do?bug_id=6611830
+              testUUIDMap.put(testCaseName + ":" + testName, testUUID);
+              params.getBuckEventBus().post(
+                  TestSummaryEvent.started(
+                      testUUID,
+                      testCaseName,
+                      testName));
+            }
 
-      List<Step> steps;
-      if (isTestRunRequired) {
-        params.getBuckEventBus().post(IndividualTestEvent.started(testTargets));
-        ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
-        Preconditions.checkState(buildEngine.isRuleBuilt(test.getBuildTarget()));
-        List<Step> testSteps = test.runTests(
-            buildContext,
-            executionContext,
-            options,
-            testReportingCallback);
-        if (!testSteps.isEmpty()) {
-          stepsBuilder.addAll(testSteps);
-          stepsBuilder.add(testRuleKeyFileHelper.createRuleKeyInDirStep(test));
-        }
-        steps = stepsBuilder.build();
-      } else {
-        steps = ImmutableList.of();
-      }
+            @Override
+            public void testDidEnd(
+                TestResultSummary testResultSummary) {
+              LOG.debug(
+                  "Test rule %s test did end: %s",
+                  test.getBuildTarget(),
+                  testResultSummary);
+              UUID testUUID = testUUIDMap.get(
+                  testResultSummary.getTestCaseName() + ":" + testResultSummary.getTestName());
+              Preconditions.checkNotNull(testUUID);
+              params.getBuckEventBus().post(
+                  TestSummaryEvent.finished(testUUID, testResultSummary));
+            }
 
-      TestRun testRun = TestRun.of(
-          test,
-          steps,
-          getCachingStatusTransformingCallable(
-              isTestRunRequired,
-              test.interpretTestResults(
-                  executionContext,
-                  /*isUsingTestSelectors*/ !options.getTestSelectorList().isEmpty(),
-                  /*isDryRun*/ options.isDryRun())),
-          testReportingCallback);
+            @Override
+            public void testsDidEnd(
+                List<TestCaseSummary> testCaseSummaries) {
+              LOG.debug(
+                  "Test rule %s tests did end: %s",
+                  test.getBuildTarget(),
+                  testCaseSummaries);
+            }
+          };
+
+      ListenableFuture<TestRun> testRun = Futures.transform(
+          isTestRunRequiredFuture,
+          new AsyncFunction<Boolean, TestRun>() {
+            @Override
+            public ListenableFuture<TestRun> apply(Boolean isRunRequired)
+                throws IOException, InterruptedException {
+              return Futures.immediateFuture(
+                  createTestRun(
+                      params,
+                      test,
+                      isRunRequired,
+                      buildContext,
+                      executionContext,
+                      options,
+                      buildEngine,
+                      testRuleKeyFileHelper,
+                      testReportingCallback,
+                      testTargets,
+                      testsToRun));
+            }
+          });
 
       // Always run the commands, even if the list of commands as empty. There may be zero
       // commands because the rule is cached, but its results must still be processed.
@@ -293,49 +329,33 @@ public class TestRunning {
         separateTestRuns.add(testRun);
       } else {
         LOG.debug("Running test %s in parallel", test);
-        parallelTestRuns.add(testRun);
-      }
-    }
-
-    final StepRunner.StepRunningCallback testStepRunningCallback =
-        new StepRunner.StepRunningCallback() {
-          @Override
-          public void stepsWillRun(Optional<BuildTarget> buildTarget) {
-            Preconditions.checkState(buildTarget.isPresent());
-            LOG.debug("Test steps will run for %s", buildTarget);
-            params.getBuckEventBus().post(TestRuleEvent.started(buildTarget.get()));
-          }
-
-          @Override
-          public void stepsDidRun(Optional<BuildTarget> buildTarget) {
-            Preconditions.checkState(buildTarget.isPresent());
-            LOG.debug("Test steps did run for %s", buildTarget);
-            params.getBuckEventBus().post(TestRuleEvent.finished(buildTarget.get()));
-          }
-        };
-
-    for (TestRun testRun : parallelTestRuns) {
-      ListenableFuture<TestResults> testResults =
-          stepRunner.runStepsAndYieldResult(
-              testRun.getSteps(),
-              testRun.getTestResultsCallable(),
-              Optional.of(testRun.getTest().getBuildTarget()),
-              service,
-              testStepRunningCallback);
+        ListenableFuture<TestResults> testResults = Futures.transform(
+            testRun,
+            new AsyncFunction<TestRun, TestResults>() {
+              @Override
+              public ListenableFuture<TestResults> apply(TestRun testRun) {
+                return stepRunner.runStepsAndYieldResult(
+                    testRun.getSteps(),
+                    testRun.getTestResultsCallable(),
+                    Optional.of(testRun.getTest().getBuildTarget()),
+                    service,
+                    testStepRunningCallback);
+              }
+            });
         results.add(
             transformTestResults(
                 params,
                 testResults,
                 grouper,
-                testRun.getTest(),
-                testRun.getTestReportingCallback(),
+                test,
+                testReportingCallback,
                 testTargets,
                 printTestResults,
                 lastReportedTestSequenceNumber,
                 totalNumberOfTests));
+      }
     }
 
-
     ListenableFuture<List<TestResults>> parallelTestStepsFuture = Futures.allAsList(results);
 
     final List<TestResults> completedResults = Lists.newArrayList();
@@ -348,8 +368,20 @@ public class TestRunning {
           public void onSuccess(List<TestResults> parallelTestResults) {
             LOG.debug("Parallel tests completed, running separate tests...");
             completedResults.addAll(parallelTestResults);
+            List<TestRun> separateTestRunList;
+            try {
+              // These were only waiting on their cached results, which will usually have been
+              // fetched by now.
+              separateTestRunList = Futures.allAsList(separateTestRuns).get();
+            } catch (ExecutionException e) {
+              LOG.error(e, "Error preparing serial tests");
+              throw new HumanReadableException(e, "Error preparing serial tests");
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new HumanReadableException(e, "Test cancelled");
+            }
             List<ListenableFuture<TestResults>> separateResultsList = Lists.newArrayList();
-            for (TestRun testRun : separateTestRuns) {
+            for (TestRun testRun : separateTestRunList) {
               separateResultsList.add(
                   transformTestResults(
                       params,
@@ -412,6 +444,11 @@ public class TestRunning {
 
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
 
+    recordTestDurations(params, options.getTestDurations(), testsToRun, completedResults);
+    if (resultsArtifactCache.isPresent()) {
+      storeTestResults(resultsArtifactCache.get(), tests, testsToRun, completedResults);
+    }
+
     // Write out the results as XML, if requested.
     Optional<String> path = options.getPathToXmlTestOutput();
     if (path.isPresent()) {
@@ -453,6 +490,159 @@ public class TestRunning {
     return failures ? TEST_FAILURES_EXIT_CODE : 0;
   }
 
+  /**
+   * Orders tests by how long they took the last time they were run, slowest first. Tests that
+   * have not been run before come first, as they may be slow.
+   */
+  @VisibleForTesting
+  static Ordering<TestRule> longestFirst(final TestDurations durations) {
+    return Ordering.<Long>natural().reverse().nullsFirst().onResultOf(
+        new Function<TestRule, Long>() {
+          @Nullable
+          @Override
+          public Long apply(TestRule test) {
+            return durations.getTargetDuration(test.getBuildTarget()).orNull();
+          }
+        });
+  }
+
+  /**
+   * Replaces the output directory of {@code test} with results stored by another run, if there
+   * are any for its rule key.
+   *
+   * @return whether the results of {@code test} can now be replayed rather than running it.
+   */
+  private static boolean fetchTestResults(
+      TestResultsArtifactCache resultsArtifactCache,
+      TestRule test,
+      ExecutionContext executionContext,
+      TestRuleKeyFileHelper testRuleKeyFileHelper) throws InterruptedException {
+    try {
+      // The same test passed somewhere else, so its results can be replayed from there.
+      return resultsArtifactCache.fetch(test) &&
+          test.hasTestResultFiles(executionContext) &&
+          testRuleKeyFileHelper.isRuleKeyInDir(test);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to check the fetched test results for %s.", test.getBuildTarget());
+      return false;
+    }
+  }
+
+  /**
+   * @return the steps that run {@code test}, if {@code isTestRunRequired}, along with how to
+   *     interpret its results.
+   */
+  private static TestRun createTestRun(
+      CommandRunnerParams params,
+      TestRule test,
+      boolean isTestRunRequired,
+      BuildContext buildContext,
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      BuildEngine buildEngine,
+      TestRuleKeyFileHelper testRuleKeyFileHelper,
+      TestRule.TestReportingCallback testReportingCallback,
+      ImmutableSet<String> testTargets,
+      Set<BuildTarget> testsToRun) throws IOException, InterruptedException {
+    List<Step> steps;
+    if (isTestRunRequired) {
+      params.getBuckEventBus().post(IndividualTestEvent.started(testTargets));
+      ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
+      Preconditions.checkState(buildEngine.isRuleBuilt(test.getBuildTarget()));
+      List<Step> testSteps = test.runTests(
+          buildContext,
+          executionContext,
+          options,
+          testReportingCallback);
+      if (!testSteps.isEmpty()) {
+        stepsBuilder.addAll(testSteps);
+        stepsBuilder.add(testRuleKeyFileHelper.createRuleKeyInDirStep(test));
+        testsToRun.add(test.getBuildTarget());
+      }
+      steps = stepsBuilder.build();
+    } else {
+      steps = ImmutableList.of();
+    }
+
+    return TestRun.of(
+        test,
+        steps,
+        getCachingStatusTransformingCallable(
+            isTestRunRequired,
+            test.interpretTestResults(
+                executionContext,
+                /*isUsingTestSelectors*/ !options.getTestSelectorList().isEmpty(),
+                /*isDryRun*/ options.isDryRun())),
+        testReportingCallback);
+  }
+
+  private static void recordTestDurations(
+      CommandRunnerParams params,
+      TestDurations durations,
+      Set<BuildTarget> testsRun,
+      List<TestResults> completedResults) {
+    if (testsRun.isEmpty()) {
+      return;
+    }
+    for (TestResults results : completedResults) {
+      if (testsRun.contains(results.getBuildTarget())) {
+        durations.record(results);
+      }
+    }
+    try {
+      durations.writeTo(params.getCell().getFilesystem(), params.getObjectMapper());
+    } catch (IOException e) {
+      // These are only used to schedule future test runs, so don't fail this one.
+      LOG.warn(e, "Unable to save test durations.");
+    }
+  }
+
+  /**
+   * @return where to share test results with other machines, if results can be reused in this
+   *     run.
+   */
+  private static Optional<TestResultsArtifactCache> getResultsArtifactCache(
+      TestRunningOptions options,
+      ExecutionContext executionContext,
+      BuildContext buildContext,
+      BuildEngine buildEngine) {
+    // These are the cases in which isTestRunRequiredForTest() would always run the test, plus
+    // those in which the output directory does not hold everything that the test produced.
+    if (!options.isResultsCacheEnabled() ||
+        !options.isResultsArtifactCacheEnabled() ||
+        !options.getTestSelectorList().isEmpty() ||
+        options.isUsingOneTimeOutputDirectories() ||
+        options.isCodeCoverageEnabled() ||
+        options.isDryRun() ||
+        executionContext.isDebugEnabled()) {
+      return Optional.absent();
+    }
+    return Optional.of(
+        new TestResultsArtifactCache(buildContext.getArtifactCache(), buildEngine));
+  }
+
+  /**
+   * Stores the results of the tests that have just passed, so that they need not be run again.
+   */
+  private static void storeTestResults(
+      TestResultsArtifactCache resultsArtifactCache,
+      Iterable<TestRule> tests,
+      Set<BuildTarget> testsRun,
+      List<TestResults> completedResults) throws InterruptedException {
+    ImmutableSet.Builder<BuildTarget> passed = ImmutableSet.builder();
+    for (TestResults results : completedResults) {
+      if (results.isSuccess() && testsRun.contains(results.getBuildTarget())) {
+        passed.add(results.getBuildTarget());
+      }
+    }
+    ImmutableSet<BuildTarget> passedTests = passed.build();
+    for (TestRule test : tests) {
+      if (passedTests.contains(test.getBuildTarget())) {
+        resultsArtifactCache.store(test);
+      }
+    }
+  }
+
   private static ListenableFuture<TestResults> transformTestResults(
       final CommandRunnerParams params,
       ListenableFuture<TestResults> originalTestResults,
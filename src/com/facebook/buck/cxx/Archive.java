@@ -20,6 +20,7 @@ import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
 import com.facebook.buck.rules.BuildContext;
 import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -27,6 +28,7 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.RmStep;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
 import java.nio.file.Path;
@@ -37,8 +39,23 @@ import java.nio.file.Path;
  */
 public class Archive extends AbstractBuildRule {
 
+  /**
+   * Whether the archive holds a copy of its members or only refers to them by path.
+   */
+  public enum Contents {
+    NORMAL,
+
+    /**
+     * Only supported by archivers for which {@link Archiver#supportsThinArchives()} holds.  The
+     * members must then be kept alongside the archive, so they're cached with it.
+     */
+    THIN,
+  }
+
   @AddToRuleKey
   private final Archiver archiver;
+  @AddToRuleKey
+  private final Contents contents;
   @AddToRuleKey(stringify = true)
   private final Path output;
   @AddToRuleKey
@@ -50,8 +67,23 @@ public class Archive extends AbstractBuildRule {
       Archiver archiver,
       Path output,
       ImmutableList<SourcePath> inputs) {
+    this(params, resolver, archiver, Contents.NORMAL, output, inputs);
+  }
+
+  public Archive(
+      BuildRuleParams params,
+      SourcePathResolver resolver,
+      Archiver archiver,
+      Contents contents,
+      Path output,
+      ImmutableList<SourcePath> inputs) {
     super(params, resolver);
+    Preconditions.checkArgument(
+        contents == Contents.NORMAL || archiver.supportsThinArchives(),
+        "%s can't create thin archives",
+        archiver.getClass().getSimpleName());
     this.archiver = archiver;
+    this.contents = contents;
     this.output = output;
     this.inputs = inputs;
   }
@@ -64,12 +96,23 @@ public class Archive extends AbstractBuildRule {
     // Cache the archive we built.
     buildableContext.recordArtifact(output);
 
+    // A thin archive is useless without its members, so cache those generated by other rules
+    // along with it, as they won't be built when the archive is fetched from the cache.
+    if (contents == Contents.THIN) {
+      for (SourcePath input : inputs) {
+        if (input instanceof BuildTargetSourcePath) {
+          buildableContext.recordArtifact(getResolver().getPath(input));
+        }
+      }
+    }
+
     return ImmutableList.of(
         new MkdirStep(getProjectFilesystem(), output.getParent()),
         new RmStep(getProjectFilesystem(), output, /* shouldForceDeletion */ true),
         new ArchiveStep(
             getProjectFilesystem().getRootPath(),
             archiver.getCommandPrefix(getResolver()),
+            contents,
             output,
             getResolver().getAllPaths(inputs)),
         new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
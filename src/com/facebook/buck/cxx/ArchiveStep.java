@@ -37,19 +37,31 @@ public class ArchiveStep extends CompositeStep {
       ImmutableList<String> archiver,
       Path output,
       ImmutableList<Path> inputs) {
-    super(getArchiveCommandSteps(workingDirectory, archiver, output, inputs));
+    this(workingDirectory, archiver, Archive.Contents.NORMAL, output, inputs);
+  }
+
+  public ArchiveStep(
+      Path workingDirectory,
+      ImmutableList<String> archiver,
+      Archive.Contents contents,
+      Path output,
+      ImmutableList<Path> inputs) {
+    super(getArchiveCommandSteps(workingDirectory, archiver, contents, output, inputs));
   }
 
   private static ImmutableList<Step> getArchiveCommandSteps(
       Path workingDirectory,
       ImmutableList<String> archiver,
+      Archive.Contents contents,
       Path output,
       ImmutableList<Path> inputs) {
     ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
 
+    // With the "T" modifier, GNU ar stores the path of each member relative to the archive
+    // instead of a copy of it.
     ImmutableList<String> archiveCommandPrefix = ImmutableList.<String>builder()
         .addAll(archiver)
-        .add("rcs")
+        .add(contents == Archive.Contents.THIN ? "rcsT" : "rcs")
         .add(output.toString())
         .build();
     CommandSplitter commandSplitter = new CommandSplitter(archiveCommandPrefix);
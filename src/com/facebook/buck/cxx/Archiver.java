@@ -25,4 +25,10 @@ public interface Archiver extends Tool {
 
   ImmutableList<FileScrubber> getScrubbers();
 
+  /**
+   * @return whether this archiver can create thin archives, which refer to their members by path
+   *     rather than holding a copy of them.
+   */
+  boolean supportsThinArchives();
+
 }
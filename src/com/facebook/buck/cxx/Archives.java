@@ -47,6 +47,28 @@ public class Archives {
       Archiver archiver,
       Path output,
       ImmutableList<SourcePath> inputs) {
+    return createArchiveRule(
+        resolver,
+        target,
+        originalParams,
+        archiver,
+        Archive.Contents.NORMAL,
+        output,
+        inputs);
+  }
+
+  /**
+   * Like the above, but builds a thin archive when {@code contents} asks for one and
+   * {@code archiver} supports them, and a normal archive otherwise.
+   */
+  public static Archive createArchiveRule(
+      SourcePathResolver resolver,
+      BuildTarget target,
+      BuildRuleParams originalParams,
+      Archiver archiver,
+      Archive.Contents contents,
+      Path output,
+      ImmutableList<SourcePath> inputs) {
 
     // Convert the input build params into ones specialized for this archive build rule.
     // In particular, we only depend on BuildRules directly from the input file SourcePaths.
@@ -63,6 +85,7 @@ public class Archives {
         archiveParams,
         resolver,
         archiver,
+        archiver.supportsThinArchives() ? contents : Archive.Contents.NORMAL,
         output,
         inputs);
   }
@@ -127,6 +127,11 @@ public class BsdArchiver implements Archiver {
         SYMBOL_NAME_TABLE_PADDING_SCRUBBER);
   }
 
+  @Override
+  public boolean supportsThinArchives() {
+    return false;
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathResolver resolver) {
     return tool.getDeps(resolver);
@@ -39,6 +39,13 @@ public class ClangCompiler implements Compiler {
         ImmutableList.of("-Xclang", "-fdebug-compilation-dir", "-Xclang", debugCompilationDir));
   }
 
+  @Override
+  public Optional<ImmutableList<String>> precompiledHeaderUseFlags() {
+    // Clang rejects a precompiled header if the modification time or size of any header it was
+    // built from differs, which is always the case for one that was built in another checkout.
+    return Optional.of(ImmutableList.of("-Xclang", "-fno-validate-pch"));
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathResolver resolver) {
     return tool.getDeps(resolver);
@@ -24,4 +24,10 @@ public interface Compiler extends Tool {
 
   Optional<ImmutableList<String>> debugCompilationDirFlags(String debugCompilationDir);
 
+  /**
+   * @return flags which let the compiler use a precompiled header that was built somewhere else,
+   *     e.g. fetched from a cache, or absent if none are needed.
+   */
+  Optional<ImmutableList<String>> precompiledHeaderUseFlags();
+
 }
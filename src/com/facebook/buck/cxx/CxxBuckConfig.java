@@ -157,6 +157,15 @@ public class CxxBuckConfig {
         : CxxPreprocessMode.SEPARATE;
   }
 
+  /**
+   * @return whether static libraries should hold a copy of their object files, or, where the
+   *     archiver supports it, only refer to them.
+   */
+  public Archive.Contents getArchiveContents() {
+    return delegate.getEnum(cxxSection, "archive_contents", Archive.Contents.class)
+        .or(Archive.Contents.NORMAL);
+  }
+
   /*
    * Constructs the appropriate Linker for the specified platform.
    */
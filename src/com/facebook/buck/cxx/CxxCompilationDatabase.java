@@ -35,17 +35,21 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Set;
@@ -132,37 +136,59 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasPost
     return outputJsonFile;
   }
 
+  /**
+   * @return the path of the fragment of the compilation database holding the entry for
+   *     {@code compileRule}, which is kept between runs so that only entries for changed rules are
+   *     recomputed.
+   */
+  @VisibleForTesting
+  static Path getFragmentPath(CxxPreprocessAndCompile compileRule) {
+    return BuildTargets.getScratchPath(compileRule.getBuildTarget(), "__%s.compile_commands.json");
+  }
+
   class GenerateCompilationCommandsJson extends AbstractExecutionStep {
 
+    private final Gson gson = new Gson();
+
     public GenerateCompilationCommandsJson() {
       super("generate compile_commands.json");
     }
 
     @Override
     public int execute(ExecutionContext context) {
-      Iterable<CxxCompilationDatabaseEntry> entries = createEntries();
-      return writeOutput(entries, context);
+      return writeOutput(context);
     }
 
+    /**
+     * @return the entries of the compilation database, each of which is only created as the
+     *     iterable is iterated over.
+     */
     @VisibleForTesting
     Iterable<CxxCompilationDatabaseEntry> createEntries() {
-      List<CxxCompilationDatabaseEntry> entries = Lists.newArrayList();
-      for (CxxPreprocessAndCompile compileRule : compileRules) {
-        Optional<CxxPreprocessAndCompile> preprocessRule = Optional.absent();
-        if (preprocessMode == CxxPreprocessMode.SEPARATE) {
-          for (BuildRule buildRule : compileRule.getDeclaredDeps()) {
-            if (CxxSourceRuleFactory.isPreprocessFlavoredBuildTarget(buildRule.getBuildTarget())) {
-              preprocessRule = Optional.of((CxxPreprocessAndCompile) buildRule);
-              break;
+      return FluentIterable.from(compileRules).transform(
+          new Function<CxxPreprocessAndCompile, CxxCompilationDatabaseEntry>() {
+            @Override
+            public CxxCompilationDatabaseEntry apply(CxxPreprocessAndCompile compileRule) {
+              return createEntry(getPreprocessRule(compileRule), compileRule);
             }
-          }
-          if (!preprocessRule.isPresent()) {
-            throw new HumanReadableException("Can't find preprocess rule for " + compileRule);
-          }
+          });
+    }
+
+    private Optional<CxxPreprocessAndCompile> getPreprocessRule(
+        CxxPreprocessAndCompile compileRule) {
+      if (preprocessMode != CxxPreprocessMode.SEPARATE) {
+        return Optional.absent();
+      }
+      for (BuildRule buildRule : compileRule.getDeclaredDeps()) {
+        if (CxxSourceRuleFactory.isPreprocessFlavoredBuildTarget(buildRule.getBuildTarget())) {
+          return Optional.of((CxxPreprocessAndCompile) buildRule);
         }
-        entries.add(createEntry(preprocessRule, compileRule));
       }
-      return entries;
+      throw new HumanReadableException("Can't find preprocess rule for " + compileRule);
+    }
+
+    private String getDirectory() {
+      return getProjectFilesystem().resolve(getBuildTarget().getBasePath()).toString();
     }
 
     private CxxCompilationDatabaseEntry createEntry(
@@ -179,20 +205,65 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasPost
           compileRule.getCompileCommandCombinedWithPreprocessBuildRule(preprocessRule.get()) :
           compileRule.getCommand();
       return new CxxCompilationDatabaseEntry(
-          /* directory */ getProjectFilesystem().resolve(getBuildTarget().getBasePath()).toString(),
+          /* directory */ getDirectory(),
           fileToCompile,
           args);
     }
 
-    private int writeOutput(
-        Iterable<CxxCompilationDatabaseEntry> entries,
-        ExecutionContext context) {
-      Gson gson = new Gson();
-      try {
-        OutputStream outputStream = getProjectFilesystem().newFileOutputStream(
-            getPathToOutput());
-        outputStream.write(gson.toJson(entries).getBytes());
-        outputStream.close();
+    /**
+     * @return the JSON of the entry for {@code compileRule}, reusing the one in its fragment if
+     *     it was created for the same rule keys and directory, and otherwise creating it and
+     *     storing it in the fragment for next time.
+     */
+    @VisibleForTesting
+    String getEntryJson(CxxPreprocessAndCompile compileRule) throws IOException {
+      Optional<CxxPreprocessAndCompile> preprocessRule = getPreprocessRule(compileRule);
+      ProjectFilesystem filesystem = getProjectFilesystem();
+
+      // The entry is a function of the rules it's created from, and of the absolute directory it's
+      // relative to, which isn't covered by their rule keys.
+      StringBuilder key = new StringBuilder().append(compileRule.getRuleKey());
+      if (preprocessRule.isPresent()) {
+        key.append(' ').append(preprocessRule.get().getRuleKey());
+      }
+      key.append(' ').append(getDirectory());
+
+      Path fragment = getFragmentPath(compileRule);
+      if (filesystem.isFile(fragment)) {
+        List<String> lines = filesystem.readLines(fragment);
+        if (lines.size() == 2 && lines.get(0).equals(key.toString())) {
+          return lines.get(1);
+        }
+      }
+
+      // Compact JSON escapes any line breaks, so the entry fits on the line after its key.
+      String json = gson.toJson(createEntry(preprocessRule, compileRule));
+      filesystem.createParentDirs(fragment);
+      filesystem.writeLinesToPath(ImmutableList.of(key.toString(), json), fragment);
+      return json;
+    }
+
+    /**
+     * Writes out the compilation database one entry at a time, so that it's never held in memory
+     * in its entirety.
+     */
+    private int writeOutput(ExecutionContext context) {
+      try (Writer writer =
+               new BufferedWriter(
+                   new OutputStreamWriter(
+                       getProjectFilesystem().newFileOutputStream(getPathToOutput()),
+                       Charsets.UTF_8))) {
+        writer.write('[');
+        boolean first = true;
+        for (CxxPreprocessAndCompile compileRule : compileRules) {
+          if (!first) {
+            writer.write(',');
+          }
+          first = false;
+          writer.write('\n');
+          writer.write(getEntryJson(compileRule));
+        }
+        writer.write("\n]\n");
       } catch (IOException e) {
         logError(e, context);
         return 1;
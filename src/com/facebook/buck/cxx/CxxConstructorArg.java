@@ -39,6 +39,7 @@ public class CxxConstructorArg implements HasTests {
   public Optional<SourceList> headers;
   public Optional<PatternMatchedCollection<SourceList>> platformHeaders;
   public Optional<SourcePath> prefixHeader;
+  public Optional<SourcePath> precompiledHeader;
   public Optional<ImmutableList<String>> compilerFlags;
   public Optional<PatternMatchedCollection<ImmutableList<String>>> platformCompilerFlags;
   public Optional<ImmutableList<String>> preprocessorFlags;
@@ -73,6 +73,7 @@ public class CxxDescriptionEnhancer {
   public static final Flavor STATIC_FLAVOR = ImmutableFlavor.of("static");
   public static final Flavor STATIC_PIC_FLAVOR = ImmutableFlavor.of("static-pic");
   public static final Flavor SHARED_FLAVOR = ImmutableFlavor.of("shared");
+  public static final Flavor SHARED_INTERFACE_FLAVOR = ImmutableFlavor.of("shared-interface");
   public static final Flavor MACH_O_BUNDLE_FLAVOR = ImmutableFlavor.of("mach-o-bundle");
   public static final Flavor SHARED_LIBRARY_SYMLINK_TREE_FLAVOR =
       ImmutableFlavor.of("shared-library-symlink-tree");
@@ -667,6 +668,44 @@ public class CxxDescriptionEnhancer {
     return BuildTarget.builder(target).addFlavors(platform).addFlavors(SHARED_FLAVOR).build();
   }
 
+  public static BuildTarget createSharedLibraryInterfaceBuildTarget(
+      BuildTarget target,
+      Flavor platform) {
+    return BuildTarget.builder(target)
+        .addFlavors(platform)
+        .addFlavors(SHARED_INTERFACE_FLAVOR)
+        .build();
+  }
+
+  /**
+   * @return the rule extracting the interface of the given shared library rule, which rules
+   *     linking against it should use as their input in its place, creating it if necessary.
+   */
+  public static CxxSharedLibraryInterface requireSharedLibraryInterface(
+      BuildRuleParams params,
+      BuildRuleResolver ruleResolver,
+      CxxPlatform cxxPlatform,
+      BuildRule sharedLibrary) {
+    BuildTarget target =
+        createSharedLibraryInterfaceBuildTarget(params.getBuildTarget(), cxxPlatform.getFlavor());
+    Optional<CxxSharedLibraryInterface> existing =
+        ruleResolver.getRuleOptionalWithType(target, CxxSharedLibraryInterface.class);
+    if (existing.isPresent()) {
+      return existing.get();
+    }
+    CxxSharedLibraryInterface rule =
+        new CxxSharedLibraryInterface(
+            params.copyWithChanges(
+                target,
+                Suppliers.ofInstance(ImmutableSortedSet.of(sharedLibrary)),
+                Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of())),
+            new SourcePathResolver(ruleResolver),
+            new BuildTargetSourcePath(sharedLibrary.getBuildTarget()),
+            BuildTargets.getGenPath(target, "%s.interface"));
+    ruleResolver.addToIndex(rule);
+    return rule;
+  }
+
   public static Path getStaticLibraryPath(
       BuildTarget target,
       Flavor platform,
@@ -831,6 +870,7 @@ public class CxxDescriptionEnhancer {
                 args.platformCompilerFlags,
                 cxxPlatform),
             args.prefixHeader,
+            args.precompiledHeader,
             preprocessMode,
             sources,
             linkStyle == Linker.LinkableDepType.STATIC ?
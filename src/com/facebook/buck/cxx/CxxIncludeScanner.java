@@ -0,0 +1,344 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.apple.clang.HeaderMap;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.util.cache.FileHashCache;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Predicts the headers that preprocessing a source file opens, without running the preprocessor,
+ * by following its {@code #include}, {@code #import} and {@code #include_next} directives through
+ * the same header maps and search paths that the preprocessor is given.
+ * <p>
+ * The scan follows directives regardless of the conditionals around them, and skips those it
+ * can't resolve, such as includes of macros or of headers outside the project.  So its result is
+ * only a prediction, which callers must only ever compare against what a real preprocessor
+ * reported, so that a wrong one can only cost a cache miss.
+ */
+public class CxxIncludeScanner {
+
+  private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/|//[^\\n]*", Pattern.DOTALL);
+
+  private static final Pattern INCLUDE = Pattern.compile(
+      "^[ \\t]*#[ \\t]*(include|import|include_next)[ \\t]*([<\"])([^>\"\\n]+)[>\"]",
+      Pattern.MULTILINE);
+
+  /**
+   * The includes of a file only depend on its contents, so they're shared by all scans, across
+   * builds, by content hash.  Scans run concurrently on the build's threads, one per source.
+   */
+  private static final Cache<HashCode, ImmutableList<Include>> INCLUDES_BY_CONTENTS =
+      CacheBuilder.newBuilder()
+          .maximumSize(100000)
+          .build();
+
+  private static final Function<String, Path> TO_PATH =
+      new Function<String, Path>() {
+        @Override
+        public Path apply(String input) {
+          return Paths.get(input);
+        }
+      };
+
+  private final ProjectFilesystem filesystem;
+  private final FileHashCache fileHashCache;
+  private final ImmutableMap<Path, Path> replacementPaths;
+  private final ImmutableList<SearchPath> searchPaths;
+  private final ImmutableList<Path> frameworkRoots;
+
+  /**
+   * @param replacementPaths maps each header in a symlink tree to the header it links to, so
+   *     that headers can be found before their symlink trees are built.
+   */
+  public CxxIncludeScanner(
+      ProjectFilesystem filesystem,
+      FileHashCache fileHashCache,
+      ImmutableMap<Path, Path> replacementPaths,
+      Iterable<Path> headerMaps,
+      Iterable<Path> includeRoots,
+      Iterable<Path> systemIncludeRoots,
+      Iterable<Path> frameworkRoots) {
+    this.filesystem = filesystem;
+    this.fileHashCache = fileHashCache;
+    this.replacementPaths = replacementPaths;
+
+    // Header maps and include roots are passed using "-I", followed by system include roots, so
+    // they're searched in that order.
+    ImmutableList.Builder<SearchPath> searchPaths = ImmutableList.builder();
+    for (Path headerMap : headerMaps) {
+      searchPaths.add(new HeaderMapSearchPath(headerMap));
+    }
+    for (Path root : includeRoots) {
+      searchPaths.add(new DirectorySearchPath(root));
+    }
+    for (Path root : systemIncludeRoots) {
+      searchPaths.add(new DirectorySearchPath(root));
+    }
+    this.searchPaths = searchPaths.build();
+    this.frameworkRoots = ImmutableList.copyOf(frameworkRoots);
+  }
+
+  /**
+   * @return each file that preprocessing the given files, in order, would open, in the order that
+   *     it first opens them, by the path that it opens them with.
+   */
+  public ImmutableList<Path> scan(Iterable<Path> files) throws IOException {
+    Set<Path> opened = new LinkedHashSet<>();
+    for (Path file : files) {
+      scan(file, Optional.<Integer>absent(), opened);
+    }
+    return ImmutableList.copyOf(opened);
+  }
+
+  private void scan(Path file, Optional<Integer> searchPathIndex, Set<Path> opened)
+      throws IOException {
+    if (!opened.add(file)) {
+      return;
+    }
+
+    // Headers outside of the project can't be part of a dep file, so we don't follow them.
+    Path contents = getContentsPath(file);
+    if (contents.isAbsolute()) {
+      return;
+    }
+
+    for (Include include : getIncludes(contents)) {
+      Optional<Resolved> resolved = resolve(include, file, searchPathIndex);
+      if (resolved.isPresent()) {
+        scan(resolved.get().path, resolved.get().searchPathIndex, opened);
+      }
+    }
+  }
+
+  /**
+   * @return the path to read the contents of {@code file} from, which is the header it links to
+   *     if it's in a symlink tree.
+   */
+  private Path getContentsPath(Path file) {
+    Path replacement = replacementPaths.get(file);
+    return replacement != null ? replacement : file;
+  }
+
+  private boolean exists(Path file) {
+    return replacementPaths.containsKey(file) || filesystem.isFile(file);
+  }
+
+  private ImmutableList<Include> getIncludes(Path file) throws IOException {
+    Path normalized = file.normalize();
+    Optional<HashCode> hashCode = Optional.absent();
+    if (fileHashCache.willGet(normalized)) {
+      hashCode = Optional.of(fileHashCache.get(normalized));
+      ImmutableList<Include> includes = INCLUDES_BY_CONTENTS.getIfPresent(hashCode.get());
+      if (includes != null) {
+        return includes;
+      }
+    }
+
+    ImmutableList<Include> includes;
+    try (InputStream input = filesystem.newFileInputStream(normalized)) {
+      // Only ASCII matters to the directives we look for, so decode each byte as a character.
+      includes = parseIncludes(new String(ByteStreams.toByteArray(input), Charsets.ISO_8859_1));
+    }
+    if (hashCode.isPresent()) {
+      INCLUDES_BY_CONTENTS.put(hashCode.get(), includes);
+    }
+    return includes;
+  }
+
+  /**
+   * Resolves an include the way that gcc and clang do: quoted includes are first looked for next
+   * to the file including them, then all includes are looked for in each search path, starting
+   * after the one the including file was found in for {@code #include_next}, and finally in the
+   * framework roots.
+   */
+  private Optional<Resolved> resolve(
+      Include include,
+      Path includer,
+      Optional<Integer> includerSearchPathIndex) throws IOException {
+
+    if (include.quoted && !include.next) {
+      Path parent = includer.getParent();
+      Path candidate = parent == null ? Paths.get(include.name) : parent.resolve(include.name);
+      if (exists(candidate)) {
+        return Optional.of(new Resolved(candidate, Optional.<Integer>absent()));
+      }
+    }
+
+    int start = include.next && includerSearchPathIndex.isPresent() ?
+        includerSearchPathIndex.get() + 1 :
+        0;
+    for (int i = start; i < searchPaths.size(); i++) {
+      Optional<Path> candidate = searchPaths.get(i).lookup(include.name);
+      if (candidate.isPresent() && exists(candidate.get())) {
+        return Optional.of(new Resolved(candidate.get(), Optional.of(i)));
+      }
+    }
+
+    int slash = include.name.indexOf('/');
+    if (slash > 0) {
+      String framework = include.name.substring(0, slash) + ".framework";
+      String header = include.name.substring(slash + 1);
+      for (Path root : frameworkRoots) {
+        Path candidate = root.resolve(framework).resolve("Headers").resolve(header);
+        if (exists(candidate)) {
+          return Optional.of(new Resolved(candidate, Optional.<Integer>absent()));
+        }
+      }
+    }
+
+    return Optional.absent();
+  }
+
+  /**
+   * @return the include directives in {@code contents}, in order, ignoring any in comments.
+   */
+  @VisibleForTesting
+  static ImmutableList<Include> parseIncludes(String contents) {
+    // Join continued lines, and replace comments with a space, as the preprocessor does, so a
+    // directive following the end of a comment spanning lines doesn't start a line.
+    String code = COMMENT.matcher(contents.replace("\\\n", "")).replaceAll(" ");
+
+    ImmutableList.Builder<Include> includes = ImmutableList.builder();
+    Matcher matcher = INCLUDE.matcher(code);
+    while (matcher.find()) {
+      includes.add(
+          new Include(
+              matcher.group(1).equals("include_next"),
+              matcher.group(2).equals("\""),
+              matcher.group(3)));
+    }
+    return includes.build();
+  }
+
+  /**
+   * A single include directive.
+   */
+  @VisibleForTesting
+  static class Include {
+
+    private final boolean next;
+    private final boolean quoted;
+    private final String name;
+
+    Include(boolean next, boolean quoted, String name) {
+      this.next = next;
+      this.quoted = quoted;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Include)) {
+        return false;
+      }
+      Include that = (Include) obj;
+      return this.next == that.next &&
+          this.quoted == that.quoted &&
+          this.name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(next, quoted, name);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "#include%s %s%s%s",
+          next ? "_next" : "",
+          quoted ? '"' : '<',
+          name,
+          quoted ? '"' : '>');
+    }
+
+  }
+
+  private static class Resolved {
+
+    private final Path path;
+    private final Optional<Integer> searchPathIndex;
+
+    Resolved(Path path, Optional<Integer> searchPathIndex) {
+      this.path = path;
+      this.searchPathIndex = searchPathIndex;
+    }
+
+  }
+
+  private interface SearchPath {
+
+    Optional<Path> lookup(String name) throws IOException;
+
+  }
+
+  private static class DirectorySearchPath implements SearchPath {
+
+    private final Path root;
+
+    DirectorySearchPath(Path root) {
+      this.root = root;
+    }
+
+    @Override
+    public Optional<Path> lookup(String name) {
+      return Optional.of(root.resolve(name));
+    }
+
+  }
+
+  private class HeaderMapSearchPath implements SearchPath {
+
+    private final Path path;
+    private Optional<HeaderMap> headerMap = Optional.absent();
+
+    HeaderMapSearchPath(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public Optional<Path> lookup(String name) throws IOException {
+      if (!headerMap.isPresent()) {
+        headerMap = Optional.of(HeaderMap.loadFromFile(filesystem.resolve(path).toFile()));
+      }
+      return Optional.fromNullable(headerMap.get().lookup(name)).transform(TO_PATH);
+    }
+
+  }
+
+}
@@ -212,7 +212,7 @@ public final class CxxInferEnhancer {
                   args.compilerFlags,
                   args.platformCompilerFlags,
                   cxxPlatform),
-              args.prefixHeader),
+              args.prefixHeader.or(args.precompiledHeader)),
             transitiveDepsLibraryRules);
 
     return createInferAnalyzeRule(
@@ -214,10 +214,21 @@ public class CxxLibrary extends AbstractCxxLibrary implements HasRuntimeDeps {
           getBuildTarget(),
           sharedLibrarySoname,
           cxxPlatform);
-      libraryRule = requireBuildRule(
+      BuildRule sharedLibraryRule = requireBuildRule(
           targetGraph,
           cxxPlatform.getFlavor(),
           CxxDescriptionEnhancer.SHARED_FLAVOR);
+      // Only the symbols that an ELF shared library exports matter to the rules linking against
+      // it, so key them on its interface rather than on the library itself.
+      if (cxxPlatform.getLd() instanceof GnuLinker) {
+        libraryRule = CxxDescriptionEnhancer.requireSharedLibraryInterface(
+            params,
+            ruleResolver,
+            cxxPlatform,
+            sharedLibraryRule);
+      } else {
+        libraryRule = sharedLibraryRule;
+      }
       linkerArgsBuilder.add(sharedLibraryPath.toString());
     }
     final ImmutableList<String> linkerArgs = linkerArgsBuilder.build();
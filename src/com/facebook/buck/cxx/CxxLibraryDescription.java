@@ -203,6 +203,7 @@ public class CxxLibraryDescription implements
       ImmutableMultimap<CxxSource.Type, String> preprocessorFlags,
       ImmutableMultimap<CxxSource.Type, String> exportedPreprocessorFlags,
       Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
       ImmutableMap<Path, SourcePath> headers,
       ImmutableMap<Path, SourcePath> exportedHeaders,
       ImmutableList<String> compilerFlags,
@@ -265,6 +266,7 @@ public class CxxLibraryDescription implements
         cxxPreprocessorInputFromDependencies,
         compilerFlags,
         prefixHeader,
+        precompiledHeader,
         preprocessMode,
         allSources,
         pic);
@@ -286,13 +288,15 @@ public class CxxLibraryDescription implements
       ImmutableMultimap<CxxSource.Type, String> preprocessorFlags,
       ImmutableMultimap<CxxSource.Type, String> exportedPreprocessorFlags,
       Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
       ImmutableMap<Path, SourcePath> headers,
       ImmutableMap<Path, SourcePath> exportedHeaders,
       ImmutableList<String> compilerFlags,
       ImmutableMap<String, CxxSource> sources,
       ImmutableSet<Path> frameworkSearchPaths,
       CxxPreprocessMode preprocessMode,
-      CxxSourceRuleFactory.PicType pic) {
+      CxxSourceRuleFactory.PicType pic,
+      Archive.Contents archiveContents) {
 
     // Create rules for compiling the non-PIC object files.
     ImmutableMap<CxxPreprocessAndCompile, SourcePath> objects = requireObjects(
@@ -306,6 +310,7 @@ public class CxxLibraryDescription implements
         preprocessorFlags,
         exportedPreprocessorFlags,
         prefixHeader,
+        precompiledHeader,
         headers,
         exportedHeaders,
         compilerFlags,
@@ -342,6 +347,7 @@ public class CxxLibraryDescription implements
         staticTarget,
         params,
         cxxPlatform.getAr(),
+        archiveContents,
         staticLibraryPath,
         ImmutableList.copyOf(objects.values()));
   }
@@ -362,6 +368,7 @@ public class CxxLibraryDescription implements
       ImmutableMultimap<CxxSource.Type, String> preprocessorFlags,
       ImmutableMultimap<CxxSource.Type, String> exportedPreprocessorFlags,
       Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
       ImmutableMap<Path, SourcePath> headers,
       ImmutableMap<Path, SourcePath> exportedHeaders,
       ImmutableList<String> compilerFlags,
@@ -388,6 +395,7 @@ public class CxxLibraryDescription implements
         preprocessorFlags,
         exportedPreprocessorFlags,
         prefixHeader,
+        precompiledHeader,
         headers,
         exportedHeaders,
         compilerFlags,
@@ -477,6 +485,7 @@ public class CxxLibraryDescription implements
       ImmutableMultimap<CxxSource.Type, String> preprocessorFlags,
       ImmutableMultimap<CxxSource.Type, String> exportedPreprocessorFlags,
       Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
       ImmutableMap<Path, SourcePath> headers,
       ImmutableMap<Path, SourcePath> exportedHeaders,
       ImmutableList<String> compilerFlags,
@@ -499,6 +508,7 @@ public class CxxLibraryDescription implements
         preprocessorFlags,
         exportedPreprocessorFlags,
         prefixHeader,
+        precompiledHeader,
         headers,
         exportedHeaders,
         compilerFlags,
@@ -526,6 +536,7 @@ public class CxxLibraryDescription implements
     arg.platformSrcs = Optional.of(
         PatternMatchedCollection.<ImmutableSortedSet<SourceWithFlags>>of());
     arg.prefixHeader = Optional.absent();
+    arg.precompiledHeader = Optional.absent();
     arg.headers = Optional.of(SourceList.ofUnnamedSources(ImmutableSortedSet.<SourcePath>of()));
     arg.platformHeaders = Optional.of(PatternMatchedCollection.<SourceList>of());
     arg.exportedHeaders = Optional.of(
@@ -614,7 +625,8 @@ public class CxxLibraryDescription implements
       CxxPlatform cxxPlatform,
       A args,
       CxxPreprocessMode preprocessMode,
-      CxxSourceRuleFactory.PicType pic) {
+      CxxSourceRuleFactory.PicType pic,
+      Archive.Contents archiveContents) {
     return createStaticLibrary(
         targetGraph,
         params,
@@ -634,6 +646,7 @@ public class CxxLibraryDescription implements
             args.exportedLangPreprocessorFlags,
             cxxPlatform),
         args.prefixHeader,
+        args.precompiledHeader,
         CxxDescriptionEnhancer.parseHeaders(params, resolver, cxxPlatform, args),
         CxxDescriptionEnhancer.parseExportedHeaders(params, resolver, cxxPlatform, args),
         CxxFlags.getFlags(
@@ -646,7 +659,8 @@ public class CxxLibraryDescription implements
             cxxPlatform,
             new SourcePathResolver(resolver)),
         preprocessMode,
-        pic);
+        pic,
+        archiveContents);
   }
 
   /**
@@ -696,6 +710,7 @@ public class CxxLibraryDescription implements
             args.exportedLangPreprocessorFlags,
             cxxPlatform),
         args.prefixHeader,
+        args.precompiledHeader,
         CxxDescriptionEnhancer.parseHeaders(params, resolver, cxxPlatform, args),
         CxxDescriptionEnhancer.parseExportedHeaders(params, resolver, cxxPlatform, args),
         CxxFlags.getFlags(
@@ -747,6 +762,7 @@ public class CxxLibraryDescription implements
             args.exportedLangPreprocessorFlags,
             cxxPlatform),
         args.prefixHeader,
+        args.precompiledHeader,
         CxxDescriptionEnhancer.parseHeaders(params, resolver, cxxPlatform, args),
         CxxDescriptionEnhancer.parseExportedHeaders(params, resolver, cxxPlatform, args),
         CxxFlags.getFlags(
@@ -925,7 +941,8 @@ public class CxxLibraryDescription implements
             platform.get().getValue(),
             args,
             preprocessMode,
-            CxxSourceRuleFactory.PicType.PDC);
+            CxxSourceRuleFactory.PicType.PDC,
+            cxxBuckConfig.getArchiveContents());
       } else {
         return createStaticLibraryBuildRule(
             targetGraph,
@@ -934,7 +951,8 @@ public class CxxLibraryDescription implements
             platform.get().getValue(),
             args,
             preprocessMode,
-            CxxSourceRuleFactory.PicType.PIC);
+            CxxSourceRuleFactory.PicType.PIC,
+            cxxBuckConfig.getArchiveContents());
       }
     }
 
@@ -92,7 +92,9 @@ public class CxxLinkableEnhancer {
     // Construct our link build rule params.  The important part here is combining the build rules
     // that construct our object file inputs and also the deps that build our dependencies.
     ImmutableSortedSet.Builder<BuildRule> deps = ImmutableSortedSet.naturalOrder();
-    deps.addAll(resolver.filterBuildRuleInputs(allInputs));
+    // We key on the interfaces of the shared libraries we link against, but the linker still
+    // needs the libraries themselves.
+    deps.addAll(CxxSharedLibraryInterface.getLinkDeps(resolver, allInputs));
 
     // If this is being linked against a bundle loader created by another rule,
     // add that rule to our deps.
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.RuleKeyAppendable;
+import com.facebook.buck.rules.RuleKeyBuilder;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.shell.DefaultShellStep;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.util.MoreIterables;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+import java.nio.file.Path;
+
+/**
+ * A build rule which precompiles a header, once for all of the sources of a rule that share its
+ * language and flags, so that compiling each of them doesn't parse the header again.
+ *
+ * The header is compiled to {@code <name>.gch} in the rule's output directory. Both gcc and clang
+ * use it in place of the header when passed {@code -include <output directory>/<name>}.
+ *
+ * Like objects, the output is cached, so it mustn't depend on where it was built. Clang records
+ * the compilation directory in the header, so it's given the sanitized one the same way that
+ * {@link CxxPreprocessAndCompile} gives it to clang for objects, and sources using the header tell
+ * clang not to compare the headers it was built from against the local ones (see
+ * {@link Compiler#precompiledHeaderUseFlags()}). Unlike clang, gcc records neither, and takes the
+ * compilation directory of each object from that object's own compilation, which
+ * {@link CxxPreprocessAndCompile} sanitizes as usual, so the header needs nothing more.
+ */
+public class CxxPrecompiledHeader extends AbstractBuildRule implements RuleKeyAppendable {
+
+  /** The extension that both gcc and clang look for next to an {@code -include}d header. */
+  public static final String EXTENSION = "gch";
+
+  @AddToRuleKey
+  private final Compiler compiler;
+  private final ImmutableList<String> platformFlags;
+  private final ImmutableList<String> ruleFlags;
+  @AddToRuleKey(stringify = true)
+  private final Path output;
+  @AddToRuleKey
+  private final SourcePath input;
+  @AddToRuleKey
+  private final CxxSource.Type inputType;
+  private final ImmutableSet<Path> includeRoots;
+  private final ImmutableSet<Path> systemIncludeRoots;
+  private final ImmutableSet<Path> headerMaps;
+  private final ImmutableSet<Path> frameworkRoots;
+  @AddToRuleKey
+  private final ImmutableList<CxxHeaders> includes;
+  private final DebugPathSanitizer sanitizer;
+
+  public CxxPrecompiledHeader(
+      BuildRuleParams params,
+      SourcePathResolver resolver,
+      Compiler compiler,
+      ImmutableList<String> platformFlags,
+      ImmutableList<String> ruleFlags,
+      Path output,
+      SourcePath input,
+      CxxSource.Type inputType,
+      ImmutableSet<Path> includeRoots,
+      ImmutableSet<Path> systemIncludeRoots,
+      ImmutableSet<Path> headerMaps,
+      ImmutableSet<Path> frameworkRoots,
+      ImmutableList<CxxHeaders> includes,
+      DebugPathSanitizer sanitizer) {
+    super(params, resolver);
+    this.compiler = compiler;
+    this.platformFlags = platformFlags;
+    this.ruleFlags = ruleFlags;
+    this.output = output;
+    this.input = input;
+    this.inputType = inputType;
+    this.includeRoots = includeRoots;
+    this.systemIncludeRoots = systemIncludeRoots;
+    this.headerMaps = headerMaps;
+    this.frameworkRoots = frameworkRoots;
+    this.includes = includes;
+    this.sanitizer = sanitizer;
+  }
+
+  @Override
+  public RuleKeyBuilder appendToRuleKey(RuleKeyBuilder builder) {
+    // As with CxxPreprocessAndCompile, sanitize any paths in the flags, so that they don't
+    // contribute to the rule key.
+    builder.setReflectively(
+        "platformFlags",
+        sanitizer.sanitizeFlags(Optional.of(platformFlags)));
+    builder.setReflectively(
+        "ruleFlags",
+        sanitizer.sanitizeFlags(Optional.of(ruleFlags)));
+    ImmutableList<String> frameworkRoots = FluentIterable.from(this.frameworkRoots)
+        .transform(Functions.toStringFunction())
+        .transform(sanitizer.sanitize(Optional.<Path>absent()))
+        .toList();
+    builder.setReflectively("frameworkRoots", frameworkRoots);
+    // As the compilation directory is recorded in the header, changing it changes the output.
+    builder.setReflectively("compilationDirectory", sanitizer.getCompilationDirectory());
+    return builder;
+  }
+
+  /**
+   * @return the language to pass to {@code -x} to compile a header for sources of the given type.
+   */
+  @VisibleForTesting
+  static String getHeaderLanguage(CxxSource.Type type) {
+    return type.getLanguage() + "-header";
+  }
+
+  @VisibleForTesting
+  ImmutableList<String> getCommand() {
+    return ImmutableList.<String>builder()
+        .addAll(compiler.getCommandPrefix(getResolver()))
+        .addAll(platformFlags)
+        .addAll(ruleFlags)
+        .addAll(
+            compiler
+                .debugCompilationDirFlags(sanitizer.getCompilationDirectory())
+                .or(ImmutableList.<String>of()))
+        .addAll(
+            MoreIterables.zipAndConcat(
+                Iterables.cycle("-I"),
+                Iterables.transform(headerMaps, Functions.toStringFunction())))
+        .addAll(
+            MoreIterables.zipAndConcat(
+                Iterables.cycle("-I"),
+                Iterables.transform(includeRoots, Functions.toStringFunction())))
+        .addAll(
+            MoreIterables.zipAndConcat(
+                Iterables.cycle("-isystem"),
+                Iterables.transform(systemIncludeRoots, Functions.toStringFunction())))
+        .addAll(
+            MoreIterables.zipAndConcat(
+                Iterables.cycle("-F"),
+                Iterables.transform(frameworkRoots, Functions.toStringFunction())))
+        .add("-x", getHeaderLanguage(inputType))
+        .add("-c")
+        .add(getResolver().getPath(input).toString())
+        .add("-o", output.toString())
+        .build();
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    buildableContext.recordArtifact(output);
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), output.getParent()),
+        new DefaultShellStep(getProjectFilesystem().getRootPath(), getCommand()));
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return output;
+  }
+
+}
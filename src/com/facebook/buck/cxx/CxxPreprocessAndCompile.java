@@ -33,11 +33,13 @@ import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreIterables;
 import com.facebook.buck.util.Optionals;
+import com.facebook.buck.util.cache.FileHashCache;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -46,6 +48,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.google.common.io.Files;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -58,6 +61,18 @@ public class CxxPreprocessAndCompile
     extends AbstractBuildRule
     implements RuleKeyAppendable, SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey {
 
+  /**
+   * Compilers find a precompiled header when its path, less the extension, is {@code -include}d.
+   */
+  private static final Function<Path, String> GET_PRECOMPILED_HEADER_INCLUDE_PATH =
+      new Function<Path, String>() {
+        @Override
+        public String apply(Path input) {
+          return input.resolveSibling(
+              Files.getNameWithoutExtension(input.getFileName().toString())).toString();
+        }
+      };
+
   @AddToRuleKey
   private final CxxPreprocessAndCompileStep.Operation operation;
   @AddToRuleKey
@@ -80,6 +95,8 @@ public class CxxPreprocessAndCompile
   @AddToRuleKey
   private final Optional<SourcePath> prefixHeader;
   @AddToRuleKey
+  private final Optional<SourcePath> precompiledHeader;
+  @AddToRuleKey
   private final ImmutableList<CxxHeaders> includes;
   private final DebugPathSanitizer sanitizer;
 
@@ -104,6 +121,50 @@ public class CxxPreprocessAndCompile
       Optional<SourcePath> prefixHeader,
       ImmutableList<CxxHeaders> includes,
       DebugPathSanitizer sanitizer) {
+    this(
+        params,
+        resolver,
+        operation,
+        preprocessor,
+        platformPreprocessorFlags,
+        rulePreprocessorFlags,
+        compiler,
+        platformCompilerFlags,
+        ruleCompilerFlags,
+        output,
+        input,
+        inputType,
+        includeRoots,
+        systemIncludeRoots,
+        headerMaps,
+        frameworkRoots,
+        prefixHeader,
+        Optional.<SourcePath>absent(),
+        includes,
+        sanitizer);
+  }
+
+  private CxxPreprocessAndCompile(
+      BuildRuleParams params,
+      SourcePathResolver resolver,
+      CxxPreprocessAndCompileStep.Operation operation,
+      Optional<Preprocessor> preprocessor,
+      Optional<ImmutableList<String>> platformPreprocessorFlags,
+      Optional<ImmutableList<String>> rulePreprocessorFlags,
+      Optional<Compiler> compiler,
+      Optional<ImmutableList<String>> platformCompilerFlags,
+      Optional<ImmutableList<String>> ruleCompilerFlags,
+      Path output,
+      SourcePath input,
+      CxxSource.Type inputType,
+      ImmutableSet<Path> includeRoots,
+      ImmutableSet<Path> systemIncludeRoots,
+      ImmutableSet<Path> headerMaps,
+      ImmutableSet<Path> frameworkRoots,
+      Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
+      ImmutableList<CxxHeaders> includes,
+      DebugPathSanitizer sanitizer) {
     super(params, resolver);
     Preconditions.checkState(operation.isPreprocess() == preprocessor.isPresent());
     Preconditions.checkState(operation.isPreprocess() == platformPreprocessorFlags.isPresent());
@@ -111,6 +172,9 @@ public class CxxPreprocessAndCompile
     Preconditions.checkState(operation.isCompile() == compiler.isPresent());
     Preconditions.checkState(operation.isCompile() == platformCompilerFlags.isPresent());
     Preconditions.checkState(operation.isCompile() == ruleCompilerFlags.isPresent());
+    Preconditions.checkState(
+        !precompiledHeader.isPresent() ||
+            operation == CxxPreprocessAndCompileStep.Operation.COMPILE_MUNGE_DEBUGINFO);
     this.operation = operation;
     this.preprocessor = preprocessor;
     this.platformPreprocessorFlags = platformPreprocessorFlags;
@@ -126,6 +190,7 @@ public class CxxPreprocessAndCompile
     this.headerMaps = headerMaps;
     this.frameworkRoots = frameworkRoots;
     this.prefixHeader = prefixHeader;
+    this.precompiledHeader = precompiledHeader;
     this.includes = includes;
     this.sanitizer = sanitizer;
   }
@@ -226,6 +291,7 @@ public class CxxPreprocessAndCompile
       ImmutableSet<Path> headerMaps,
       ImmutableSet<Path> frameworkRoots,
       Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
       ImmutableList<CxxHeaders> includes,
       DebugPathSanitizer sanitizer,
       CxxPreprocessMode strategy) {
@@ -249,6 +315,7 @@ public class CxxPreprocessAndCompile
         headerMaps,
         frameworkRoots,
         prefixHeader,
+        precompiledHeader,
         includes,
         sanitizer);
   }
@@ -289,11 +356,11 @@ public class CxxPreprocessAndCompile
     return output.getFileSystem().getPath(output.toString() + ".dep");
   }
 
-  @VisibleForTesting
-  CxxPreprocessAndCompileStep makeMainStep() {
-
-    // Resolve the map of symlinks to real paths to hand off the preprocess step.  If we're
-    // compiling, this will just be empty.
+  /**
+   * @return the map of symlinks to real paths to hand off the preprocess step.  If we're
+   *     compiling, this will just be empty.
+   */
+  private ImmutableMap<Path, Path> getReplacementPaths() {
     ImmutableMap.Builder<Path, Path> replacementPathsBuilder = ImmutableMap.builder();
     try {
       for (Map.Entry<Path, SourcePath> entry :
@@ -303,7 +370,12 @@ public class CxxPreprocessAndCompile
     } catch (CxxHeaders.ConflictingHeadersException e) {
       throw e.getHumanReadableExceptionForBuildTarget(getBuildTarget());
     }
-    ImmutableMap<Path, Path> replacementPaths = replacementPathsBuilder.build();
+    return replacementPathsBuilder.build();
+  }
+
+  @VisibleForTesting
+  CxxPreprocessAndCompileStep makeMainStep() {
+    ImmutableMap<Path, Path> replacementPaths = getReplacementPaths();
 
     Optional<ImmutableList<String>> preprocessorCommand;
     if (preprocessor.isPresent()) {
@@ -386,6 +458,12 @@ public class CxxPreprocessAndCompile
                 FluentIterable.from(prefixHeader.asSet())
                     .transform(getResolver().getPathFunction())
                     .transform(Functions.toStringFunction())))
+        .addAll(
+            MoreIterables.zipAndConcat(
+                Iterables.cycle("-include"),
+                FluentIterable.from(precompiledHeader.asSet())
+                    .transform(getResolver().getPathFunction())
+                    .transform(GET_PRECOMPILED_HEADER_INCLUDE_PATH)))
         .addAll(
             MoreIterables.zipAndConcat(
                 Iterables.cycle("-I"),
@@ -416,6 +494,9 @@ public class CxxPreprocessAndCompile
         compiler.get()
             .debugCompilationDirFlags(sanitizer.getCompilationDirectory())
             .or(ImmutableList.<String>of()));
+    if (precompiledHeader.isPresent()) {
+      suffix.addAll(compiler.get().precompiledHeaderUseFlags().or(ImmutableList.<String>of()));
+    }
     return suffix.build();
   }
 
@@ -492,6 +573,20 @@ public class CxxPreprocessAndCompile
 
   @Override
   public ImmutableList<Path> getInputsAfterBuildingLocally() throws IOException {
+    return getInputs(readDepFileLines());
+  }
+
+  @Override
+  public Optional<ImmutableList<Path>> getInputsBeforeBuilding(FileHashCache fileHashCache)
+      throws IOException {
+    Optional<ImmutableList<String>> depFileLines = predictDepFileLines(fileHashCache);
+    if (!depFileLines.isPresent()) {
+      return Optional.absent();
+    }
+    return Optional.of(getInputs(depFileLines.get()));
+  }
+
+  private ImmutableList<Path> getInputs(ImmutableList<String> depFileLines) {
     SourcePathResolver resolver = getResolver();
     ImmutableList.Builder<Path> inputs = ImmutableList.builder();
 
@@ -517,19 +612,34 @@ public class CxxPreprocessAndCompile
       inputs.add(resolver.getPath(prefixHeader.get()));
     }
 
+    // Add the precompiled header, which covers the headers that it was compiled from.
+    if (precompiledHeader.isPresent()) {
+      inputs.add(resolver.getPath(precompiledHeader.get()));
+    }
+
     // Add all dynamically detected header dependencies.
-    inputs.addAll(
-        Iterables.transform(
-            getProjectFilesystem().readLines(getDepFilePath()),
-            MorePaths.TO_PATH));
+    inputs.addAll(Iterables.transform(depFileLines, MorePaths.TO_PATH));
 
     return inputs.build();
   }
 
-
-
   @Override
   public Optional<ImmutableMultimap<String, String>> getSymlinkTreeInputMap() throws IOException {
+    return getSymlinkTreeInputMap(readDepFileLines());
+  }
+
+  @Override
+  public Optional<ImmutableMultimap<String, String>> getSymlinkTreeInputMapBeforeBuilding(
+      FileHashCache fileHashCache) throws IOException {
+    Optional<ImmutableList<String>> depFileLines = predictDepFileLines(fileHashCache);
+    if (!depFileLines.isPresent()) {
+      return Optional.absent();
+    }
+    return getSymlinkTreeInputMap(depFileLines.get());
+  }
+
+  private Optional<ImmutableMultimap<String, String>> getSymlinkTreeInputMap(
+      ImmutableList<String> depFileLines) {
     ImmutableMultimap.Builder<String, String> fullHeaderMapBuilder = ImmutableMultimap.builder();
     for (HeaderSymlinkTree headerSymlinkTree :
         Iterables.filter(getDeps(), HeaderSymlinkTree.class)) {
@@ -542,7 +652,7 @@ public class CxxPreprocessAndCompile
     ImmutableMultimap<String, String> fullHeaderMap = fullHeaderMapBuilder.build();
 
     ImmutableMultimap.Builder<String, String> headerMap = ImmutableMultimap.builder();
-    for (String input : getProjectFilesystem().readLines(getDepFilePath())) {
+    for (String input : depFileLines) {
       if (!fullHeaderMap.containsKey(input)) {
         return Optional.absent();
       }
@@ -551,4 +661,61 @@ public class CxxPreprocessAndCompile
     return Optional.of(headerMap.build());
   }
 
+  private ImmutableList<String> readDepFileLines() throws IOException {
+    return ImmutableList.copyOf(getProjectFilesystem().readLines(getDepFilePath()));
+  }
+
+  /**
+   * @return the lines that preprocessing would write to the dep file, predicted by scanning the
+   *     includes of the input and prefix header, or absent if they can't be predicted.
+   */
+  @VisibleForTesting
+  Optional<ImmutableList<String>> predictDepFileLines(FileHashCache fileHashCache)
+      throws IOException {
+
+    // The headers that a precompiled header was built from are hidden inside it, so we can't
+    // scan them.
+    if (!operation.isPreprocess() || precompiledHeader.isPresent()) {
+      return Optional.absent();
+    }
+
+    ImmutableMap<Path, Path> replacementPaths = getReplacementPaths();
+    CxxIncludeScanner scanner =
+        new CxxIncludeScanner(
+            getProjectFilesystem(),
+            fileHashCache,
+            replacementPaths,
+            headerMaps,
+            includeRoots,
+            systemIncludeRoots,
+            frameworkRoots);
+
+    // The preprocessor lists the input first, but reads the prefix header before it.
+    Path inputPath = getResolver().getPath(input);
+    ImmutableList<Path> opened =
+        scanner.scan(
+            Iterables.concat(
+                Iterables.transform(prefixHeader.asSet(), getResolver().getPathFunction()),
+                ImmutableList.of(inputPath)));
+    Iterable<Path> prereqs =
+        Iterables.concat(
+            ImmutableList.of(inputPath),
+            Iterables.filter(opened, Predicates.not(Predicates.equalTo(inputPath))));
+
+    // Filter the headers the same way the preprocess step does when it writes the dep file.
+    ImmutableSet<Path> values = ImmutableSet.copyOf(replacementPaths.values());
+    ImmutableList.Builder<String> lines = ImmutableList.builder();
+    for (Path prereq : prereqs) {
+      if (values.contains(prereq)) {
+        lines.add(prereq.toString());
+        continue;
+      }
+      Path replacement = replacementPaths.get(prereq);
+      if (replacement != null) {
+        lines.add(replacement.toString());
+      }
+    }
+    return Optional.of(lines.build());
+  }
+
 }
@@ -25,6 +25,7 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.util.Escaper;
 import com.facebook.buck.util.FunctionLineProcessorThread;
+import com.facebook.buck.util.ManagedThread;
 import com.facebook.buck.util.MoreThrowables;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
@@ -162,6 +163,20 @@ public class CxxPreprocessAndCompileStep implements Step {
     };
   }
 
+  /**
+   * @return a thread that copies the preprocessor's output from {@code in} to {@code out}, fixing
+   *     up its line markers. Unless there is an extra line processor that needs to see every line,
+   *     only the line markers are decoded.
+   */
+  private ManagedThread createPreprocessOutputProcessor(InputStream in, OutputStream out) {
+    Function<String, Iterable<String>> processor =
+        createPreprocessOutputLineProcessor(filesystem.getRootPath());
+    if (extraLineProcessor.isPresent()) {
+      return new FunctionLineProcessorThread(in, out, processor);
+    }
+    return new LineMarkerRewritingThread(in, out, processor);
+  }
+
   @VisibleForTesting
   Function<String, Iterable<String>> createErrorLineProcessor(final Path workingDir) {
     return CxxDescriptionEnhancer.createErrorMessagePathProcessor(
@@ -254,7 +269,7 @@ public class CxxPreprocessAndCompileStep implements Step {
         .build();
   }
 
-  private void safeCloseProcessor(@Nullable FunctionLineProcessorThread processor) {
+  private void safeCloseProcessor(@Nullable ManagedThread processor) {
     if (processor != null) {
       try {
         processor.waitFor();
@@ -285,7 +300,7 @@ public class CxxPreprocessAndCompileStep implements Step {
     Process compile = null;
     FunctionLineProcessorThread errorProcessorPreprocess = null;
     FunctionLineProcessorThread errorProcessorCompile = null;
-    FunctionLineProcessorThread lineDirectiveMunger = null;
+    ManagedThread lineDirectiveMunger = null;
 
     try {
       LOG.debug(
@@ -311,10 +326,7 @@ public class CxxPreprocessAndCompileStep implements Step {
       errorProcessorCompile.start();
 
       lineDirectiveMunger =
-          new FunctionLineProcessorThread(
-              preprocess.getInputStream(),
-              compile.getOutputStream(),
-              createPreprocessOutputLineProcessor(filesystem.getRootPath()));
+          createPreprocessOutputProcessor(preprocess.getInputStream(), compile.getOutputStream());
       lineDirectiveMunger.start();
 
       int compileStatus = compile.waitFor();
@@ -417,11 +429,8 @@ public class CxxPreprocessAndCompileStep implements Step {
         if (operation == Operation.PREPROCESS) {
           try (OutputStream output =
                    filesystem.newFileOutputStream(this.output);
-               FunctionLineProcessorThread outputProcessor =
-                   new FunctionLineProcessorThread(
-                       process.getInputStream(),
-                       output,
-                       createPreprocessOutputLineProcessor(filesystem.getRootPath()))) {
+               ManagedThread outputProcessor =
+                   createPreprocessOutputProcessor(process.getInputStream(), output)) {
             outputProcessor.start();
             outputProcessor.waitFor();
           } catch (Throwable thrown) {
@@ -504,10 +513,15 @@ public class CxxPreprocessAndCompileStep implements Step {
       // above.  This locates the relevant debug section and swaps out the expanded actual
       // compilation directory with the one we really want.
       if (exitCode == 0 && operation == Operation.COMPILE_MUNGE_DEBUGINFO) {
-        try {
-          sanitizer.restoreCompilationDirectory(
-              filesystem.getRootPath().toAbsolutePath().resolve(output),
-              filesystem.getRootPath().toAbsolutePath());
+        try (SimplePerfEvent.Scope perfEvent = SimplePerfEvent.scope(
+                 context.getBuckEventBus(),
+                 PerfEventId.of("restore-compilation-directory"),
+                 "output", output)) {
+          perfEvent.appendFinishedInfo(
+              "bytes_scanned",
+              sanitizer.restoreCompilationDirectory(
+                  filesystem.getRootPath().toAbsolutePath().resolve(output),
+                  filesystem.getRootPath().toAbsolutePath()));
         } catch (IOException e) {
           context.logError(e, "error updating compilation directory");
           return 1;
@@ -170,6 +170,7 @@ public class CxxPythonExtensionDescription implements
                 args.platformCompilerFlags,
                 cxxPlatform),
             args.prefixHeader,
+            args.precompiledHeader,
             cxxBuckConfig.getPreprocessMode(),
             allSources,
             CxxSourceRuleFactory.PicType.PIC);
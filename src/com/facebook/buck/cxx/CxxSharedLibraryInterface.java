@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.file.Path;
+
+/**
+ * A build rule which extracts the interface of a shared library, i.e. the symbols it exports.
+ *
+ * Rules linking against the shared library use this rule's output as their input in its place, so
+ * that their input-based rule keys only change when the library's interface does, rather than on
+ * every change to its implementation.
+ */
+public class CxxSharedLibraryInterface
+    extends AbstractBuildRule
+    implements SupportsInputBasedRuleKey {
+
+  @AddToRuleKey
+  private final SourcePath sharedLibrary;
+  @AddToRuleKey(stringify = true)
+  private final Path output;
+
+  public CxxSharedLibraryInterface(
+      BuildRuleParams params,
+      SourcePathResolver resolver,
+      SourcePath sharedLibrary,
+      Path output) {
+    super(params, resolver);
+    this.sharedLibrary = sharedLibrary;
+    this.output = output;
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    buildableContext.recordArtifact(output);
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), output.getParent()),
+        new SharedLibraryInterfaceStep(
+            getProjectFilesystem(),
+            getResolver().getPath(sharedLibrary),
+            output));
+  }
+
+  /**
+   * @return the shared library whose interface this rule extracts, which rules linking against it
+   *     still need to have been built.
+   */
+  public SourcePath getSharedLibrary() {
+    return sharedLibrary;
+  }
+
+  /**
+   * @return the rules building the given link inputs, along with the shared libraries behind any
+   *     interfaces among them, since whatever links against those inputs still needs the
+   *     libraries themselves.
+   */
+  public static ImmutableSortedSet<BuildRule> getLinkDeps(
+      SourcePathResolver resolver,
+      Iterable<? extends SourcePath> inputs) {
+    ImmutableSortedSet.Builder<BuildRule> deps = ImmutableSortedSet.naturalOrder();
+    for (BuildRule input : resolver.filterBuildRuleInputs(inputs)) {
+      deps.add(input);
+      if (input instanceof CxxSharedLibraryInterface) {
+        deps.addAll(
+            resolver.filterBuildRuleInputs(
+                ((CxxSharedLibraryInterface) input).getSharedLibrary()));
+      }
+    }
+    return deps.build();
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return output;
+  }
+
+}
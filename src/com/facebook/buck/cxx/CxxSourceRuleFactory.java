@@ -29,6 +29,7 @@ import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.Tool;
+import com.facebook.buck.util.HumanReadableException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
@@ -62,6 +63,7 @@ public class CxxSourceRuleFactory {
   private static final Logger LOG = Logger.get(CxxSourceRuleFactory.class);
   private static final String COMPILE_FLAVOR_PREFIX = "compile-";
   private static final String PREPROCESS_FLAVOR_PREFIX = "preprocess-";
+  private static final String PRECOMPILED_HEADER_FLAVOR_PREFIX = "pch-";
 
   private final BuildRuleParams params;
   private final BuildRuleResolver resolver;
@@ -70,6 +72,7 @@ public class CxxSourceRuleFactory {
   private final ImmutableList<CxxPreprocessorInput> cxxPreprocessorInput;
   private final ImmutableList<String> compilerFlags;
   private final Optional<SourcePath> prefixHeader;
+  private final Optional<SourcePath> precompiledHeader;
 
   private final Supplier<ImmutableList<BuildRule>> preprocessDeps = Suppliers.memoize(
       new Supplier<ImmutableList<BuildRule>>() {
@@ -177,6 +180,32 @@ public class CxxSourceRuleFactory {
       ImmutableList<CxxPreprocessorInput> cxxPreprocessorInput,
       ImmutableList<String> compilerFlags,
       Optional<SourcePath> prefixHeader) {
+    this(
+        params,
+        resolver,
+        pathResolver,
+        cxxPlatform,
+        cxxPreprocessorInput,
+        compilerFlags,
+        prefixHeader,
+        Optional.<SourcePath>absent());
+  }
+
+  @VisibleForTesting
+  public CxxSourceRuleFactory(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      SourcePathResolver pathResolver,
+      CxxPlatform cxxPlatform,
+      ImmutableList<CxxPreprocessorInput> cxxPreprocessorInput,
+      ImmutableList<String> compilerFlags,
+      Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader) {
+    if (prefixHeader.isPresent() && precompiledHeader.isPresent()) {
+      throw new HumanReadableException(
+          "%s: only one of prefix_header and precompiled_header may be set.",
+          params.getBuildTarget());
+    }
     this.params = params;
     this.resolver = resolver;
     this.pathResolver = pathResolver;
@@ -184,6 +213,14 @@ public class CxxSourceRuleFactory {
     this.cxxPreprocessorInput = cxxPreprocessorInput;
     this.compilerFlags = compilerFlags;
     this.prefixHeader = prefixHeader;
+    this.precompiledHeader = precompiledHeader;
+  }
+
+  /**
+   * @return the header to {@code -include} as it is, in rules which don't use a precompiled one.
+   */
+  private Optional<SourcePath> getPrefixHeader() {
+    return prefixHeader.or(precompiledHeader);
   }
 
   private String getOutputName(String name) {
@@ -281,7 +318,7 @@ public class CxxSourceRuleFactory {
         systemIncludeRoots.get(),
         headerMaps.get(),
         frameworkRoots.get(),
-        prefixHeader,
+        getPrefixHeader(),
         includes.get(),
         cxxPlatform.getDebugPathSanitizer());
     resolver.addToIndex(result);
@@ -592,13 +629,125 @@ public class CxxSourceRuleFactory {
         systemIncludeRoots.get(),
         headerMaps.get(),
         frameworkRoots.get(),
-        prefixHeader,
+        getPrefixHeader(),
         inferTools,
         cxxPlatform.getDebugPathSanitizer());
     resolver.addToIndex(result);
     return result;
   }
 
+  /**
+   * A precompiled header is only used when preprocessing and compiling in one go, as the output of
+   * a preprocessor that reads it lacks the declarations it holds. It is also only used by sources
+   * without per-file flags, as the header must be compiled with the same flags as the sources that
+   * use it.
+   */
+  private boolean canUsePrecompiledHeader(CxxSource source, CxxPreprocessMode strategy) {
+    return precompiledHeader.isPresent() &&
+        strategy == CxxPreprocessMode.COMBINED &&
+        CxxSourceTypes.supportsPrecompiledHeaders(source.getType()) &&
+        source.getFlags().isEmpty();
+  }
+
+  /**
+   * @return a build target for a {@link CxxPrecompiledHeader} rule for sources of the given type.
+   */
+  @VisibleForTesting
+  public BuildTarget createPrecompiledHeaderBuildTarget(CxxSource.Type type, PicType pic) {
+    return BuildTarget
+        .builder(params.getBuildTarget())
+        .addFlavors(cxxPlatform.getFlavor())
+        .addFlavors(
+            ImmutableFlavor.of(
+                Flavor.replaceInvalidCharacters(
+                    String.format(
+                        PRECOMPILED_HEADER_FLAVOR_PREFIX + "%s%s",
+                        pic == PicType.PIC ? "pic-" : "",
+                        type.getLanguage()))))
+        .build();
+  }
+
+  /**
+   * @return a {@link CxxPrecompiledHeader} rule that precompiles the precompiled header for
+   *     sources of the given type, with the flags that those sources are compiled with.
+   */
+  @VisibleForTesting
+  CxxPrecompiledHeader createPrecompiledHeaderBuildRule(
+      BuildRuleResolver resolver,
+      CxxSource.Type type,
+      PicType pic) {
+
+    Preconditions.checkState(precompiledHeader.isPresent());
+    Preconditions.checkArgument(CxxSourceTypes.supportsPrecompiledHeaders(type));
+
+    BuildTarget target = createPrecompiledHeaderBuildTarget(type, pic);
+    Compiler compiler = getCompiler(type);
+    SourcePath header = precompiledHeader.get();
+
+    ImmutableSortedSet<BuildRule> dependencies =
+        ImmutableSortedSet.<BuildRule>naturalOrder()
+            // Add dependencies on any build rules used to create the compiler.
+            .addAll(compiler.getDeps(pathResolver))
+            // If a build rule generates the header, add that as a dependency.
+            .addAll(pathResolver.filterBuildRuleInputs(header))
+            // Add in all preprocessor deps.
+            .addAll(preprocessDeps.get())
+            .build();
+
+    // Use exactly the flags, less any per-file ones, that the sources using this header are
+    // compiled with, as compilers refuse precompiled headers built with different ones.
+    CxxSource.Type outputType = CxxSourceTypes.getPreprocessorOutputType(type);
+    ImmutableList<String> platformFlags =
+        ImmutableList.<String>builder()
+            .addAll(CxxSourceTypes.getPlatformPreprocessFlags(cxxPlatform, type))
+            .addAll(pic.getFlags())
+            .addAll(getPlatformCompileFlags(outputType))
+            .build();
+    ImmutableList<String> ruleFlags =
+        ImmutableList.<String>builder()
+            .addAll(preprocessorFlags.getUnchecked(type))
+            .addAll(getRuleCompileFlags(outputType))
+            .build();
+
+    CxxPrecompiledHeader result = new CxxPrecompiledHeader(
+        params.copyWithChanges(
+            target,
+            Suppliers.ofInstance(dependencies),
+            Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of())),
+        pathResolver,
+        compiler,
+        platformFlags,
+        ruleFlags,
+        BuildTargets.getGenPath(target, "%s").resolve(
+            pathResolver.getPath(header).getFileName() + "." + CxxPrecompiledHeader.EXTENSION),
+        header,
+        type,
+        includeRoots.get(),
+        systemIncludeRoots.get(),
+        headerMaps.get(),
+        frameworkRoots.get(),
+        includes.get(),
+        cxxPlatform.getDebugPathSanitizer());
+    resolver.addToIndex(result);
+    return result;
+  }
+
+  @VisibleForTesting
+  CxxPrecompiledHeader requirePrecompiledHeaderBuildRule(
+      BuildRuleResolver resolver,
+      CxxSource.Type type,
+      PicType pic) {
+
+    BuildTarget target = createPrecompiledHeaderBuildTarget(type, pic);
+    Optional<CxxPrecompiledHeader> existingRule = resolver.getRuleOptionalWithType(
+        target, CxxPrecompiledHeader.class);
+    if (existingRule.isPresent()) {
+      return existingRule.get();
+    }
+
+    return createPrecompiledHeaderBuildRule(resolver, type, pic);
+  }
+
   /**
    * @return a {@link CxxPreprocessAndCompile} rule that preprocesses, compiles, and assembles the
    *    given {@link CxxSource}.
@@ -619,12 +768,28 @@ public class CxxSourceRuleFactory {
 
     LOG.verbose("Creating preprocess and compile %s for %s", target, source);
 
+    ImmutableSortedSet.Builder<BuildRule> dependencies = ImmutableSortedSet.naturalOrder();
+    dependencies.addAll(
+        computeSourcePreprocessorAndToolDeps(Optional.of((Tool) compiler), source));
+
+    // Use the precompiled header, if there is one this source can use, in place of the prefix
+    // header.
+    Optional<SourcePath> prefixHeader = getPrefixHeader();
+    Optional<SourcePath> precompiledHeader = Optional.absent();
+    if (canUsePrecompiledHeader(source, strategy)) {
+      CxxPrecompiledHeader precompiledHeaderRule =
+          requirePrecompiledHeaderBuildRule(resolver, source.getType(), pic);
+      dependencies.add(precompiledHeaderRule);
+      prefixHeader = Optional.absent();
+      precompiledHeader = Optional.<SourcePath>of(
+          new BuildTargetSourcePath(precompiledHeaderRule.getBuildTarget()));
+    }
+
     // Build the CxxCompile rule and add it to our sorted set of build rules.
     CxxPreprocessAndCompile result = CxxPreprocessAndCompile.preprocessAndCompile(
         params.copyWithChanges(
             target,
-            Suppliers.ofInstance(
-                computeSourcePreprocessorAndToolDeps(Optional.of((Tool) compiler), source)),
+            Suppliers.ofInstance(dependencies.build()),
             Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of())),
         pathResolver,
         preprocessor,
@@ -641,6 +806,7 @@ public class CxxSourceRuleFactory {
         headerMaps.get(),
         frameworkRoots.get(),
         prefixHeader,
+        precompiledHeader,
         includes.get(),
         cxxPlatform.getDebugPathSanitizer(),
         strategy);
@@ -770,6 +936,7 @@ public class CxxSourceRuleFactory {
       ImmutableList<CxxPreprocessorInput> cxxPreprocessorInput,
       ImmutableList<String> compilerFlags,
       Optional<SourcePath> prefixHeader,
+      Optional<SourcePath> precompiledHeader,
       CxxPreprocessMode strategy,
       ImmutableMap<String, CxxSource> sources,
       PicType pic) {
@@ -781,7 +948,8 @@ public class CxxSourceRuleFactory {
             cxxPlatform,
             cxxPreprocessorInput,
             compilerFlags,
-            prefixHeader);
+            prefixHeader,
+            precompiledHeader);
     return factory.requirePreprocessAndCompileRules(resolver, strategy, sources, pic);
   }
 
@@ -50,6 +50,17 @@ public class CxxSourceTypes {
         sourceType == CxxSource.Type.OBJCXX_CPP_OUTPUT;
   }
 
+  /**
+   * Returns true for source types which can be compiled using a precompiled header.
+   */
+  public static boolean supportsPrecompiledHeaders(CxxSource.Type sourceType) {
+    return
+        sourceType == CxxSource.Type.C ||
+        sourceType == CxxSource.Type.CXX ||
+        sourceType == CxxSource.Type.OBJC ||
+        sourceType == CxxSource.Type.OBJCXX;
+  }
+
   /**
    * Returns true for source types which need to be built with a C++ compiler.
    */
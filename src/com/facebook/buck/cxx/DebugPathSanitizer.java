@@ -52,6 +52,8 @@ import java.util.concurrent.ExecutionException;
  */
 public class DebugPathSanitizer {
 
+  private static final Logger LOG = Logger.get(DebugPathSanitizer.class);
+
   private static final DebugSectionFinder DEBUG_SECTION_FINDER = new DebugSectionFinder();
 
   private final int pathSize;
@@ -103,7 +105,7 @@ public class DebugPathSanitizer {
     try {
       return pathCache.get(workingDir.get());
     } catch (ExecutionException e) {
-      Logger.get(DebugPathSanitizer.class).error(
+      LOG.error(
           "Problem loading paths into cache",
           e);
       return getAllPathsWork(workingDir.get());
@@ -165,31 +167,39 @@ public class DebugPathSanitizer {
   /**
    * Run {@code replacer} on all relevant debug sections in {@code buffer}, falling back to
    * processing the entire {@code buffer} if the format is unrecognized.
+   *
+   * @return the number of bytes that were scanned.
    */
-  private void restore(ByteBuffer buffer, ByteBufferReplacer replacer) {
+  private long restore(ByteBuffer buffer, ByteBufferReplacer replacer) {
 
     // Find the debug sections in the file represented by the buffer.
     Optional<ImmutableMap<String, DebugSection>> results = DEBUG_SECTION_FINDER.find(buffer);
 
     // If we were able to recognize the file format and find debug symbols, perform the
     // replacement on them.  Otherwise, just do a find-and-replace on the whole blob.
+    long scanned = 0;
     if (results.isPresent()) {
       for (DebugSection section : results.get().values()) {
         // We can't do in-place updates on compressed debug sections.
         Preconditions.checkState(!section.properties.contains(COMPRESSED));
         if (section.properties.contains(STRINGS)) {
+          scanned += section.body.remaining();
           replacer.replace(section.body);
         }
       }
     } else {
+      scanned += buffer.remaining();
       replacer.replace(buffer);
     }
+    return scanned;
   }
 
-  private void restore(Path path, ByteBufferReplacer replacer) throws IOException {
+  private long restore(Path path, ByteBufferReplacer replacer) throws IOException {
     try (FileChannel channel = FileChannel.open(path, READ, WRITE)) {
       MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
-      restore(buffer, replacer);
+      long scanned = restore(buffer, replacer);
+      LOG.verbose("Scanned %d of %d bytes of %s.", scanned, channel.size(), path);
+      return scanned;
     }
   }
 
@@ -206,8 +216,12 @@ public class DebugPathSanitizer {
 
   // Construct the replacer, giving the expanded current directory and the desired directory.
   // We use ASCII, since all the relevant debug standards we care about (e.g. DWARF) use it.
-  public void restoreCompilationDirectory(Path path, Path workingDir) throws IOException {
-    restore(path, getCompilationDirectoryReplacer(workingDir));
+  //
+  // Only the debug sections of recognized object formats are scanned, through a memory mapping of
+  // the file, so the cost is proportional to the size of the debug strings rather than that of
+  // the object.  Returns the number of bytes scanned.
+  public long restoreCompilationDirectory(Path path, Path workingDir) throws IOException {
+    return restore(path, getCompilationDirectoryReplacer(workingDir));
   }
 
 }
@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class DebugSectionFinder {
 
@@ -41,6 +42,21 @@ public class DebugSectionFinder {
           .put(".stabstr", ImmutableSet.of(STRINGS))
           .build();
 
+  // The Mach-O section names, in the "__DWARF" segment, which correspond to debug sections mapped
+  // to their properties.
+  private static final ImmutableMap<String, ImmutableSet<DebugSectionProperty>>
+      MACHO_DEBUG_SECTIONS =
+          ImmutableMap.<String, ImmutableSet<DebugSectionProperty>>builder()
+              .put("__debug_str", ImmutableSet.of(STRINGS))
+              .put("__debug_line", ImmutableSet.of(STRINGS))
+              .build();
+
+  private static final String MACHO_DWARF_SEGMENT = "__DWARF";
+
+  // The little-endian Mach-O magic numbers, for 32- and 64-bit files.
+  private static final int MH_MAGIC = 0xFEEDFACE;
+  private static final int MH_MAGIC_64 = 0xFEEDFACF;
+
   // Locate, if any, the debug sections in the ELF file represented by the given buffer.
   private ImmutableMap<String, DebugSection> findElf(ByteBuffer buffer) {
     ImmutableMap.Builder<String, DebugSection> debugSectionsBuilder = ImmutableMap.builder();
@@ -59,6 +75,81 @@ public class DebugSectionFinder {
     return debugSectionsBuilder.build();
   }
 
+  private static boolean isMacho(ByteBuffer buffer) {
+    if (buffer.limit() < 4) {
+      return false;
+    }
+    int magic = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+    return magic == MH_MAGIC || magic == MH_MAGIC_64;
+  }
+
+  private static String getFixedLengthString(ByteBuffer buffer, int length) {
+    StringBuilder builder = new StringBuilder();
+    int end = buffer.position() + length;
+    while (buffer.position() < end) {
+      byte b = buffer.get();
+      if (b == 0) {
+        break;
+      }
+      builder.append((char) b);
+    }
+    buffer.position(end);
+    return builder.toString();
+  }
+
+  // Locate, if any, the debug sections in the Mach-O file represented by the given buffer, by
+  // walking the section headers of its segment load commands.
+  private ImmutableMap<String, DebugSection> findMacho(ByteBuffer buffer) {
+    ImmutableMap.Builder<String, DebugSection> debugSectionsBuilder = ImmutableMap.builder();
+    ByteBuffer commands = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    boolean is64Bit = commands.getInt(0) == MH_MAGIC_64;
+
+    // The header holds the magic, CPU type and subtype, and file type ahead of the number of
+    // commands, and is padded to 32 bytes in 64-bit files.
+    int commandsCount = commands.getInt(16);
+    commands.position(is64Bit ? 32 : 28);
+
+    for (int i = 0; i < commandsCount; i++) {
+      int commandStart = commands.position();
+      int command = commands.getInt();
+      int commandSize = commands.getInt();
+      if (command == Machos.LC_SEGMENT || command == Machos.LC_SEGMENT_64) {
+        commands.position(commandStart + (is64Bit ? 64 : 48));
+        int sectionsCount = commands.getInt();
+        /* flags */ commands.getInt();
+        for (int j = 0; j < sectionsCount; j++) {
+          int sectionStart = commands.position();
+          String sectionName = getFixedLengthString(commands, 16);
+          String segmentName = getFixedLengthString(commands, 16);
+          long size;
+          if (is64Bit) {
+            /* address */ commands.getLong();
+            size = commands.getLong();
+          } else {
+            /* address */ commands.getInt();
+            size = commands.getInt() & 0xffffffffL;
+          }
+          long offset = commands.getInt() & 0xffffffffL;
+          commands.position(sectionStart + (is64Bit ? 80 : 68));
+
+          ImmutableSet<DebugSectionProperty> properties =
+              segmentName.equals(MACHO_DWARF_SEGMENT) ?
+                  MACHO_DEBUG_SECTIONS.get(sectionName) :
+                  null;
+          if (properties != null) {
+            ByteBuffer body = buffer.duplicate();
+            body.position((int) offset);
+            body = body.slice();
+            body.limit((int) size);
+            debugSectionsBuilder.put(sectionName, new DebugSection(properties, body));
+          }
+        }
+      }
+      commands.position(commandStart + commandSize);
+    }
+    return debugSectionsBuilder.build();
+  }
+
   /**
    * @return a map of all the debug sections found in executable format represented as
    *     {@code buffer}, or {@link Optional#absent()} if the format was not recognized.
@@ -66,6 +157,8 @@ public class DebugSectionFinder {
   public Optional<ImmutableMap<String, DebugSection>> find(ByteBuffer buffer) {
     if (Elf.isElf(buffer)) {
       return Optional.of(findElf(buffer));
+    } else if (isMacho(buffer)) {
+      return Optional.of(findMacho(buffer));
     } else {
       return Optional.absent();
     }
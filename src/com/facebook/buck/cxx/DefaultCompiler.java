@@ -38,6 +38,11 @@ public class DefaultCompiler implements Compiler {
     return Optional.absent();
   }
 
+  @Override
+  public Optional<ImmutableList<String>> precompiledHeaderUseFlags() {
+    return Optional.absent();
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathResolver resolver) {
     return tool.getDeps(resolver);
@@ -23,12 +23,15 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.Tool;
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 
 public class GnuArchiver implements Archiver {
 
   private static final byte[] EXPECTED_GLOBAL_HEADER = "!<arch>\n".getBytes(Charsets.US_ASCII);
+  private static final byte[] EXPECTED_THIN_GLOBAL_HEADER =
+      "!<thin>\n".getBytes(Charsets.US_ASCII);
 
   private final Tool tool;
 
@@ -38,7 +41,15 @@ public class GnuArchiver implements Archiver {
 
   @Override
   public ImmutableList<FileScrubber> getScrubbers() {
-    return ImmutableList.of(ObjectFileScrubbers.createDateUidGidScrubber(EXPECTED_GLOBAL_HEADER));
+    return ImmutableList.of(
+        ObjectFileScrubbers.createDateUidGidScrubber(
+            EXPECTED_GLOBAL_HEADER,
+            Optional.of(EXPECTED_THIN_GLOBAL_HEADER)));
+  }
+
+  @Override
+  public boolean supportsThinArchives() {
+    return true;
   }
 
   @Override
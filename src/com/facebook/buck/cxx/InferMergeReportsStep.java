@@ -23,7 +23,6 @@ import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
-import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
@@ -34,6 +33,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
 import java.nio.file.Path;
 
 import javax.annotation.Nullable;
@@ -88,7 +88,6 @@ class InferMergeReportsStep implements Step {
     private OutputStreamWriter destinationOutputStreamWriter;
     private BufferedWriter destinationBufferedWriter;
     private FileOutputStream destinationFileOutputStream;
-    private Gson gson;
     private static final String JSON_ENCODING = "UTF-8";
 
     public InferReportMerger(
@@ -96,7 +95,6 @@ class InferMergeReportsStep implements Step {
         Path destination) throws IOException {
       try {
         this.reportsToMerge = reportsToMerge;
-        this.gson = new Gson();
         this.destinationFileOutputStream = new FileOutputStream(destination.toFile());
         this.destinationOutputStreamWriter = new OutputStreamWriter(
             destinationFileOutputStream, JSON_ENCODING);
@@ -143,13 +141,54 @@ class InferMergeReportsStep implements Step {
                new JsonReader(reportBufferedReader)) {
         reportReader.beginArray();
         while (reportReader.hasNext()) {
-          gson.toJson(
-              gson.fromJson(reportReader, Object.class),
-              Object.class,
-              destinationWriter);
+          copyValue(reportReader, destinationWriter);
         }
         reportReader.endArray();
       }
     }
   }
+
+  /**
+   * Copies the next value from {@code reader} to {@code writer} token by token, so that reports
+   * are merged without ever building their values in memory, and numbers are copied verbatim
+   * rather than being converted to doubles.
+   */
+  private static void copyValue(JsonReader reader, JsonWriter writer) throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_ARRAY:
+        reader.beginArray();
+        writer.beginArray();
+        while (reader.hasNext()) {
+          copyValue(reader, writer);
+        }
+        reader.endArray();
+        writer.endArray();
+        break;
+      case BEGIN_OBJECT:
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+          writer.name(reader.nextName());
+          copyValue(reader, writer);
+        }
+        reader.endObject();
+        writer.endObject();
+        break;
+      case STRING:
+        writer.value(reader.nextString());
+        break;
+      case NUMBER:
+        writer.value(new BigDecimal(reader.nextString()));
+        break;
+      case BOOLEAN:
+        writer.value(reader.nextBoolean());
+        break;
+      case NULL:
+        reader.nextNull();
+        writer.nullValue();
+        break;
+      default:
+        throw new IllegalStateException("Unexpected token " + reader.peek());
+    }
+  }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.util.ManagedThread;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Copies the output of the preprocessor, passing only its line markers (lines starting with
+ * {@code "# "}, e.g. {@code # 12 "foo/bar.h" 2}) through a function that may rewrite them. All
+ * other bytes are copied through as they are, without being decoded into strings, which makes
+ * this much cheaper than a {@link com.facebook.buck.util.LineProcessorThread} for the many
+ * megabytes of code that a single source can preprocess to.
+ */
+public class LineMarkerRewritingThread extends ManagedThread {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream inputStream;
+  private final OutputStream outputStream;
+  private final Function<String, Iterable<String>> lineMarkerProcessor;
+
+  public LineMarkerRewritingThread(
+      InputStream inputStream,
+      OutputStream outputStream,
+      Function<String, Iterable<String>> lineMarkerProcessor) {
+    this.inputStream = Preconditions.checkNotNull(inputStream);
+    this.outputStream = Preconditions.checkNotNull(outputStream);
+    this.lineMarkerProcessor = Preconditions.checkNotNull(lineMarkerProcessor);
+  }
+
+  @Override
+  protected void run() throws IOException {
+    try (InputStream in = inputStream;
+         OutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE)) {
+      rewrite(in, out, lineMarkerProcessor);
+    }
+  }
+
+  /**
+   * Copies {@code in} to {@code out}, replacing each line that starts with {@code "# "} with the
+   * lines that {@code lineMarkerProcessor} returns for it. Neither stream is closed.
+   */
+  public static void rewrite(
+      InputStream in,
+      OutputStream out,
+      Function<String, Iterable<String>> lineMarkerProcessor) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    // The bytes of the directive being read, which may span several reads.
+    byte[] directive = new byte[256];
+    int directiveLength = 0;
+    boolean inDirective = false;
+    boolean atLineStart = true;
+
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      // The start of the bytes read that have yet to be copied through.
+      int copyStart = 0;
+      for (int i = 0; i < read; i++) {
+        byte b = buffer[i];
+        if (inDirective) {
+          if (b == '\n') {
+            writeDirective(directive, directiveLength, out, lineMarkerProcessor);
+            inDirective = false;
+            atLineStart = true;
+            copyStart = i + 1;
+          } else {
+            if (directiveLength == directive.length) {
+              directive = Arrays.copyOf(directive, directive.length * 2);
+            }
+            directive[directiveLength++] = b;
+          }
+        } else if (atLineStart && b == '#') {
+          out.write(buffer, copyStart, i - copyStart);
+          directive[0] = b;
+          directiveLength = 1;
+          inDirective = true;
+        } else {
+          atLineStart = b == '\n';
+        }
+      }
+      if (!inDirective) {
+        out.write(buffer, copyStart, read - copyStart);
+      }
+    }
+
+    if (inDirective) {
+      writeDirective(directive, directiveLength, out, lineMarkerProcessor);
+    }
+  }
+
+  private static void writeDirective(
+      byte[] directive,
+      int length,
+      OutputStream out,
+      Function<String, Iterable<String>> lineMarkerProcessor) throws IOException {
+    // Only line markers are rewritten; other directives, such as #pragma, are copied through.
+    if (length < 2 || directive[1] != ' ') {
+      out.write(directive, 0, length);
+      out.write('\n');
+      return;
+    }
+
+    String line = new String(directive, 0, length, StandardCharsets.UTF_8);
+    for (String processed : lineMarkerProcessor.apply(line)) {
+      out.write(processed.getBytes(StandardCharsets.UTF_8));
+      out.write('\n');
+    }
+  }
+}
@@ -18,8 +18,10 @@ package com.facebook.buck.cxx;
 
 import com.facebook.buck.io.FileScrubber;
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 import com.google.common.primitives.Shorts;
@@ -36,9 +38,22 @@ public class ObjectFileScrubbers {
 
   public static final byte[] END_OF_FILE_HEADER_MARKER = {0x60, 0x0A};
 
+  private static final ImmutableSet<String> THIN_ARCHIVE_INLINE_MEMBERS =
+      ImmutableSet.of("/", "//", "/SYM64/");
+
   private ObjectFileScrubbers() {}
 
   public static FileScrubber createDateUidGidScrubber(final byte[] expectedGlobalHeader) {
+    return createDateUidGidScrubber(expectedGlobalHeader, Optional.<byte[]>absent());
+  }
+
+  /**
+   * Like {@link #createDateUidGidScrubber(byte[])}, but also scrubs thin archives, which start
+   * with {@code expectedThinGlobalHeader} and hold only their symbol and name tables inline.
+   */
+  public static FileScrubber createDateUidGidScrubber(
+      final byte[] expectedGlobalHeader,
+      final Optional<byte[]> expectedThinGlobalHeader) {
     return new FileScrubber() {
 
       /**
@@ -53,14 +68,17 @@ public class ObjectFileScrubbers {
 
           // Grab the global header chunk and verify it's accurate.
           byte[] globalHeader = getBytes(map, expectedGlobalHeader.length);
+          boolean thin = expectedThinGlobalHeader.isPresent() &&
+              Arrays.equals(expectedThinGlobalHeader.get(), globalHeader);
           checkArchive(
-              Arrays.equals(expectedGlobalHeader, globalHeader),
+              thin || Arrays.equals(expectedGlobalHeader, globalHeader),
               "invalid global header");
 
           // Iterate over all the file meta-data entries, injecting zero's for timestamp,
           // UID, and GID.
           while (map.hasRemaining()) {
-        /* File name */ getBytes(map, 16);
+        /* File name */ String fileName =
+                new String(getBytes(map, 16), Charsets.US_ASCII).trim();
 
             // Inject 0's for the non-deterministic meta-data entries.
         /* File modification timestamp */ putIntAsDecimalString(map, 12, 0);
@@ -76,8 +94,11 @@ public class ObjectFileScrubbers {
                 Arrays.equals(END_OF_FILE_HEADER_MARKER, fileMagic),
                 "invalid file magic");
 
-            // Skip the file data.
-            map.position(map.position() + fileSize + fileSize % 2);
+            // Skip the file data.  The members of thin archives are stored elsewhere, and only
+            // the symbol table and the long file name table follow their headers.
+            if (!thin || THIN_ARCHIVE_INLINE_MEMBERS.contains(fileName)) {
+              map.position(map.position() + fileSize + fileSize % 2);
+            }
           }
 
           // Convert any low-level exceptions to `ArchiveExceptions`s.
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.cxx.elf.ElfSymbolTable;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Writes the interface of an ELF shared library, i.e. the symbols that it exports to the objects
+ * linked against it along with their versions, to a file whose contents only change when that
+ * interface does.
+ */
+public class SharedLibraryInterfaceStep implements Step {
+
+  // Values of the entries of the .gnu.version section, one for each symbol in .dynsym.
+  private static final int VER_NDX_LOCAL = 0;
+  private static final int VER_NDX_GLOBAL = 1;
+  private static final int VERSYM_HIDDEN = 0x8000;
+  private static final int VERSYM_VERSION = 0x7fff;
+
+  private static final int VER_FLG_BASE = 0x1;
+
+  private final ProjectFilesystem filesystem;
+  private final Path input;
+  private final Path output;
+
+  public SharedLibraryInterfaceStep(
+      ProjectFilesystem filesystem,
+      Path input,
+      Path output) {
+    this.filesystem = filesystem;
+    this.input = input;
+    this.output = output;
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "shared library interface of " + input + " @ " + output;
+  }
+
+  @Override
+  public String getShortName() {
+    return "shared_library_interface";
+  }
+
+  @Override
+  public int execute(ExecutionContext context) throws IOException {
+    Optional<ImmutableSortedSet<String>> symbols;
+    try (FileChannel channel = FileChannel.open(filesystem.resolve(input))) {
+      symbols =
+          getExportedSymbols(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    if (symbols.isPresent()) {
+      filesystem.writeLinesToPath(symbols.get(), output);
+    } else {
+      // We can only read the interface of ELF shared libraries, so anything else is represented
+      // by its contents instead, which is always correct, if not as stable.
+      filesystem.writeLinesToPath(ImmutableList.of(filesystem.computeSha1(input)), output);
+    }
+    return 0;
+  }
+
+  /**
+   * @return a description of each of the symbols which the ELF shared library in {@code buffer}
+   *     exports, or absent if it isn't one.
+   */
+  @VisibleForTesting
+  static Optional<ImmutableSortedSet<String>> getExportedSymbols(ByteBuffer buffer) {
+    if (!Elf.isElf(buffer)) {
+      return Optional.absent();
+    }
+    Elf elf = new Elf(buffer);
+    Optional<ElfSection> dynamicSymbols = elf.getSectionByName(".dynsym");
+    if (!dynamicSymbols.isPresent()) {
+      return Optional.absent();
+    }
+    ElfSection strings = elf.getSectionByIndex((int) dynamicSymbols.get().header.sh_link);
+    Optional<ElfSection> versions = elf.getSectionByName(".gnu.version");
+    ImmutableMap<Integer, String> versionNames = getVersionNames(elf);
+
+    ImmutableSortedSet.Builder<String> symbols = ImmutableSortedSet.naturalOrder();
+    ImmutableList<ElfSymbolTable.Entry> entries =
+        ElfSymbolTable.parse(elf.header.ei_class, dynamicSymbols.get().body).entries;
+    for (int i = 0; i < entries.size(); i++) {
+      ElfSymbolTable.Entry entry = entries.get(i);
+      int version = versions.isPresent() ?
+          versions.get().body.getShort(i * 2) & 0xffff :
+          VER_NDX_GLOBAL;
+      // Objects linked against the library can only refer to the global symbols it defines, and
+      // only to those it doesn't hide.
+      if (!entry.isDefined() ||
+          (version & VERSYM_VERSION) == VER_NDX_LOCAL ||
+          entry.getBinding() == ElfSymbolTable.STBind.STB_LOCAL ||
+          entry.getVisibility() == ElfSymbolTable.STVisibility.STV_HIDDEN ||
+          entry.getVisibility() == ElfSymbolTable.STVisibility.STV_INTERNAL) {
+        continue;
+      }
+      StringBuilder symbol = new StringBuilder()
+          .append(strings.lookupString(entry.st_name))
+          .append(' ').append(entry.getType())
+          .append(' ').append(entry.getBinding())
+          .append(' ').append(entry.getVisibility());
+      // The size of data is copied into the objects that refer to it, so it's part of the
+      // interface, unlike that of code.
+      if (entry.getType() == ElfSymbolTable.STType.STT_OBJECT ||
+          entry.getType() == ElfSymbolTable.STType.STT_COMMON ||
+          entry.getType() == ElfSymbolTable.STType.STT_TLS) {
+        symbol.append(' ').append(entry.st_size);
+      }
+      // Objects record the version of each symbol they're linked against, and the linker only
+      // binds to the default one, so both are part of the interface.
+      String versionName = versionNames.get(version & VERSYM_VERSION);
+      if (versionName != null) {
+        symbol
+            .append(' ').append((version & VERSYM_HIDDEN) != 0 ? "@" : "@@")
+            .append(versionName);
+      }
+      symbols.add(symbol.toString());
+    }
+    return Optional.of(symbols.build());
+  }
+
+  /**
+   * @return the name of each version defined in the {@code .gnu.version_d} section, keyed by the
+   *     index that {@code .gnu.version} refers to it by.
+   */
+  private static ImmutableMap<Integer, String> getVersionNames(Elf elf) {
+    Optional<ElfSection> definitions = elf.getSectionByName(".gnu.version_d");
+    if (!definitions.isPresent()) {
+      return ImmutableMap.of();
+    }
+    ElfSection strings = elf.getSectionByIndex((int) definitions.get().header.sh_link);
+    ByteBuffer body = definitions.get().body;
+
+    // Each Elf32_Verdef/Elf64_Verdef is followed by Verdaux entries, the first of which names it.
+    // Their layout is the same in both classes, and the entries are linked by relative offsets.
+    ImmutableMap.Builder<Integer, String> names = ImmutableMap.builder();
+    int offset = 0;
+    for (long i = 0; i < definitions.get().header.sh_info; i++) {
+      int flags = body.getShort(offset + 2) & 0xffff;
+      int index = body.getShort(offset + 4) & 0xffff;
+      int aux = body.getInt(offset + 12);
+      int next = body.getInt(offset + 16);
+      // The base definition names the library itself, which symbols refer to as unversioned.
+      if ((flags & VER_FLG_BASE) == 0) {
+        names.put(index, strings.lookupString(body.getInt(offset + aux) & 0xffffffffL));
+      }
+      if (next == 0) {
+        break;
+      }
+      offset += next;
+    }
+    return names.build();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SharedLibraryInterfaceStep)) {
+      return false;
+    }
+    SharedLibraryInterfaceStep that = (SharedLibraryInterfaceStep) obj;
+    return Objects.equal(this.input, that.input) && Objects.equal(this.output, that.output);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(input, output);
+  }
+
+}
@@ -43,6 +43,11 @@ public class UnknownArchiver implements Archiver {
     return ImmutableList.of();
   }
 
+  @Override
+  public boolean supportsThinArchives() {
+    return false;
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathResolver resolver) {
     return tool.getDeps(resolver);
@@ -46,6 +46,8 @@ public class ElfSection {
       buffer.position((int) header.sh_off);
       body = buffer.slice();
       body.limit((int) header.sh_size);
+      // Slices are always big-endian, so carry over the byte order of the ELF file.
+      body.order(buffer.order());
     }
 
     return new ElfSection(header, body);
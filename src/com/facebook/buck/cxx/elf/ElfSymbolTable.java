@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx.elf;
+
+import com.google.common.collect.ImmutableList;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encapsulates the entries of an ELF symbol table section (e.g. {@code .symtab} or
+ * {@code .dynsym}).
+ */
+// CHECKSTYLE.OFF: LocalVariableName
+// CHECKSTYLE.OFF: ParameterName
+public class ElfSymbolTable {
+
+  public final ImmutableList<Entry> entries;
+
+  ElfSymbolTable(ImmutableList<Entry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * @return the symbol table held in the body of the given section.
+   */
+  public static ElfSymbolTable parse(ElfHeader.EIClass eiClass, ByteBuffer buffer) {
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    int entrySize = eiClass == ElfHeader.EIClass.ELFCLASS32 ? 16 : 24;
+    buffer.position(0);
+    while (buffer.remaining() >= entrySize) {
+      entries.add(Entry.parse(eiClass, buffer));
+    }
+    return new ElfSymbolTable(entries.build());
+  }
+
+  /**
+   * Encapsulates the data in an ELF symbol table entry.
+   */
+  public static class Entry {
+
+    // Section index of symbols which are not defined in this file.
+    public static final int SHN_UNDEF = 0;
+
+    // CHECKSTYLE.OFF: MemberName
+    public final long st_name;
+    public final int st_info;
+    public final int st_other;
+    public final int st_shndx;
+    public final long st_value;
+    public final long st_size;
+    // CHECKSTYLE.ON: MemberName
+
+    Entry(
+        long st_name,
+        int st_info,
+        int st_other,
+        int st_shndx,
+        long st_value,
+        long st_size) {
+      this.st_name = st_name;
+      this.st_info = st_info;
+      this.st_other = st_other;
+      this.st_shndx = st_shndx;
+      this.st_value = st_value;
+      this.st_size = st_size;
+    }
+
+    /**
+     * @return either a 32- or 64-bit ELF symbol table entry parsed from the given buffer.
+     */
+    static Entry parse(ElfHeader.EIClass eiClass, ByteBuffer buffer) {
+      if (eiClass == ElfHeader.EIClass.ELFCLASS32) {
+        long st_name = buffer.getInt() & 0xffffffffL;
+        long st_value = buffer.getInt() & 0xffffffffL;
+        long st_size = buffer.getInt() & 0xffffffffL;
+        int st_info = buffer.get() & 0xff;
+        int st_other = buffer.get() & 0xff;
+        int st_shndx = buffer.getShort() & 0xffff;
+        return new Entry(st_name, st_info, st_other, st_shndx, st_value, st_size);
+      } else {
+        long st_name = buffer.getInt() & 0xffffffffL;
+        int st_info = buffer.get() & 0xff;
+        int st_other = buffer.get() & 0xff;
+        int st_shndx = buffer.getShort() & 0xffff;
+        long st_value = buffer.getLong();
+        long st_size = buffer.getLong();
+        return new Entry(st_name, st_info, st_other, st_shndx, st_value, st_size);
+      }
+    }
+
+    public STBind getBinding() {
+      return STBind.valueOf(st_info >> 4);
+    }
+
+    public STType getType() {
+      return STType.valueOf(st_info & 0xf);
+    }
+
+    public STVisibility getVisibility() {
+      return STVisibility.valueOf(st_other & 0x3);
+    }
+
+    public boolean isDefined() {
+      return st_shndx != SHN_UNDEF;
+    }
+
+  }
+
+  public static enum STBind {
+
+    STB_LOCAL(0),
+    STB_GLOBAL(1),
+    STB_WEAK(2),
+    STB_GNU_UNIQUE(10),
+
+    // Represents one of the OS/processor specific values.
+    STB_UNKNOWN(-1),
+    ;
+
+    private final int value;
+
+    private STBind(int value) {
+      this.value = value;
+    }
+
+    static STBind valueOf(int val) {
+      for (STBind bind : STBind.values()) {
+        if (bind.value == val) {
+          return bind;
+        }
+      }
+      return STB_UNKNOWN;
+    }
+
+  }
+
+  public static enum STType {
+
+    STT_NOTYPE(0),
+    STT_OBJECT(1),
+    STT_FUNC(2),
+    STT_SECTION(3),
+    STT_FILE(4),
+    STT_COMMON(5),
+    STT_TLS(6),
+    STT_GNU_IFUNC(10),
+
+    // Represents one of the OS/processor specific values.
+    STT_UNKNOWN(-1),
+    ;
+
+    private final int value;
+
+    private STType(int value) {
+      this.value = value;
+    }
+
+    static STType valueOf(int val) {
+      for (STType type : STType.values()) {
+        if (type.value == val) {
+          return type;
+        }
+      }
+      return STT_UNKNOWN;
+    }
+
+  }
+
+  public static enum STVisibility {
+
+    STV_DEFAULT(0),
+    STV_INTERNAL(1),
+    STV_HIDDEN(2),
+    STV_PROTECTED(3),
+    ;
+
+    private final int value;
+
+    private STVisibility(int value) {
+      this.value = value;
+    }
+
+    static STVisibility valueOf(int val) {
+      for (STVisibility visibility : STVisibility.values()) {
+        if (visibility.value == val) {
+          return visibility;
+        }
+      }
+      throw new IllegalStateException();
+    }
+
+  }
+
+}
+
+// CHECKSTYLE.ON: ParameterName
+// CHECKSTYLE.ON: LocalVariableName
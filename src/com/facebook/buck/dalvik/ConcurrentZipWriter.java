@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes zips whose entries are already in memory on a pool of threads, so that compressing one
+ * zip overlaps with deciding what goes into the next. Each zip is written exactly as it would be
+ * by a single thread. At most as many zips as there are threads wait to be written at a time, so
+ * that only a few zips are held in memory.
+ */
+class ConcurrentZipWriter {
+
+  /**
+   * An entry of a zip, and its uncompressed contents.
+   */
+  static class Entry {
+    private final String name;
+    private final byte[] contents;
+
+    Entry(String name, byte[] contents) {
+      this.name = name;
+      this.contents = contents;
+    }
+  }
+
+  private final int threadCount;
+  private final ExecutorService executor;
+  private final Deque<Future<Void>> pending = new ArrayDeque<>();
+
+  ConcurrentZipWriter(int threadCount) {
+    this.threadCount = Math.max(1, threadCount);
+    this.executor = MoreExecutors.newMultiThreadExecutor("zip-writer", this.threadCount);
+  }
+
+  /**
+   * Writes {@code entries} to {@code file} in order, waiting for earlier zips to be written first
+   * if too many are pending.
+   */
+  synchronized void write(final Path file, final ImmutableList<Entry> entries)
+      throws IOException {
+    pending.add(
+        executor.submit(
+            new Callable<Void>() {
+              @Override
+              public Void call() throws IOException {
+                writeZip(file, entries);
+                return null;
+              }
+            }));
+    while (pending.size() > threadCount) {
+      waitFor(pending.removeFirst());
+    }
+  }
+
+  /**
+   * Waits for every zip to be written, and stops the threads.
+   */
+  synchronized void finish() throws IOException {
+    try {
+      while (!pending.isEmpty()) {
+        waitFor(pending.removeFirst());
+      }
+    } finally {
+      for (Future<Void> future : pending) {
+        future.cancel(true);
+      }
+      pending.clear();
+      try {
+        MoreExecutors.shutdown(executor);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void writeZip(Path file, ImmutableList<Entry> entries) throws IOException {
+    try (ZipOutputStream out =
+             new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      for (Entry entry : entries) {
+        out.putNextEntry(new ZipEntry(entry.name));
+        out.write(entry.contents);
+      }
+    }
+  }
+
+  private static void waitFor(Future<Void> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing zips");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+}
@@ -21,26 +21,29 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.java.classes.FileLike;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * Helper to write a Zip file used by {@link DalvikAwareZipSplitter}.
+ * <p>
+ * Entries are kept in memory until the helper is closed, and then handed to a
+ * {@link ConcurrentZipWriter}, so that the zip is compressed while the splitter fills the next one.
  */
 public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
 
   private static final int MAX_METHOD_REFERENCES = 64 * 1024;
 
-  private final ZipOutputStream outStream;
+  private final Path outputFile;
+  private final ConcurrentZipWriter zipWriter;
+  private final ImmutableList.Builder<ConcurrentZipWriter.Entry> entries = ImmutableList.builder();
+  private final StringBuilder report = new StringBuilder();
   private final Set<String> entryNames = Sets.newHashSet();
   private final long linearAllocLimit;
   private final Path reportFile;
@@ -53,10 +56,10 @@ public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
       Path outputFile,
       long linearAllocLimit,
       Path reportDir,
-      DalvikStatsCache dalvikStatsCache)
-      throws IOException {
-    this.outStream =
-        new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(outputFile)));
+      DalvikStatsCache dalvikStatsCache,
+      ConcurrentZipWriter zipWriter) {
+    this.outputFile = outputFile;
+    this.zipWriter = zipWriter;
     this.linearAllocLimit = linearAllocLimit;
     this.reportFile = reportDir.resolve(outputFile.getFileName().toString() + ".txt");
     this.dalvikStatsCache = dalvikStatsCache;
@@ -91,9 +94,8 @@ public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
     // proguard seems to handle merging multiple -injars into a single -outjar.
     if (!containsEntry(fileLike)) {
       entryNames.add(name);
-      outStream.putNextEntry(new ZipEntry(name));
       try (InputStream in = fileLike.getInput()) {
-        ByteStreams.copy(in, outStream);
+        entries.add(new ConcurrentZipWriter.Entry(name, ByteStreams.toByteArray(in)));
       }
 
       // Make sure FileLike#getSize didn't lie (or we forgot to call canPutEntry).
@@ -103,15 +105,18 @@ public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
           name, stats.estimatedLinearAllocSize, linearAllocLimit);
       currentLinearAllocSize += stats.estimatedLinearAllocSize;
       currentMethodReferences.addAll(stats.methodReferences);
-      String report = String.format(
-          "%d %d %s\n",
-          stats.estimatedLinearAllocSize, stats.methodReferences.size(), name);
-      MorePaths.append(reportFile, report, UTF_8);
+      report.append(
+          String.format(
+              "%d %d %s\n",
+              stats.estimatedLinearAllocSize, stats.methodReferences.size(), name));
     }
   }
 
   @Override
   public void close() throws IOException {
-    outStream.close();
+    if (report.length() > 0) {
+      MorePaths.append(reportFile, report.toString(), UTF_8);
+    }
+    zipWriter.write(outputFile, entries.build());
   }
 }
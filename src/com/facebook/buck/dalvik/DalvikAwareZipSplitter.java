@@ -24,6 +24,7 @@ import com.facebook.buck.java.classes.DefaultClasspathTraverser;
 import com.facebook.buck.java.classes.FileLike;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
@@ -73,6 +74,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
   private final Path reportDir;
   private final long linearAllocLimit;
   private final DalvikStatsCache dalvikStatsCache;
+  private final int threadCount;
   private final DexSplitStrategy dexSplitStrategy;
   private final ImmutableSet<String> secondaryHeadSet;
   private final ImmutableSet<String> secondaryTailSet;
@@ -82,6 +84,9 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
   @Nullable
   private DalvikAwareOutputStreamHelper primaryOut;
 
+  @Nullable
+  private ConcurrentZipWriter zipWriter;
+
   /**
    * @see ZipSplitterFactory#newInstance(ProjectFilesystem, Set, Path, Path, String, Predicate,
    *     ImmutableSet, ImmutableSet, com.facebook.buck.dalvik.ZipSplitter.DexSplitStrategy,
@@ -100,7 +105,9 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       ImmutableSet<String> secondaryTailSet,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      Optional<DalvikStatsStore> statsStore,
+      int threadCount) {
     if (linearAllocLimit <= 0) {
       throw new HumanReadableException("linear_alloc_hard_limit must be greater than zero.");
     }
@@ -116,7 +123,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     this.reportDir = reportDir;
     this.dexSplitStrategy = dexSplitStrategy;
     this.linearAllocLimit = linearAllocLimit;
-    this.dalvikStatsCache = new DalvikStatsCache();
+    this.dalvikStatsCache = new DalvikStatsCache(statsStore, threadCount);
+    this.threadCount = threadCount;
   }
 
   public static DalvikAwareZipSplitter splitZip(
@@ -132,7 +140,9 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       ImmutableSet<String> secondaryTailSet,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      Optional<DalvikStatsStore> statsStore,
+      int threadCount) {
     return new DalvikAwareZipSplitter(
         filesystem,
         inFiles,
@@ -146,14 +156,28 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
         secondaryTailSet,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        statsStore,
+        threadCount);
   }
 
   @Override
   public List<Path> execute() throws IOException {
+    zipWriter = new ConcurrentZipWriter(threadCount);
+    try {
+      return split();
+    } finally {
+      zipWriter.finish();
+    }
+  }
+
+  private List<Path> split() throws IOException {
     ClasspathTraverser classpathTraverser = new DefaultClasspathTraverser();
     final Set<String> secondaryTail = new HashSet<String>();
 
+    // Estimate every class up front, in parallel, rather than one at a time as they are added.
+    dalvikStatsCache.precompute(filesystem, inFiles);
+
     // Start out by writing the primary zip and recording which entries were added to it.
     primaryOut = newZipOutput(outPrimary);
     secondaryDexWriter.reset();
@@ -244,11 +268,17 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     }
     primaryOut.close();
     secondaryDexWriter.close();
+    dalvikStatsCache.save();
     return secondaryDexWriter.getFiles();
   }
 
-  private DalvikAwareOutputStreamHelper newZipOutput(Path file) throws IOException {
-    return new DalvikAwareOutputStreamHelper(file, linearAllocLimit, reportDir, dalvikStatsCache);
+  private DalvikAwareOutputStreamHelper newZipOutput(Path file) {
+    return new DalvikAwareOutputStreamHelper(
+        file,
+        linearAllocLimit,
+        reportDir,
+        dalvikStatsCache,
+        Preconditions.checkNotNull(zipWriter));
   }
 
   private class MySecondaryDexHelper
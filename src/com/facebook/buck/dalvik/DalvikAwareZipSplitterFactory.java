@@ -17,6 +17,7 @@
 package com.facebook.buck.dalvik;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 
@@ -27,12 +28,29 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
 
   private final long linearAllocLimit;
   private final Set<String> wantedInPrimaryZip;
+  private final Optional<Path> statsStoreFile;
+  private final int threadCount;
 
   public DalvikAwareZipSplitterFactory(
       long linearAllocLimit,
       Set<String> wantedInPrimaryZip) {
+    this(linearAllocLimit, wantedInPrimaryZip, Optional.<Path>absent(), 1);
+  }
+
+  /**
+   * @param statsStoreFile absolute path of a {@link DalvikStatsStore} in which to keep the
+   *     linear alloc estimates of classes between builds.
+   * @param threadCount number of threads with which to estimate classes.
+   */
+  public DalvikAwareZipSplitterFactory(
+      long linearAllocLimit,
+      Set<String> wantedInPrimaryZip,
+      Optional<Path> statsStoreFile,
+      int threadCount) {
     this.linearAllocLimit = linearAllocLimit;
     this.wantedInPrimaryZip = wantedInPrimaryZip;
+    this.statsStoreFile = statsStoreFile;
+    this.threadCount = threadCount;
   }
 
   @Override
@@ -61,6 +79,10 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
         secondaryTailSet,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        statsStoreFile.isPresent() ?
+            Optional.of(DalvikStatsStore.forFile(statsStoreFile.get())) :
+            Optional.<DalvikStatsStore>absent(),
+        threadCount);
   }
 }
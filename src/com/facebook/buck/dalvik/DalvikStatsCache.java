@@ -16,22 +16,58 @@
 
 package com.facebook.buck.dalvik;
 
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.java.classes.ClasspathTraversal;
+import com.facebook.buck.java.classes.DefaultClasspathTraverser;
 import com.facebook.buck.java.classes.FileLike;
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.MapMaker;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Cache to memoize results from DalvikStatsTool.
+ * <p>
+ * When given a {@link DalvikStatsStore}, the stats of every class on a classpath can be computed
+ * up front by {@link #precompute(ProjectFilesystem, Set)}, in parallel and reusing the stats of
+ * classes whose contents were seen by an earlier build.
  */
 class DalvikStatsCache {
 
   private final ConcurrentMap<FileLike, DalvikStatsTool.Stats> cache;
+  private final Optional<DalvikStatsStore> store;
+  private final int threadCount;
+
+  /** Stats computed by {@link #precompute}, keyed by {@link #getKey(FileLike)}. */
+  private final ConcurrentMap<String, DalvikStatsTool.Stats> precomputed;
 
   DalvikStatsCache() {
-    cache = new MapMaker().weakKeys().makeMap();
+    this(Optional.<DalvikStatsStore>absent(), 1);
+  }
+
+  DalvikStatsCache(Optional<DalvikStatsStore> store, int threadCount) {
+    this.cache = new MapMaker().weakKeys().makeMap();
+    this.store = store;
+    this.threadCount = Math.max(1, threadCount);
+    this.precomputed = new ConcurrentHashMap<>();
   }
 
   DalvikStatsTool.Stats getStats(FileLike entry) {
@@ -42,7 +78,12 @@ class DalvikStatsCache {
       return DalvikStatsTool.Stats.ZERO;
     }
 
-    DalvikStatsTool.Stats stats = cache.get(entry);
+    DalvikStatsTool.Stats stats = precomputed.get(getKey(entry));
+    if (stats != null) {
+      return stats;
+    }
+
+    stats = cache.get(entry);
     if (stats != null) {
       return stats;
     }
@@ -57,4 +98,109 @@ class DalvikStatsCache {
       throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
     }
   }
+
+  /**
+   * Computes the stats of every class in {@code inFiles}, so that {@link #getStats(FileLike)}
+   * does not have to. Classes are read one at a time, but hashed and estimated on up to
+   * {@code threadCount} threads. Does nothing if there is neither a store nor more than one
+   * thread, as it would then only add a traversal.
+   */
+  void precompute(ProjectFilesystem filesystem, Set<Path> inFiles) throws IOException {
+    if (!store.isPresent() && threadCount == 1) {
+      return;
+    }
+
+    // Only read as far ahead as there are threads to estimate, so that the whole classpath is
+    // not held in memory at once.
+    final ExecutorService executor =
+        MoreExecutors.newMultiThreadExecutor("dalvik-stats", threadCount);
+    final Deque<Future<?>> pending = new ArrayDeque<>();
+    try {
+      new DefaultClasspathTraverser().traverse(
+          new ClasspathTraversal(inFiles, filesystem) {
+            @Override
+            public void visit(FileLike entry) throws IOException {
+              final String name = entry.getRelativePath();
+              if (!name.endsWith(".class")) {
+                return;
+              }
+              final String key = getKey(entry);
+              final byte[] contents;
+              try (InputStream is = entry.getInput()) {
+                contents = ByteStreams.toByteArray(is);
+              }
+              pending.add(
+                  executor.submit(
+                      new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                          precomputed.put(key, estimate(name, contents));
+                          return null;
+                        }
+                      }));
+              while (pending.size() > threadCount * 2) {
+                waitFor(pending.removeFirst());
+              }
+            }
+          });
+      while (!pending.isEmpty()) {
+        waitFor(pending.removeFirst());
+      }
+    } finally {
+      for (Future<?> future : pending) {
+        future.cancel(true);
+      }
+      try {
+        MoreExecutors.shutdown(executor);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Writes any stats that were computed for the first time to the store.
+   */
+  void save() throws IOException {
+    if (store.isPresent()) {
+      store.get().save();
+    }
+  }
+
+  private DalvikStatsTool.Stats estimate(String name, byte[] contents) throws IOException {
+    HashCode hash = Hashing.sha1().hashBytes(contents);
+    if (store.isPresent()) {
+      Optional<DalvikStatsTool.Stats> stored = store.get().get(hash);
+      if (stored.isPresent()) {
+        return stored.get();
+      }
+    }
+
+    DalvikStatsTool.Stats stats;
+    try {
+      stats = DalvikStatsTool.getEstimate(new ByteArrayInputStream(contents));
+    } catch (RuntimeException e) {
+      throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
+    }
+    if (store.isPresent()) {
+      store.get().put(hash, stats);
+    }
+    return stats;
+  }
+
+  private static void waitFor(Future<?> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while estimating linear alloc sizes");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static String getKey(FileLike entry) {
+    return entry.getContainer() + "!" + entry.getRelativePath();
+  }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link DalvikStatsTool.Stats} of classes, keyed by the hash of their contents, that are kept in
+ * a file so that they can be shared by every binary and every build. Only one instance exists per
+ * file in a process, so the daemon only reads the file once.
+ */
+public class DalvikStatsStore {
+
+  private static final Logger LOG = Logger.get(DalvikStatsStore.class);
+
+  /** Bump this whenever {@link DalvikStatsTool} changes its estimates. */
+  private static final int VERSION = 1;
+
+  /** Beyond this many entries, only the ones used since the file was read are kept. */
+  private static final int MAX_ENTRIES = 1000000;
+
+  private static final ConcurrentMap<Path, DalvikStatsStore> STORES = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final ConcurrentMap<HashCode, DalvikStatsTool.Stats> stats = new ConcurrentHashMap<>();
+  private final Set<HashCode> used =
+      Sets.newSetFromMap(new ConcurrentHashMap<HashCode, Boolean>());
+
+  private volatile boolean loaded = false;
+  private volatile boolean dirty = false;
+
+  @VisibleForTesting
+  DalvikStatsStore(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * @param file an absolute path.
+   */
+  public static DalvikStatsStore forFile(Path file) {
+    DalvikStatsStore store = STORES.get(file);
+    if (store == null) {
+      STORES.putIfAbsent(file, new DalvikStatsStore(file));
+      store = STORES.get(file);
+    }
+    return store;
+  }
+
+  Optional<DalvikStatsTool.Stats> get(HashCode classHash) {
+    ensureLoaded();
+    DalvikStatsTool.Stats result = stats.get(classHash);
+    if (result != null) {
+      used.add(classHash);
+    }
+    return Optional.fromNullable(result);
+  }
+
+  void put(HashCode classHash, DalvikStatsTool.Stats classStats) {
+    ensureLoaded();
+    used.add(classHash);
+    if (stats.put(classHash, classStats) == null) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Writes the stats to the file, if any have been added since it was read.
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty) {
+      return;
+    }
+
+    Map<HashCode, DalvikStatsTool.Stats> toSave = stats;
+    if (stats.size() > MAX_ENTRIES) {
+      toSave = new HashMap<>();
+      for (HashCode hash : used) {
+        toSave.put(hash, stats.get(hash));
+      }
+    }
+
+    // Write a temporary file that is moved over the real one, so that other processes never read
+    // a partly written file.
+    Files.createDirectories(file.getParent());
+    Path temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+             new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      write(toSave, out);
+    }
+    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    dirty = false;
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    synchronized (this) {
+      if (loaded) {
+        return;
+      }
+      if (Files.isRegularFile(file)) {
+        try (DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+          read(in, stats);
+        } catch (IOException | RuntimeException e) {
+          // This is only a cache, so estimate everything afresh.
+          LOG.warn(e, "Unable to read Dalvik stats from %s.", file);
+          stats.clear();
+        }
+      }
+      loaded = true;
+    }
+  }
+
+  /**
+   * The method references of all classes share few strings, so each string is written once in a
+   * table, and references refer to it by index.
+   */
+  private static void write(
+      Map<HashCode, DalvikStatsTool.Stats> toSave,
+      DataOutputStream out) throws IOException {
+    Map<String, Integer> stringIndexes = new HashMap<>();
+    List<String> strings = new ArrayList<>();
+    for (DalvikStatsTool.Stats classStats : toSave.values()) {
+      for (DalvikStatsTool.MethodReference reference : classStats.methodReferences) {
+        addString(reference.className, stringIndexes, strings);
+        addString(reference.methodName, stringIndexes, strings);
+        addString(reference.methodDesc, stringIndexes, strings);
+      }
+    }
+
+    out.writeInt(VERSION);
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+
+    out.writeInt(toSave.size());
+    for (Map.Entry<HashCode, DalvikStatsTool.Stats> entry : toSave.entrySet()) {
+      byte[] hash = entry.getKey().asBytes();
+      out.writeByte(hash.length);
+      out.write(hash);
+      DalvikStatsTool.Stats classStats = entry.getValue();
+      out.writeInt(classStats.estimatedLinearAllocSize);
+      out.writeInt(classStats.methodReferences.size());
+      for (DalvikStatsTool.MethodReference reference : classStats.methodReferences) {
+        out.writeInt(stringIndexes.get(reference.className));
+        out.writeInt(stringIndexes.get(reference.methodName));
+        out.writeInt(stringIndexes.get(reference.methodDesc));
+      }
+    }
+  }
+
+  private static void addString(
+      String string,
+      Map<String, Integer> stringIndexes,
+      List<String> strings) {
+    if (!stringIndexes.containsKey(string)) {
+      stringIndexes.put(string, strings.size());
+      strings.add(string);
+    }
+  }
+
+  private static void read(
+      DataInputStream in,
+      Map<HashCode, DalvikStatsTool.Stats> stats) throws IOException {
+    if (in.readInt() != VERSION) {
+      return;
+    }
+
+    String[] strings = new String[in.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = in.readUTF();
+    }
+
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      byte[] hash = new byte[in.readUnsignedByte()];
+      in.readFully(hash);
+      int estimatedLinearAllocSize = in.readInt();
+      ImmutableSet.Builder<DalvikStatsTool.MethodReference> references = ImmutableSet.builder();
+      int referenceCount = in.readInt();
+      for (int j = 0; j < referenceCount; j++) {
+        references.add(
+            new DalvikStatsTool.MethodReference(
+                strings[in.readInt()],
+                strings[in.readInt()],
+                strings[in.readInt()]));
+      }
+      stats.put(
+          HashCode.fromBytes(hash),
+          new DalvikStatsTool.Stats(estimatedLinearAllocSize, references.build()));
+    }
+  }
+}
@@ -24,7 +24,6 @@ import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.HasPostBuildSteps;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.collect.ImmutableList;
@@ -79,12 +78,12 @@ public class GoSymlinkTree extends AbstractBuildRule implements HasPostBuildStep
   @Override
   public ImmutableList<Step> getPostBuildSteps(
       BuildContext context, BuildableContext buildableContext) {
-    return ImmutableList.of(
-        new MakeCleanDirectoryStep(getProjectFilesystem(), root),
+    return ImmutableList.<Step>of(
         new SymlinkTreeStep(
             getProjectFilesystem(),
             root,
-            symlinkMap)
+            symlinkMap,
+            /* incremental */ true)
     );
   }
 
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Overwrites a file in place, leaving alone the bytes at the start of the file that are already
+ * the same as those written. Only the bytes from the first one that differs onwards are actually
+ * written, and the file is truncated to the number of bytes written when the stream is closed.
+ * <p>
+ * This makes rewriting a large file that has only changed towards its end much cheaper than
+ * writing it afresh, as comparing with what is already on disk only needs reads.
+ * <p>
+ * A file with other hard links to it is replaced by a new file rather than overwritten, so that
+ * what the other links point to (e.g. a copy in a build cache) is left as it was.
+ */
+public class IncrementalFileOutputStream extends OutputStream {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final FileChannel channel;
+  private final long originalSize;
+  private final ByteBuffer existing = ByteBuffer.allocate(BUFFER_SIZE);
+  private long position = 0;
+  private long unchangedBytes = -1;
+  private boolean closed = false;
+
+  public IncrementalFileOutputStream(Path file) throws IOException {
+    if (hasOtherLinks(file)) {
+      Files.delete(file);
+    }
+    this.channel = FileChannel.open(
+        file,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.originalSize = channel.size();
+  }
+
+  private static boolean hasOtherLinks(Path file) throws IOException {
+    if (!Files.exists(file, LinkOption.NOFOLLOW_LINKS) ||
+        !file.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+      return false;
+    }
+    return (Integer) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS) > 1;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (unchangedBytes == -1) {
+      int same = countUnchangedBytes(b, off, len);
+      position += same;
+      if (same == len) {
+        return;
+      }
+      unchangedBytes = position;
+      off += same;
+      len -= same;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /**
+   * @return how many of {@code b[off..off+len)} are the same as the bytes already in the file at
+   *     the current position.
+   */
+  private int countUnchangedBytes(byte[] b, int off, int len) throws IOException {
+    int same = 0;
+    while (same < len && position + same < originalSize) {
+      existing.clear();
+      existing.limit(
+          (int) Math.min(Math.min(BUFFER_SIZE, len - same), originalSize - position - same));
+      while (existing.hasRemaining()) {
+        if (channel.read(existing, position + same + existing.position()) == -1) {
+          throw new EOFException();
+        }
+      }
+      existing.flip();
+      while (existing.hasRemaining()) {
+        if (existing.get() != b[off + same]) {
+          return same;
+        }
+        same++;
+      }
+    }
+    return same;
+  }
+
+  /**
+   * @return the number of bytes at the start of the file that were left as they were. Only
+   *     meaningful once the stream has been closed.
+   */
+  public long getUnchangedBytes() {
+    return unchangedBytes == -1 ? position : unchangedBytes;
+  }
+
+  /**
+   * @return the number of bytes written to the stream.
+   */
+  public long getSize() {
+    return position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      channel.truncate(position);
+    } finally {
+      channel.close();
+    }
+  }
+}
@@ -62,6 +62,15 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     return false;
   }
 
+  /**
+   * Whether to keep class files between builds and only recompile the sources affected by a change.
+   * This doesn't change the output, so it isn't part of the rule key.
+   */
+  @Value.Default
+  public boolean isIncremental() {
+    return false;
+  }
+
   public abstract String getSourceLevel();
   @VisibleForTesting
   abstract String getTargetLevel();
@@ -217,6 +226,7 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
 
     builder.setVerbose(options.isVerbose());
     builder.setProductionBuild(options.isProductionBuild());
+    builder.setIncremental(options.isIncremental());
 
     builder.setJavacPath(options.getJavacPath());
     builder.setJavacJarPath(options.getJavacJarPath());
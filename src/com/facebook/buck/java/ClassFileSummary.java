@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import com.facebook.buck.java.abi.ClassAbiHasher;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.annotation.Nullable;
+
+/**
+ * The facts about a compiled class that incremental compilation needs: the source file it was
+ * compiled from, the classes it refers to and a hash of its ABI.
+ */
+class ClassFileSummary {
+
+  private final String className;
+  private final Optional<String> sourcePath;
+  private final ImmutableSortedSet<String> referencedClasses;
+  private final ImmutableSortedSet<String> supertypes;
+  private final HashCode abiHash;
+  private final boolean declaresConstants;
+
+  private ClassFileSummary(
+      String className,
+      Optional<String> sourcePath,
+      ImmutableSortedSet<String> referencedClasses,
+      ImmutableSortedSet<String> supertypes,
+      HashCode abiHash,
+      boolean declaresConstants) {
+    this.className = className;
+    this.sourcePath = sourcePath;
+    this.referencedClasses = referencedClasses;
+    this.supertypes = supertypes;
+    this.abiHash = abiHash;
+    this.declaresConstants = declaresConstants;
+  }
+
+  public static ClassFileSummary read(byte[] classFile) {
+    ClassReader reader = new ClassReader(classFile);
+    SummaryVisitor summaryVisitor = new SummaryVisitor();
+    ReferenceCollector referenceCollector = new ReferenceCollector();
+    reader.accept(
+        new RemappingClassAdapter(summaryVisitor, referenceCollector),
+        ClassReader.SKIP_FRAMES);
+
+    String className = reader.getClassName();
+    Optional<String> sourcePath = Optional.absent();
+    if (summaryVisitor.sourceFile != null) {
+      int lastSlash = className.lastIndexOf('/');
+      sourcePath = Optional.of(
+          lastSlash == -1 ?
+              summaryVisitor.sourceFile :
+              className.substring(0, lastSlash + 1) + summaryVisitor.sourceFile);
+    }
+
+    ImmutableSortedSet.Builder<String> supertypes = ImmutableSortedSet.naturalOrder();
+    if (reader.getSuperName() != null) {
+      supertypes.add(reader.getSuperName());
+    }
+    supertypes.add(reader.getInterfaces());
+
+    referenceCollector.references.remove(className);
+    return new ClassFileSummary(
+        className,
+        sourcePath,
+        ImmutableSortedSet.copyOf(referenceCollector.references),
+        supertypes.build(),
+        ClassAbiHasher.hash(classFile),
+        summaryVisitor.declaresConstants);
+  }
+
+  /**
+   * @return the internal name of the class, e.g. {@code com/example/Outer$Inner}.
+   */
+  public String getClassName() {
+    return className;
+  }
+
+  /**
+   * @return the path of the source file this class was compiled from, relative to its source root,
+   *     e.g. {@code com/example/Outer.java}. Absent if the class was compiled without debug info.
+   */
+  public Optional<String> getSourcePath() {
+    return sourcePath;
+  }
+
+  /**
+   * @return internal names of every other class that appears in this class's constant pool,
+   *     signatures or annotations.
+   */
+  public ImmutableSortedSet<String> getReferencedClasses() {
+    return referencedClasses;
+  }
+
+  /**
+   * @return internal names of the direct superclass and interfaces of this class.
+   */
+  public ImmutableSortedSet<String> getSupertypes() {
+    return supertypes;
+  }
+
+  public HashCode getAbiHash() {
+    return abiHash;
+  }
+
+  /**
+   * @return whether this class declares compile-time constants. javac inlines these into the
+   *     classes that use them, so such uses will not show up in {@link #getReferencedClasses()}.
+   */
+  public boolean declaresConstants() {
+    return declaresConstants;
+  }
+
+  private static class ReferenceCollector extends Remapper {
+    private final SortedSet<String> references = new TreeSet<>();
+
+    @Override
+    public String map(String typeName) {
+      references.add(typeName);
+      return typeName;
+    }
+  }
+
+  /**
+   * Records the source file and constants, and makes sure that the {@link RemappingClassAdapter}
+   * wrapping it visits every member (it skips members whose delegate visitor is null).
+   */
+  private static class SummaryVisitor extends ClassVisitor {
+    @Nullable
+    private String sourceFile;
+    private boolean declaresConstants;
+
+    public SummaryVisitor() {
+      super(Opcodes.ASM5);
+    }
+
+    @Override
+    public void visitSource(@Nullable String source, @Nullable String debug) {
+      this.sourceFile = source;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      return new AnnotationVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+          return this;
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        int access,
+        String name,
+        String desc,
+        String signature,
+        @Nullable Object value) {
+      if (value != null) {
+        declaresConstants = true;
+      }
+      return new FieldVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+          return SummaryVisitor.this.visitAnnotation(desc, visible);
+        }
+      };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        int access,
+        String name,
+        String desc,
+        String signature,
+        String[] exceptions) {
+      return new MethodVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+          return SummaryVisitor.this.visitAnnotation(desc, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(
+            int parameter,
+            String desc,
+            boolean visible) {
+          return SummaryVisitor.this.visitAnnotation(desc, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+          return SummaryVisitor.this.visitAnnotation(null, false);
+        }
+      };
+    }
+  }
+}
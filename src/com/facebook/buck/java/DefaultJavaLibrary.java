@@ -47,6 +47,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.shell.BashStep;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.CopyStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.TouchStep;
@@ -356,6 +357,37 @@ public class DefaultJavaLibrary extends AbstractBuildRule
       commands.add(new MakeCleanDirectoryStep(getProjectFilesystem(), scratchDir));
       workingDirectory = Optional.of(scratchDir);
 
+      // Annotation processors can generate sources from anywhere in the library, so libraries
+      // that use them are always compiled from scratch.
+      if (javacOptions.isIncremental() && javacOptions.getAnnotationProcessingParams().isEmpty()) {
+        Path incrementalDir = getPathToIncrementalCompilationDir(target);
+        Path incrementalClasses = incrementalDir.resolve("classes");
+        commands.add(new MkdirStep(getProjectFilesystem(), incrementalDir));
+        commands.add(
+            new IncrementalJavacStep(
+                incrementalClasses,
+                incrementalDir.resolve("state.json"),
+                workingDirectory,
+                getJavaSrcs(),
+                Optional.of(pathToSrcsList),
+                declaredClasspathEntries,
+                javacOptions,
+                target,
+                suggestBuildRules,
+                getResolver(),
+                getProjectFilesystem()));
+
+        // The incremental output directory must survive between builds, so copy its contents
+        // rather than letting later steps (such as postprocessing) modify it in place.
+        commands.add(
+            CopyStep.forDirectory(
+                getProjectFilesystem(),
+                incrementalClasses,
+                outputDirectory,
+                CopyStep.DirectoryMode.CONTENTS_ONLY));
+        return;
+      }
+
       JavacStep javacStep = new JavacStep(
           outputDirectory,
           workingDirectory,
@@ -392,6 +424,14 @@ public class DefaultJavaLibrary extends AbstractBuildRule
     return Sha1HashCode.of(hasher.hash().toString());
   }
 
+  /**
+   * @return directory path relative to the project root where class files and the dependency graph
+   *     are kept between builds when compiling incrementally.
+   */
+  private static Path getPathToIncrementalCompilationDir(BuildTarget target) {
+    return BuildTargets.getScratchPath(target, "lib__%s__incremental");
+  }
+
   private Path getPathToAbiOutputDir() {
     return BuildTargets.getGenPath(getBuildTarget(), "lib__%s__abi");
   }
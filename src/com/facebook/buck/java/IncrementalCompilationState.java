@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What an {@link IncrementalJavacStep} knows about the previous compilation of a library: the hash
+ * of every source file, the classes each one produced along with their ABI hashes, and the classes
+ * each one refers to. Together these form the per-class dependency graph used to decide which
+ * sources need to be recompiled.
+ */
+class IncrementalCompilationState {
+
+  private static final Logger LOG = Logger.get(IncrementalCompilationState.class);
+
+  private final String inputsHash;
+  private final ImmutableSortedMap<String, SourceRecord> sources;
+
+  @JsonCreator
+  public IncrementalCompilationState(
+      @JsonProperty("inputsHash") String inputsHash,
+      @JsonProperty("sources") Map<String, SourceRecord> sources) {
+    Preconditions.checkArgument(
+        inputsHash != null && sources != null,
+        "Incomplete incremental compilation state.");
+    this.inputsHash = inputsHash;
+    this.sources = ImmutableSortedMap.copyOf(sources);
+  }
+
+  /**
+   * @return a hash of everything other than the sources that affects the output of javac, such as
+   *     the options and the classpath. If this changes, nothing from the previous compilation can
+   *     be reused.
+   */
+  @JsonProperty
+  public String getInputsHash() {
+    return inputsHash;
+  }
+
+  /**
+   * @return records of each source file, keyed by its path relative to the project root.
+   */
+  @JsonProperty
+  public ImmutableSortedMap<String, SourceRecord> getSources() {
+    return sources;
+  }
+
+  /**
+   * @return the sources, other than {@code excluded}, that refer to any of {@code classNames}.
+   */
+  public ImmutableSortedSet<String> getSourcesReferencing(
+      Set<String> classNames,
+      Set<String> excluded) {
+    ImmutableSortedSet.Builder<String> dependents = ImmutableSortedSet.naturalOrder();
+    for (Map.Entry<String, SourceRecord> entry : sources.entrySet()) {
+      if (excluded.contains(entry.getKey())) {
+        continue;
+      }
+      if (!Sets.intersection(entry.getValue().getReferencedClasses(), classNames).isEmpty()) {
+        dependents.add(entry.getKey());
+      }
+    }
+    return dependents.build();
+  }
+
+  /**
+   * A class inherits the ABI of its supertypes, so its users must be recompiled whenever any of
+   * them changes, even though its own class file does not.
+   *
+   * @return {@code classNames} along with every class that directly or transitively extends or
+   *     implements one of them.
+   */
+  public ImmutableSortedSet<String> getClassesAndSubtypes(Set<String> classNames) {
+    Set<String> result = new TreeSet<>(classNames);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (SourceRecord record : sources.values()) {
+        for (Map.Entry<String, ImmutableSortedSet<String>> entry :
+            record.getClassSupertypes().entrySet()) {
+          if (!result.contains(entry.getKey()) &&
+              !Sets.intersection(entry.getValue(), result).isEmpty()) {
+            result.add(entry.getKey());
+            changed = true;
+          }
+        }
+      }
+    }
+    return ImmutableSortedSet.copyOf(result);
+  }
+
+  public static Optional<IncrementalCompilationState> readFrom(
+      ProjectFilesystem filesystem,
+      ObjectMapper mapper,
+      Path path) {
+    if (!filesystem.isFile(path)) {
+      return Optional.absent();
+    }
+    try (InputStream stream = filesystem.newFileInputStream(path)) {
+      return Optional.of(mapper.readValue(stream, IncrementalCompilationState.class));
+    } catch (IOException | RuntimeException e) {
+      // The state is only an optimisation, so fall back to a full compilation.
+      LOG.warn(e, "Unable to read incremental compilation state from %s.", path);
+      return Optional.absent();
+    }
+  }
+
+  public void writeTo(ProjectFilesystem filesystem, ObjectMapper mapper, Path path)
+      throws IOException {
+    try (OutputStream stream = filesystem.newFileOutputStream(path)) {
+      mapper.writeValue(stream, this);
+    }
+  }
+
+  /**
+   * The outcome of compiling a single source file.
+   */
+  public static class SourceRecord {
+    private final String contentHash;
+    private final ImmutableSortedMap<String, String> classAbiHashes;
+    private final ImmutableSortedSet<String> referencedClasses;
+    private final ImmutableSortedMap<String, ImmutableSortedSet<String>> classSupertypes;
+    private final boolean declaresConstants;
+
+    @JsonCreator
+    public SourceRecord(
+        @JsonProperty("contentHash") String contentHash,
+        @JsonProperty("classAbiHashes") Map<String, String> classAbiHashes,
+        @JsonProperty("referencedClasses") Set<String> referencedClasses,
+        @JsonProperty("classSupertypes") Map<String, ? extends Set<String>> classSupertypes,
+        @JsonProperty("declaresConstants") boolean declaresConstants) {
+      // State written by an older Buck lacks some fields, and can't be used to decide what to
+      // recompile.
+      Preconditions.checkArgument(
+          contentHash != null &&
+              classAbiHashes != null &&
+              referencedClasses != null &&
+              classSupertypes != null,
+          "Incomplete source record.");
+      this.contentHash = contentHash;
+      this.classAbiHashes = ImmutableSortedMap.copyOf(classAbiHashes);
+      this.referencedClasses = ImmutableSortedSet.copyOf(referencedClasses);
+      ImmutableSortedMap.Builder<String, ImmutableSortedSet<String>> supertypes =
+          ImmutableSortedMap.naturalOrder();
+      for (Map.Entry<String, ? extends Set<String>> entry : classSupertypes.entrySet()) {
+        supertypes.put(entry.getKey(), ImmutableSortedSet.copyOf(entry.getValue()));
+      }
+      this.classSupertypes = supertypes.build();
+      this.declaresConstants = declaresConstants;
+    }
+
+    /**
+     * @return the SHA-1 of the source file's contents.
+     */
+    @JsonProperty
+    public String getContentHash() {
+      return contentHash;
+    }
+
+    /**
+     * @return the ABI hash of every class compiled from this source, keyed by internal class name.
+     */
+    @JsonProperty
+    public ImmutableSortedMap<String, String> getClassAbiHashes() {
+      return classAbiHashes;
+    }
+
+    /**
+     * @return the internal names of the classes referred to by this source's classes.
+     */
+    @JsonProperty
+    public ImmutableSortedSet<String> getReferencedClasses() {
+      return referencedClasses;
+    }
+
+    /**
+     * @return the internal names of the direct superclass and interfaces of each class compiled
+     *     from this source, keyed by internal class name.
+     */
+    @JsonProperty
+    public ImmutableSortedMap<String, ImmutableSortedSet<String>> getClassSupertypes() {
+      return classSupertypes;
+    }
+
+    /**
+     * @return whether any class compiled from this source declares a compile-time constant.
+     */
+    @JsonProperty
+    public boolean getDeclaresConstants() {
+      return declaresConstants;
+    }
+
+    @JsonIgnore
+    public ImmutableSet<String> getClassNames() {
+      return classAbiHashes.keySet();
+    }
+  }
+}
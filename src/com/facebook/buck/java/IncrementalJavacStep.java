@@ -0,0 +1,428 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.java.IncrementalCompilationState.SourceRecord;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compiles a java library into a directory that persists between builds, recompiling only the
+ * sources that have changed along with the sources that refer to classes whose ABI has changed.
+ * <p>
+ * After each compilation the per-class dependency graph is recovered from the class files
+ * themselves (see {@link ClassFileSummary}) and stored next to them as an
+ * {@link IncrementalCompilationState}. Whenever the graph can't be trusted (the javac options or
+ * classpath have changed, the previous state is missing, a compile-time constant has changed or a
+ * class can't be attributed to its source file) every source is recompiled from scratch.
+ */
+public class IncrementalJavacStep implements Step {
+
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+
+  private final Path outputDirectory;
+  private final Path pathToState;
+  private final Optional<Path> workingDirectory;
+  private final ImmutableSortedSet<Path> javaSourceFilePaths;
+  private final Optional<Path> pathToSrcsList;
+  private final ImmutableSet<Path> declaredClasspathEntries;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final Optional<JavacStep.SuggestBuildRules> suggestBuildRules;
+  private final SourcePathResolver resolver;
+  private final ProjectFilesystem filesystem;
+
+  /**
+   * @param outputDirectory directory for class files. Unlike for a {@link JavacStep}, this must not
+   *     be cleaned before the step runs.
+   * @param pathToState file in which the dependency graph is kept between builds.
+   */
+  public IncrementalJavacStep(
+      Path outputDirectory,
+      Path pathToState,
+      Optional<Path> workingDirectory,
+      Set<Path> javaSourceFilePaths,
+      Optional<Path> pathToSrcsList,
+      Set<Path> declaredClasspathEntries,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      Optional<JavacStep.SuggestBuildRules> suggestBuildRules,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem) {
+    this.outputDirectory = outputDirectory;
+    this.pathToState = pathToState;
+    this.workingDirectory = workingDirectory;
+    this.javaSourceFilePaths = ImmutableSortedSet.copyOf(javaSourceFilePaths);
+    this.pathToSrcsList = pathToSrcsList;
+    this.declaredClasspathEntries = ImmutableSet.copyOf(declaredClasspathEntries);
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.suggestBuildRules = suggestBuildRules;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+  }
+
+  @Override
+  public int execute(ExecutionContext context) throws IOException, InterruptedException {
+    ImmutableSortedMap<String, String> sourceHashes = hashSources();
+    Optional<String> inputsHash = computeInputsHash();
+
+    if (inputsHash.isPresent() && filesystem.isDirectory(outputDirectory)) {
+      Optional<IncrementalCompilationState> previous = IncrementalCompilationState.readFrom(
+          filesystem,
+          context.getObjectMapper(),
+          pathToState);
+      if (previous.isPresent() && previous.get().getInputsHash().equals(inputsHash.get())) {
+        Optional<Integer> result = compileIncrementally(
+            context,
+            inputsHash.get(),
+            previous.get(),
+            sourceHashes);
+        if (result.isPresent()) {
+          return result.get();
+        }
+        LOG.debug("%s: falling back to a full compilation.", invokingRule);
+      }
+    }
+
+    return compileEverything(context, inputsHash, sourceHashes);
+  }
+
+  private int compileEverything(
+      ExecutionContext context,
+      Optional<String> inputsHash,
+      ImmutableSortedMap<String, String> sourceHashes)
+      throws IOException, InterruptedException {
+    filesystem.deleteFileAtPathIfExists(pathToState);
+    filesystem.deleteRecursivelyIfExists(outputDirectory);
+    filesystem.mkdirs(outputDirectory);
+
+    int exitCode = runJavac(context, sourceHashes.keySet());
+    if (exitCode != 0 || !inputsHash.isPresent()) {
+      return exitCode;
+    }
+
+    Optional<ImmutableMap<String, SourceRecord>> records = summarizeClasses(
+        sourceHashes,
+        sourceHashes.keySet(),
+        ImmutableSet.<String>of());
+    if (records.isPresent()) {
+      new IncrementalCompilationState(inputsHash.get(), records.get())
+          .writeTo(filesystem, context.getObjectMapper(), pathToState);
+    }
+    return 0;
+  }
+
+  /**
+   * @return the exit code of the compilation, or absent if the previous state could not be used
+   *     and every source must be recompiled.
+   */
+  private Optional<Integer> compileIncrementally(
+      ExecutionContext context,
+      String inputsHash,
+      IncrementalCompilationState previous,
+      ImmutableSortedMap<String, String> sourceHashes)
+      throws IOException, InterruptedException {
+    SortedMap<String, SourceRecord> records = new TreeMap<>(previous.getSources());
+
+    SortedSet<String> toCompile = new TreeSet<>();
+    for (Map.Entry<String, String> entry : sourceHashes.entrySet()) {
+      SourceRecord record = records.get(entry.getKey());
+      if (record == null || !record.getContentHash().equals(entry.getValue())) {
+        toCompile.add(entry.getKey());
+      }
+    }
+    SortedSet<String> toRemove = new TreeSet<>(toCompile);
+    toRemove.addAll(Sets.difference(records.keySet(), sourceHashes.keySet()));
+
+    if (toRemove.isEmpty()) {
+      LOG.debug("%s: no sources have changed.", invokingRule);
+      return Optional.of(0);
+    }
+
+    // If anything goes wrong from here on, the next build must start from scratch.
+    filesystem.deleteFileAtPathIfExists(pathToState);
+
+    Set<String> compiled = new TreeSet<>();
+    while (!toRemove.isEmpty()) {
+      Map<String, String> oldAbiHashes = new HashMap<>();
+      boolean constantsMayHaveChanged = false;
+      for (String source : toRemove) {
+        SourceRecord record = records.remove(source);
+        if (record == null) {
+          continue;
+        }
+        oldAbiHashes.putAll(record.getClassAbiHashes());
+        constantsMayHaveChanged |= record.getDeclaresConstants();
+        for (String className : record.getClassNames()) {
+          filesystem.deleteFileAtPathIfExists(outputDirectory.resolve(className + ".class"));
+        }
+      }
+
+      Map<String, String> newAbiHashes = new HashMap<>();
+      if (!toCompile.isEmpty()) {
+        LOG.debug("%s: recompiling %d of %d sources.",
+            invokingRule,
+            toCompile.size(),
+            sourceHashes.size());
+        int exitCode = runJavac(context, toCompile);
+        if (exitCode != 0) {
+          return Optional.of(exitCode);
+        }
+
+        ImmutableSet.Builder<String> unchangedClasses = ImmutableSet.builder();
+        for (SourceRecord record : records.values()) {
+          unchangedClasses.addAll(record.getClassNames());
+        }
+        Optional<ImmutableMap<String, SourceRecord>> newRecords = summarizeClasses(
+            sourceHashes,
+            toCompile,
+            unchangedClasses.build());
+        if (!newRecords.isPresent()) {
+          return Optional.absent();
+        }
+        for (SourceRecord record : newRecords.get().values()) {
+          newAbiHashes.putAll(record.getClassAbiHashes());
+          constantsMayHaveChanged |= record.getDeclaresConstants();
+        }
+        records.putAll(newRecords.get());
+        compiled.addAll(toCompile);
+      }
+
+      Set<String> changedAbis = new TreeSet<>();
+      for (String className : Sets.union(oldAbiHashes.keySet(), newAbiHashes.keySet())) {
+        String oldHash = oldAbiHashes.get(className);
+        if (oldHash == null || !oldHash.equals(newAbiHashes.get(className))) {
+          changedAbis.add(className);
+        }
+      }
+      if (changedAbis.isEmpty()) {
+        break;
+      }
+
+      // javac inlines compile-time constants, so their users can't be found from the class files.
+      if (constantsMayHaveChanged) {
+        return Optional.absent();
+      }
+
+      IncrementalCompilationState current = new IncrementalCompilationState(inputsHash, records);
+      toCompile = current.getSourcesReferencing(
+          current.getClassesAndSubtypes(changedAbis),
+          compiled);
+      toRemove = new TreeSet<>(toCompile);
+    }
+
+    new IncrementalCompilationState(inputsHash, records)
+        .writeTo(filesystem, context.getObjectMapper(), pathToState);
+    return Optional.of(0);
+  }
+
+  private int runJavac(ExecutionContext context, Set<String> sources)
+      throws IOException, InterruptedException {
+    ImmutableSet.Builder<Path> sourcePaths = ImmutableSet.builder();
+    for (String source : sources) {
+      sourcePaths.add(Paths.get(source));
+    }
+    return new JavacStep(
+        outputDirectory,
+        workingDirectory,
+        sourcePaths.build(),
+        pathToSrcsList,
+        ImmutableSet.<Path>builder()
+            .add(outputDirectory)
+            .addAll(declaredClasspathEntries)
+            .build(),
+        javacOptions,
+        invokingRule,
+        suggestBuildRules,
+        resolver,
+        filesystem)
+        .execute(context);
+  }
+
+  /**
+   * Reads every class file in the output directory which doesn't belong to an unchanged source and
+   * attributes it to one of the sources that were just compiled.
+   *
+   * @return new records for the compiled sources, or absent if a class file could not be
+   *     attributed to exactly one source.
+   */
+  private Optional<ImmutableMap<String, SourceRecord>> summarizeClasses(
+      Map<String, String> sourceHashes,
+      Set<String> compiledSources,
+      final ImmutableSet<String> unchangedClasses) throws IOException {
+    Map<String, Map<String, String>> abiHashes = new TreeMap<>();
+    Map<String, Set<String>> references = new TreeMap<>();
+    Map<String, Map<String, Set<String>>> supertypes = new TreeMap<>();
+    Set<String> declaringConstants = new TreeSet<>();
+    for (String source : compiledSources) {
+      abiHashes.put(source, new TreeMap<String, String>());
+      references.put(source, new TreeSet<String>());
+      supertypes.put(source, new TreeMap<String, Set<String>>());
+    }
+
+    ImmutableSet<Path> classFiles = filesystem.getFilesUnderPath(
+        outputDirectory,
+        new Predicate<Path>() {
+          @Override
+          public boolean apply(Path input) {
+            String name = outputDirectory.relativize(input).toString();
+            return name.endsWith(".class") &&
+                !unchangedClasses.contains(
+                    name.substring(0, name.length() - ".class".length())
+                        .replace(input.getFileSystem().getSeparator(), "/"));
+          }
+        });
+
+    for (Path classFile : classFiles) {
+      ClassFileSummary summary;
+      try (InputStream stream = filesystem.newFileInputStream(classFile)) {
+        summary = ClassFileSummary.read(ByteStreams.toByteArray(stream));
+      }
+
+      Optional<String> source = findSource(summary, compiledSources);
+      if (!source.isPresent()) {
+        LOG.debug(
+            "%s: unable to find the source for %s.",
+            invokingRule,
+            summary.getClassName());
+        return Optional.absent();
+      }
+
+      abiHashes.get(source.get()).put(summary.getClassName(), summary.getAbiHash().toString());
+      references.get(source.get()).addAll(summary.getReferencedClasses());
+      supertypes.get(source.get()).put(summary.getClassName(), summary.getSupertypes());
+      if (summary.declaresConstants()) {
+        declaringConstants.add(source.get());
+      }
+    }
+
+    ImmutableMap.Builder<String, SourceRecord> records = ImmutableMap.builder();
+    for (String source : compiledSources) {
+      Set<String> ownClasses = abiHashes.get(source).keySet();
+      records.put(
+          source,
+          new SourceRecord(
+              sourceHashes.get(source),
+              abiHashes.get(source),
+              Sets.difference(references.get(source), ownClasses),
+              supertypes.get(source),
+              declaringConstants.contains(source)));
+    }
+    return Optional.of(records.build());
+  }
+
+  @VisibleForTesting
+  static Optional<String> findSource(ClassFileSummary summary, Set<String> candidates) {
+    if (!summary.getSourcePath().isPresent()) {
+      return Optional.absent();
+    }
+    Path relativePath = Paths.get(summary.getSourcePath().get());
+
+    Optional<String> found = Optional.absent();
+    for (String candidate : candidates) {
+      if (Paths.get(candidate).endsWith(relativePath)) {
+        if (found.isPresent()) {
+          return Optional.absent();
+        }
+        found = Optional.of(candidate);
+      }
+    }
+    return found;
+  }
+
+  private ImmutableSortedMap<String, String> hashSources() throws IOException {
+    ImmutableSortedMap.Builder<String, String> hashes = ImmutableSortedMap.naturalOrder();
+    for (Path source : javaSourceFilePaths) {
+      hashes.put(source.toString(), filesystem.computeSha1(source));
+    }
+    return hashes.build();
+  }
+
+  /**
+   * @return a hash of the javac options and classpath, or absent if incremental compilation is not
+   *     possible for this library.
+   */
+  private Optional<String> computeInputsHash() throws IOException {
+    for (Path source : javaSourceFilePaths) {
+      if (!source.toString().endsWith(".java")) {
+        // Sources from zips and jars can't be recompiled one by one.
+        return Optional.absent();
+      }
+    }
+
+    Hasher hasher = Hashing.sha1().newHasher();
+    ImmutableList.Builder<String> options = ImmutableList.builder();
+    javacOptions.appendOptionsToList(options, filesystem.getAbsolutifier());
+    for (String option : options.build()) {
+      hasher.putString(option, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    hasher.putString(javacOptions.getJavac().getVersion().toString(), StandardCharsets.UTF_8);
+
+    for (Path entry : ImmutableSortedSet.copyOf(declaredClasspathEntries)) {
+      if (!filesystem.isFile(entry)) {
+        // Hashing the contents of directories would cost as much as we'd save.
+        return Optional.absent();
+      }
+      hasher.putString(entry.toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+      hasher.putString(filesystem.computeSha1(entry), StandardCharsets.UTF_8);
+    }
+    return Optional.of(hasher.hash().toString());
+  }
+
+  @Override
+  public String getShortName() {
+    return javacOptions.getJavac().getShortName();
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "%s (incremental) %s",
+        getShortName(),
+        outputDirectory);
+  }
+}
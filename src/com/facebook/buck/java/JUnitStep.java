@@ -23,6 +23,7 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.test.TestRunnerWorkerPool;
 import com.facebook.buck.test.selectors.TestSelectorList;
 import com.facebook.buck.util.BuckConstant;
 import com.facebook.buck.util.ProcessExecutor;
@@ -37,10 +38,17 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -57,6 +65,12 @@ public class JUnitStep extends ShellStep {
   static final String TESTNG_TEST_RUNNER_CLASS_NAME =
       "com.facebook.buck.junit.TestNGMain";
 
+  // The classes that JUnitMain and TestNGMain delegate to, which pooled JVMs invoke directly.
+  private static final String JUNIT_RUNNER_CLASS_NAME = "com.facebook.buck.junit.JUnitRunner";
+  private static final String TESTNG_RUNNER_CLASS_NAME = "com.facebook.buck.junit.TestNGRunner";
+  private static final String TEST_RUNNER_WORKER_CLASS_NAME =
+      "com.facebook.buck.junit.TestRunnerWorker";
+
   private static final Path TESTRUNNER_CLASSES =
       Paths.get(
           System.getProperty(
@@ -91,6 +105,7 @@ public class JUnitStep extends ShellStep {
   private final TestType type;
   private final Optional<Long> testRuleTimeoutMs;
   private final Optional<String> pathToJavaAgent;
+  private final Optional<TestRunnerWorkerPool> testRunnerWorkerPool;
 
   // Set when the junit command times out.
   private boolean hasTimedOut = false;
@@ -115,6 +130,8 @@ public class JUnitStep extends ShellStep {
    * @param testClassNames the fully qualified names of the Java tests to run
    * @param directoryForTestResults directory where test results should be written
    * @param tmpDirectory directory tests can use for local file scratch space.
+   * @param testRunnerWorkerPool if present, the tests are run in one of its JVMs whenever they do
+   *     not need a JVM of their own.
    */
   public JUnitStep(
       ProjectFilesystem filesystem,
@@ -134,7 +151,8 @@ public class JUnitStep extends ShellStep {
       Optional<Long> testRuleTimeoutMs,
       Optional<Level> stdOutLogLevel,
       Optional<Level> stdErrLogLevel,
-      Optional<String> pathToJavaAgent) {
+      Optional<String> pathToJavaAgent,
+      Optional<TestRunnerWorkerPool> testRunnerWorkerPool) {
     this(
         filesystem,
         classpathEntries,
@@ -154,8 +172,8 @@ public class JUnitStep extends ShellStep {
         testRuleTimeoutMs,
         stdOutLogLevel,
         stdErrLogLevel,
-        pathToJavaAgent
-        );
+        pathToJavaAgent,
+        testRunnerWorkerPool);
   }
 
   @VisibleForTesting
@@ -178,7 +196,8 @@ public class JUnitStep extends ShellStep {
       Optional<Long> testRuleTimeoutMs,
       Optional<Level> stdOutLogLevel,
       Optional<Level> stdErrLogLevel,
-      Optional<String> pathToJavaAgent) {
+      Optional<String> pathToJavaAgent,
+      Optional<TestRunnerWorkerPool> testRunnerWorkerPool) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.classpathEntries = ImmutableSet.copyOf(classpathEntries);
@@ -199,6 +218,7 @@ public class JUnitStep extends ShellStep {
     this.stdOutLogLevel = stdOutLogLevel;
     this.stdErrLogLevel = stdErrLogLevel;
     this.pathToJavaAgent = pathToJavaAgent;
+    this.testRunnerWorkerPool = testRunnerWorkerPool;
   }
 
   @Override
@@ -293,6 +313,17 @@ public class JUnitStep extends ShellStep {
       args.add("--output", directoryForTestResults.get().toString());
     }
 
+    args.addAll(getTestRunnerArgs(context));
+
+    return args.build();
+  }
+
+  /**
+   * @return the arguments for the test runner, other than the output directory.
+   */
+  private ImmutableList<String> getTestRunnerArgs(ExecutionContext context) {
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+
     // Add the default test timeout if --debug flag is not set
     long timeout = isDebugEnabled ? 0 : context.getDefaultTestTimeoutMillis();
     args.add("--default-test-timeout", String.valueOf(timeout));
@@ -319,6 +350,140 @@ public class JUnitStep extends ShellStep {
     return args.build();
   }
 
+  @Override
+  public int execute(ExecutionContext context) throws InterruptedException {
+    if (!testRunnerWorkerPool.isPresent() || !canRunInPooledJvm(context)) {
+      return super.execute(context);
+    }
+    try {
+      return executeInPooledJvm(context, testRunnerWorkerPool.get());
+    } catch (IOException e) {
+      // Tests that take down their JVM, e.g. by calling System.exit(), lose their results, so
+      // give them a JVM of their own.
+      LOG.warn(e, "Test runner worker failed; rerunning %s in a new JVM.", testClassNames);
+      return super.execute(context);
+    }
+  }
+
+  /**
+   * Pooled JVMs share their flags and environment, so only tests that do not need anything special
+   * from theirs can run in one.
+   */
+  private boolean canRunInPooledJvm(ExecutionContext context) {
+    return vmArgs.isEmpty() &&
+        nativeLibsEnvironment.isEmpty() &&
+        !isCodeCoverageEnabled &&
+        !isDebugEnabled &&
+        !pathToJavaAgent.isPresent() &&
+        directoryForTestResults.isPresent() &&
+        !context.getVerbosity().shouldUseVerbosityFlagIfAvailable();
+  }
+
+  private int executeInPooledJvm(ExecutionContext context, TestRunnerWorkerPool pool)
+      throws IOException {
+    TestRunnerWorkerPool.Worker worker = pool.acquire(
+        ImmutableList.of(
+            "java",
+            // Lets the worker change its environment for each target on Java 9 and later, while
+            // older JVMs ignore these flags.
+            "-XX:+IgnoreUnrecognizedVMOptions",
+            "--add-opens=java.base/java.lang=ALL-UNNAMED",
+            "--add-opens=java.base/java.util=ALL-UNNAMED",
+            String.format("-Dbuck.testrunner_classes=%s", testRunnerClasspath),
+            "-classpath",
+            testRunnerClasspath.toString(),
+            TEST_RUNNER_WORKER_CLASS_NAME),
+        context.getEnvironment());
+    boolean reusable = false;
+    try {
+      worker.setReadTimeout(testRuleTimeoutMs.or(0L));
+
+      DataOutputStream output = worker.getOutput();
+      writeString(
+          output,
+          TestType.JUNIT == type ? JUNIT_RUNNER_CLASS_NAME : TESTNG_RUNNER_CLASS_NAME);
+      writeStrings(output, classpathEntries);
+      ImmutableList.Builder<String> properties = ImmutableList.builder();
+      for (Map.Entry<String, String> property : getSystemProperties().entrySet()) {
+        properties.add(property.getKey(), property.getValue());
+      }
+      writeStrings(output, properties.build());
+      // The same environment, including TMP, as the test runner would get in a JVM of its own.
+      Map<String, String> environment = new HashMap<>();
+      setProcessEnvironment(context, environment, workingDirectory.toFile());
+      ImmutableList.Builder<String> environmentVariables = ImmutableList.builder();
+      for (Map.Entry<String, String> variable : environment.entrySet()) {
+        environmentVariables.add(variable.getKey(), variable.getValue());
+      }
+      writeStrings(output, environmentVariables.build());
+      writeStrings(output, getTestRunnerArgs(context));
+      output.flush();
+
+      DataInputStream input = worker.getInput();
+      if (!input.readBoolean()) {
+        throw new IOException("Test runner worker was unable to set the test's environment.");
+      }
+
+      // The results come back as the contents of the files the runner would have written, which
+      // are put where a runner in its own JVM would have left them.
+      boolean retire = input.readBoolean();
+      int resultCount = input.readInt();
+      for (int i = 0; i < resultCount; i++) {
+        Path name = Paths.get(readString(input)).getFileName();
+        byte[] contents = new byte[input.readInt()];
+        input.readFully(contents);
+        filesystem.writeBytesToPath(contents, directoryForTestResults.get().resolve(name));
+      }
+      reusable = !retire;
+      return 0;
+    } catch (SocketTimeoutException e) {
+      // As with a JVM of its own, let the result interpreter report the timeout.
+      warnUser(context, "Test has timed out!");
+      hasTimedOut = true;
+      return 0;
+    } finally {
+      pool.release(worker, reusable);
+    }
+  }
+
+  private ImmutableMap<String, String> getSystemProperties() {
+    ImmutableMap.Builder<String, String> properties = ImmutableMap.builder();
+    if (tmpDirectory.isPresent()) {
+      properties.put("java.io.tmpdir", filesystem.resolve(tmpDirectory.get()).toString());
+    }
+    properties.put("buck.testrunner_classes", testRunnerClasspath.toString());
+    properties.put(BUILD_ID_PROPERTY, buildId.toString());
+    properties.put(MODULE_BASE_PATH_PROPERTY, modulePath.toString());
+    if (stdOutLogLevel.isPresent()) {
+      properties.put(STD_OUT_LOG_LEVEL_PROPERTY, stdOutLogLevel.get().toString());
+    }
+    if (stdErrLogLevel.isPresent()) {
+      properties.put(STD_ERR_LOG_LEVEL_PROPERTY, stdErrLogLevel.get().toString());
+    }
+    return properties.build();
+  }
+
+  private static void writeStrings(DataOutputStream output, Collection<String> strings)
+      throws IOException {
+    output.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(output, string);
+    }
+  }
+
+  // Matches TestRunnerWorker, which avoids DataOutput.writeUTF()'s 64k limit.
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
   @Override
   public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
     ImmutableMap.Builder<String, String> env = ImmutableMap.builder();
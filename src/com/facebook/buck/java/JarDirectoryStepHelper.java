@@ -24,10 +24,14 @@ import com.facebook.buck.io.DirectoryTraversal;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.concurrent.MoreExecutors;
 import com.facebook.buck.zip.CustomZipOutputStream;
+import com.facebook.buck.zip.RawZipEntry;
 import com.facebook.buck.zip.ZipOutputStreams;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -35,13 +39,22 @@ import com.google.common.io.ByteStreams;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -73,25 +86,47 @@ public class JarDirectoryStepHelper {
     manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
 
     Path absoluteOutputPath = filesystem.getPathForRelativePath(pathToOutputFile);
+    ImmutableList.Builder<Path> zips = ImmutableList.builder();
+    for (Path entry : entriesToJar) {
+      Path file = filesystem.getPathForRelativePath(entry);
+      if (Files.isRegularFile(file)) {
+        Preconditions.checkArgument(
+            !file.equals(absoluteOutputPath),
+            "Trying to put file %s into itself",
+            file);
+        zips.add(file);
+      }
+    }
+
     try (CustomZipOutputStream outputFile = ZipOutputStreams.newOutputStream(
-        absoluteOutputPath, APPEND_TO_ZIP)) {
+        absoluteOutputPath, APPEND_TO_ZIP);
+         ZipReadAhead readAhead =
+             new ZipReadAhead(zips.build(), context.getConcurrencyLimit().threadLimit)) {
 
       Set<String> alreadyAddedEntries = Sets.newHashSet();
       for (Path entry : entriesToJar) {
         Path file = filesystem.getPathForRelativePath(entry);
         if (Files.isRegularFile(file)) {
-          Preconditions.checkArgument(
-              !file.equals(absoluteOutputPath),
-              "Trying to put file %s into itself",
-              file);
           // Assume the file is a ZIP/JAR file.
-          copyZipEntriesToJar(
-              file,
-              outputFile,
-              manifest,
-              alreadyAddedEntries,
-              context.getBuckEventBus(),
-              blacklist);
+          Optional<ImmutableList<RawZipEntry>> rawEntries = readAhead.next(file);
+          if (rawEntries.isPresent()) {
+            copyRawZipEntriesToJar(
+                file,
+                rawEntries.get(),
+                outputFile,
+                manifest,
+                alreadyAddedEntries,
+                context.getBuckEventBus(),
+                blacklist);
+          } else {
+            copyZipEntriesToJar(
+                file,
+                outputFile,
+                manifest,
+                alreadyAddedEntries,
+                context.getBuckEventBus(),
+                blacklist);
+          }
         } else if (Files.isDirectory(file)) {
           addFilesInDirectoryToJar(
               file,
@@ -170,7 +205,6 @@ public class JarDirectoryStepHelper {
       BuckEventBus eventBus,
       Iterable<Pattern> blacklist) throws IOException {
     try (ZipFile zip = new ZipFile(file.toFile())) {
-      zipEntryLoop:
       for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
         ZipEntry entry = entries.nextElement();
         String entryName = entry.getName();
@@ -181,30 +215,10 @@ public class JarDirectoryStepHelper {
           continue;
         }
 
-        // We're in the process of merging a bunch of different jar files. These typically contain
-        // just ".class" files and the manifest, but they can also include things like license files
-        // from third party libraries and config files. We should include those license files within
-        // the jar we're creating. Extracting them is left as an exercise for the consumer of the
-        // jar.  Because we don't know which files are important, the only ones we skip are
-        // duplicate class files.
-        if (!isDuplicateAllowed(entryName) && !alreadyAddedEntries.add(entryName)) {
-          // Duplicate entries. Skip.
-          eventBus.post(ConsoleEvent.create(
-                  determineSeverity(entry),
-                  "Duplicate found when adding file '%s' to jar '%s'",
-                  entryName,
-                  file.toString()));
+        if (!shouldCopyEntry(file, entry, alreadyAddedEntries, eventBus, blacklist)) {
           continue;
         }
 
-        for (Pattern p : blacklist) {
-          if (p.matcher(entryName).matches()) {
-            eventBus.post(ConsoleEvent.create(
-                    Level.FINE, "Skipping adding file to jar: %s", entryName));
-            continue zipEntryLoop;
-          }
-        }
-
         ZipEntry newEntry = new ZipEntry(entry);
 
         // For deflated entries, the act of re-"putting" this entry means we're re-compressing
@@ -232,6 +246,68 @@ public class JarDirectoryStepHelper {
     }
   }
 
+  /**
+   * The same as {@link #copyZipEntriesToJar}, but for entries that have already been read, and
+   * which are copied without being decompressed and compressed again.
+   */
+  private static void copyRawZipEntriesToJar(
+      Path file,
+      ImmutableList<RawZipEntry> entries,
+      CustomZipOutputStream jar,
+      Manifest manifest,
+      Set<String> alreadyAddedEntries,
+      BuckEventBus eventBus,
+      Iterable<Pattern> blacklist) throws IOException {
+    for (RawZipEntry entry : entries) {
+      if (entry.getName().equals(JarFile.MANIFEST_NAME)) {
+        merge(manifest, new Manifest(new ByteArrayInputStream(entry.getUncompressedData())));
+        continue;
+      }
+
+      if (shouldCopyEntry(file, entry.getEntry(), alreadyAddedEntries, eventBus, blacklist)) {
+        jar.putRawEntry(entry);
+      }
+    }
+  }
+
+  /**
+   * @return whether {@code entry} of the zip {@code file} should be added to the jar. If so, it is
+   *     added to {@code alreadyAddedEntries}.
+   */
+  private static boolean shouldCopyEntry(
+      Path file,
+      ZipEntry entry,
+      Set<String> alreadyAddedEntries,
+      BuckEventBus eventBus,
+      Iterable<Pattern> blacklist) {
+    String entryName = entry.getName();
+
+    // We're in the process of merging a bunch of different jar files. These typically contain
+    // just ".class" files and the manifest, but they can also include things like license files
+    // from third party libraries and config files. We should include those license files within
+    // the jar we're creating. Extracting them is left as an exercise for the consumer of the
+    // jar.  Because we don't know which files are important, the only ones we skip are
+    // duplicate class files.
+    if (!isDuplicateAllowed(entryName) && !alreadyAddedEntries.add(entryName)) {
+      // Duplicate entries. Skip.
+      eventBus.post(ConsoleEvent.create(
+              determineSeverity(entry),
+              "Duplicate found when adding file '%s' to jar '%s'",
+              entryName,
+              file.toString()));
+      return false;
+    }
+
+    for (Pattern p : blacklist) {
+      if (p.matcher(entryName).matches()) {
+        eventBus.post(ConsoleEvent.create(
+                Level.FINE, "Skipping adding file to jar: %s", entryName));
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static Level determineSeverity(ZipEntry entry) {
     return entry.isDirectory() ? Level.FINE : Level.INFO;
   }
@@ -336,4 +412,73 @@ public class JarDirectoryStepHelper {
   private static boolean isDuplicateAllowed(String name) {
     return !name.endsWith(".class") && !name.endsWith("/");
   }
+
+  /**
+   * Reads the zips that are merged into a jar on a pool of threads, so that reading them overlaps
+   * with writing the jar. Only a bounded number of zips are held in memory ahead of the one being
+   * written. The zips must be asked for in the order that they were given. No threads are started
+   * unless there are zips to read.
+   */
+  private static class ZipReadAhead implements Closeable {
+
+    private final Iterator<Path> zipsToRead;
+    private final int maxReadsAhead;
+    private final int threadCount;
+    private Optional<ExecutorService> executor = Optional.absent();
+    private final Deque<Future<Optional<ImmutableList<RawZipEntry>>>> reads =
+        new ArrayDeque<>();
+
+    public ZipReadAhead(ImmutableList<Path> zips, int threadLimit) {
+      this.zipsToRead = zips.iterator();
+      this.maxReadsAhead = Math.max(1, threadLimit);
+      this.threadCount = Math.max(1, Math.min(threadLimit, zips.size()));
+      submitReads();
+    }
+
+    /**
+     * @return the entries of {@code zip}, or absent if they cannot be copied raw.
+     */
+    public Optional<ImmutableList<RawZipEntry>> next(Path zip) throws IOException {
+      Future<Optional<ImmutableList<RawZipEntry>>> read = Preconditions.checkNotNull(reads.poll());
+      submitReads();
+      try {
+        return read.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while reading " + zip);
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause());
+        throw new IOException(
+            "Failed to process zip file " + zip + ": " + e.getCause().getMessage(),
+            e.getCause());
+      }
+    }
+
+    private void submitReads() {
+      while (reads.size() < maxReadsAhead && zipsToRead.hasNext()) {
+        final Path zip = zipsToRead.next();
+        if (!executor.isPresent()) {
+          executor = Optional.of(MoreExecutors.newMultiThreadExecutor("jar", threadCount));
+        }
+        reads.add(
+            executor.get().submit(
+                new Callable<Optional<ImmutableList<RawZipEntry>>>() {
+                  @Override
+                  public Optional<ImmutableList<RawZipEntry>> call() throws IOException {
+                    return RawZipEntry.readAll(zip);
+                  }
+                }));
+      }
+    }
+
+    @Override
+    public void close() {
+      for (Future<?> read : reads) {
+        read.cancel(true);
+      }
+      if (executor.isPresent()) {
+        executor.get().shutdownNow();
+      }
+    }
+  }
 }
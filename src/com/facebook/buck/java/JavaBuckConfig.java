@@ -62,6 +62,7 @@ public class JavaBuckConfig {
         .setTargetLevel(targetLevel.or(TARGETED_JAVA_VERSION))
         .putAllSourceToBootclasspath(bootclasspaths.build())
         .addAllExtraArguments(extraArguments)
+        .setIncremental(delegate.getBooleanValue("java", "incremental_compilation", false))
         .build();
   }
 
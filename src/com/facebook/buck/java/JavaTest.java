@@ -34,11 +34,13 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TestRule;
 import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ParallelStep;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestDurations;
 import com.facebook.buck.test.TestResultSummary;
 import com.facebook.buck.test.TestResults;
 import com.facebook.buck.test.TestRunningOptions;
@@ -59,6 +61,8 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
 import java.io.File;
@@ -113,13 +117,15 @@ public class JavaTest
   private static final Logger LOG = Logger.get(JavaTest.class);
 
   @Nullable
-  private JUnitStep junit;
+  private ImmutableList<JUnitStep> junitSteps;
 
   @AddToRuleKey
   private final boolean runTestSeparately;
 
   private final Optional<Path> testTempDirOverride;
 
+  private final int shards;
+
   protected JavaTest(
       BuildRuleParams params,
       SourcePathResolver resolver,
@@ -139,6 +145,7 @@ public class JavaTest
       Optional<String> mavenCoords,
       Optional<Long> testRuleTimeoutMs,
       boolean runTestSeparately,
+      int shards,
       Optional<Level> stdOutLogLevel,
       Optional<Level> stdErrLogLevel,
       Optional<Path> testTempDirOverride) {
@@ -166,6 +173,7 @@ public class JavaTest
     this.testType = testType;
     this.testRuleTimeoutMs = testRuleTimeoutMs;
     this.runTestSeparately = runTestSeparately;
+    this.shards = shards;
     this.stdOutLogLevel = stdOutLogLevel;
     this.stdErrLogLevel = stdErrLogLevel;
     this.testTempDirOverride = testTempDirOverride;
@@ -203,10 +211,10 @@ public class JavaTest
   private JUnitStep getJUnitStep(
       ExecutionContext executionContext,
       TestRunningOptions options,
+      Set<String> testClassNames,
       Optional<Path> outDir,
       Optional<Path> tempDir) {
 
-    Set<String> testClassNames = getClassNamesForSources();
     Iterable<String> reorderedTestClasses =
         reorderClasses(testClassNames, options.isShufflingTests());
 
@@ -232,7 +240,8 @@ public class JavaTest
         testRuleTimeoutMs,
         stdOutLogLevel,
         stdErrLogLevel,
-        options.getPathToJavaAgent());
+        options.getPathToJavaAgent(),
+        options.getTestRunnerWorkerPool());
   }
 
   /**
@@ -260,16 +269,102 @@ public class JavaTest
     Path tmpDirectory = getPathToTmpDirectory();
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), pathToTestOutput));
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), tmpDirectory));
-    junit =
-        getJUnitStep(
-            executionContext,
-            options,
-            Optional.of(pathToTestOutput),
-            Optional.of(tmpDirectory));
-    steps.add(junit);
+
+    ImmutableList<ImmutableSet<String>> testClassShards =
+        shardTestClasses(testClassNames, shards, options.getTestDurations());
+    if (testClassShards.size() == 1) {
+      junitSteps = ImmutableList.of(
+          getJUnitStep(
+              executionContext,
+              options,
+              testClassNames,
+              Optional.of(pathToTestOutput),
+              Optional.of(tmpDirectory)));
+      steps.addAll(junitSteps);
+      return steps.build();
+    }
+
+    // Each shard writes the results for its own classes to the shared output directory, but gets
+    // a scratch directory of its own.
+    ImmutableList.Builder<JUnitStep> shardSteps = ImmutableList.builder();
+    for (int i = 0; i < testClassShards.size(); i++) {
+      Path shardTmpDirectory = tmpDirectory.resolve("shard-" + i);
+      steps.add(new MkdirStep(getProjectFilesystem(), shardTmpDirectory));
+      shardSteps.add(
+          getJUnitStep(
+              executionContext,
+              options,
+              testClassShards.get(i),
+              Optional.of(pathToTestOutput),
+              Optional.of(shardTmpDirectory)));
+    }
+    junitSteps = shardSteps.build();
+    steps.add(new ParallelStep(junitSteps));
     return steps.build();
   }
 
+  /**
+   * Splits the test classes into at most {@code shards} groups whose tests should take about as
+   * long as each other to run, based on how long each class took when it was last run. Classes
+   * that have not been run before are assumed to take the average time.
+   */
+  @VisibleForTesting
+  static ImmutableList<ImmutableSet<String>> shardTestClasses(
+      Set<String> testClassNames,
+      int shards,
+      TestDurations durations) {
+    int shardCount = Math.max(1, Math.min(shards, testClassNames.size()));
+    if (shardCount == 1) {
+      return ImmutableList.of(ImmutableSet.copyOf(testClassNames));
+    }
+
+    final Map<String, Long> classDurations = Maps.newHashMap();
+    long knownTotal = 0;
+    int knownCount = 0;
+    for (String testClassName : testClassNames) {
+      Optional<Long> duration = durations.getTestCaseDuration(testClassName);
+      if (duration.isPresent()) {
+        classDurations.put(testClassName, duration.get());
+        knownTotal += duration.get();
+        knownCount++;
+      }
+    }
+    long defaultDuration = knownCount == 0 ? 1 : Math.max(1, knownTotal / knownCount);
+    for (String testClassName : testClassNames) {
+      if (!classDurations.containsKey(testClassName)) {
+        classDurations.put(testClassName, defaultDuration);
+      }
+    }
+
+    // Hand out the slowest remaining class to the shard with the least to do.
+    List<String> slowestFirst = Ordering.natural()
+        .onResultOf(Functions.forMap(classDurations))
+        .reverse()
+        .compound(Ordering.<String>natural())
+        .sortedCopy(testClassNames);
+    long[] shardDurations = new long[shardCount];
+    List<ImmutableSet.Builder<String>> shardClasses = Lists.newArrayListWithCapacity(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      shardClasses.add(ImmutableSet.<String>builder());
+    }
+    for (String testClassName : slowestFirst) {
+      int shortest = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (shardDurations[i] < shardDurations[shortest]) {
+          shortest = i;
+        }
+      }
+      shardClasses.get(shortest).add(testClassName);
+      shardDurations[shortest] += classDurations.get(testClassName);
+    }
+
+    ImmutableList.Builder<ImmutableSet<String>> result = ImmutableList.builder();
+    for (ImmutableSet.Builder<String> shard : shardClasses) {
+      result.add(shard.build());
+    }
+    return result.build();
+  }
+
   private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
     Random rng;
     if (shuffle) {
@@ -432,7 +527,7 @@ public class JavaTest
               getPathToTestOutputDirectory().resolve(path));
           if (!isUsingTestSelectors && !Files.isRegularFile(testResultFile)) {
             String message;
-            if (Preconditions.checkNotNull(junit).hasTimedOut()) {
+            if (hasTimedOut()) {
               message = "test timed out before generating results file";
             } else {
               message = "test exited before generating results file";
@@ -461,6 +556,15 @@ public class JavaTest
     };
   }
 
+  private boolean hasTimedOut() {
+    for (JUnitStep junit : Preconditions.checkNotNull(junitSteps)) {
+      if (junit.hasTimedOut()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private Set<String> getClassNamesForSources() {
     if (compiledClassFileFinder == null) {
       compiledClassFileFinder = new CompiledClassFileFinder(this);
@@ -603,6 +707,7 @@ public class JavaTest
         getJUnitStep(
             executionContext,
             options,
+            getClassNamesForSources(),
             Optional.<Path>absent(),
             Optional.<Path>absent());
     return ExternalTestRunnerTestSpec.builder()
@@ -145,6 +145,7 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
                 args.mavenCoords,
                 testRuleTimeoutMs,
                 args.getRunTestSeparately(),
+                args.getShards(),
                 args.stdOutLogLevel,
                 args.stdErrLogLevel,
                 testTempDirOverride));
@@ -193,6 +194,7 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
     public Optional<Level> stdOutLogLevel;
     public Optional<String> pathToJavaAgent;
     public Optional<Boolean> useCxxLibraries;
+    public Optional<Integer> shards;
 
     @Override
     public ImmutableSortedSet<BuildTarget> getSourceUnderTest() {
@@ -202,6 +204,10 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
     public boolean getRunTestSeparately() {
       return runTestSeparately.or(false);
     }
+
+    public int getShards() {
+      return shards.or(1);
+    }
   }
 
   public static class CxxLibraryEnhancement {
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java.abi;
+
+import static org.objectweb.asm.ClassReader.SKIP_CODE;
+import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Computes a hash of the ABI of a single class file. Two class files have the same hash if and only
+ * if the stubs that {@link StubJar} would generate for them are identical, so a change in the hash
+ * means that code compiled against the old class may need to be recompiled.
+ */
+public class ClassAbiHasher {
+
+  private ClassAbiHasher() {
+    // Utility class.
+  }
+
+  public static HashCode hash(byte[] classFile) {
+    ClassReader classReader = new ClassReader(classFile);
+    ClassMirror visitor = new ClassMirror(classReader.getClassName() + ".class");
+    classReader.accept(visitor, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+    return Hashing.sha1().hashBytes(visitor.toByteArray());
+  }
+}
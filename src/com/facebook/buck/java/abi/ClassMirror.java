@@ -155,6 +155,14 @@ class ClassMirror extends ClassVisitor implements Comparable<ClassMirror> {
     entry.setTime(0);
 
     jar.putNextEntry(entry);
+    ByteSource.wrap(toByteArray()).copyTo(jar);
+    jar.closeEntry();
+  }
+
+  /**
+   * @return the bytes of the stub class file, containing only the non-private members.
+   */
+  public byte[] toByteArray() {
     ClassWriter writer = new ClassWriter(0);
     writer.visit(version, access, name, signature, superName, interfaces);
 
@@ -178,8 +186,7 @@ class ClassMirror extends ClassVisitor implements Comparable<ClassMirror> {
       method.appendTo(writer);
     }
     writer.visitEnd();
-    ByteSource.wrap(writer.toByteArray()).copyTo(jar);
-    jar.closeEntry();
+    return writer.toByteArray();
   }
 
   private static class InnerClass implements Comparable<InnerClass> {
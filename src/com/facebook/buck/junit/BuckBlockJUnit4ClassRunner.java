@@ -21,6 +21,7 @@ import com.facebook.buck.util.concurrent.MoreExecutors;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkField;
 import org.junit.runners.model.FrameworkMethod;
@@ -65,6 +66,17 @@ public class BuckBlockJUnit4ClassRunner extends BlockJUnit4ClassRunner {
     this.defaultTestTimeoutMillis = defaultTestTimeoutMillis;
   }
 
+  @Override
+  public void run(RunNotifier notifier) {
+    try {
+      super.run(notifier);
+    } finally {
+      // Don't leave a thread behind for every test class, as the JVM may go on to run other tests.
+      executor.get().shutdown();
+      executor.remove();
+    }
+  }
+
   @Override
   protected Object createTest() throws Exception {
     // Pushing tests onto threads because the test timeout has been set is Unexpected Behaviour. It
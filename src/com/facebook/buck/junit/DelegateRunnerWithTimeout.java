@@ -66,6 +66,15 @@ class DelegateRunnerWithTimeout extends Runner {
     this.defaultTestTimeoutMillis = defaultTestTimeoutMillis;
   }
 
+  /**
+   * Shuts down the executor used by runners on the current thread, so that its thread does not
+   * outlive the tests. Runners created on this thread afterwards will start a new one.
+   */
+  static void shutDownExecutor() {
+    executor.get().shutdown();
+    executor.remove();
+  }
+
   /**
    * @return the description from the original {@link Runner} wrapped by this {@link Runner}.
    */
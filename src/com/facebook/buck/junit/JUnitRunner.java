@@ -137,6 +137,9 @@ public final class JUnitRunner extends BaseRunner {
         writeResult(className, results);
       }
     }
+
+    // Don't leave the default timeout's thread behind, as the JVM may go on to run other tests.
+    DelegateRunnerWithTimeout.shutDownExecutor();
   }
 
   /**
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.junit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A long-lived test runner that runs one test target after another, so that a JVM does not have
+ * to be started for each of them.
+ * <p>
+ * The worker connects back to the port given as its only argument and then reads jobs from the
+ * socket until it is closed. Each job names a runner (e.g. {@link JUnitRunner}), a classpath,
+ * system properties, environment variables and the runner's arguments (without
+ * {@code --output}). The runner and the tests are loaded in a fresh {@link ClassLoader} over that
+ * classpath, so nothing loaded by one target is visible to the next. The worker first replies
+ * with whether it could give the job its environment, and if so, runs the job. Rather than
+ * leaving the results in an output directory, the worker then sends back whether it should be
+ * retired because the job left something behind that it cannot clean up, followed by the
+ * contents of each result file.
+ * <p>
+ * Java has no API to change the environment of a running JVM, so the maps behind
+ * {@link System#getenv()} and {@link ProcessBuilder#environment()} are replaced for the duration
+ * of each job. Only processes started without an environment of their own, such as by
+ * {@link Runtime#exec(String)}, still get the one the worker was started with. On Java 9 and
+ * later, this needs the worker to be started with {@code --add-opens} for
+ * {@code java.base/java.lang} and {@code java.base/java.util}.
+ * <p>
+ * IMPORTANT! This class limits itself to types that are available in the JDK, as it is the only
+ * thing on the worker's own classpath.
+ */
+public class TestRunnerWorker {
+
+  private static final String BASE_RUNNER_CLASS_NAME = "com.facebook.buck.junit.BaseRunner";
+  private static final long THREAD_EXIT_GRACE_PERIOD_MS = 1000;
+
+  private TestRunnerWorker() {
+    // Launcher class.
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: TestRunnerWorker <port>");
+      System.exit(1);
+    }
+
+    URL ownClasses = TestRunnerWorker.class.getProtectionDomain().getCodeSource().getLocation();
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+      DataInputStream input =
+          new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+      while (true) {
+        String runnerClassName;
+        try {
+          runnerClassName = readString(input);
+        } catch (EOFException e) {
+          // The pool has shut us down.
+          break;
+        }
+        List<String> classpath = readStrings(input);
+        List<String> properties = readStrings(input);
+        List<String> environment = readStrings(input);
+        List<String> runnerArgs = readStrings(input);
+
+        Map<String, String> originalEnvironment = new HashMap<>(System.getenv());
+        Map<String, String> jobEnvironment = new HashMap<>();
+        for (int i = 0; i + 1 < environment.size(); i += 2) {
+          jobEnvironment.put(environment.get(i), environment.get(i + 1));
+        }
+        boolean hasEnvironment = setEnvironment(jobEnvironment);
+        output.writeBoolean(hasEnvironment);
+        if (!hasEnvironment) {
+          output.flush();
+          break;
+        }
+
+        Path outputDirectory = Files.createTempDirectory("buck-test-results");
+        boolean retire;
+        try {
+          retire = runJob(
+              ownClasses,
+              runnerClassName,
+              classpath,
+              properties,
+              runnerArgs,
+              outputDirectory);
+        } finally {
+          // The worker can't be reused if the next job would see this one's environment.
+          if (!setEnvironment(originalEnvironment)) {
+            retire = true;
+          }
+        }
+
+        List<Path> results = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(outputDirectory)) {
+          for (Path result : stream) {
+            results.add(result);
+          }
+        }
+        output.writeBoolean(retire);
+        output.writeInt(results.size());
+        for (Path result : results) {
+          writeString(output, result.getFileName().toString());
+          byte[] contents = Files.readAllBytes(result);
+          output.writeInt(contents.length);
+          output.write(contents);
+          Files.delete(result);
+        }
+        output.flush();
+        Files.delete(outputDirectory);
+
+        if (retire) {
+          break;
+        }
+      }
+    }
+
+    // Tests may have left non-daemon threads behind.
+    System.exit(0);
+  }
+
+  /**
+   * @return whether this worker should be retired rather than reused.
+   */
+  private static boolean runJob(
+      URL ownClasses,
+      String runnerClassName,
+      List<String> classpath,
+      List<String> properties,
+      List<String> runnerArgs,
+      Path outputDirectory) throws IOException {
+    List<URL> urls = new ArrayList<>();
+    StringBuilder javaClassPath = new StringBuilder();
+    for (String entry : expandClasspath(classpath)) {
+      urls.add(Paths.get(entry).toUri().toURL());
+      javaClassPath.append(entry).append(File.pathSeparatorChar);
+    }
+    urls.add(ownClasses);
+    javaClassPath.append(Paths.get(ownClasses.getPath()));
+
+    List<String> args = new ArrayList<>();
+    args.add("--output");
+    args.add(outputDirectory.toString());
+    args.addAll(runnerArgs);
+
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    Thread currentThread = Thread.currentThread();
+    ClassLoader originalContextClassLoader = currentThread.getContextClassLoader();
+    int originalThreadCount = countNonDaemonThreads();
+
+    // Tests are isolated from the worker's own classes by only delegating to the extension
+    // classloader, rather than to the system classloader that loaded this class.
+    URLClassLoader loader = new URLClassLoader(
+        urls.toArray(new URL[urls.size()]),
+        ClassLoader.getSystemClassLoader().getParent());
+    boolean retire = false;
+    try {
+      for (int i = 0; i + 1 < properties.size(); i += 2) {
+        System.setProperty(properties.get(i), properties.get(i + 1));
+      }
+      System.setProperty("java.class.path", javaClassPath.toString());
+      currentThread.setContextClassLoader(loader);
+
+      Class<?> runnerClass = loader.loadClass(runnerClassName);
+      Class<?> baseRunnerClass = loader.loadClass(BASE_RUNNER_CLASS_NAME);
+      Constructor<?> constructor = runnerClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      Object runner = constructor.newInstance();
+
+      Method parseArgs = baseRunnerClass.getDeclaredMethod("parseArgs", String[].class);
+      parseArgs.setAccessible(true);
+      parseArgs.invoke(runner, new Object[] {args.toArray(new String[args.size()])});
+      runnerClass.getMethod("run").invoke(runner);
+    } catch (InvocationTargetException e) {
+      // Mirror BaseRunner.runAndExit(): the failure shows up as missing results.
+      e.getCause().printStackTrace();
+      retire = true;
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      e.printStackTrace();
+      retire = true;
+    } finally {
+      currentThread.setContextClassLoader(originalContextClassLoader);
+      System.setOut(originalOut);
+      System.setErr(originalErr);
+      System.setProperties(originalProperties);
+      loader.close();
+    }
+
+    // Threads that outlive their test would keep its classes alive and could interfere with the
+    // next target, so start afresh instead. Executors that have just been shut down need a moment
+    // for their threads to exit.
+    long deadline = System.currentTimeMillis() + THREAD_EXIT_GRACE_PERIOD_MS;
+    while (countNonDaemonThreads() > originalThreadCount) {
+      if (System.currentTimeMillis() > deadline) {
+        return true;
+      }
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        return true;
+      }
+    }
+    return retire;
+  }
+
+  /**
+   * Replaces the environment variables that {@link System#getenv()} returns and that
+   * {@link ProcessBuilder#environment()} starts from.
+   *
+   * @return whether the environment could be replaced.
+   */
+  @SuppressWarnings("unchecked")
+  static boolean setEnvironment(Map<String, String> environment) {
+    List<Map<String, String>> maps = new ArrayList<>();
+    try {
+      // System.getenv() is an unmodifiable view of a map that System.getenv(String) also reads.
+      Map<String, String> unmodifiable = System.getenv();
+      Field view = unmodifiable.getClass().getDeclaredField("m");
+      view.setAccessible(true);
+      maps.add((Map<String, String>) view.get(unmodifiable));
+
+      // ProcessBuilder copies a separate map. On Unix, it is a plain map keyed by byte strings,
+      // so it needs to be wrapped to be written as strings. On Windows, it is the map above.
+      Class<?> processEnvironment = Class.forName("java.lang.ProcessEnvironment");
+      Field theEnvironment = processEnvironment.getDeclaredField("theEnvironment");
+      theEnvironment.setAccessible(true);
+      Object copiedByProcessBuilder = theEnvironment.get(null);
+      if (copiedByProcessBuilder.getClass() == HashMap.class) {
+        Constructor<?> stringEnvironment =
+            Class.forName("java.lang.ProcessEnvironment$StringEnvironment")
+                .getDeclaredConstructor(Map.class);
+        stringEnvironment.setAccessible(true);
+        maps.add((Map<String, String>) stringEnvironment.newInstance(copiedByProcessBuilder));
+      } else {
+        maps.add((Map<String, String>) copiedByProcessBuilder);
+      }
+
+      // On Windows, System.getenv(String) looks names up in a case insensitive copy instead.
+      try {
+        Field caseInsensitive =
+            processEnvironment.getDeclaredField("theCaseInsensitiveEnvironment");
+        caseInsensitive.setAccessible(true);
+        maps.add((Map<String, String>) caseInsensitive.get(null));
+      } catch (NoSuchFieldException e) {
+        // Not Windows.
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      e.printStackTrace();
+      return false;
+    }
+
+    for (Map<String, String> map : maps) {
+      map.clear();
+      map.putAll(environment);
+    }
+    return true;
+  }
+
+  /**
+   * Expands {@code @file} entries in the same way as
+   * {@link com.facebook.buck.java.runner.FileClassPathRunner}.
+   */
+  private static List<String> expandClasspath(List<String> classpath) throws IOException {
+    List<String> entries = new ArrayList<>();
+    for (String entry : classpath) {
+      if (!entry.startsWith("@")) {
+        entries.add(entry);
+        continue;
+      }
+      Path file = Paths.get(entry.substring(1));
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (!line.isEmpty()) {
+          entries.add(line);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static int countNonDaemonThreads() {
+    int count = 0;
+    for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+      if (entry.getKey().isAlive() && !entry.getKey().isDaemon()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static List<String> readStrings(DataInputStream input) throws IOException {
+    int count = input.readInt();
+    List<String> strings = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(readString(input));
+    }
+    return strings;
+  }
+
+  // DataInput.readUTF() is limited to 64k, which a list of test selectors could exceed.
+  private static String readString(DataInputStream input) throws IOException {
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+}
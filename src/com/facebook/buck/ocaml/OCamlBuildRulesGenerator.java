@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.facebook.buck.cxx.Compiler;
 import com.facebook.buck.cxx.CxxPreprocessorInput;
+import com.facebook.buck.cxx.CxxSharedLibraryInterface;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.Flavor;
 import com.facebook.buck.model.ImmutableFlavor;
@@ -232,7 +233,9 @@ public class OCamlBuildRulesGenerator {
             ImmutableSortedSet.<BuildRule>naturalOrder()
                 .addAll(pathResolver.filterBuildRuleInputs(allInputs))
                 .addAll(
-                    pathResolver.filterBuildRuleInputs(ocamlContext.getLinkableInput().getInputs()))
+                    CxxSharedLibraryInterface.getLinkDeps(
+                        pathResolver,
+                        ocamlContext.getLinkableInput().getInputs()))
                 .build()),
         Suppliers.ofInstance(
             ImmutableSortedSet.<BuildRule>of()));
@@ -279,7 +282,8 @@ public class OCamlBuildRulesGenerator {
                 .addAll(
                     FluentIterable
                         .from(
-                            pathResolver.filterBuildRuleInputs(
+                            CxxSharedLibraryInterface.getLinkDeps(
+                                pathResolver,
                                 ocamlContext.getLinkableInput().getInputs()))
                         .filter(Predicates.not(Predicates.instanceOf(OCamlBuild.class))))
                 .build()),
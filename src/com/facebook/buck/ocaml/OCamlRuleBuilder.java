@@ -20,6 +20,7 @@ import com.facebook.buck.cxx.CxxHeaders;
 import com.facebook.buck.cxx.CxxPreprocessables;
 import com.facebook.buck.cxx.CxxPreprocessorDep;
 import com.facebook.buck.cxx.CxxPreprocessorInput;
+import com.facebook.buck.cxx.CxxSharedLibraryInterface;
 import com.facebook.buck.cxx.Linker;
 import com.facebook.buck.cxx.NativeLinkableInput;
 import com.facebook.buck.cxx.NativeLinkables;
@@ -195,7 +196,8 @@ public class OCamlRuleBuilder {
 
     ImmutableSortedSet.Builder<BuildRule> allDepsBuilder = ImmutableSortedSet.naturalOrder();
     allDepsBuilder.addAll(pathResolver.filterBuildRuleInputs(getInput(srcs)));
-    allDepsBuilder.addAll(pathResolver.filterBuildRuleInputs(linkableInput.getInputs()));
+    allDepsBuilder.addAll(
+        CxxSharedLibraryInterface.getLinkDeps(pathResolver, linkableInput.getInputs()));
     for (OCamlLibrary library : ocamlInput) {
       allDepsBuilder.addAll(library.getCompileDeps());
       allDepsBuilder.addAll(library.getBytecodeCompileDeps());
@@ -62,6 +62,11 @@ class BuildInfo {
    */
   static final String METADATA_KEY_FOR_DEP_FILE = "DEP_FILE";
 
+  /**
+   * Key for {@link OnDiskBuildInfo} to identify the key of the {@link Manifest} of a build rule.
+   */
+  static final String METADATA_KEY_FOR_MANIFEST_KEY = "MANIFEST_KEY";
+
   /**
    * Key for the input map of dependencies of a build rule.
    */
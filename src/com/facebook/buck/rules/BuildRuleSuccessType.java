@@ -66,6 +66,26 @@ public enum BuildRuleSuccessType {
       Property.SHOULD_UPDATE_METADATA_ON_DISK
   ),
 
+  /**
+   * Fetched via the {@link ArtifactCache} using a dep-file {@link RuleKey} found in the rule's
+   * {@link Manifest}.
+   */
+  FETCHED_FROM_CACHE_MANIFEST_BASED(
+      Property.SHOULD_UPLOAD_RESULTING_ARTIFACT,
+      Property.SHOULD_UPDATE_METADATA_ON_DISK,
+      Property.OUTPUTS_HAVE_CHANGED
+  ),
+
+  /**
+   * Fetched via the {@link ArtifactCache} using a dep-file {@link RuleKey} calculated from inputs
+   * the rule predicted without building.
+   */
+  FETCHED_FROM_CACHE_PREDICTED_DEP_FILE(
+      Property.SHOULD_UPLOAD_RESULTING_ARTIFACT,
+      Property.SHOULD_UPDATE_METADATA_ON_DISK,
+      Property.OUTPUTS_HAVE_CHANGED
+  ),
+
   /**
    * Computed dep-file {@link RuleKey} matches the one on disk
    */
@@ -64,7 +64,11 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.SettableFuture;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -281,6 +285,18 @@ public class CachingBuildEngine implements BuildEngine {
               }
             }
 
+            // Manifest caching.
+            if (useManifestCaching(rule)) {
+              Optional<BuildResult> result =
+                  performManifestBasedCacheFetch(rule, context, buildInfoRecorder);
+              if (!result.isPresent()) {
+                result = performPredictedDepFileCacheFetch(rule, context, buildInfoRecorder);
+              }
+              if (result.isPresent()) {
+                return Futures.immediateFuture(result.get());
+              }
+            }
+
             RuleKeyFactories cellData = CachingBuildEngine.this.ruleKeyFactories.get(
                 rule.getProjectFilesystem());
             Preconditions.checkNotNull(cellData);
@@ -572,6 +588,15 @@ public class CachingBuildEngine implements BuildEngine {
                           BuildInfo.METADATA_KEY_FOR_INPUT_BASED_RULE_KEY).get());
                 }
 
+                // If we built locally using a manifest, push the artifact to cache using its
+                // dep-file rule key, which other builds may find through the manifest.
+                Optional<RuleKey> depFileRuleKey = Optional.absent();
+                if (useManifestCaching(rule) && success == BuildRuleSuccessType.BUILT_LOCALLY) {
+                  depFileRuleKey =
+                      onDiskBuildInfo.getRuleKey(BuildInfo.METADATA_KEY_FOR_DEP_FILE_RULE_KEY);
+                  ruleKeys.addAll(depFileRuleKey.asSet());
+                }
+
                 // If we have any rule keys to push to the cache with, do the upload now.
                 if (!ruleKeys.isEmpty()) {
                   try {
@@ -588,6 +613,19 @@ public class CachingBuildEngine implements BuildEngine {
                   }
                 }
 
+                // Add this build to the manifest only once its artifact has been uploaded.
+                if (depFileRuleKey.isPresent()) {
+                  try {
+                    updateAndStoreManifest(rule, depFileRuleKey.get(), onDiskBuildInfo, context);
+                  } catch (Throwable t) {
+                    context.getEventBus().post(
+                        ThrowableConsoleEvent.create(
+                            t,
+                            "Error uploading manifest to cache for %s.",
+                            rule));
+                  }
+                }
+
               }
 
               private void handleResult(BuildResult input) {
@@ -1024,11 +1062,198 @@ public class CachingBuildEngine implements BuildEngine {
   }
 
   private boolean useDependencyFileRuleKey(BuildRule rule) {
-    return depFiles == DepFiles.ENABLED &&
+    return depFiles != DepFiles.DISABLED &&
         rule instanceof SupportsDependencyFileRuleKey &&
         ((SupportsDependencyFileRuleKey) rule).useDependencyFileRuleKeys();
   }
 
+  private boolean useManifestCaching(BuildRule rule) {
+    return depFiles == DepFiles.CACHE && useDependencyFileRuleKey(rule);
+  }
+
+  /**
+   * @return the key of the rule's {@link Manifest}, which covers everything that its dep-file rule
+   *     keys do except for the inputs.  As it covers all of the rule's deps, including any symlink
+   *     trees, the input map of each entry in the manifest is the one the rule would use now.
+   */
+  private RuleKey calculateManifestKey(BuildRule rule) {
+    RuleKeyFactories cellData = this.ruleKeyFactories.get(rule.getProjectFilesystem());
+    Preconditions.checkNotNull(cellData);
+    return cellData.depFileRuleKeyBuilderFactory.newInstance(rule)
+        .setReflectively("buck.deps", rule.getDeps())
+        .setReflectively("buck.key-type", "manifest")
+        .build();
+  }
+
+  /**
+   * Looks for a past build in the rule's {@link Manifest} whose inputs have the same contents as
+   * they have now, and fetches its artifact using its dep-file rule key.
+   */
+  private Optional<BuildResult> performManifestBasedCacheFetch(
+      BuildRule rule,
+      BuildContext context,
+      BuildInfoRecorder buildInfoRecorder)
+      throws IOException, InterruptedException {
+
+    // Record the manifest key, so that if we build locally, we know where to add the build.
+    RuleKey manifestKey = calculateManifestKey(rule);
+    buildInfoRecorder.addBuildMetadata(
+        BuildInfo.METADATA_KEY_FOR_MANIFEST_KEY,
+        manifestKey.toString());
+
+    Optional<Manifest> manifest = fetchManifest(rule, manifestKey, context.getArtifactCache());
+    if (!manifest.isPresent()) {
+      return Optional.absent();
+    }
+
+    for (Manifest.Entry entry : manifest.get().getEntries()) {
+      Optional<RuleKey> depFileRuleKey = calculateDepFileRuleKey(
+          rule,
+          Optional.of(entry.getInputs()),
+          entry.getInputMap(),
+          /* allowMissingInputs */ true);
+      if (!depFileRuleKey.equals(Optional.of(entry.getRuleKey()))) {
+        continue;
+      }
+
+      CacheResult cacheResult =
+          tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
+              rule,
+              entry.getRuleKey(),
+              buildInfoRecorder,
+              context.getArtifactCache(),
+              // TODO(simons): This should be a shared between all tests, not one per cell
+              rule.getProjectFilesystem(),
+              context);
+      if (!cacheResult.getType().isSuccess()) {
+        return Optional.absent();
+      }
+      return Optional.of(
+          BuildResult.success(
+              rule,
+              BuildRuleSuccessType.FETCHED_FROM_CACHE_MANIFEST_BASED,
+              cacheResult));
+    }
+
+    return Optional.absent();
+  }
+
+  /**
+   * Fetches the rule's artifact using the dep-file rule key calculated from the inputs it predicts
+   * it would have, without building it.  Local builds upload their artifacts using their dep-file
+   * rule keys, so this finds them even before they've been added to a manifest.  A key only matches
+   * if the predicted inputs match those of the build exactly, so a wrong prediction can only cost a
+   * cache miss.
+   */
+  private Optional<BuildResult> performPredictedDepFileCacheFetch(
+      BuildRule rule,
+      BuildContext context,
+      BuildInfoRecorder buildInfoRecorder)
+      throws IOException, InterruptedException {
+    SupportsDependencyFileRuleKey depFileRule = (SupportsDependencyFileRuleKey) rule;
+
+    Optional<ImmutableList<Path>> inputs = depFileRule.getInputsBeforeBuilding(fileHashCache);
+    if (!inputs.isPresent()) {
+      return Optional.absent();
+    }
+    Optional<RuleKey> depFileRuleKey = calculateDepFileRuleKey(
+        rule,
+        Optional.of(
+            FluentIterable.from(inputs.get()).transform(Functions.toStringFunction()).toList()),
+        depFileRule.getSymlinkTreeInputMapBeforeBuilding(fileHashCache),
+        /* allowMissingInputs */ true);
+    if (!depFileRuleKey.isPresent()) {
+      return Optional.absent();
+    }
+
+    CacheResult cacheResult =
+        tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
+            rule,
+            depFileRuleKey.get(),
+            buildInfoRecorder,
+            context.getArtifactCache(),
+            // TODO(simons): This should be a shared between all tests, not one per cell
+            rule.getProjectFilesystem(),
+            context);
+    if (!cacheResult.getType().isSuccess()) {
+      return Optional.absent();
+    }
+    return Optional.of(
+        BuildResult.success(
+            rule,
+            BuildRuleSuccessType.FETCHED_FROM_CACHE_PREDICTED_DEP_FILE,
+            cacheResult));
+  }
+
+  private Optional<Manifest> fetchManifest(
+      BuildRule rule,
+      RuleKey manifestKey,
+      ArtifactCache artifactCache)
+      throws IOException, InterruptedException {
+    Path path = Files.createTempFile(
+        "buck_manifest_" + MoreFiles.sanitize(rule.getBuildTarget().getShortName()),
+        ".manifest");
+    try {
+      if (!artifactCache.fetch(manifestKey, path).getType().isSuccess()) {
+        return Optional.absent();
+      }
+      try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+        return Optional.of(Manifest.readFrom(input));
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to read the manifest for %s, so it will be replaced.", rule);
+        return Optional.absent();
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * Adds the local build of a rule to its {@link Manifest} in the cache.
+   */
+  private void updateAndStoreManifest(
+      BuildRule rule,
+      RuleKey depFileRuleKey,
+      OnDiskBuildInfo onDiskBuildInfo,
+      BuildContext context)
+      throws IOException, InterruptedException {
+    ArtifactCache artifactCache = context.getArtifactCache();
+    if (!artifactCache.isStoreSupported()) {
+      return;
+    }
+
+    Optional<RuleKey> manifestKey =
+        onDiskBuildInfo.getRuleKey(BuildInfo.METADATA_KEY_FOR_MANIFEST_KEY);
+    Optional<ImmutableList<String>> inputs =
+        onDiskBuildInfo.getValues(BuildInfo.METADATA_KEY_FOR_DEP_FILE);
+    if (!manifestKey.isPresent() || !inputs.isPresent()) {
+      return;
+    }
+
+    // Other machines may have added to the manifest since it was fetched, so fetch it again.
+    Manifest manifest = fetchManifest(rule, manifestKey.get(), artifactCache).or(new Manifest());
+    manifest.addEntry(
+        new Manifest.Entry(
+            inputs.get(),
+            onDiskBuildInfo.getMultimap(BuildInfo.METADATA_KEY_FOR_INPUT_MAP),
+            depFileRuleKey));
+
+    Path path = Files.createTempFile(
+        "buck_manifest_" + MoreFiles.sanitize(rule.getBuildTarget().getShortName()),
+        ".manifest");
+    try {
+      try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(path))) {
+        manifest.writeTo(output);
+      }
+      artifactCache.store(
+          ImmutableSet.of(manifestKey.get()),
+          ImmutableMap.<String, String>of(),
+          path);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
   private Optional<RuleKey> calculateDepFileRuleKey(
       BuildRule rule,
       Optional<ImmutableList<String>> depFile,
@@ -1098,6 +1323,9 @@ public class CachingBuildEngine implements BuildEngine {
   public enum DepFiles {
     ENABLED,
     DISABLED,
+    // As ENABLED, but also find and store dep-file rule keys through manifests in the artifact
+    // cache, so that they can be used across machines.
+    CACHE,
   }
 
   @VisibleForTesting
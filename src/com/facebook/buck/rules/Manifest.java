@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records, for a rule that supports dependency-file rule keys, the inputs that each of its past
+ * builds used and the dep-file {@link RuleKey} that those inputs led to. It is stored in the
+ * {@link com.facebook.buck.artifact_cache.ArtifactCache} under a key that leaves out the rule's
+ * inputs, so that a build on another machine can find which of the past builds used inputs with
+ * the same contents as its own, and fetch that build's output by its dep-file rule key.
+ */
+public class Manifest {
+
+  private static final int VERSION = 1;
+
+  /** Only this many of the most recent builds are kept. */
+  private static final int MAX_ENTRIES = 100;
+
+  private final List<Entry> entries;
+
+  public Manifest() {
+    this.entries = new ArrayList<>();
+  }
+
+  private Manifest(List<Entry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * @return the entries, most recent first.
+   */
+  public ImmutableList<Entry> getEntries() {
+    return ImmutableList.copyOf(entries).reverse();
+  }
+
+  public void addEntry(Entry entry) {
+    entries.remove(entry);
+    entries.add(entry);
+    while (entries.size() > MAX_ENTRIES) {
+      entries.remove(0);
+    }
+  }
+
+  /**
+   * Most entries share most of their inputs, so each path is written once in a table, and entries
+   * refer to it by index.
+   */
+  public void writeTo(OutputStream output) throws IOException {
+    Map<String, Integer> stringIndexes = new HashMap<>();
+    List<String> strings = new ArrayList<>();
+    for (Entry entry : entries) {
+      for (String input : entry.getInputs()) {
+        addString(input, stringIndexes, strings);
+      }
+      if (entry.getInputMap().isPresent()) {
+        for (Map.Entry<String, String> mapping : entry.getInputMap().get().entries()) {
+          addString(mapping.getKey(), stringIndexes, strings);
+          addString(mapping.getValue(), stringIndexes, strings);
+        }
+      }
+    }
+
+    DataOutputStream out = new DataOutputStream(output);
+    out.writeInt(VERSION);
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+    out.writeInt(entries.size());
+    for (Entry entry : entries) {
+      out.writeUTF(entry.getRuleKey().toString());
+      out.writeInt(entry.getInputs().size());
+      for (String input : entry.getInputs()) {
+        out.writeInt(stringIndexes.get(input));
+      }
+      out.writeBoolean(entry.getInputMap().isPresent());
+      if (entry.getInputMap().isPresent()) {
+        out.writeInt(entry.getInputMap().get().size());
+        for (Map.Entry<String, String> mapping : entry.getInputMap().get().entries()) {
+          out.writeInt(stringIndexes.get(mapping.getKey()));
+          out.writeInt(stringIndexes.get(mapping.getValue()));
+        }
+      }
+    }
+    out.flush();
+  }
+
+  private static void addString(
+      String string,
+      Map<String, Integer> stringIndexes,
+      List<String> strings) {
+    if (!stringIndexes.containsKey(string)) {
+      stringIndexes.put(string, strings.size());
+      strings.add(string);
+    }
+  }
+
+  /**
+   * @return the manifest read from {@code input}, or an empty one if it was written by a version
+   *     of Buck that used a different format.
+   */
+  public static Manifest readFrom(InputStream input) throws IOException {
+    DataInputStream in = new DataInputStream(input);
+    if (in.readInt() != VERSION) {
+      return new Manifest();
+    }
+
+    String[] strings = new String[in.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = in.readUTF();
+    }
+
+    int entryCount = in.readInt();
+    List<Entry> entries = new ArrayList<>(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      RuleKey ruleKey = new RuleKey(in.readUTF());
+      ImmutableList.Builder<String> inputs = ImmutableList.builder();
+      int inputCount = in.readInt();
+      for (int j = 0; j < inputCount; j++) {
+        inputs.add(strings[in.readInt()]);
+      }
+      Optional<ImmutableMultimap<String, String>> inputMap = Optional.absent();
+      if (in.readBoolean()) {
+        ImmutableMultimap.Builder<String, String> mappings = ImmutableMultimap.builder();
+        int mappingCount = in.readInt();
+        for (int j = 0; j < mappingCount; j++) {
+          mappings.put(strings[in.readInt()], strings[in.readInt()]);
+        }
+        inputMap = Optional.of(mappings.build());
+      }
+      entries.add(new Entry(inputs.build(), inputMap, ruleKey));
+    }
+    return new Manifest(entries);
+  }
+
+  /**
+   * The inputs, and the symlink tree input map, that one build used, and the dep-file
+   * {@link RuleKey} calculated from them.
+   */
+  public static class Entry {
+
+    private final ImmutableList<String> inputs;
+    private final Optional<ImmutableMultimap<String, String>> inputMap;
+    private final RuleKey ruleKey;
+
+    public Entry(
+        ImmutableList<String> inputs,
+        Optional<ImmutableMultimap<String, String>> inputMap,
+        RuleKey ruleKey) {
+      this.inputs = inputs;
+      this.inputMap = inputMap;
+      this.ruleKey = ruleKey;
+    }
+
+    public ImmutableList<String> getInputs() {
+      return inputs;
+    }
+
+    public Optional<ImmutableMultimap<String, String>> getInputMap() {
+      return inputMap;
+    }
+
+    public RuleKey getRuleKey() {
+      return ruleKey;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Entry)) {
+        return false;
+      }
+      Entry that = (Entry) obj;
+      return ruleKey.equals(that.ruleKey) &&
+          inputs.equals(that.inputs) &&
+          inputMap.equals(that.inputMap);
+    }
+
+    @Override
+    public int hashCode() {
+      return ruleKey.hashCode();
+    }
+  }
+}
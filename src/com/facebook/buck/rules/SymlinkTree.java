@@ -19,7 +19,6 @@ package com.facebook.buck.rules;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.collect.ImmutableList;
@@ -106,13 +105,17 @@ public class SymlinkTree
   // We generate the symlinks using post-build steps to avoid the cache because:
   // 1) We don't currently support caching symlinks
   // 2) It's almost certainly always more expensive to cache them rather than just re-create them.
+  // The step only touches the links that changed since it last ran, so the tree isn't cleaned.
   @Override
   public ImmutableList<Step> getPostBuildSteps(
       BuildContext context,
       BuildableContext buildableContext) {
-    return ImmutableList.of(
-        new MakeCleanDirectoryStep(getProjectFilesystem(), root),
-        new SymlinkTreeStep(getProjectFilesystem(), root, resolveLinks()));
+    return ImmutableList.<Step>of(
+        new SymlinkTreeStep(
+            getProjectFilesystem(),
+            root,
+            resolveLinks(),
+            /* incremental */ true));
   }
 
   public Path getRoot() {
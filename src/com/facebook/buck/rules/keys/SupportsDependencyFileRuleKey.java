@@ -16,6 +16,7 @@
 
 package com.facebook.buck.rules.keys;
 
+import com.facebook.buck.util.cache.FileHashCache;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
@@ -34,4 +35,18 @@ public interface SupportsDependencyFileRuleKey {
 
   Optional<ImmutableMultimap<String, String>> getSymlinkTreeInputMap() throws IOException;
 
+  /**
+   * @return the inputs that {@link #getInputsAfterBuildingLocally()} would return if the rule were
+   *     built now, predicted without building it, or absent if the rule can't predict them.
+   */
+  Optional<ImmutableList<Path>> getInputsBeforeBuilding(FileHashCache fileHashCache)
+      throws IOException;
+
+  /**
+   * @return the input map that {@link #getSymlinkTreeInputMap()} would return if the rule were
+   *     built now, for the inputs predicted by {@link #getInputsBeforeBuilding(FileHashCache)}.
+   */
+  Optional<ImmutableMultimap<String, String>> getSymlinkTreeInputMapBeforeBuilding(
+      FileHashCache fileHashCache) throws IOException;
+
 }
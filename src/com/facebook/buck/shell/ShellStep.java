@@ -128,7 +128,7 @@ public abstract class ShellStep implements Step {
   }
 
   @VisibleForTesting
-  void setProcessEnvironment(
+  protected void setProcessEnvironment(
       ExecutionContext context,
       Map<String, String> environment,
       File workDir) {
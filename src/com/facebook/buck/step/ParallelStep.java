@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step;
+
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a number of independent steps at the same time, each on its own thread. Unlike
+ * {@link CompositeStep}, every step is run even if another one fails; the exit code is that of the
+ * first step (in the order given) to fail.
+ */
+public class ParallelStep implements Step {
+
+  private final ImmutableList<Step> steps;
+
+  public ParallelStep(List<? extends Step> steps) {
+    Preconditions.checkArgument(!steps.isEmpty(), "Must have at least one step");
+    this.steps = ImmutableList.copyOf(steps);
+  }
+
+  @Override
+  public int execute(final ExecutionContext context) throws IOException, InterruptedException {
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor(getShortName(), steps.size());
+    try {
+      List<Future<Integer>> exitCodes = Lists.newArrayListWithCapacity(steps.size());
+      for (final Step step : steps) {
+        exitCodes.add(
+            executor.submit(
+                new Callable<Integer>() {
+                  @Override
+                  public Integer call() throws Exception {
+                    return step.execute(context);
+                  }
+                }));
+      }
+
+      int exitCode = 0;
+      for (Future<Integer> stepExitCode : exitCodes) {
+        int code = stepExitCode.get();
+        if (exitCode == 0) {
+          exitCode = code;
+        }
+      }
+      return exitCode;
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      MoreExecutors.shutdown(executor);
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "parallel";
+  }
+
+  @Override
+  public String getDescription(final ExecutionContext context) {
+    return Joiner.on(" & ").join(
+        Iterables.transform(
+            steps,
+            new Function<Step, String>() {
+              @Override
+              public String apply(Step step) {
+                return step.getDescription(context);
+              }
+            }));
+  }
+}
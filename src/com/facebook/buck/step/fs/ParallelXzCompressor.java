@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Compresses data into a single .xz stream made of blocks of a fixed size, compressing several
+ * blocks at once. The output is the same whatever the number of threads, and can be read by any
+ * .xz decoder, including XZ Embedded.
+ * <p>
+ * Each block is compressed on its own into a stream of a single block by {@link XZOutputStream}.
+ * The blocks are then copied out of those streams, and the index and footer of the combined
+ * stream are written from the sizes recorded in their indexes. As in {@code xz --threads}, the
+ * dictionary is no larger than a block, since the encoder could not make use of more.
+ *
+ * @see <a href="http://tukaani.org/xz/xz-file-format.txt">The .xz File Format</a>
+ */
+class ParallelXzCompressor {
+
+  private static final byte[] HEADER_MAGIC = {(byte) 0xfd, '7', 'z', 'X', 'Z', 0x00};
+  private static final byte[] FOOTER_MAGIC = {'Y', 'Z'};
+  private static final int STREAM_HEADER_SIZE = 12;
+  private static final int STREAM_FOOTER_SIZE = 12;
+
+  private final LZMA2Options options;
+  private final int check;
+  private final int blockSize;
+  private final int threadCount;
+
+  /**
+   * @param check one of the {@code CHECK_*} constants of {@link org.tukaani.xz.XZ}.
+   * @param blockSize the number of uncompressed bytes in each block, other than the last.
+   */
+  ParallelXzCompressor(LZMA2Options options, int check, int blockSize, int threadCount)
+      throws UnsupportedOptionsException {
+    Preconditions.checkArgument(blockSize > 0);
+    Preconditions.checkArgument(threadCount > 0);
+    this.options = (LZMA2Options) options.clone();
+    this.options.setDictSize(
+        Math.max(LZMA2Options.DICT_SIZE_MIN, Math.min(options.getDictSize(), blockSize)));
+    this.check = check;
+    this.blockSize = blockSize;
+    this.threadCount = threadCount;
+  }
+
+  void compress(InputStream in, OutputStream out)
+      throws IOException, InterruptedException {
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    long blockCount = 0;
+
+    out.write(HEADER_MAGIC);
+    writeWithCrc32(out, new byte[] {0x00, (byte) check});
+
+    // Only read as far ahead as there are threads to compress, so that the whole input is not
+    // held in memory at once.
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor("xz", threadCount);
+    Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    try {
+      while (true) {
+        final byte[] block = new byte[blockSize];
+        int length = ByteStreams.read(in, block, 0, blockSize);
+        if (length > 0) {
+          final byte[] data = length == blockSize ? block : Arrays.copyOf(block, length);
+          pending.add(
+              executor.submit(
+                  new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                      return compressBlock(data);
+                    }
+                  }));
+        }
+        while (!pending.isEmpty() && (pending.size() >= threadCount || length < blockSize)) {
+          byte[] stream = getCompressedStream(pending.removeFirst());
+          copyBlock(stream, out, index);
+          blockCount++;
+        }
+        if (length < blockSize) {
+          break;
+        }
+      }
+    } finally {
+      for (Future<byte[]> future : pending) {
+        future.cancel(true);
+      }
+      MoreExecutors.shutdown(executor);
+    }
+
+    // The index of the combined stream.
+    ByteArrayOutputStream indexWithHeader = new ByteArrayOutputStream();
+    indexWithHeader.write(0x00);
+    writeVarInt(indexWithHeader, blockCount);
+    index.writeTo(indexWithHeader);
+    while (indexWithHeader.size() % 4 != 0) {
+      indexWithHeader.write(0x00);
+    }
+    byte[] indexBytes = indexWithHeader.toByteArray();
+    out.write(indexBytes);
+    writeInt(out, crc32(indexBytes));
+
+    ByteBuffer footer = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+    footer.putInt((indexBytes.length + 4) / 4 - 1);
+    footer.put((byte) 0x00);
+    footer.put((byte) check);
+    writeWithCrc32Before(out, footer.array());
+    out.write(FOOTER_MAGIC);
+  }
+
+  private byte[] compressBlock(byte[] data) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream(data.length / 2);
+    try (XZOutputStream xzOut = new XZOutputStream(stream, options, check)) {
+      xzOut.write(data);
+    }
+    return stream.toByteArray();
+  }
+
+  /**
+   * Copies the only block of {@code stream} to {@code out}, and adds its record to
+   * {@code index}.
+   */
+  private static void copyBlock(byte[] stream, OutputStream out, ByteArrayOutputStream index)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+    long backwardSize = buffer.getInt(stream.length - STREAM_FOOTER_SIZE + 4) & 0xffffffffL;
+    int indexSize = (int) ((backwardSize + 1) * 4);
+    int indexStart = stream.length - STREAM_FOOTER_SIZE - indexSize;
+
+    // Skip the index indicator and the number of records, which is always one.
+    buffer.position(indexStart);
+    Preconditions.checkState(buffer.get() == 0x00);
+    Preconditions.checkState(readVarInt(buffer) == 1);
+    writeVarInt(index, readVarInt(buffer));
+    writeVarInt(index, readVarInt(buffer));
+
+    out.write(stream, STREAM_HEADER_SIZE, indexStart - STREAM_HEADER_SIZE);
+  }
+
+  private static byte[] getCompressedStream(Future<byte[]> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static long readVarInt(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  private static void writeVarInt(OutputStream out, long value) throws IOException {
+    while (value >= 0x80) {
+      out.write((int) (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static void writeWithCrc32(OutputStream out, byte[] bytes) throws IOException {
+    out.write(bytes);
+    writeInt(out, crc32(bytes));
+  }
+
+  private static void writeWithCrc32Before(OutputStream out, byte[] bytes) throws IOException {
+    writeInt(out, crc32(bytes));
+    out.write(bytes);
+  }
+
+  private static void writeInt(OutputStream out, long value) throws IOException {
+    out.write(
+        ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) value).array());
+  }
+
+  private static long crc32(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+}
@@ -17,24 +17,70 @@
 package com.facebook.buck.step.fs;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.util.concurrent.MoreExecutors;
 import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * Creates a tree of symlinks under {@code root}.
+ * <p>
+ * An incremental step owns the whole of {@code root}, so it need not be cleaned beforehand. It
+ * records the links it made in a manifest next to {@code root}, and when it runs again, only
+ * creates, retargets or deletes the links that differ from those in the manifest. If there is no
+ * manifest, the tree is made afresh.
+ */
 public class SymlinkTreeStep implements Step {
 
+  private static final Logger LOG = Logger.get(SymlinkTreeStep.class);
+
+  private static final int MANIFEST_VERSION = 1;
+
+  /** Fewer links than this are created on the calling thread. */
+  private static final int PARALLEL_LINK_THRESHOLD = 1000;
+
   private final ProjectFilesystem filesystem;
   private final Path root;
   private final ImmutableMap<Path, Path> links;
+  private final boolean incremental;
 
   public SymlinkTreeStep(ProjectFilesystem filesystem, Path root, ImmutableMap<Path, Path> links) {
+    this(filesystem, root, links, /* incremental */ false);
+  }
+
+  public SymlinkTreeStep(
+      ProjectFilesystem filesystem,
+      Path root,
+      ImmutableMap<Path, Path> links,
+      boolean incremental) {
     this.filesystem = filesystem;
     this.root = root;
     this.links = links;
+    this.incremental = incremental;
   }
 
   @Override
@@ -48,7 +94,18 @@ public class SymlinkTreeStep implements Step {
   }
 
   @Override
-  public int execute(ExecutionContext context) {
+  public int execute(ExecutionContext context) throws InterruptedException {
+    if (incremental) {
+      try {
+        updateTree(context);
+        return 0;
+      } catch (IOException e) {
+        context.logError(e, "failed updating link tree @ %s", root);
+        e.printStackTrace(context.getStdErr());
+        return 1;
+      }
+    }
+
     for (ImmutableMap.Entry<Path, Path> ent : links.entrySet()) {
       Path target = filesystem.resolve(ent.getValue());
       Path link = filesystem.resolve(root.resolve(ent.getKey()));
@@ -65,18 +122,169 @@ public class SymlinkTreeStep implements Step {
     return 0;
   }
 
+  public static Path getManifestPath(Path root) {
+    return root.resolveSibling(root.getFileName() + ".manifest");
+  }
+
+  private void updateTree(ExecutionContext context) throws IOException, InterruptedException {
+    Path manifest = getManifestPath(root);
+    Optional<Map<Path, String>> existing = readManifest(manifest);
+    // Until the new manifest is written, what is in the tree is not known.
+    filesystem.deleteFileAtPathIfExists(manifest);
+
+    Map<Path, String> targets = new LinkedHashMap<>();
+    for (ImmutableMap.Entry<Path, Path> ent : links.entrySet()) {
+      targets.put(ent.getKey(), filesystem.resolve(ent.getValue()).toString());
+    }
+
+    List<Path> toLink = new ArrayList<>();
+    int removed = 0;
+    if (!existing.isPresent()) {
+      filesystem.deleteRecursivelyIfExists(root);
+      filesystem.mkdirs(root);
+      toLink.addAll(targets.keySet());
+    } else {
+      for (Path link : existing.get().keySet()) {
+        if (!targets.containsKey(link)) {
+          removeLink(link);
+          removed++;
+        }
+      }
+      for (Map.Entry<Path, String> ent : targets.entrySet()) {
+        if (!ent.getValue().equals(existing.get().get(ent.getKey()))) {
+          toLink.add(ent.getKey());
+        }
+      }
+    }
+
+    // Many links share a directory, so each one is only made once.
+    Set<Path> directories = new LinkedHashSet<>();
+    for (Path link : toLink) {
+      directories.add(root.resolve(link).getParent());
+    }
+    for (Path directory : directories) {
+      filesystem.mkdirs(directory);
+    }
+
+    if (toLink.size() < PARALLEL_LINK_THRESHOLD ||
+        context.getConcurrencyLimit().threadLimit <= 1) {
+      createLinks(toLink, targets);
+    } else {
+      createLinksInParallel(toLink, targets, context.getConcurrencyLimit().threadLimit);
+    }
+
+    writeManifest(manifest, targets);
+    LOG.debug(
+        "Updated %d and removed %d of the links in %s.",
+        toLink.size(),
+        removed,
+        root);
+  }
+
+  /**
+   * Deletes {@code link}, and any directories that are left empty by doing so.
+   */
+  private void removeLink(Path link) throws IOException {
+    filesystem.deleteFileAtPathIfExists(root.resolve(link));
+    for (Path dir = link.getParent(); dir != null; dir = dir.getParent()) {
+      Path directory = root.resolve(dir);
+      if (!filesystem.isDirectory(directory) || filesystem.listFiles(directory).length != 0) {
+        break;
+      }
+      filesystem.deleteFileAtPath(directory);
+    }
+  }
+
+  private void createLinks(List<Path> toLink, Map<Path, String> targets) throws IOException {
+    for (Path link : toLink) {
+      filesystem.createSymLink(root.resolve(link), Paths.get(targets.get(link)), true /* force */);
+    }
+  }
+
+  private void createLinksInParallel(
+      List<Path> toLink,
+      final Map<Path, String> targets,
+      int threadCount) throws IOException, InterruptedException {
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor("link_tree", threadCount);
+    List<Future<Void>> futures = new ArrayList<>();
+    try {
+      int batchSize = (toLink.size() + threadCount * 4 - 1) / (threadCount * 4);
+      for (final List<Path> batch : Lists.partition(toLink, batchSize)) {
+        futures.add(
+            executor.submit(
+                new Callable<Void>() {
+                  @Override
+                  public Void call() throws IOException {
+                    createLinks(batch, targets);
+                    return null;
+                  }
+                }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+      MoreExecutors.shutdown(executor);
+    }
+  }
+
+  /**
+   * @return the links recorded in {@code manifest}, if it is there and the tree has not been
+   *     deleted since it was written.
+   */
+  private Optional<Map<Path, String>> readManifest(Path manifest) {
+    if (!filesystem.isFile(manifest) || !filesystem.isDirectory(root)) {
+      return Optional.absent();
+    }
+    try (InputStream input = filesystem.newFileInputStream(manifest);
+         DataInputStream in = new DataInputStream(input)) {
+      if (in.readInt() != MANIFEST_VERSION) {
+        return Optional.absent();
+      }
+      int count = in.readInt();
+      Map<Path, String> existing = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        existing.put(Paths.get(in.readUTF()), in.readUTF());
+      }
+      return Optional.of(existing);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn(e, "Unable to read %s, so the link tree will be made afresh.", manifest);
+      return Optional.absent();
+    }
+  }
+
+  private void writeManifest(Path manifest, Map<Path, String> targets) throws IOException {
+    try (OutputStream output = filesystem.newFileOutputStream(manifest);
+         DataOutputStream out = new DataOutputStream(output)) {
+      out.writeInt(MANIFEST_VERSION);
+      out.writeInt(targets.size());
+      for (Map.Entry<Path, String> ent : targets.entrySet()) {
+        out.writeUTF(ent.getKey().toString());
+        out.writeUTF(ent.getValue());
+      }
+    }
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (!(obj instanceof SymlinkTreeStep)) {
       return false;
     }
     SymlinkTreeStep that = (SymlinkTreeStep) obj;
-    return Objects.equal(this.root, that.root) && Objects.equal(this.links, that.links);
+    return Objects.equal(this.root, that.root) &&
+        Objects.equal(this.links, that.links) &&
+        this.incremental == that.incremental;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(root, links);
+    return Objects.hashCode(root, links, incremental);
   }
 
 }
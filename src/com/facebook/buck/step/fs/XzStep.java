@@ -22,6 +22,7 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.io.ByteStreams;
 
@@ -46,12 +47,16 @@ public class XzStep implements Step {
 
   private static final Logger LOG = Logger.get(XzStep.class);
 
+  public static final int DEFAULT_COMPRESSION_LEVEL = 4;
+
   private final ProjectFilesystem filesystem;
   private final Path sourceFile;
   private final Path destinationFile;
   private final int compressionLevel;
   private final boolean keep;
   private final int check;
+  private final Optional<Integer> blockSize;
+  private final Optional<Integer> threadCount;
 
   /**
    * Create an {@link XzStep} to compress a file using XZ.
@@ -72,6 +77,36 @@ public class XzStep implements Step {
       int compressionLevel,
       boolean keep,
       int check) {
+    this(
+        filesystem,
+        sourceFile,
+        destinationFile,
+        compressionLevel,
+        keep,
+        check,
+        Optional.<Integer>absent(),
+        Optional.<Integer>absent());
+  }
+
+  /**
+   * Create an {@link XzStep} to compress a file using XZ.
+   * @param blockSize if present, the file is split into blocks of this many bytes that are
+   *     compressed independently of each other, several at a time. Smaller blocks compress faster
+   *     but less well. If absent, the file is compressed as a single block on a single thread.
+   * @param threadCount the number of blocks to compress at once. Defaults to the thread limit of
+   *     the build.
+   * @see #XzStep(ProjectFilesystem, Path, Path, int, boolean, int)
+   */
+  @VisibleForTesting
+  XzStep(
+      ProjectFilesystem filesystem,
+      Path sourceFile,
+      Path destinationFile,
+      int compressionLevel,
+      boolean keep,
+      int check,
+      Optional<Integer> blockSize,
+      Optional<Integer> threadCount) {
     this.filesystem = filesystem;
     this.sourceFile = sourceFile;
     this.destinationFile = destinationFile;
@@ -80,6 +115,9 @@ public class XzStep implements Step {
     this.compressionLevel = compressionLevel;
     this.keep = keep;
     this.check = check;
+    Preconditions.checkArgument(!blockSize.isPresent() || blockSize.get() > 0);
+    this.blockSize = blockSize;
+    this.threadCount = threadCount;
   }
 
   /**
@@ -91,7 +129,7 @@ public class XzStep implements Step {
    * @param sourceFile file to compress
    */
   public XzStep(ProjectFilesystem filesystem, Path sourceFile) {
-    this(filesystem, sourceFile, 4);
+    this(filesystem, sourceFile, DEFAULT_COMPRESSION_LEVEL);
   }
 
   /**
@@ -103,7 +141,7 @@ public class XzStep implements Step {
    * @param outputPath desired output path
    */
   public XzStep(ProjectFilesystem filesystem, Path sourceFile, Path outputPath) {
-    this(filesystem, sourceFile, outputPath, 4);
+    this(filesystem, sourceFile, outputPath, DEFAULT_COMPRESSION_LEVEL);
   }
 
   /**
@@ -120,7 +158,40 @@ public class XzStep implements Step {
       Path sourceFile,
       Path outputPath,
       int compressionLevel) {
-    this(filesystem, sourceFile, outputPath, compressionLevel, /* keep */ false, XZ.CHECK_CRC32);
+    this(
+        filesystem,
+        sourceFile,
+        outputPath,
+        compressionLevel,
+        Optional.<Integer>absent());
+  }
+
+  /**
+   * Creates an XzStep to compress a file with the given XZ compression level and output path,
+   * optionally splitting it into blocks that are compressed in parallel.
+   *
+   * <p> Decompression will require up to 64MiB of RAM, or the block size if that is smaller.
+   *
+   * @param sourceFile file to compress
+   * @param outputPath the desired output path.
+   * @param compressionLevel level of compression (from 0-9)
+   * @param blockSize if present, the size of the blocks to split the file into.
+   */
+  public XzStep(
+      ProjectFilesystem filesystem,
+      Path sourceFile,
+      Path outputPath,
+      int compressionLevel,
+      Optional<Integer> blockSize) {
+    this(
+        filesystem,
+        sourceFile,
+        outputPath,
+        compressionLevel,
+        /* keep */ false,
+        XZ.CHECK_CRC32,
+        blockSize,
+        Optional.<Integer>absent());
   }
 
   /**
@@ -145,14 +216,25 @@ public class XzStep implements Step {
   }
 
   @Override
-  public int execute(ExecutionContext context) {
+  public int execute(ExecutionContext context) throws InterruptedException {
     try (
         InputStream in = filesystem.newFileInputStream(sourceFile);
-        OutputStream out = filesystem.newFileOutputStream(destinationFile);
-        XZOutputStream xzOut = new XZOutputStream(out, new LZMA2Options(compressionLevel), check)
+        OutputStream out = filesystem.newFileOutputStream(destinationFile)
     ) {
-      ByteStreams.copy(in, xzOut);
-      xzOut.finish();
+      if (blockSize.isPresent()) {
+        new ParallelXzCompressor(
+            new LZMA2Options(compressionLevel),
+            check,
+            blockSize.get(),
+            threadCount.or(context.getConcurrencyLimit().threadLimit))
+            .compress(in, out);
+      } else {
+        try (XZOutputStream xzOut =
+                 new XZOutputStream(out, new LZMA2Options(compressionLevel), check)) {
+          ByteStreams.copy(in, xzOut);
+          xzOut.finish();
+        }
+      }
       if (!keep) {
         filesystem.deleteFileAtPath(sourceFile);
       }
@@ -170,7 +252,13 @@ public class XzStep implements Step {
   @Override
   public String getDescription(ExecutionContext context) {
     return Joiner.on(" ").skipNulls().join(
-     "xz", "-z", "-" + compressionLevel, (keep ? "--keep" : null), "--check=crc32", sourceFile);
+        "xz",
+        "-z",
+        "-" + compressionLevel,
+        (keep ? "--keep" : null),
+        "--check=crc32",
+        (blockSize.isPresent() ? "--block-size=" + blockSize.get() : null),
+        sourceFile);
   }
 
   @Override
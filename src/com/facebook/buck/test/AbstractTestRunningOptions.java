@@ -61,6 +61,15 @@ abstract class AbstractTestRunningOptions {
     return true;
   }
 
+  /**
+   * @return whether the results of passing tests should be shared through the artifact cache, as
+   *     well as being kept locally. Has no effect unless {@link #isResultsCacheEnabled()}.
+   */
+  @Value.Default
+  public boolean isResultsArtifactCacheEnabled() {
+    return false;
+  }
+
   @Value.Default
   public boolean isDryRun() {
     return false;
@@ -75,6 +84,20 @@ abstract class AbstractTestRunningOptions {
 
   public abstract Optional<String> getPathToJavaAgent();
 
+  /**
+   * @return the pool of long-lived test runner JVMs to run Java tests in, if tests should not each
+   *     start their own JVM.
+   */
+  public abstract Optional<TestRunnerWorkerPool> getTestRunnerWorkerPool();
+
+  /**
+   * @return how long tests took when they were last run.
+   */
+  @Value.Default
+  public TestDurations getTestDurations() {
+    return TestDurations.empty();
+  }
+
   @Value.Default
   public CoverageReportFormat getCoverageReportFormat() {
     return CoverageReportFormat.HTML;
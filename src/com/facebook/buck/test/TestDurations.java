@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.test;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.BuckConstant;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How long each test rule, and each test case within it, took the last time it was run. These
+ * are kept in {@code buck-out} between runs so that slow tests can be started first, and so that
+ * the test cases of a sharded test can be spread evenly between its shards.
+ */
+public class TestDurations {
+
+  private static final Logger LOG = Logger.get(TestDurations.class);
+
+  public static final Path PATH = BuckConstant.SCRATCH_PATH.resolve("test-durations.json");
+
+  private final Map<String, Long> targetDurations;
+  private final Map<String, Long> testCaseDurations;
+
+  @JsonCreator
+  public TestDurations(
+      @JsonProperty("targets") Map<String, Long> targetDurations,
+      @JsonProperty("testCases") Map<String, Long> testCaseDurations) {
+    this.targetDurations = new ConcurrentHashMap<>(targetDurations);
+    this.testCaseDurations = new ConcurrentHashMap<>(testCaseDurations);
+  }
+
+  public static TestDurations empty() {
+    return new TestDurations(
+        ImmutableSortedMap.<String, Long>of(),
+        ImmutableSortedMap.<String, Long>of());
+  }
+
+  /**
+   * @return the durations recorded in {@code filesystem}, or none if they cannot be read.
+   */
+  public static TestDurations readFrom(ProjectFilesystem filesystem, ObjectMapper mapper) {
+    if (!filesystem.isFile(PATH)) {
+      return empty();
+    }
+    try (InputStream stream = filesystem.newFileInputStream(PATH)) {
+      return mapper.readValue(stream, TestDurations.class);
+    } catch (IOException e) {
+      // These are only used to order tests, so start afresh.
+      LOG.warn(e, "Unable to read test durations from %s.", PATH);
+      return empty();
+    }
+  }
+
+  public void writeTo(ProjectFilesystem filesystem, ObjectMapper mapper) throws IOException {
+    filesystem.mkdirs(PATH.getParent());
+    try (OutputStream stream = filesystem.newFileOutputStream(PATH)) {
+      mapper.writeValue(stream, this);
+    }
+  }
+
+  /**
+   * @return the total time, in milliseconds, of the test cases of {@code target} when it was last
+   *     run.
+   */
+  public Optional<Long> getTargetDuration(BuildTarget target) {
+    return Optional.fromNullable(targetDurations.get(target.getFullyQualifiedName()));
+  }
+
+  /**
+   * @param testCaseName e.g. the name of a JUnit test class.
+   */
+  public Optional<Long> getTestCaseDuration(String testCaseName) {
+    return Optional.fromNullable(testCaseDurations.get(testCaseName));
+  }
+
+  /**
+   * Records the durations of tests that have just been run. Safe to call from several threads.
+   */
+  public void record(TestResults results) {
+    long total = 0;
+    for (TestCaseSummary testCase : results.getTestCases()) {
+      testCaseDurations.put(testCase.getTestCaseName(), testCase.getTotalTime());
+      total += testCase.getTotalTime();
+    }
+    targetDurations.put(results.getBuildTarget().getFullyQualifiedName(), total);
+  }
+
+  @JsonProperty("targets")
+  public ImmutableSortedMap<String, Long> getTargetDurations() {
+    return ImmutableSortedMap.copyOf(targetDurations);
+  }
+
+  @JsonProperty("testCases")
+  public ImmutableSortedMap<String, Long> getTestCaseDurations() {
+    return ImmutableSortedMap.copyOf(testCaseDurations);
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.test;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of long-lived test runner processes, each of which runs one test target at a time and
+ * talks to Buck over a socket on the loopback interface. Workers are started on demand, are
+ * reused until they have run {@code maxRunsPerWorker} targets, and are thrown away as soon as
+ * anything goes wrong with them.
+ */
+public class TestRunnerWorkerPool implements Closeable {
+
+  private static final Logger LOG = Logger.get(TestRunnerWorkerPool.class);
+
+  private static final int CONNECT_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(30);
+
+  private final Path workingDirectory;
+  private final Path logFile;
+  private final int maxRunsPerWorker;
+
+  /** Idle workers, keyed by the command that started them. */
+  private final ListMultimap<ImmutableList<String>, Worker> idleWorkers =
+      ArrayListMultimap.create();
+  private boolean isClosed = false;
+
+  /**
+   * @param workingDirectory the directory workers are started in.
+   * @param logFile the file that the stdout and stderr of every worker are appended to.
+   * @param maxRunsPerWorker the number of targets a worker runs before it is replaced.
+   */
+  public TestRunnerWorkerPool(Path workingDirectory, Path logFile, int maxRunsPerWorker) {
+    Preconditions.checkArgument(maxRunsPerWorker > 0);
+    this.workingDirectory = workingDirectory;
+    this.logFile = logFile;
+    this.maxRunsPerWorker = maxRunsPerWorker;
+  }
+
+  /**
+   * Returns an idle worker that was started with {@code command}, or starts a new one. The port
+   * the worker must connect back to is appended to {@code command}. The worker must be handed
+   * back to {@link #release(Worker, boolean)} once the caller is done with it.
+   */
+  public Worker acquire(
+      ImmutableList<String> command,
+      ImmutableMap<String, String> environment) throws IOException {
+    synchronized (this) {
+      Preconditions.checkState(!isClosed, "The test runner pool has been closed.");
+      List<Worker> idle = idleWorkers.get(command);
+      if (!idle.isEmpty()) {
+        return idle.remove(idle.size() - 1);
+      }
+    }
+    return startWorker(command, environment);
+  }
+
+  /**
+   * @param reusable whether the worker finished its job cleanly. If not, or if it has run as many
+   *     targets as it may, it is shut down.
+   */
+  public void release(Worker worker, boolean reusable) {
+    worker.runs++;
+    synchronized (this) {
+      if (reusable && !isClosed && worker.runs < maxRunsPerWorker) {
+        idleWorkers.put(worker.command, worker);
+        return;
+      }
+    }
+    worker.destroy();
+  }
+
+  @Override
+  public void close() {
+    List<Worker> workers;
+    synchronized (this) {
+      isClosed = true;
+      workers = Lists.newArrayList(idleWorkers.values());
+      idleWorkers.clear();
+    }
+    for (Worker worker : workers) {
+      worker.destroy();
+    }
+  }
+
+  private Worker startWorker(
+      ImmutableList<String> command,
+      ImmutableMap<String, String> environment) throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      serverSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
+
+      ProcessBuilder builder = new ProcessBuilder(
+          ImmutableList.<String>builder()
+              .addAll(command)
+              .add(String.valueOf(serverSocket.getLocalPort()))
+              .build());
+      builder.directory(workingDirectory.toFile());
+      builder.environment().clear();
+      builder.environment().putAll(environment);
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile.toFile()));
+      LOG.debug("Starting test runner worker: %s", builder.command());
+      Process process = builder.start();
+
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        process.destroy();
+        throw new IOException(
+            String.format("Test runner worker did not start; see %s for details.", logFile),
+            e);
+      }
+      return new Worker(command, process, socket);
+    }
+  }
+
+  /**
+   * A single test runner process.
+   */
+  public static class Worker {
+    private final ImmutableList<String> command;
+    private final Process process;
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private int runs = 0;
+
+    private Worker(ImmutableList<String> command, Process process, Socket socket)
+        throws IOException {
+      this.command = command;
+      this.process = process;
+      this.socket = socket;
+      this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public DataInputStream getInput() {
+      return input;
+    }
+
+    public DataOutputStream getOutput() {
+      return output;
+    }
+
+    /**
+     * @param timeoutMs how long reads from this worker may block before throwing a
+     *     {@link java.net.SocketTimeoutException}, or 0 to wait forever.
+     */
+    public void setReadTimeout(long timeoutMs) throws SocketException {
+      socket.setSoTimeout((int) Math.min(timeoutMs, Integer.MAX_VALUE));
+    }
+
+    private void destroy() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        LOG.debug(e, "Error closing connection to test runner worker.");
+      }
+      process.destroy();
+    }
+  }
+}
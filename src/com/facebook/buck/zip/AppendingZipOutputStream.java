@@ -45,6 +45,7 @@ class AppendingZipOutputStream extends CustomZipOutputStream {
 
   private final boolean throwExceptionsOnDuplicate;
   private final Clock clock;
+  private final int alignment;
   private long currentOffset = 0;
   private List<EntryAccounting> entries = Lists.newLinkedList();
   @Nullable private EntryAccounting currentEntry = null;
@@ -54,9 +55,21 @@ class AppendingZipOutputStream extends CustomZipOutputStream {
   public AppendingZipOutputStream(Clock clock,
         OutputStream stream,
         boolean throwExceptionsOnDuplicate) {
+    this(clock, stream, throwExceptionsOnDuplicate, 1);
+  }
+
+  /**
+   * @param alignment the data of stored entries copied with {@link #putRawEntry(RawZipEntry)}
+   *     starts at a multiple of this many bytes into the zip.
+   */
+  public AppendingZipOutputStream(Clock clock,
+        OutputStream stream,
+        boolean throwExceptionsOnDuplicate,
+        int alignment) {
     super(stream);
     this.clock = clock;
     this.throwExceptionsOnDuplicate = throwExceptionsOnDuplicate;
+    this.alignment = alignment;
   }
 
   @Override
@@ -67,10 +80,7 @@ class AppendingZipOutputStream extends CustomZipOutputStream {
 
   @Override
   protected void actuallyPutNextEntry(ZipEntry entry) throws IOException {
-    if (throwExceptionsOnDuplicate && !seenNames.add(entry.getName())) {
-      // Same exception as ZipOutputStream.
-      throw new ZipException("duplicate entry: " + entry.getName());
-    }
+    checkForDuplicate(entry.getName());
 
     currentEntry = new EntryAccounting(clock, entry, currentOffset);
     entries.add(currentEntry);
@@ -78,6 +88,24 @@ class AppendingZipOutputStream extends CustomZipOutputStream {
     currentOffset += currentEntry.writeLocalFileHeader(delegate);
   }
 
+  @Override
+  protected void actuallyPutRawEntry(RawZipEntry entry) throws IOException {
+    checkForDuplicate(entry.getName());
+
+    EntryAccounting rawEntry = new EntryAccounting(clock, entry.getEntry(), currentOffset);
+    rawEntry.setExtra(entry.getLocalExtra(), entry.getCentralExtra());
+    entries.add(rawEntry);
+
+    currentOffset += rawEntry.writeRawEntry(delegate, entry.getData(), alignment);
+  }
+
+  private void checkForDuplicate(String name) throws ZipException {
+    if (throwExceptionsOnDuplicate && !seenNames.add(name)) {
+      // Same exception as ZipOutputStream.
+      throw new ZipException("duplicate entry: " + name);
+    }
+  }
+
   @Override
   protected void actuallyCloseEntry() throws IOException {
     if (currentEntry == null) {
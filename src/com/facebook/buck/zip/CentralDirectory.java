@@ -85,7 +85,7 @@ class CentralDirectory {
     byte[] nameBytes = entry.getName().getBytes(Charsets.UTF_8);
     long externalAttributes = entry.getExternalAttributes();
     size += ByteIo.writeShort(out, nameBytes.length);  // Length of name.
-    size += ByteIo.writeShort(out, 0);                 // Length of extra data.
+    size += ByteIo.writeShort(out, entry.getCentralExtra().length);  // Length of extra data.
     size += ByteIo.writeShort(out, 0);                 // Length of file comment.
     size += ByteIo.writeShort(out, 0);                 // Disk on which file starts.
     size += ByteIo.writeShort(out, 0);                 // internal file attributes (unknown)
@@ -93,6 +93,8 @@ class CentralDirectory {
     size += ByteIo.writeInt(out, entry.getOffset());   // Offset of local file header.
     out.write(nameBytes);
     size += nameBytes.length;
+    out.write(entry.getCentralExtra());
+    size += entry.getCentralExtra().length;
 
     return size;
   }
@@ -56,6 +56,34 @@ public abstract class CustomZipOutputStream extends OutputStream {
    */
   protected abstract void actuallyPutNextEntry(ZipEntry entry) throws IOException;
 
+  /**
+   * Copies an entry read from another zip. Where possible, its data is copied as it is, rather
+   * than being decompressed and compressed again. The entry is closed once it has been written.
+   */
+  public final void putRawEntry(RawZipEntry entry) throws IOException {
+    Preconditions.checkState(state != State.CLOSED, "Stream has been closed.");
+
+    state = State.OPEN;
+    closeEntry();
+    actuallyPutRawEntry(entry);
+  }
+
+  /**
+   * Called by {@link #putRawEntry(RawZipEntry)} to write a complete entry. It is guaranteed that
+   * the stream is open and that there's no current entry open. By default, the data is
+   * decompressed and written as for any other entry.
+   */
+  protected void actuallyPutRawEntry(RawZipEntry entry) throws IOException {
+    ZipEntry newEntry = entry.getEntry();
+    if (newEntry.getMethod() == ZipEntry.DEFLATED) {
+      // Let the entry be compressed afresh.
+      newEntry.setCompressedSize(-1);
+    }
+    putNextEntry(newEntry);
+    write(entry.getUncompressedData());
+    closeEntry();
+  }
+
   public final void closeEntry() throws IOException {
     Preconditions.checkState(state != State.CLOSED, "Stream has been closed");
     if (!entryOpen) {
@@ -39,12 +39,15 @@ class EntryAccounting {
   private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
   private static final int UTF8_NAMES_FLAG = 1 << 11;
   private static final int ARBITRARY_SIZE = 1024;
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
 
   private final ZipEntry entry;
   private final Method method;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long externalAttributes = 0;
+  private byte[] localExtra = new byte[0];
+  private byte[] centralExtra = new byte[0];
 
   /*
    * General purpose bit flag:
@@ -161,8 +164,74 @@ class EntryAccounting {
     return externalAttributes;
   }
 
+  public byte[] getCentralExtra() {
+    return centralExtra;
+  }
+
+  /**
+   * Sets the extra fields to write in the entry's local file header and in its central directory
+   * header, e.g. to keep those of an entry copied from another zip.
+   */
+  public void setExtra(byte[] localExtra, byte[] centralExtra) {
+    this.localExtra = localExtra;
+    this.centralExtra = centralExtra;
+  }
+
   public long writeLocalFileHeader(OutputStream out) throws IOException {
-    if (method == Method.DEFLATE) {
+    return writeLocalFileHeader(out, /* isRaw */ false);
+  }
+
+  /**
+   * Writes an entry whose data has already been compressed with the entry's method, and whose
+   * CRC and sizes are therefore already known. As these go in the local file header, no data
+   * descriptor is needed, and the entry is complete once this returns.
+   *
+   * @return the number of bytes written.
+   */
+  public long writeRawEntry(OutputStream out, byte[] data) throws IOException {
+    return writeRawEntry(out, data, 1);
+  }
+
+  /**
+   * As {@link #writeRawEntry(OutputStream, byte[])}, but if the entry is stored, its local file
+   * header is padded so that its data starts at a multiple of {@code alignment} bytes into the zip,
+   * as {@code zipalign} does.
+   *
+   * @return the number of bytes written.
+   */
+  public long writeRawEntry(OutputStream out, byte[] data, int alignment) throws IOException {
+    Preconditions.checkState(entry.getCrc() != -1);
+    Preconditions.checkState(entry.getSize() != -1);
+    Preconditions.checkState(entry.getCompressedSize() == data.length);
+    Preconditions.checkArgument(alignment > 0);
+
+    // Nothing will be deflated, so free the deflater's native resources now.
+    deflater.end();
+
+    int padding = 0;
+    if (method == Method.STORE) {
+      long dataOffset = offset +
+          LOCAL_FILE_HEADER_SIZE +
+          entry.getName().getBytes(Charsets.UTF_8).length +
+          localExtra.length;
+      padding = (int) ((alignment - dataOffset % alignment) % alignment);
+    }
+
+    long written = writeLocalFileHeader(out, /* isRaw */ true, padding);
+    out.write(data);
+    return written + data.length;
+  }
+
+  private long writeLocalFileHeader(OutputStream out, boolean isRaw) throws IOException {
+    return writeLocalFileHeader(out, isRaw, 0);
+  }
+
+  /**
+   * @param padding the number of zero bytes to put in the extra field, after the extra data.
+   */
+  private long writeLocalFileHeader(OutputStream out, boolean isRaw, int padding)
+      throws IOException {
+    if (method == Method.DEFLATE && !isRaw) {
       flags |= DATA_DESCRIPTOR_FLAG;
 
       // See http://www.pkware.com/documents/casestudies/APPNOTE.TXT (section 4.4.4)
@@ -200,7 +269,11 @@ class EntryAccounting {
       ByteIo.writeInt(stream, getTime());
 
       // In deflate mode, we don't know the size or CRC of the data.
-      if (isDeflated()) {
+      if (isRaw) {
+        ByteIo.writeInt(stream, entry.getCrc());
+        ByteIo.writeInt(stream, entry.getCompressedSize());
+        ByteIo.writeInt(stream, entry.getSize());
+      } else if (isDeflated()) {
         ByteIo.writeInt(stream, 0);
         ByteIo.writeInt(stream, 0);
         ByteIo.writeInt(stream, 0);
@@ -212,8 +285,10 @@ class EntryAccounting {
 
       byte[] nameBytes = entry.getName().getBytes(Charsets.UTF_8);
       ByteIo.writeShort(stream, nameBytes.length);
-      ByteIo.writeShort(stream, 0);
+      ByteIo.writeShort(stream, localExtra.length + padding);
       stream.write(nameBytes);
+      stream.write(localExtra);
+      stream.write(new byte[padding]);
 
       byte[] bytes = stream.toByteArray();
       out.write(bytes);
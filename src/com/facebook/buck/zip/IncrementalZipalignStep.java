@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.facebook.buck.io.IncrementalFileOutputStream;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Copies a zip, such as an Android .apk, so that the data of its stored entries is 4-byte aligned
+ * as {@code zipalign -f 4} would, and so that its timestamps are scrubbed as by
+ * {@link ZipScrubberStep}. Entries are copied without being decompressed, except that
+ * user-specified entries are compressed with the maximum compression level, as by
+ * {@link RepackZipEntriesStep}.
+ * <p>
+ * The output is written in place over what the last build left there, so that if the entries at
+ * the start of the zip have not changed, they are not written again. The output is always the
+ * same as if it had been written afresh.
+ * <p>
+ * Zips that can't be copied raw, such as those using ZIP64, are aligned by a fallback step that
+ * writes the output afresh instead.
+ */
+public class IncrementalZipalignStep implements Step {
+
+  private static final Logger LOG = Logger.get(IncrementalZipalignStep.class);
+
+  private static final int ALIGNMENT = 4;
+
+  private final ProjectFilesystem filesystem;
+  private final Path inputPath;
+  private final Path outputPath;
+  private final ImmutableSet<String> entriesToCompress;
+  private final Step fallback;
+
+  /**
+   * @param entriesToCompress entries to compress if they are stored in the input (e.g.
+   *     {@code ImmutableSet.of("resources.arsc")})
+   * @param fallback produces the same output from the input when it can't be copied raw (e.g.
+   *     the external {@code zipalign}).
+   */
+  public IncrementalZipalignStep(
+      ProjectFilesystem filesystem,
+      Path inputPath,
+      Path outputPath,
+      ImmutableSet<String> entriesToCompress,
+      Step fallback) {
+    this.filesystem = filesystem;
+    this.inputPath = inputPath;
+    this.outputPath = outputPath;
+    this.entriesToCompress = entriesToCompress;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public int execute(ExecutionContext context) throws IOException, InterruptedException {
+    Optional<ImmutableList<RawZipEntry>> entries =
+        RawZipEntry.readAll(filesystem.resolve(inputPath));
+    if (!entries.isPresent()) {
+      LOG.debug("%s uses ZIP64 or other unsupported features, so aligning it afresh.", inputPath);
+      // The fallback may write in place too, so don't let it write into the last build's output.
+      filesystem.deleteFileAtPathIfExists(outputPath);
+      return fallback.execute(context);
+    }
+
+    // Never write through a link into a file that belongs to something else.
+    if (filesystem.isSymLink(outputPath)) {
+      filesystem.deleteFileAtPath(outputPath);
+    }
+
+    IncrementalFileOutputStream fileOut =
+        new IncrementalFileOutputStream(filesystem.resolve(outputPath));
+    try (CustomZipOutputStream out = ZipOutputStreams.newAligningOutputStream(
+             new BufferedOutputStream(fileOut),
+             ALIGNMENT)) {
+      for (RawZipEntry entry : entries.get()) {
+        // The time is before 1980, so it is written as the start of the DOS epoch.
+        RawZipEntry scrubbed = entry.withTime(0);
+        if (entriesToCompress.contains(entry.getName())) {
+          scrubbed = scrubbed.deflate(ZipStep.MAX_COMPRESSION_LEVEL);
+        }
+        out.putRawEntry(scrubbed);
+      }
+    } finally {
+      fileOut.close();
+    }
+
+    LOG.debug(
+        "Kept %d of %d bytes of %s as they were.",
+        fileOut.getUnchangedBytes(),
+        fileOut.getSize(),
+        outputPath);
+    return 0;
+  }
+
+  @Override
+  public String getShortName() {
+    return "zipalign";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("zipalign -f %d %s %s", ALIGNMENT, inputPath, outputPath);
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * An entry of a zip file together with its data exactly as it is stored in the zip, i.e. still
+ * compressed. These can be copied into another zip with
+ * {@link CustomZipOutputStream#putRawEntry(RawZipEntry)} without being inflated and deflated
+ * again.
+ *
+ * @see <a href="http://www.pkware.com/documents/casestudies/APPNOTE.TXT">APPNOTE.TXT</a>
+ */
+public class RawZipEntry {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+  private static final int ENCRYPTED_FLAG = 1;
+  private static final int UTF8_NAMES_FLAG = 1 << 11;
+  private static final long ZIP64_MARKER = 0xffffffffL;
+  private static final int EXTRA_FIELD_HEADER_SIZE = 4;
+
+  /**
+   * Names are in the IBM PC character set unless the entry says that they are in UTF-8.
+   */
+  private static final Charset CP437 = Charset.forName("IBM437");
+
+  /**
+   * The IDs of the extra fields that record when an entry was modified, accessed or created.
+   */
+  private static final ImmutableSet<Integer> TIMESTAMP_EXTRA_FIELD_IDS = ImmutableSet.of(
+      0x000a,  // NTFS
+      0x5455,  // Extended timestamp
+      0x5855);  // Info-ZIP Unix, original version
+
+  private final ZipEntry entry;
+  private final byte[] data;
+  private final byte[] localExtra;
+  private final byte[] centralExtra;
+
+  private RawZipEntry(ZipEntry entry, byte[] data, byte[] localExtra, byte[] centralExtra) {
+    this.entry = entry;
+    this.data = data;
+    this.localExtra = localExtra;
+    this.centralExtra = centralExtra;
+  }
+
+  /**
+   * @return a copy of the entry, with its method, CRC, size and compressed size set.
+   */
+  public ZipEntry getEntry() {
+    return new ZipEntry(entry);
+  }
+
+  public String getName() {
+    return entry.getName();
+  }
+
+  /**
+   * @return the data of the entry as it is stored in the zip. This must not be modified.
+   */
+  byte[] getData() {
+    return data;
+  }
+
+  /**
+   * @return the extra field of the entry's local file header. This must not be modified.
+   */
+  byte[] getLocalExtra() {
+    return localExtra;
+  }
+
+  /**
+   * @return the extra field of the entry's central directory header, which may differ from the
+   *     one in its local file header. This must not be modified.
+   */
+  byte[] getCentralExtra() {
+    return centralExtra;
+  }
+
+  public byte[] getUncompressedData() throws IOException {
+    if (entry.getMethod() == ZipEntry.STORED) {
+      return data;
+    }
+
+    Inflater inflater = new Inflater(/* nowrap */ true);
+    try {
+      inflater.setInput(data);
+      byte[] uncompressed = new byte[(int) entry.getSize()];
+      int read = 0;
+      while (read < uncompressed.length) {
+        int inflated = inflater.inflate(uncompressed, read, uncompressed.length - read);
+        if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+          throw new ZipException("Truncated data for zip entry " + entry.getName());
+        }
+        read += inflated;
+      }
+      return uncompressed;
+    } catch (DataFormatException e) {
+      throw new ZipException(
+          String.format("Invalid data for zip entry %s: %s", entry.getName(), e.getMessage()));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * @return a copy of this entry, with the same data, that has its modification time set to
+   *     {@code time}, and that has none of the extra fields which record other times, so that
+   *     entries that only differ in their times are written the same way.
+   */
+  public RawZipEntry withTime(long time) {
+    ZipEntry newEntry = getEntry();
+    newEntry.setTime(time);
+    return new RawZipEntry(
+        newEntry,
+        data,
+        withoutTimestamps(localExtra),
+        withoutTimestamps(centralExtra));
+  }
+
+  /**
+   * @return {@code extra} without the fields in {@link #TIMESTAMP_EXTRA_FIELD_IDS}. Anything that
+   *     can't be parsed as fields, such as alignment padding, is kept as it is.
+   */
+  private static byte[] withoutTimestamps(byte[] extra) {
+    ByteBuffer buffer = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+    ByteArrayOutputStream kept = new ByteArrayOutputStream(extra.length);
+    int position = 0;
+    while (extra.length - position >= EXTRA_FIELD_HEADER_SIZE) {
+      int id = getUnsignedShort(buffer, position);
+      int fieldSize = EXTRA_FIELD_HEADER_SIZE + getUnsignedShort(buffer, position + 2);
+      if (fieldSize > extra.length - position) {
+        break;
+      }
+      if (!TIMESTAMP_EXTRA_FIELD_IDS.contains(id)) {
+        kept.write(extra, position, fieldSize);
+      }
+      position += fieldSize;
+    }
+    kept.write(extra, position, extra.length - position);
+    return kept.toByteArray();
+  }
+
+  /**
+   * @return this entry, compressed with {@code compressionLevel} if it is stored.
+   */
+  public RawZipEntry deflate(int compressionLevel) throws IOException {
+    if (entry.getMethod() == ZipEntry.DEFLATED) {
+      return this;
+    }
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2);
+    Deflater deflater = new Deflater(compressionLevel, /* nowrap */ true);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+      out.write(data);
+    } finally {
+      deflater.end();
+    }
+
+    ZipEntry newEntry = getEntry();
+    newEntry.setMethod(ZipEntry.DEFLATED);
+    newEntry.setCompressedSize(compressed.size());
+    return new RawZipEntry(newEntry, compressed.toByteArray(), localExtra, centralExtra);
+  }
+
+  /**
+   * Reads every entry of {@code zip}, in the order of its central directory.
+   *
+   * @return the entries, or absent if the zip uses features that entries cannot be copied raw
+   *     with: ZIP64, encryption or compression methods other than stored and deflated.
+   */
+  public static Optional<ImmutableList<RawZipEntry>> readAll(Path zip) throws IOException {
+    try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+      ByteBuffer tail = read(channel, size - tailSize, tailSize);
+
+      // The end of central directory record is followed by a comment of unknown length.
+      int end = -1;
+      for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+        if (getUnsignedInt(tail, i) == ZipEntry.ENDSIG) {
+          end = i;
+          break;
+        }
+      }
+      if (end == -1) {
+        throw new ZipException("Unable to find the central directory of " + zip);
+      }
+
+      int entryCount = getUnsignedShort(tail, end + 10);
+      long centralDirectorySize = getUnsignedInt(tail, end + 12);
+      long centralDirectoryOffset = getUnsignedInt(tail, end + 16);
+      if (entryCount == 0xffff ||
+          centralDirectorySize == ZIP64_MARKER ||
+          centralDirectoryOffset == ZIP64_MARKER) {
+        return Optional.absent();
+      }
+
+      ByteBuffer centralDirectory =
+          read(channel, centralDirectoryOffset, (int) centralDirectorySize);
+      ImmutableList.Builder<RawZipEntry> entries = ImmutableList.builder();
+      int position = 0;
+      for (int i = 0; i < entryCount; i++) {
+        if (getUnsignedInt(centralDirectory, position) != ZipEntry.CENSIG) {
+          throw new ZipException("Invalid central directory header in " + zip);
+        }
+        int flags = getUnsignedShort(centralDirectory, position + 8);
+        int method = getUnsignedShort(centralDirectory, position + 10);
+        long dosTime = getUnsignedInt(centralDirectory, position + 12);
+        long crc = getUnsignedInt(centralDirectory, position + 16);
+        long compressedSize = getUnsignedInt(centralDirectory, position + 20);
+        long uncompressedSize = getUnsignedInt(centralDirectory, position + 24);
+        int nameLength = getUnsignedShort(centralDirectory, position + 28);
+        int extraLength = getUnsignedShort(centralDirectory, position + 30);
+        int commentLength = getUnsignedShort(centralDirectory, position + 32);
+        long localHeaderOffset = getUnsignedInt(centralDirectory, position + 42);
+
+        if ((flags & ENCRYPTED_FLAG) != 0 ||
+            (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) ||
+            compressedSize == ZIP64_MARKER ||
+            uncompressedSize == ZIP64_MARKER ||
+            localHeaderOffset == ZIP64_MARKER) {
+          return Optional.absent();
+        }
+
+        byte[] nameBytes = new byte[nameLength];
+        byte[] centralExtra = new byte[extraLength];
+        centralDirectory.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+        centralDirectory.get(nameBytes);
+        centralDirectory.get(centralExtra);
+
+        ZipEntry entry = new ZipEntry(
+            new String(nameBytes, (flags & UTF8_NAMES_FLAG) != 0 ? Charsets.UTF_8 : CP437));
+        entry.setMethod(method);
+        entry.setTime(dosToJavaTime(dosTime));
+        entry.setCrc(crc);
+        entry.setSize(uncompressedSize);
+        entry.setCompressedSize(compressedSize);
+
+        // The local header repeats the name, but its extra field may differ from the one in the
+        // central directory.
+        ByteBuffer localHeader = read(channel, localHeaderOffset, LOCAL_FILE_HEADER_SIZE);
+        if (getUnsignedInt(localHeader, 0) != ZipEntry.LOCSIG) {
+          throw new ZipException(
+              String.format("Invalid local header for %s in %s", entry.getName(), zip));
+        }
+        long localExtraOffset = localHeaderOffset +
+            LOCAL_FILE_HEADER_SIZE +
+            getUnsignedShort(localHeader, 26);
+        int localExtraLength = getUnsignedShort(localHeader, 28);
+        byte[] localExtra = new byte[localExtraLength];
+        read(channel, localExtraOffset, localExtraLength).get(localExtra);
+        byte[] data = new byte[(int) compressedSize];
+        read(channel, localExtraOffset + localExtraLength, (int) compressedSize).get(data);
+
+        entries.add(new RawZipEntry(entry, data, localExtra, centralExtra));
+        position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+      }
+      return Optional.of(entries.build());
+    }
+  }
+
+  private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) == -1) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int getUnsignedShort(ByteBuffer buffer, int index) {
+    return buffer.getShort(index) & 0xffff;
+  }
+
+  private static long getUnsignedInt(ByteBuffer buffer, int index) {
+    return buffer.getInt(index) & 0xffffffffL;
+  }
+
+  /**
+   * The inverse of {@link EntryAccounting#getTime()}.
+   */
+  private static long dosToJavaTime(long dosTime) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(
+        (int) ((dosTime >> 25) & 0x7f) + 1980,
+        (int) ((dosTime >> 21) & 0x0f) - 1,
+        (int) ((dosTime >> 16) & 0x1f),
+        (int) ((dosTime >> 11) & 0x1f),
+        (int) ((dosTime >> 5) & 0x3f),
+        (int) ((dosTime << 1) & 0x3e));
+    return calendar.getTimeInMillis();
+  }
+}
@@ -97,6 +97,23 @@ public class ZipOutputStreams {
     }
   }
 
+  /**
+   * Create a new {@link CustomZipOutputStream} that throws an exception if duplicate entries are
+   * added, and that pads the local file headers of stored entries copied with
+   * {@link CustomZipOutputStream#putRawEntry(RawZipEntry)} so that their data starts at a multiple
+   * of {@code alignment} bytes into the zip, as {@code zipalign} does.
+   *
+   * @param out The output stream to write to.
+   * @param alignment The alignment of stored entries, in bytes.
+   */
+  public static CustomZipOutputStream newAligningOutputStream(OutputStream out, int alignment) {
+    return new AppendingZipOutputStream(
+        new DefaultClock(),
+        out,
+        /* throwExceptionsOnDuplicate */ true,
+        alignment);
+  }
+
   public static enum HandleDuplicates {
     /** Duplicate entries are simply appended to the zip. */
     APPEND_TO_ZIP,
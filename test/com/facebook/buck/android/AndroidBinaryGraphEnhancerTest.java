@@ -137,6 +137,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFile */ Optional.<SourcePath>absent(),
         /* xzCompressionLevel */ Optional.<Integer>absent(),
+        /* xzBlockSize */ Optional.<Integer>absent(),
         /* nativePlatforms */ ImmutableMap.<TargetCpuType, NdkCxxPlatform>of(),
         MoreExecutors.newDirectExecutorService());
 
@@ -259,6 +260,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.<SourcePath>absent(),
         /* xzCompressionLevel */ Optional.<Integer>absent(),
+        /* xzBlockSize */ Optional.<Integer>absent(),
         /* nativePlatforms */ ImmutableMap.<TargetCpuType, NdkCxxPlatform>of(),
         MoreExecutors.newDirectExecutorService());
     replay(keystore);
@@ -378,6 +380,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.<SourcePath>absent(),
         /* xzCompressionLevel */ Optional.<Integer>absent(),
+        /* xzBlockSize */ Optional.<Integer>absent(),
         /* nativePlatforms */ ImmutableMap.<TargetCpuType, NdkCxxPlatform>of(),
         MoreExecutors.newDirectExecutorService());
     graphEnhancer.createAdditionalBuildables();
@@ -421,6 +424,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.<SourcePath>absent(),
         /* xzCompressionLevel */ Optional.<Integer>absent(),
+        /* xzBlockSize */ Optional.<Integer>absent(),
         /* nativePlatforms */ ImmutableMap.<TargetCpuType, NdkCxxPlatform>of(),
         MoreExecutors.newDirectExecutorService());
     graphEnhancer.createAdditionalBuildables();
@@ -489,6 +493,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.<SourcePath>absent(),
         /* xzCompressionLevel */ Optional.<Integer>absent(),
+        /* xzBlockSize */ Optional.<Integer>absent(),
         /* nativePlatforms */ ImmutableMap.<TargetCpuType, NdkCxxPlatform>of(),
         MoreExecutors.newDirectExecutorService());
     graphEnhancer.createAdditionalBuildables();
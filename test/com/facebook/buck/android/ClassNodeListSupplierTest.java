@@ -64,6 +64,37 @@ public class ClassNodeListSupplierTest {
     assertSame(classNodes, supplier.get());
   }
 
+  @Test
+  public void testClassesParsedOnSeveralThreadsKeepTheirOrder() throws IOException {
+    ImmutableList<Class<?>> classes = ImmutableList.of(
+        ClassNodeListSupplierTest.class,
+        ClassNodeListSupplier.class,
+        SplitZipStep.class,
+        DexSplitMode.class);
+    File first = new File(tmpDir.getRoot(), "first.jar");
+    File second = new File(tmpDir.getRoot(), "second.jar");
+    writeJar(first, classes.subList(0, 3));
+    writeJar(second, classes.subList(3, 4));
+
+    ImmutableList<ClassNode> classNodes = ClassNodeListSupplier.createMemoized(
+        ImmutableList.of(first.toPath(), second.toPath()),
+        3).get();
+
+    assertEquals(classes.size(), classNodes.size());
+    for (int i = 0; i < classes.size(); i++) {
+      assertEquals(Type.getType(classes.get(i)).getInternalName(), classNodes.get(i).name);
+    }
+  }
+
+  private void writeJar(File jar, ImmutableList<Class<?>> classes) throws IOException {
+    try (ZipOutputStream jarOut = new JarOutputStream(new FileOutputStream(jar))) {
+      for (Class<?> type : classes) {
+        jarOut.putNextEntry(new JarEntry(type.getName().replace('.', '/') + ".class"));
+        writeClassBytes(type, jarOut);
+      }
+    }
+  }
+
   private void writeClassBytes(Class<?> type, OutputStream outputStream) throws IOException {
     String resourceName = type.getName().replace('.', '/') + ".class";
     InputStream inputStream = ClassLoader.getSystemResourceAsStream(resourceName);
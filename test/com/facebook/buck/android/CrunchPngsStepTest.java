@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CrunchPngsStepTest {
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    context = TestExecutionContext.newInstance();
+
+    write("res1/drawable/icon.png", "icon");
+    write("res1/drawable-hdpi/button.9.png", "button");
+    write("res1/raw/raw.png", "raw");
+    write("res1/values/strings.xml", "<resources/>");
+    write("res2/mipmap-xhdpi/launcher.png", "launcher");
+    write("res2/drawable/copy.png", "icon");
+  }
+
+  @Test
+  public void mirrorsResDirectoriesWithCrunchedPngs() throws Exception {
+    FakeCrunchPngsStep step = new FakeCrunchPngsStep();
+
+    assertEquals(0, step.execute(context));
+
+    assertEquals(
+        ImmutableList.of(Paths.get("out/0"), Paths.get("out/1")),
+        step.getOutputResDirectories());
+    assertEquals("crunched icon", read("out/0/drawable/icon.png"));
+    assertEquals("button", read("out/0/drawable-hdpi/button.9.png"));
+    assertEquals("raw", read("out/0/raw/raw.png"));
+    assertEquals("<resources/>", read("out/0/values/strings.xml"));
+    assertEquals("crunched launcher", read("out/1/mipmap-xhdpi/launcher.png"));
+    assertEquals("crunched icon", read("out/1/drawable/copy.png"));
+  }
+
+  @Test
+  public void pngsAreOnlyCrunchedOnce() throws Exception {
+    FakeCrunchPngsStep step = new FakeCrunchPngsStep();
+
+    assertEquals(0, step.execute(context));
+    // icon.png and copy.png have the same contents, so they share a crunched copy, although both
+    // may have been crunched if they were crunched at the same time.
+    int firstCount = step.crunchCount.get();
+    assertTrue(firstCount == 2 || firstCount == 3);
+
+    write("res2/drawable/copy.png", "changed");
+    assertEquals(0, step.execute(context));
+
+    assertEquals(firstCount + 1, step.crunchCount.get());
+    assertEquals("crunched changed", read("out/1/drawable/copy.png"));
+  }
+
+  @Test
+  public void failsIfAPngCannotBeCrunched() throws Exception {
+    CrunchPngsStep step = new FakeCrunchPngsStep() {
+      @Override
+      protected boolean crunch(ExecutionContext context, Path source, Path destination) {
+        return false;
+      }
+    };
+
+    assertEquals(1, step.execute(context));
+    assertFalse(Files.exists(tmp.getRoot().toPath().resolve("out/0/drawable/icon.png")));
+  }
+
+  @Test
+  public void onlyPngsInDrawableAndMipmapDirectoriesAreCrunched() {
+    assertTrue(CrunchPngsStep.isCrunchedByAapt(Paths.get("res/drawable/a.png")));
+    assertTrue(CrunchPngsStep.isCrunchedByAapt(Paths.get("res/drawable-v21/a.png")));
+    assertTrue(CrunchPngsStep.isCrunchedByAapt(Paths.get("res/mipmap-hdpi/a.png")));
+    assertFalse(CrunchPngsStep.isCrunchedByAapt(Paths.get("res/drawable/a.9.png")));
+    assertFalse(CrunchPngsStep.isCrunchedByAapt(Paths.get("res/drawable/a.jpg")));
+    assertFalse(CrunchPngsStep.isCrunchedByAapt(Paths.get("res/raw/a.png")));
+  }
+
+  private void write(String path, String contents) throws IOException {
+    Path file = tmp.getRoot().toPath().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String read(String path) throws IOException {
+    return new String(
+        Files.readAllBytes(tmp.getRoot().toPath().resolve(path)),
+        StandardCharsets.UTF_8);
+  }
+
+  private class FakeCrunchPngsStep extends CrunchPngsStep {
+    private final AtomicInteger crunchCount = new AtomicInteger();
+
+    private FakeCrunchPngsStep() {
+      super(
+          filesystem,
+          ImmutableList.of(Paths.get("res1"), Paths.get("res2")),
+          Paths.get("out"),
+          Paths.get("cache"));
+    }
+
+    @Override
+    protected boolean crunch(ExecutionContext context, Path source, Path destination)
+        throws IOException {
+      crunchCount.incrementAndGet();
+      Files.write(
+          filesystem.resolve(destination),
+          ("crunched " + new String(Files.readAllBytes(filesystem.resolve(source)),
+              StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+      return true;
+    }
+
+    @Override
+    protected Path getAaptExecutable(ExecutionContext context) {
+      return Paths.get("aapt");
+    }
+  }
+}
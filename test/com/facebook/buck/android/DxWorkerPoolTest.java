@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class DxWorkerPoolTest {
+
+  private static final URL DX_CLASSES =
+      com.android.dx.command.dexer.Main.class.getProtectionDomain().getCodeSource().getLocation();
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  private Path classesDir;
+  private PrintStream out;
+  private final FakeHeapUsage heapUsage = new FakeHeapUsage();
+
+  @Before
+  public void setUp() throws IOException {
+    // dx predates Java 8 class files, so generate an empty Java 7 class for it to convert.
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(
+        Opcodes.V1_7,
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+        "com/example/Dexable",
+        null,
+        "java/lang/Object",
+        null);
+    writer.visitEnd();
+
+    classesDir = tmp.newFolder("classes").toPath();
+    Path classFile = classesDir.resolve("com/example/Dexable.class");
+    Files.createDirectories(classFile.getParent());
+    Files.write(classFile, writer.toByteArray());
+    out = new PrintStream(new ByteArrayOutputStream());
+  }
+
+  @Test
+  public void workersAreReusedAfterSuccessfulJobs() throws IOException {
+    DxWorkerPool pool = new DxWorkerPool(DX_CLASSES, 10, 0.8, heapUsage);
+
+    for (int i = 0; i < 3; i++) {
+      Path output = tmp.getRoot().toPath().resolve("classes" + i + ".dex");
+      assertEquals(0, pool.run(args(output), out, out));
+      assertTrue(Files.isRegularFile(output));
+      assertEquals(1, pool.getIdleWorkerCount());
+    }
+  }
+
+  @Test
+  public void workersAreRecycledAfterFailedJobs() throws IOException {
+    DxWorkerPool pool = new DxWorkerPool(DX_CLASSES, 10, 0.8, heapUsage);
+
+    String[] args = {
+        "--output", tmp.getRoot().toPath().resolve("classes.dex").toString(),
+        tmp.getRoot().toPath().resolve("does-not-exist").toString(),
+    };
+    assertNotEquals(0, pool.run(args, out, out));
+    assertEquals(0, pool.getIdleWorkerCount());
+  }
+
+  @Test
+  public void workersAreRecycledAfterMaxRuns() throws IOException {
+    DxWorkerPool pool = new DxWorkerPool(DX_CLASSES, 2, 0.8, heapUsage);
+
+    assertEquals(0, pool.run(args(tmp.getRoot().toPath().resolve("a.dex")), out, out));
+    assertEquals(1, pool.getIdleWorkerCount());
+    assertEquals(0, pool.run(args(tmp.getRoot().toPath().resolve("b.dex")), out, out));
+    assertEquals(0, pool.getIdleWorkerCount());
+  }
+
+  @Test
+  public void workersAreDroppedWhenLiveObjectsNearlyFillTheHeap() throws IOException {
+    DxWorkerPool pool = new DxWorkerPool(DX_CLASSES, 10, 0.8, heapUsage);
+
+    assertEquals(0, pool.run(args(tmp.getRoot().toPath().resolve("a.dex")), out, out));
+    assertEquals(0, pool.run(args(tmp.getRoot().toPath().resolve("b.dex")), out, out));
+    assertEquals(1, pool.getIdleWorkerCount());
+
+    heapUsage.liveFraction = 0.9;
+    assertEquals(0, pool.run(args(tmp.getRoot().toPath().resolve("c.dex")), out, out));
+    assertEquals(0, pool.getIdleWorkerCount());
+    assertEquals(0.8, heapUsage.lastFraction, 0);
+  }
+
+  private static class FakeHeapUsage implements DxWorkerPool.HeapUsage {
+
+    private double liveFraction = 0.1;
+    private double lastFraction = Double.NaN;
+
+    @Override
+    public boolean exceeds(double fraction) {
+      lastFraction = fraction;
+      return liveFraction > fraction;
+    }
+  }
+
+  private String[] args(Path output) {
+    return new String[] {"--output", output.toString(), classesDir.toString()};
+  }
+}
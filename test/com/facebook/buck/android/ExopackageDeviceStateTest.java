@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class ExopackageDeviceStateTest {
+
+  private static final String PACKAGE = "com.example.app";
+
+  private final FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void stateIsKeptPerDeviceAndPackage() throws IOException {
+    ExopackageDeviceState state = new ExopackageDeviceState(
+        ExopackageDeviceState.hashListing("secondary-dex:\r\nmetadata.txt\r\n"),
+        ImmutableMap.of(
+            "secondary-dex",
+            ImmutableList.of("lock", "metadata.txt", "secondary-abc.dex.jar")),
+        ImmutableMap.of("secondary-dex", ExopackageDeviceState.hashMetadata("metadata")));
+    state.writeTo(filesystem, "192.168.1.2:5555", PACKAGE, mapper);
+
+    Optional<ExopackageDeviceState> read =
+        ExopackageDeviceState.readFrom(filesystem, "192.168.1.2:5555", PACKAGE, mapper);
+    assertTrue(read.isPresent());
+    assertEquals(state.getListingHash(), read.get().getListingHash());
+    assertEquals(state.getDirectoryFiles(), read.get().getDirectoryFiles());
+    assertEquals(state.getMetadataHashes(), read.get().getMetadataHashes());
+
+    assertFalse(
+        ExopackageDeviceState.readFrom(filesystem, "emulator-5554", PACKAGE, mapper).isPresent());
+    assertFalse(
+        ExopackageDeviceState.readFrom(filesystem, "192.168.1.2:5555", "com.other", mapper)
+            .isPresent());
+
+    ExopackageDeviceState.delete(filesystem, "192.168.1.2:5555", PACKAGE);
+    assertFalse(
+        ExopackageDeviceState.readFrom(filesystem, "192.168.1.2:5555", PACKAGE, mapper)
+            .isPresent());
+  }
+
+  @Test
+  public void listingsThatDifferHaveDifferentHashes() {
+    assertNotEquals(
+        ExopackageDeviceState.hashListing("secondary-dex:\r\nlock\r\n"),
+        ExopackageDeviceState.hashListing("secondary-dex:\r\nlock\r\nexopackage_temp-1.tmp\r\n"));
+  }
+}
@@ -21,28 +21,68 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+import com.facebook.buck.android.agent.util.AgentUtil;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.ExopackageInfo;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
+import com.facebook.buck.rules.InstallableApk;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.AdbOptions;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TargetDeviceOptions;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @SuppressWarnings("PMD.AddEmptyString")
 public class ExopackageInstallerTest {
 
+  private static final String PACKAGE = "com.example.app";
+  private static final String DATA_ROOT = "/data/local/tmp/exopackage/" + PACKAGE;
+  private static final String DEX_HASH = "0fa1f9cfb3c0effa8000d2d86d267985b158df9f";
+  private static final String SIGNATURE = "VGhlIHNpZ25hdHVyZQ==";
+
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
   @Test
   public void testScanSecondaryDexDir() throws Exception {
     String output =
@@ -238,6 +278,128 @@ public class ExopackageInstallerTest {
     assertEquals(null, matchAndGetHash("secondary-123abc.so"));
   }
 
+  @Test
+  public void installIsSkippedWhenTheDeviceIsAsTheLastInstallLeftIt() throws Exception {
+    FakeExopackageDevice device = new FakeExopackageDevice();
+    assertTrue(createInstaller(device).install(/* quiet */ true));
+    assertEquals(
+        "secondary dex",
+        device.getFile(DATA_ROOT + "/secondary-dex/secondary-" + DEX_HASH + ".dex.jar"));
+
+    device.commands.clear();
+    assertTrue(createInstaller(device).install(/* quiet */ true));
+
+    // A single listing of the data root shows that nothing needs to be created, listed or pushed.
+    for (String command : device.commands) {
+      assertFalse(command, command.contains("receive-file"));
+      assertFalse(command, command.contains("mkdir"));
+      assertFalse(command, command.startsWith("ls " + DATA_ROOT));
+    }
+    assertEquals(1, countCommandsStartingWith(device, "ls -lR " + DATA_ROOT));
+  }
+
+  @Test
+  public void fileChangedInPlaceOnTheDeviceIsPushedAgain() throws Exception {
+    FakeExopackageDevice device = new FakeExopackageDevice();
+    assertTrue(createInstaller(device).install(/* quiet */ true));
+    String metadata = device.getFile(DATA_ROOT + "/secondary-dex/metadata.txt");
+
+    // The device still has files with the same names, but one of them no longer has the contents
+    // that the last install pushed.
+    device.files.put(DATA_ROOT + "/secondary-dex/metadata.txt", "stale".getBytes(Charsets.UTF_8));
+
+    device.commands.clear();
+    assertTrue(createInstaller(device).install(/* quiet */ true));
+    assertEquals(1, countCommandsStartingWith(device, "ls " + DATA_ROOT + "/secondary-dex"));
+    assertEquals(metadata, device.getFile(DATA_ROOT + "/secondary-dex/metadata.txt"));
+  }
+
+  @Test
+  public void missingFilesArePushedInASingleAgentSession() throws Exception {
+    FakeExopackageDevice device = new FakeExopackageDevice();
+    assertTrue(createInstaller(device).install(/* quiet */ true));
+
+    assertEquals(1, countCommandsContaining(device, "receive-file"));
+    assertEquals(
+        "secondary dex",
+        device.getFile(DATA_ROOT + "/secondary-dex/secondary-" + DEX_HASH + ".dex.jar"));
+    assertTrue(device.files.containsKey(DATA_ROOT + "/secondary-dex/metadata.txt"));
+  }
+
+  private ExopackageInstaller createInstaller(final FakeExopackageDevice device)
+      throws IOException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRootPath());
+    final Path manifest = tmp.getRootPath().resolve("AndroidManifest.xml");
+    filesystem.writeContentsToPath(
+        "<manifest xmlns:android='http://schemas.android.com/apk/res/android' " +
+            "package='" + PACKAGE + "' />",
+        manifest);
+
+    final Path apk = tmp.getRootPath().resolve("app.apk");
+    try (ZipOutputStream zip = new ZipOutputStream(filesystem.newFileOutputStream(apk))) {
+      zip.putNextEntry(new ZipEntry("META-INF/CERT.SF"));
+      zip.write(
+          ("Signature-Version: 1.0\r\nSHA1-Digest-Manifest: " + SIGNATURE + "\r\n")
+              .getBytes(Charsets.UTF_8));
+      zip.closeEntry();
+    }
+
+    final Path dexDirectory = tmp.getRootPath().resolve("dex");
+    filesystem.mkdirs(dexDirectory);
+    filesystem.writeContentsToPath("secondary dex", dexDirectory.resolve("secondary-1.dex.jar"));
+    filesystem.writeContentsToPath(
+        "secondary-1.dex.jar " + DEX_HASH + " Lsecondary/dex01/Canary;\n",
+        dexDirectory.resolve("metadata.txt"));
+
+    InstallableApk installable =
+        new FakeInstallable(
+            new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:app"))
+                .setProjectFilesystem(filesystem)
+                .build(),
+            manifest,
+            apk,
+            ExopackageInfo.builder()
+                .setDexInfo(
+                    ExopackageInfo.DexInfo.of(dexDirectory.resolve("metadata.txt"), dexDirectory))
+                .build());
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+    AdbHelper adbHelper =
+        new AdbHelper(
+            new AdbOptions(),
+            new TargetDeviceOptions(),
+            context,
+            new TestConsole(),
+            context.getBuckEventBus(),
+            /* restartAdbOnFailure */ false) {
+          @Override
+          public List<IDevice> getDevices(boolean quiet) {
+            return ImmutableList.<IDevice>of(device);
+          }
+        };
+    return new ExopackageInstaller(context, adbHelper, installable);
+  }
+
+  private static int countCommandsStartingWith(FakeExopackageDevice device, String prefix) {
+    int count = 0;
+    for (String command : device.commands) {
+      if (command.startsWith(prefix)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static int countCommandsContaining(FakeExopackageDevice device, String part) {
+    int count = 0;
+    for (String command : device.commands) {
+      if (command.contains(part)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   private String matchAndGetHash(String filename) {
     Matcher m = NATIVE_LIB_PATTERN.matcher(filename);
     if (m.matches()) {
@@ -245,4 +407,167 @@ public class ExopackageInstallerTest {
     }
     return null;
   }
+
+  private static class FakeInstallable extends FakeBuildRule implements InstallableApk {
+
+    private final Path manifest;
+    private final Path apk;
+    private final ExopackageInfo exopackageInfo;
+
+    FakeInstallable(
+        BuildRuleParams params,
+        Path manifest,
+        Path apk,
+        ExopackageInfo exopackageInfo) {
+      super(params, new SourcePathResolver(new BuildRuleResolver()));
+      this.manifest = manifest;
+      this.apk = apk;
+      this.exopackageInfo = exopackageInfo;
+    }
+
+    @Override
+    public Path getManifestPath() {
+      return manifest;
+    }
+
+    @Override
+    public Path getApkPath() {
+      return apk;
+    }
+
+    @Override
+    public Optional<ExopackageInfo> getExopackageInfo() {
+      return Optional.of(exopackageInfo);
+    }
+  }
+
+  /**
+   * A device on which the agent and the app are already installed, and which keeps the files that
+   * are pushed to it.
+   */
+  private static class FakeExopackageDevice extends TestDevice {
+
+    private static final Pattern MULTI_RECEIVE_FILE =
+        Pattern.compile("multi-receive-file (\\d+)");
+
+    /** The contents of each file on the device, keyed by absolute path. */
+    private final Map<String, byte[]> files = new TreeMap<>();
+    private final List<String> commands = new ArrayList<>();
+
+    FakeExopackageDevice() {
+      setSerialNumber("emulator-5554");
+      setState(DeviceState.ONLINE);
+    }
+
+    String getFile(String path) {
+      return new String(files.get(path), Charsets.UTF_8);
+    }
+
+    @Override
+    public void executeShellCommand(String command, IShellOutputReceiver receiver)
+        throws IOException {
+      String output;
+      if (command.endsWith(AdbHelper.ECHO_COMMAND_SUFFIX)) {
+        String stripped =
+            command.substring(0, command.length() - AdbHelper.ECHO_COMMAND_SUFFIX.length());
+        commands.add(stripped);
+        output = run(stripped) + ":0";
+      } else {
+        throw new UnsupportedOperationException(command);
+      }
+      Matcher multiReceiveFile = MULTI_RECEIVE_FILE.matcher(command);
+      if (multiReceiveFile.find()) {
+        multiReceiveFile(Integer.parseInt(multiReceiveFile.group(1)), receiver);
+      }
+      byte[] bytes = output.getBytes(Charsets.UTF_8);
+      receiver.addOutput(bytes, 0, bytes.length);
+      receiver.flush();
+    }
+
+    private String run(String command) {
+      if (command.startsWith("pm path ")) {
+        String packageName = command.split(" ")[2].replace(";", "");
+        return "package:/data/app/" + packageName + "-1.apk\r\n" +
+            "  Package [" + packageName + "] (4229ce68):\r\n" +
+            "    codePath=/data/app/" + packageName + "-1.apk\r\n" +
+            "    resourcePath=/data/app/" + packageName + "-1.apk\r\n" +
+            "    nativeLibraryPath=/data/app-lib/" + packageName + "-1\r\n" +
+            "    versionCode=" + AgentUtil.AGENT_VERSION_CODE + " targetSdk=19\r\n";
+      } else if (command.startsWith("getprop ro.build.version.sdk")) {
+        return "21\r\n";
+      } else if (command.contains("get-signature ")) {
+        return SIGNATURE + "\r\n";
+      } else if (command.contains("multi-receive-file ") ||
+          command.contains("mkdir -p ") ||
+          command.contains(" && chmod ") ||
+          command.startsWith("am force-stop ")) {
+        return "";
+      } else if (command.startsWith("ls -lR ")) {
+        StringBuilder listing = new StringBuilder();
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+          listing.append("-rw-r--r-- shell shell ")
+              .append(file.getValue().length)
+              .append(' ')
+              .append(file.getKey())
+              .append("\r\n");
+        }
+        return listing.toString();
+      } else if (command.startsWith("ls ")) {
+        String prefix = command.substring("ls ".length()) + "/";
+        StringBuilder listing = new StringBuilder();
+        for (String path : files.keySet()) {
+          if (path.startsWith(prefix)) {
+            listing.append(path.substring(prefix.length())).append("\r\n");
+          }
+        }
+        return listing.toString();
+      } else if (command.startsWith("cd ") && command.contains(" && rm ")) {
+        String dir = command.substring("cd ".length(), command.indexOf(" && rm "));
+        for (String file : command.substring(command.indexOf(" && rm ") + 7).split(" ")) {
+          files.remove(dir + "/" + file);
+        }
+        return "";
+      }
+      throw new UnsupportedOperationException(command);
+    }
+
+    /**
+     * Plays the part of the agent: hands the installer a key, then reads the key and each file's
+     * header and contents from the port that the installer connects to.
+     */
+    private void multiReceiveFile(int port, IShellOutputReceiver receiver) throws IOException {
+      try (ServerSocket server = new ServerSocket(port)) {
+        // The installer sends the files from within the receiver as soon as it sees the key. They
+        // are small enough to wait in the socket's buffers until they're accepted.
+        byte[] key = Strings.repeat("k", AgentUtil.TEXT_SECRET_KEY_SIZE).getBytes(Charsets.UTF_8);
+        receiver.addOutput(key, 0, key.length);
+        try (Socket socket = server.accept(); InputStream input = socket.getInputStream()) {
+          ByteStreams.skipFully(input, AgentUtil.TEXT_SECRET_KEY_SIZE);
+          while (true) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            for (int b = input.read(); b != '\n'; b = input.read()) {
+              if (b == -1) {
+                assertEquals("Connection closed within a file header.", 0, header.size());
+                return;
+              }
+              header.write(b);
+            }
+            List<String> sizeAndPath =
+                Splitter.on(' ').limit(2).splitToList(header.toString(Charsets.UTF_8.name()));
+            byte[] contents = new byte[Integer.parseInt(sizeAndPath.get(0))];
+            ByteStreams.readFully(input, contents);
+            files.put(sizeAndPath.get(1), contents);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void createForward(int localPort, int remotePort) {
+    }
+
+    @Override
+    public void removeForward(int localPort, int remotePort) {
+    }
+  }
 }
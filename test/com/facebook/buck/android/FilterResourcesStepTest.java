@@ -29,27 +29,37 @@ import com.facebook.buck.util.FilteredDirectoryCopier;
 import com.facebook.buck.util.Filters;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 
 public class FilterResourcesStepTest {
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   private static final String first = "/first-path/res";
   private static final String second = "/second-path/res";
   private static final String third = "/third-path/res";
@@ -88,6 +98,9 @@ public class FilterResourcesStepTest {
     ProcessExecutor processExecutor = EasyMock.createMock(ProcessExecutor.class);
     EasyMock.expect(context.getProcessExecutor()).andReturn(processExecutor).anyTimes();
     EasyMock.expect(context.getVerbosity()).andReturn(Verbosity.SILENT).anyTimes();
+    EasyMock.expect(context.getConcurrencyLimit())
+        .andReturn(new ConcurrencyLimit(2, Double.POSITIVE_INFINITY))
+        .anyTimes();
     EasyMock.replay(context);
 
     // Create a mock DrawableFinder, just creates one drawable/density/resource dir.
@@ -197,6 +210,66 @@ public class FilterResourcesStepTest {
     EasyMock.verify(copier, context, finder, filesystem, scaler);
   }
 
+  @Test
+  public void testScaledDrawablesAreCached() throws IOException, InterruptedException {
+    final ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    final Path source = Paths.get("out/res/drawable-xhdpi/icon.png");
+    Path destination = Paths.get("out/res/drawable-mdpi/icon.png");
+    Path cacheDirectory = Paths.get("cache");
+
+    FilterResourcesStep.DrawableFinder finder = new FilterResourcesStep.DrawableFinder() {
+      @Override
+      public Set<Path> findDrawables(Collection<Path> dirs, ProjectFilesystem filesystem) {
+        return ImmutableSet.of(source);
+      }
+    };
+    final AtomicInteger scalings = new AtomicInteger();
+    ImageScaler scaler = new ImageScaler() {
+      @Override
+      public boolean isAvailable(ExecutionContext context) {
+        return true;
+      }
+
+      @Override
+      public void scale(
+          double factor,
+          Path source,
+          Path destination,
+          ExecutionContext context) throws IOException {
+        scalings.incrementAndGet();
+        filesystem.writeContentsToPath(
+            "scaled " + factor + " " + filesystem.readFileIfItExists(source).get(),
+            destination);
+      }
+    };
+
+    for (String contents : ImmutableList.of("one", "one", "two")) {
+      filesystem.mkdirs(source.getParent());
+      filesystem.writeContentsToPath(contents, source);
+      FilterResourcesStep step = new FilterResourcesStep(
+          filesystem,
+          ImmutableBiMap.of(Paths.get("res"), Paths.get("out/res")),
+          /* filterDrawables */ true,
+          /* enableStringWhitelisting */ false,
+          /* whitelistedStringDirs */ ImmutableSet.<Path>of(),
+          /* locales */ ImmutableSet.<String>of(),
+          EasyMock.createNiceMock(FilteredDirectoryCopier.class),
+          ImmutableSet.of(Filters.Density.MDPI),
+          finder,
+          scaler,
+          Optional.of(cacheDirectory));
+
+      assertEquals(0, step.execute(TestExecutionContext.newInstance()));
+      assertEquals(
+          Optional.of("scaled 0.5 " + contents),
+          filesystem.readFileIfItExists(destination));
+      assertFalse(filesystem.exists(source.getParent()));
+    }
+
+    assertEquals(2, scalings.get());
+    assertEquals(2, filesystem.listFiles(cacheDirectory).length);
+  }
+
   @Test
   public void testWhitelistFilter() throws IOException {
     Predicate<Path> filePredicate = getTestPathPredicate(
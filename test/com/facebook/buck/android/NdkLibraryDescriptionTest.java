@@ -18,7 +18,10 @@ package com.facebook.buck.android;
 
 import static org.hamcrest.junit.MatcherAssert.assertThat;
 
+import com.facebook.buck.cxx.CxxDescriptionEnhancer;
 import com.facebook.buck.cxx.CxxPlatform;
+import com.facebook.buck.cxx.CxxPlatformUtils;
+import com.facebook.buck.cxx.CxxSharedLibraryInterface;
 import com.facebook.buck.cxx.Linker;
 import com.facebook.buck.cxx.NativeLinkable;
 import com.facebook.buck.cxx.NativeLinkableInput;
@@ -28,6 +31,7 @@ import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TargetGraph;
@@ -110,4 +114,38 @@ public class NdkLibraryDescriptionTest {
             Matchers.<BuildRule>hasItem(transitiveInput)));
   }
 
+  @Test
+  public void sharedLibrariesBehindInterfaceInputsBecomeDepsOfNdkBuildRule() {
+    BuildRuleResolver resolver = new BuildRuleResolver();
+    SourcePathResolver pathResolver = new SourcePathResolver(resolver);
+
+    FakeBuildRule sharedLibrary = resolver.addToIndex(
+        new FakeBuildRule("//:shared_library", pathResolver));
+    CxxSharedLibraryInterface sharedLibraryInterface =
+        CxxDescriptionEnhancer.requireSharedLibraryInterface(
+            new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep")).build(),
+            resolver,
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            sharedLibrary);
+    FakeNativeLinkable dep =
+        resolver.addToIndex(
+            new FakeNativeLinkable(
+                "//:dep",
+                pathResolver,
+                new BuildTargetSourcePath(sharedLibraryInterface.getBuildTarget())));
+
+    BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+    BuildRule ndkLibrary = new NdkLibraryBuilder(target)
+        .addDep(dep.getBuildTarget())
+        .build(resolver);
+
+    // ndk-build links against the library itself, so it must be built even when the interface
+    // comes from the cache.
+    assertThat(
+        ndkLibrary.getDeps(),
+        Matchers.allOf(
+            Matchers.<BuildRule>hasItem(sharedLibraryInterface),
+            Matchers.<BuildRule>hasItem(sharedLibrary)));
+  }
+
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.rules.FakeBuildContext;
+import com.facebook.buck.rules.Sha1HashCode;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+
+public class PreDexedFilesSorterTest {
+
+  private static final long LINEAR_ALLOC_LIMIT = 1000;
+  private static final int NUMBER_OF_LIBRARIES = 200;
+
+  @Test
+  public void secondaryDexesAreNotOverfilled() {
+    List<Integer> sizes = Lists.newArrayList();
+    for (int i = 0; i < NUMBER_OF_LIBRARIES; i++) {
+      sizes.add(10 + (i * 37) % 90);
+    }
+
+    for (List<Path> secondaryDex : sort(sizes)) {
+      int total = 0;
+      for (Path dex : secondaryDex) {
+        total += sizes.get(Integer.parseInt(dex.getFileName().toString()));
+      }
+      assertThat(total, Matchers.lessThanOrEqualTo((int) LINEAR_ALLOC_LIMIT));
+    }
+  }
+
+  @Test
+  public void growingALibraryOnlyChangesTheSecondaryDexesNearIt() {
+    List<Integer> sizes = Lists.newArrayList();
+    for (int i = 0; i < NUMBER_OF_LIBRARIES; i++) {
+      sizes.add(50);
+    }
+    List<List<Path>> before = sort(sizes);
+
+    sizes.set(10, 80);
+    List<List<Path>> after = sort(sizes);
+
+    assertEquals(before.size(), after.size());
+    int changed = 0;
+    for (int i = 0; i < before.size(); i++) {
+      if (!before.get(i).equals(after.get(i))) {
+        changed++;
+      }
+    }
+    assertTrue(
+        "Expected at most two of " + before.size() + " secondary dexes to change, not " + changed,
+        changed <= 2);
+  }
+
+  /**
+   * @return the libraries in each secondary dex, in order.
+   */
+  private List<List<Path>> sort(List<Integer> sizes) {
+    List<DexWithClasses> dexes = Lists.newArrayList();
+    for (int i = 0; i < sizes.size(); i++) {
+      dexes.add(createDex(String.format("%03d", i), sizes.get(i)));
+    }
+
+    PreDexedFilesSorter.Result result = new PreDexedFilesSorter(
+        Optional.<DexWithClasses>absent(),
+        dexes,
+        ImmutableSet.<String>of(),
+        Paths.get("scratch"),
+        LINEAR_ALLOC_LIMIT,
+        DexStore.JAR,
+        Paths.get("secondary"))
+        .sortIntoPrimaryAndSecondaryDexes(
+            FakeBuildContext.NOOP_CONTEXT,
+            new FakeProjectFilesystem(),
+            ImmutableList.<Step>builder());
+
+    List<List<Path>> secondaryDexes = Lists.newArrayList();
+    for (Collection<Path> inputs : result.secondaryOutputToInputs.asMap().values()) {
+      List<Path> libraries = Lists.newArrayList();
+      for (Path input : inputs) {
+        if (input.startsWith("lib")) {
+          libraries.add(input);
+        }
+      }
+      secondaryDexes.add(libraries);
+    }
+    return secondaryDexes;
+  }
+
+  private static DexWithClasses createDex(final String name, final int size) {
+    return new DexWithClasses() {
+      @Override
+      public Path getPathToDexFile() {
+        return Paths.get("lib", name);
+      }
+
+      @Override
+      public ImmutableSet<String> getClassNames() {
+        return ImmutableSet.of("com/example/Class" + name);
+      }
+
+      @Override
+      public Sha1HashCode getClassesHash() {
+        return Sha1HashCode.of("0000000000000000000000000000000000000000");
+      }
+
+      @Override
+      public int getSizeEstimate() {
+        return size;
+      }
+    };
+  }
+}
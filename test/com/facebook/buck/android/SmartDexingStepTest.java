@@ -85,6 +85,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         outputFile.toPath(),
         outputHashFile,
         EnumSet.of(DxStep.Option.NO_OPTIMIZE),
+        Optional.<Integer>absent(),
         Optional.<Integer>absent());
     assertFalse("'dummy' is not a matching input hash", rule.checkIsCached());
 
@@ -111,6 +112,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         filesToDex,
         outputPath,
         dxOptions,
+        Optional.<Integer>absent(),
         Optional.<Integer>absent());
 
     assertTrue("Result should be a CompositeStep.", dxStep instanceof CompositeStep);
@@ -147,7 +149,8 @@ public class SmartDexingStepTest extends EasyMockSupport {
         filesToDex,
         outputPath,
         dxOptions,
-        Optional.of(9));
+        Optional.of(9),
+        Optional.<Integer>absent());
 
     assertTrue("Result should be a CompositeStep.", dxStep instanceof CompositeStep);
     List<Step> steps = ImmutableList.copyOf((CompositeStep) dxStep);
@@ -184,6 +187,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         filesToDex,
         outputPath,
         dxOptions,
+        Optional.<Integer>absent(),
         Optional.<Integer>absent());
 
     String xmx = DxStep.XMX_OVERRIDE.isEmpty() ? "" : DxStep.XMX_OVERRIDE + " ";
@@ -209,6 +213,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         filesToDex,
         outputPath,
         dxOptions,
+        Optional.<Integer>absent(),
         Optional.<Integer>absent());
 
     String xmx = DxStep.XMX_OVERRIDE.isEmpty() ? "" : DxStep.XMX_OVERRIDE + " ";
@@ -234,6 +239,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         filesToDex,
         outputPath,
         dxOptions,
+        Optional.<Integer>absent(),
         Optional.<Integer>absent());
   }
 
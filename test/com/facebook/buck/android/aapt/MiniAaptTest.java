@@ -27,8 +27,12 @@ import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.model.BuildId;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.timing.FakeClock;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
@@ -370,4 +374,81 @@ public class MiniAaptTest {
             new FakeRDotTxtEntry(IdType.INT, RType.TRANSITION, "some_transition")),
         aapt.getResourceCollector().getResources());
   }
+
+  @Test
+  public void testExecuteReusesSymbolsOfUnchangedFiles() throws IOException, InterruptedException {
+    filesystem.writeContentsToPath(
+        "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+            "<resources>" +
+            "<string name=\"hello\">World</string>" +
+            "</resources>",
+        Paths.get("res/values/strings.xml"));
+    filesystem.writeContentsToPath(
+        "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+            "<LinearLayout android:id=\"@+id/root\" android:text=\"@string/hello\" />",
+        Paths.get("res/layout/main.xml"));
+    Path cache = Paths.get("cache/symbols.json");
+    ExecutionContext context = TestExecutionContext.newInstance();
+
+    MiniAapt aapt = new MiniAapt(
+        filesystem,
+        Paths.get("res"),
+        Paths.get("R.txt"),
+        ImmutableSet.<Path>of(),
+        Optional.of(cache));
+    assertEquals(0, aapt.execute(context));
+    String rDotTxt = filesystem.readFileIfItExists(Paths.get("R.txt")).get();
+    assertTrue(filesystem.isFile(cache));
+
+    // The cached symbols of strings.xml must give the same ids as parsing it.
+    aapt = new MiniAapt(
+        filesystem,
+        Paths.get("res"),
+        Paths.get("R.txt"),
+        ImmutableSet.<Path>of(),
+        Optional.of(cache));
+    assertEquals(0, aapt.execute(context));
+    assertEquals(rDotTxt, filesystem.readFileIfItExists(Paths.get("R.txt")).get());
+
+    filesystem.writeContentsToPath(
+        "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+            "<resources>" +
+            "<string name=\"hello\">World</string>" +
+            "<string name=\"goodbye\">World</string>" +
+            "</resources>",
+        Paths.get("res/values/strings.xml"));
+    aapt = new MiniAapt(
+        filesystem,
+        Paths.get("res"),
+        Paths.get("R.txt"),
+        ImmutableSet.<Path>of(),
+        Optional.of(cache));
+    assertEquals(0, aapt.execute(context));
+    assertEquals(
+        ImmutableSet.<RDotTxtEntry>of(
+            new FakeRDotTxtEntry(IdType.INT, RType.ID, "root"),
+            new FakeRDotTxtEntry(IdType.INT, RType.LAYOUT, "main"),
+            new FakeRDotTxtEntry(IdType.INT, RType.STRING, "goodbye"),
+            new FakeRDotTxtEntry(IdType.INT, RType.STRING, "hello")),
+        aapt.getResourceCollector().getResources());
+  }
+
+  @Test
+  public void testSymbolCacheRoundTrips() throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    ResourceSymbolCache cache = ResourceSymbolCache.empty();
+    ImmutableList<ResourceSymbol> symbols = ImmutableList.of(
+        new ResourceSymbol(ResourceSymbol.Kind.STYLEABLE_ATTR, RType.STYLEABLE, "Theme_color", 0),
+        ResourceSymbol.of(ResourceSymbol.Kind.INT, RType.ATTR, "color"),
+        new ResourceSymbol(ResourceSymbol.Kind.INT_ARRAY, RType.STYLEABLE, "Theme", 1));
+    cache.put(Paths.get("res/values/attrs.xml"), "abc", symbols);
+    cache.writeTo(filesystem, Paths.get("cache/symbols.json"), mapper);
+
+    ResourceSymbolCache read =
+        ResourceSymbolCache.readFrom(filesystem, Paths.get("cache/symbols.json"), mapper);
+    assertEquals(Optional.of(symbols), read.get(Paths.get("res/values/attrs.xml"), "abc"));
+    assertEquals(
+        Optional.<ImmutableList<ResourceSymbol>>absent(),
+        read.get(Paths.get("res/values/attrs.xml"), "def"));
+  }
 }
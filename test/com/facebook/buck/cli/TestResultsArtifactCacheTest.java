@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.artifact_cache.DirArtifactCache;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildResult;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.FakeBuildEngine;
+import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
+import com.facebook.buck.rules.FakeTestRule;
+import com.facebook.buck.rules.Label;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.test.TestResults;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+
+public class TestResultsArtifactCacheTest {
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:test");
+  private static final Path OUTPUT_DIRECTORY = Paths.get("buck-out/gen/foo/__test_output__");
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private FakeTestRule test;
+  private DirArtifactCache artifactCache;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRootPath());
+    test = new FakeTestRule(
+        new FakeBuildRuleParamsBuilder(TARGET).setProjectFilesystem(filesystem).build(),
+        new SourcePathResolver(new BuildRuleResolver()),
+        ImmutableSet.<Label>of(),
+        Optional.of(OUTPUT_DIRECTORY),
+        /* runTestSeparately */ false,
+        ImmutableList.<Step>of(),
+        new Callable<TestResults>() {
+          @Override
+          public TestResults call() {
+            throw new UnsupportedOperationException();
+          }
+        });
+    artifactCache = new DirArtifactCache(
+        "dir",
+        filesystem,
+        Paths.get("cache"),
+        /* doStore */ true,
+        Optional.<Long>absent());
+  }
+
+  @Test
+  public void storedResultsReplaceTheOutputDirectoryWhenFetched()
+      throws IOException, InterruptedException {
+    TestResultsArtifactCache cache = createCache("aaaa");
+    filesystem.mkdirs(OUTPUT_DIRECTORY);
+    filesystem.writeContentsToPath("<results/>", OUTPUT_DIRECTORY.resolve("FooTest.xml"));
+    cache.store(test);
+
+    filesystem.deleteRecursivelyIfExists(OUTPUT_DIRECTORY);
+    filesystem.mkdirs(OUTPUT_DIRECTORY);
+    filesystem.writeContentsToPath("stale", OUTPUT_DIRECTORY.resolve("BarTest.xml"));
+
+    assertTrue(cache.fetch(test));
+    assertEquals(
+        Optional.of("<results/>"),
+        filesystem.readFileIfItExists(OUTPUT_DIRECTORY.resolve("FooTest.xml")));
+    assertFalse(filesystem.exists(OUTPUT_DIRECTORY.resolve("BarTest.xml")));
+  }
+
+  @Test
+  public void resultsAreNotFetchedForADifferentRuleKey() throws IOException, InterruptedException {
+    filesystem.mkdirs(OUTPUT_DIRECTORY);
+    filesystem.writeContentsToPath("<results/>", OUTPUT_DIRECTORY.resolve("FooTest.xml"));
+    createCache("aaaa").store(test);
+
+    TestResultsArtifactCache changed = createCache("bbbb");
+    assertNotEquals(createCache("aaaa").getResultsKey(test), changed.getResultsKey(test));
+    assertFalse(changed.fetch(test));
+  }
+
+  private TestResultsArtifactCache createCache(String ruleKey) {
+    return new TestResultsArtifactCache(
+        artifactCache,
+        new FakeBuildEngine(
+            ImmutableMap.<BuildTarget, BuildResult>of(),
+            ImmutableMap.of(TARGET, new RuleKey(ruleKey))));
+  }
+}
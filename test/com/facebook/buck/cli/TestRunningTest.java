@@ -31,17 +31,21 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.NoopArtifactCache;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.java.DefaultJavaPackageFinder;
 import com.facebook.buck.java.FakeJavaLibrary;
+import com.facebook.buck.java.FakeJavaPackageFinder;
 import com.facebook.buck.java.JavaLibrary;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.ActionGraph;
 import com.facebook.buck.rules.BuildResult;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
-import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.rules.CachingBuildEngine;
 import com.facebook.buck.rules.FakeBuildContext;
 import com.facebook.buck.rules.FakeBuildEngine;
@@ -85,8 +89,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -956,4 +962,87 @@ public class TestRunningTest {
 
     assertThat(ret, equalTo(TestRunning.TEST_FAILURES_EXIT_CODE));
   }
+
+  @Test
+  public void cachedResultsOfAllTestsAreFetchedAtOnce() throws Exception {
+    CommandRunnerParams commandRunnerParams = CommandRunnerParamsForTesting
+        .builder()
+        .build();
+    final TestResults fakeTestResults =
+        new TestResults(
+            ImmutableList.of(
+                new TestCaseSummary(
+                    "TestCase",
+                    ImmutableList.<TestResultSummary>of())));
+    Callable<TestResults> interpretResults = new Callable<TestResults>() {
+      @Override
+      public TestResults call() {
+        return fakeTestResults;
+      }
+    };
+    BuildTarget test1Target = BuildTargetFactory.newInstance("//:test1");
+    FakeTestRule test1 = new FakeTestRule(
+        new FakeBuildRuleParamsBuilder(test1Target).build(),
+        new SourcePathResolver(new BuildRuleResolver()),
+        ImmutableSet.<Label>of(),
+        Optional.of(Paths.get("test1OutputDir")),
+        false, // runTestSeparately
+        ImmutableList.<Step>of(),
+        interpretResults);
+    BuildTarget test2Target = BuildTargetFactory.newInstance("//:test2");
+    FakeTestRule test2 = new FakeTestRule(
+        new FakeBuildRuleParamsBuilder(test2Target).build(),
+        new SourcePathResolver(new BuildRuleResolver()),
+        ImmutableSet.<Label>of(),
+        Optional.of(Paths.get("test2OutputDir")),
+        true, // runTestSeparately
+        ImmutableList.<Step>of(),
+        interpretResults);
+
+    // Each fetch waits for the other one to start, so they only both find the other if they are
+    // made at the same time.
+    final CountDownLatch fetchesStarted = new CountDownLatch(2);
+    final AtomicInteger overlappingFetches = new AtomicInteger();
+    ArtifactCache artifactCache = new NoopArtifactCache() {
+      @Override
+      public CacheResult fetch(RuleKey ruleKey, Path output) {
+        fetchesStarted.countDown();
+        try {
+          if (fetchesStarted.await(10, TimeUnit.SECONDS)) {
+            overlappingFetches.incrementAndGet();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return CacheResult.miss();
+      }
+    };
+
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(3));
+    FakeBuildEngine fakeBuildEngine = new FakeBuildEngine(
+        ImmutableMap.of(
+            test1Target, BuildResult.success(test1, BUILT_LOCALLY, CacheResult.skip()),
+            test2Target, BuildResult.success(test2, BUILT_LOCALLY, CacheResult.skip())),
+        ImmutableMap.of(
+            test1Target, new RuleKey("00"),
+            test2Target, new RuleKey("01")));
+    ExecutionContext fakeExecutionContext = TestExecutionContext.newInstance();
+    int ret = TestRunning.runTests(
+        commandRunnerParams,
+        ImmutableList.<TestRule>of(test1, test2),
+        FakeBuildContext.newBuilder()
+            .setActionGraph(new ActionGraph(ImmutableList.<BuildRule>of()))
+            .setJavaPackageFinder(new FakeJavaPackageFinder())
+            .setArtifactCache(artifactCache)
+            .build(),
+        fakeExecutionContext,
+        TestRunningOptions.builder().setResultsArtifactCacheEnabled(true).build(),
+        service,
+        fakeBuildEngine,
+        new DefaultStepRunner(fakeExecutionContext));
+
+    assertThat(ret, equalTo(0));
+    assertThat(overlappingFetches.get(), equalTo(2));
+  }
 }
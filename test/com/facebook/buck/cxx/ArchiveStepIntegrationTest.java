@@ -16,7 +16,12 @@
 
 package com.facebook.buck.cxx;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
 
 import com.facebook.buck.cli.FakeBuckConfig;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -91,4 +96,42 @@ public class ArchiveStepIntegrationTest {
     }
   }
 
+  @Test
+  public void thatGeneratedThinArchivesAreScrubbedWithoutCopyingMembers()
+      throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    CxxPlatform platform = DefaultCxxPlatforms.build(new CxxBuckConfig(new FakeBuckConfig()));
+    assumeTrue(platform.getAr().supportsThinArchives());
+
+    ImmutableList<String> archiver =
+        platform.getAr().getCommandPrefix(new SourcePathResolver(new BuildRuleResolver()));
+    Path output = Paths.get("output.a");
+    Path input = Paths.get("input.dat");
+    filesystem.writeContentsToPath("blah", input);
+
+    ArchiveStep archiveStep = new ArchiveStep(
+        filesystem.getRootPath(),
+        archiver,
+        Archive.Contents.THIN,
+        output,
+        ImmutableList.of(input));
+    FileScrubberStep fileScrubberStep = new FileScrubberStep(
+        filesystem,
+        output,
+        platform.getAr().getScrubbers());
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    int exitCode = archiveStep.execute(executionContext);
+    assertEquals("archive step failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+    exitCode = fileScrubberStep.execute(executionContext);
+    assertEquals("archive scrub step failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+
+    // The archive only refers to its member, rather than holding a copy of it.
+    String contents = filesystem.readFileIfItExists(output).get();
+    assertThat(contents, startsWith("!<thin>\n"));
+    assertThat(contents, containsString(input.toString()));
+    assertThat(contents, not(containsString("blah")));
+  }
+
 }
@@ -72,4 +72,28 @@ public class ArchiveStepTest {
     assertEquals(expected, actual);
   }
 
+  @Test
+  public void testThinArchiveStepUsesThinModifier() {
+    ProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    ExecutionContext context = TestExecutionContext.newInstance();
+
+    ImmutableList<String> archiver = ImmutableList.of("ar");
+    Path output = Paths.get("libfoo.a");
+    ImmutableList<Path> inputs = ImmutableList.of(Paths.get("a.o"));
+
+    ArchiveStep archiveStep = new ArchiveStep(
+        projectFilesystem.getRootPath(),
+        archiver,
+        Archive.Contents.THIN,
+        output,
+        inputs);
+
+    ImmutableList<Step> steps = ImmutableList.copyOf(archiveStep);
+    assertEquals(1, steps.size());
+    ShellStep shellStep = (ShellStep) steps.get(0);
+    assertEquals(
+        ImmutableList.of("ar", "rcsT", "libfoo.a", "a.o"),
+        shellStep.getShellCommand(context));
+  }
+
 }
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
 import com.facebook.buck.model.BuildTarget;
@@ -23,7 +24,10 @@ import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildTargetSourcePath;
+import com.facebook.buck.rules.FakeBuildContext;
 import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
+import com.facebook.buck.rules.FakeBuildableContext;
 import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.rules.RuleKeyBuilder;
@@ -32,10 +36,13 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TestSourcePath;
 import com.facebook.buck.rules.keys.DefaultRuleKeyBuilderFactory;
+import com.facebook.buck.shell.Genrule;
+import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.testutil.FakeFileHashCache;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import org.junit.Test;
 
@@ -131,6 +138,61 @@ public class ArchiveTest {
             DEFAULT_INPUTS));
     assertNotEquals(defaultRuleKey, archiverTypeChange);
 
+    // Verify that changing the archive contents causes a rulekey change.
+    RuleKey contentsChange = generateRuleKey(
+        ruleKeyBuilderFactory,
+        new Archive(
+            params,
+            pathResolver,
+            DEFAULT_ARCHIVER,
+            Archive.Contents.THIN,
+            DEFAULT_OUTPUT,
+            DEFAULT_INPUTS));
+    assertNotEquals(defaultRuleKey, contentsChange);
+
+  }
+
+  @Test
+  public void thinArchivesCacheTheMembersBuiltByOtherRules() {
+    BuildRuleResolver resolver = new BuildRuleResolver();
+    SourcePathResolver pathResolver = new SourcePathResolver(resolver);
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+    Genrule genrule = (Genrule) GenruleBuilder
+        .newGenruleBuilder(BuildTargetFactory.newInstance("//:genrule"))
+        .setOut("foo/bar.o")
+        .build(resolver);
+
+    Archive archive =
+        new Archive(
+            params,
+            pathResolver,
+            DEFAULT_ARCHIVER,
+            Archive.Contents.THIN,
+            DEFAULT_OUTPUT,
+            ImmutableList.<SourcePath>of(
+                new TestSourcePath("a.o"),
+                new BuildTargetSourcePath(genrule.getBuildTarget())));
+    FakeBuildableContext buildableContext = new FakeBuildableContext();
+    archive.getBuildSteps(FakeBuildContext.NOOP_CONTEXT, buildableContext);
+
+    // Members from the source tree are always there, so only the generated one is cached.
+    assertEquals(
+        ImmutableSet.of(DEFAULT_OUTPUT, genrule.getPathToOutput()),
+        buildableContext.getRecordedArtifacts());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void thinArchivesRequireArchiverSupport() {
+    SourcePathResolver pathResolver = new SourcePathResolver(new BuildRuleResolver());
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    new Archive(
+        new FakeBuildRuleParamsBuilder(target).build(),
+        pathResolver,
+        new BsdArchiver(new HashedFileTool(Paths.get("ar"))),
+        Archive.Contents.THIN,
+        DEFAULT_OUTPUT,
+        DEFAULT_INPUTS);
   }
 
 }
@@ -15,7 +15,10 @@
  */
 package com.facebook.buck.cxx;
 
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.ProjectFilesystem;
@@ -45,6 +48,7 @@ import com.google.common.collect.ImmutableSortedSet;
 
 import org.junit.Test;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -360,4 +364,75 @@ public class CxxCompilationDatabaseTest {
                     "test.cpp")));
     MoreAsserts.assertIterablesEquals(expectedEntries, observedEntries);
   }
+
+  @Test
+  public void entriesAreReusedFromFragmentsWhileTheirRuleKeysAreUnchanged() throws IOException {
+    BuildTarget testBuildTarget = BuildTarget
+        .builder(BuildTargetFactory.newInstance("//foo:baz"))
+        .addAllFlavors(
+            ImmutableSet.of(CxxCompilationDatabase.COMPILATION_DATABASE))
+        .build();
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath("", Paths.get("compiler"));
+    filesystem.writeContentsToPath("", Paths.get("preprocessor"));
+    filesystem.writeContentsToPath("", Paths.get("test.cpp"));
+    BuildRuleParams testBuildRuleParams = new FakeBuildRuleParamsBuilder(testBuildTarget)
+        .setProjectFilesystem(filesystem)
+        .build();
+    SourcePathResolver testSourcePathResolver = new SourcePathResolver(new BuildRuleResolver());
+
+    BuildTarget compileTarget = BuildTarget
+        .builder(testBuildRuleParams.getBuildTarget().getUnflavoredBuildTarget())
+        .addFlavors(ImmutableFlavor.of("compile-test.cpp"))
+        .build();
+    CxxPreprocessAndCompile compileRule =
+        new CxxPreprocessAndCompile(
+            new FakeBuildRuleParamsBuilder(compileTarget)
+                .setProjectFilesystem(filesystem)
+                .build(),
+            testSourcePathResolver,
+            CxxPreprocessAndCompileStep.Operation.COMPILE_MUNGE_DEBUGINFO,
+            Optional.<Preprocessor>of(
+                new DefaultPreprocessor(new HashedFileTool(Paths.get("preprocessor")))),
+            Optional.of(ImmutableList.<String>of()),
+            Optional.of(ImmutableList.<String>of()),
+            Optional.<Compiler>of(new DefaultCompiler(new HashedFileTool(Paths.get("compiler")))),
+            Optional.of(ImmutableList.<String>of()),
+            Optional.of(ImmutableList.<String>of()),
+            Paths.get("test.o"),
+            new TestSourcePath("test.cpp"),
+            CxxSource.Type.CXX,
+            ImmutableSet.<Path>of(),
+            ImmutableSet.<Path>of(),
+            ImmutableSet.<Path>of(),
+            ImmutableSet.<Path>of(),
+            Optional.<SourcePath>absent(),
+            ImmutableList.<CxxHeaders>of(),
+            CxxPlatforms.DEFAULT_DEBUG_PATH_SANITIZER);
+    CxxCompilationDatabase compilationDatabase = CxxCompilationDatabase.createCompilationDatabase(
+        testBuildRuleParams,
+        testSourcePathResolver,
+        CxxPreprocessMode.COMBINED,
+        ImmutableList.of(compileRule));
+    CxxCompilationDatabase.GenerateCompilationCommandsJson step =
+        (CxxCompilationDatabase.GenerateCompilationCommandsJson)
+            compilationDatabase.getPostBuildSteps(
+                FakeBuildContext.NOOP_CONTEXT,
+                new FakeBuildableContext()).get(1);
+
+    // The first run creates the entry and stores it in the rule's fragment.
+    String json = step.getEntryJson(compileRule);
+    Path fragment = CxxCompilationDatabase.getFragmentPath(compileRule);
+    List<String> lines = filesystem.readLines(fragment);
+    assertEquals(json, lines.get(1));
+
+    // Later runs take the entry from the fragment while its key matches...
+    filesystem.writeLinesToPath(ImmutableList.of(lines.get(0), "reused"), fragment);
+    assertEquals("reused", step.getEntryJson(compileRule));
+
+    // ...and recreate it otherwise.
+    filesystem.writeLinesToPath(ImmutableList.of("stale key", "reused"), fragment);
+    assertThat(step.getEntryJson(compileRule), not(equalTo("reused")));
+    assertEquals(json, step.getEntryJson(compileRule));
+  }
 }
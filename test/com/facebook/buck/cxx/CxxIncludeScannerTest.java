@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.DefaultFileHashCache;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class CxxIncludeScannerTest {
+
+  @Test
+  public void parseIncludesFindsAllKindsOfDirectivesOutsideComments() {
+    String contents = Joiner.on('\n').join(
+        "#include <a.h>",
+        "  #  import \"b.h\"",
+        "#include_next <c.h>",
+        "// #include <commented.h>",
+        "int x; /* #include <also_commented.h>",
+        "#include <still_commented.h> */ #include <not_a_directive.h>",
+        "#include \\",
+        "    <continued.h>",
+        "#define FOO 1 // unrelated",
+        "#include FOO_HEADER");
+    assertThat(
+        CxxIncludeScanner.parseIncludes(contents),
+        contains(
+            new CxxIncludeScanner.Include(false, false, "a.h"),
+            new CxxIncludeScanner.Include(false, true, "b.h"),
+            new CxxIncludeScanner.Include(true, false, "c.h"),
+            new CxxIncludeScanner.Include(false, false, "continued.h")));
+  }
+
+  @Test
+  public void quotedIncludesAreFoundNextToTheirIncluderBeforeTheSearchPaths()
+      throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath("#include \"a.h\"\n#include <b.h>\n", Paths.get("src/foo.c"));
+    filesystem.writeContentsToPath("", Paths.get("src/a.h"));
+    filesystem.writeContentsToPath("", Paths.get("include/a.h"));
+    filesystem.writeContentsToPath("#include \"missing.h\"\n", Paths.get("include/b.h"));
+    filesystem.writeContentsToPath("", Paths.get("src/b.h"));
+
+    CxxIncludeScanner scanner =
+        new CxxIncludeScanner(
+            filesystem,
+            new DefaultFileHashCache(filesystem),
+            ImmutableMap.<Path, Path>of(),
+            ImmutableList.<Path>of(),
+            ImmutableList.of(Paths.get("include")),
+            ImmutableList.<Path>of(),
+            ImmutableList.<Path>of());
+    assertThat(
+        scanner.scan(ImmutableList.of(Paths.get("src/foo.c"))),
+        contains(Paths.get("src/foo.c"), Paths.get("src/a.h"), Paths.get("include/b.h")));
+  }
+
+  @Test
+  public void headersInSymlinkTreesAreScannedBeforeTheTreesAreBuilt() throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath("#include <lib/a.h>\n", Paths.get("src/foo.c"));
+    filesystem.writeContentsToPath("#include_next <lib/a.h>\n", Paths.get("lib/a.h"));
+    filesystem.writeContentsToPath("#include <Fw/c.h>\n", Paths.get("other/a.h"));
+    filesystem.writeContentsToPath("", Paths.get("frameworks/Fw.framework/Headers/c.h"));
+
+    // Neither tree exists on disk, so their headers are only found through the replacement paths.
+    CxxIncludeScanner scanner =
+        new CxxIncludeScanner(
+            filesystem,
+            new DefaultFileHashCache(filesystem),
+            ImmutableMap.of(
+                Paths.get("buck-out/first/lib/a.h"), Paths.get("lib/a.h"),
+                Paths.get("buck-out/second/lib/a.h"), Paths.get("other/a.h")),
+            ImmutableList.<Path>of(),
+            ImmutableList.of(Paths.get("buck-out/first"), Paths.get("buck-out/second")),
+            ImmutableList.<Path>of(),
+            ImmutableList.of(Paths.get("frameworks")));
+    assertThat(
+        scanner.scan(ImmutableList.of(Paths.get("src/foo.c"))),
+        contains(
+            Paths.get("src/foo.c"),
+            Paths.get("buck-out/first/lib/a.h"),
+            Paths.get("buck-out/second/lib/a.h"),
+            Paths.get("frameworks/Fw.framework/Headers/c.h")));
+  }
+
+}
@@ -492,7 +492,13 @@ public class CxxLibraryDescriptionTest {
     assertEquals(inputs.size(), 1);
     SourcePath sourcePath = inputs.get(0);
     assertTrue(sourcePath instanceof BuildTargetSourcePath);
-    BuildRule buildRule = new SourcePathResolver(resolver).getRule(sourcePath).get();
+    SourcePathResolver pathResolver = new SourcePathResolver(resolver);
+    BuildRule buildRule = pathResolver.getRule(sourcePath).get();
+    // On ELF platforms, dependents link against the interface of the shared library.
+    if (buildRule instanceof CxxSharedLibraryInterface) {
+      buildRule =
+          pathResolver.getRule(((CxxSharedLibraryInterface) buildRule).getSharedLibrary()).get();
+    }
     assertTrue(buildRule instanceof CxxLink);
     CxxLink cxxLink = (CxxLink) buildRule;
     ImmutableList<String> args = cxxLink.getArgs();
@@ -163,6 +163,50 @@ public class CxxLinkableEnhancerTest {
   }
 
 
+  @Test
+  public void linksAgainstSharedLibraryInterfacesDependOnTheSharedLibraries() {
+    BuildRuleResolver resolver = new BuildRuleResolver();
+    SourcePathResolver pathResolver = new SourcePathResolver(resolver);
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+
+    Genrule sharedLibrary = (Genrule) GenruleBuilder
+        .newGenruleBuilder(BuildTargetFactory.newInstance("//:genrule"))
+        .setOut("libfoo.so")
+        .build(resolver);
+    CxxSharedLibraryInterface sharedLibraryInterface =
+        CxxDescriptionEnhancer.requireSharedLibraryInterface(
+            new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:lib")).build(),
+            resolver,
+            CXX_PLATFORM,
+            sharedLibrary);
+
+    CxxLink cxxLink = CxxLinkableEnhancer.createCxxLinkableBuildRule(
+        TargetGraph.EMPTY,
+        CXX_PLATFORM,
+        params,
+        pathResolver,
+        /* extraLdFlags */ ImmutableList.<String>of(),
+        target,
+        Linker.LinkType.EXECUTABLE,
+        Optional.<String>absent(),
+        DEFAULT_OUTPUT,
+        ImmutableList.<SourcePath>of(
+            new BuildTargetSourcePath(sharedLibraryInterface.getBuildTarget())),
+        /* extraInputs */ ImmutableList.<SourcePath>of(),
+        Linker.LinkableDepType.SHARED,
+        EMPTY_DEPS,
+        Optional.<Linker.CxxRuntimeType>absent(),
+        Optional.<SourcePath>absent(),
+        ImmutableSet.<BuildRule>of());
+
+    // The link is keyed on the interface, but the linker still needs the library itself.
+    assertEquals(
+        ImmutableSortedSet.<BuildRule>of(sharedLibrary, sharedLibraryInterface),
+        cxxLink.getDeps());
+  }
+
+
   @Test
   public void testThatExtraInpusDoNotContributeToArgs() {
     BuildRuleResolver resolver = new BuildRuleResolver();
@@ -32,6 +32,7 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
+import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.rules.PathSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -47,6 +48,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
 
@@ -931,4 +933,163 @@ public class CxxSourceRuleFactoryTest {
 
     assertEquals(objcCompile.getBuildTarget(), objcCompile2.getBuildTarget());
   }
+
+  @Test
+  public void precompiledHeaderIsSharedBySourcesWithoutPerFileFlags() {
+    BuildRuleResolver buildRuleResolver = new BuildRuleResolver();
+    BuildTarget target = BuildTargetFactory.newInstance("//:target");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+
+    CxxSourceRuleFactory cxxSourceRuleFactory =
+        new CxxSourceRuleFactory(
+            params,
+            buildRuleResolver,
+            new SourcePathResolver(buildRuleResolver),
+            CXX_PLATFORM,
+            ImmutableList.<CxxPreprocessorInput>of(),
+            ImmutableList.of("-O2"),
+            Optional.<SourcePath>absent(),
+            Optional.<SourcePath>of(new TestSourcePath("prefix.h")));
+
+    CxxPreprocessAndCompile first =
+        cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+            buildRuleResolver,
+            "first.cpp",
+            CxxSource.of(
+                CxxSource.Type.CXX,
+                new TestSourcePath("first.cpp"),
+                ImmutableList.<String>of()),
+            CxxSourceRuleFactory.PicType.PDC,
+            CxxPreprocessMode.COMBINED);
+    CxxPreprocessAndCompile second =
+        cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+            buildRuleResolver,
+            "second.cpp",
+            CxxSource.of(
+                CxxSource.Type.CXX,
+                new TestSourcePath("second.cpp"),
+                ImmutableList.<String>of()),
+            CxxSourceRuleFactory.PicType.PDC,
+            CxxPreprocessMode.COMBINED);
+    CxxPreprocessAndCompile withFlags =
+        cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+            buildRuleResolver,
+            "flags.cpp",
+            CxxSource.of(
+                CxxSource.Type.CXX,
+                new TestSourcePath("flags.cpp"),
+                ImmutableList.of("-DFLAGS")),
+            CxxSourceRuleFactory.PicType.PDC,
+            CxxPreprocessMode.COMBINED);
+
+    CxxPrecompiledHeader precompiledHeader =
+        buildRuleResolver.getRuleOptionalWithType(
+            cxxSourceRuleFactory.createPrecompiledHeaderBuildTarget(
+                CxxSource.Type.CXX,
+                CxxSourceRuleFactory.PicType.PDC),
+            CxxPrecompiledHeader.class).get();
+    assertThat(first.getDeps(), Matchers.<BuildRule>hasItem(precompiledHeader));
+    assertThat(second.getDeps(), Matchers.<BuildRule>hasItem(precompiledHeader));
+    assertThat(
+        withFlags.getDeps(),
+        Matchers.not(Matchers.<BuildRule>hasItem(precompiledHeader)));
+
+    assertContains(
+        precompiledHeader.getCommand(),
+        ImmutableList.of("-O2", "-x", "c++-header", "prefix.h"));
+    String includePath = precompiledHeader.getPathToOutput().getParent()
+        .resolve("prefix.h").toString();
+    assertContains(first.getCommand(), ImmutableList.of("-include", includePath));
+    assertContains(withFlags.getCommand(), ImmutableList.of("-include", "prefix.h"));
+
+    // gcc neither records the compilation directory in a precompiled header nor checks the
+    // headers it was built from, so it needs no extra flags to build or use one elsewhere.
+    assertThat(precompiledHeader.getCommand(), Matchers.not(Matchers.hasItem("-Xclang")));
+    assertThat(first.getCommand(), Matchers.not(Matchers.hasItem("-fno-validate-pch")));
+  }
+
+  @Test
+  public void precompiledHeaderBuiltWithClangCanBeUsedFromTheCache() {
+    BuildRuleResolver buildRuleResolver = new BuildRuleResolver();
+    BuildTarget target = BuildTargetFactory.newInstance("//:target");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+    CxxPlatform platform = CxxPlatform.builder()
+        .from(CXX_PLATFORM)
+        .setCxx(new ClangCompiler(new HashedFileTool(Paths.get("clang++"))))
+        .build();
+
+    CxxSourceRuleFactory cxxSourceRuleFactory =
+        new CxxSourceRuleFactory(
+            params,
+            buildRuleResolver,
+            new SourcePathResolver(buildRuleResolver),
+            platform,
+            ImmutableList.<CxxPreprocessorInput>of(),
+            ImmutableList.<String>of(),
+            Optional.<SourcePath>absent(),
+            Optional.<SourcePath>of(new TestSourcePath("prefix.h")));
+
+    CxxPreprocessAndCompile compile =
+        cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+            buildRuleResolver,
+            "test.cpp",
+            CxxSource.of(
+                CxxSource.Type.CXX,
+                new TestSourcePath("test.cpp"),
+                ImmutableList.<String>of()),
+            CxxSourceRuleFactory.PicType.PDC,
+            CxxPreprocessMode.COMBINED);
+    CxxPrecompiledHeader precompiledHeader =
+        buildRuleResolver.getRuleOptionalWithType(
+            cxxSourceRuleFactory.createPrecompiledHeaderBuildTarget(
+                CxxSource.Type.CXX,
+                CxxSourceRuleFactory.PicType.PDC),
+            CxxPrecompiledHeader.class).get();
+
+    // The header records the same sanitized compilation directory as the objects do, and the
+    // objects don't reject it for having been built from headers with other timestamps.
+    assertContains(
+        precompiledHeader.getCommand(),
+        ImmutableList.of(
+            "-fdebug-compilation-dir",
+            CXX_PLATFORM.getDebugPathSanitizer().getCompilationDirectory()));
+    assertContains(compile.getCommand(), ImmutableList.of("-Xclang", "-fno-validate-pch"));
+  }
+
+  @Test
+  public void precompiledHeaderIsIncludedAsIsWhenPreprocessingSeparately() {
+    BuildRuleResolver buildRuleResolver = new BuildRuleResolver();
+    BuildTarget target = BuildTargetFactory.newInstance("//:target");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+
+    CxxSourceRuleFactory cxxSourceRuleFactory =
+        new CxxSourceRuleFactory(
+            params,
+            buildRuleResolver,
+            new SourcePathResolver(buildRuleResolver),
+            CXX_PLATFORM,
+            ImmutableList.<CxxPreprocessorInput>of(),
+            ImmutableList.<String>of(),
+            Optional.<SourcePath>absent(),
+            Optional.<SourcePath>of(new TestSourcePath("prefix.h")));
+
+    CxxPreprocessAndCompile preprocess =
+        cxxSourceRuleFactory.requirePreprocessBuildRule(
+            buildRuleResolver,
+            "test.cpp",
+            CxxSource.of(
+                CxxSource.Type.CXX,
+                new TestSourcePath("test.cpp"),
+                ImmutableList.<String>of()),
+            CxxSourceRuleFactory.PicType.PDC);
+
+    assertContains(
+        preprocess.makeMainStep().getCommand(),
+        ImmutableList.of("-include", "prefix.h"));
+    assertFalse(
+        buildRuleResolver.getRuleOptional(
+            cxxSourceRuleFactory.createPrecompiledHeaderBuildTarget(
+                CxxSource.Type.CXX,
+                CxxSourceRuleFactory.PicType.PDC)).isPresent());
+  }
 }
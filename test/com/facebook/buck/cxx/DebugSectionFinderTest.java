@@ -18,12 +18,15 @@ package com.facebook.buck.cxx;
 
 import static com.facebook.buck.cxx.DebugSectionProperty.COMPRESSED;
 import static com.facebook.buck.cxx.DebugSectionProperty.STRINGS;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -33,6 +36,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
@@ -140,6 +144,68 @@ public class DebugSectionFinderTest {
         workspace.resolve("elf-stabs+.o"));
   }
 
+  private static void putFixedLengthString(ByteBuffer buffer, String string, int length) {
+    byte[] bytes = new byte[length];
+    byte[] stringBytes = string.getBytes(Charsets.US_ASCII);
+    System.arraycopy(stringBytes, 0, bytes, 0, stringBytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * @return a 64-bit Mach-O object holding a single segment with a code section and a DWARF
+   *     string section, the latter containing {@code debugStrings}.
+   */
+  private static ByteBuffer createMacho(String debugStrings) {
+    byte[] code = {0x01, 0x02, 0x03, 0x04};
+    byte[] strings = debugStrings.getBytes(Charsets.US_ASCII);
+    int commandSize = 72 + 2 * 80;
+    int dataStart = 32 + commandSize;
+    ByteBuffer buffer = ByteBuffer.allocate(dataStart + code.length + strings.length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    // Header: magic, CPU type and subtype, file type, commands count and size, flags, reserved.
+    buffer.putInt(0xFEEDFACF).putInt(0).putInt(0).putInt(1);
+    buffer.putInt(1).putInt(commandSize).putInt(0).putInt(0);
+
+    // An LC_SEGMENT_64 command covering both sections.
+    buffer.putInt(Machos.LC_SEGMENT_64).putInt(commandSize);
+    putFixedLengthString(buffer, "", 16);
+    buffer.putLong(0).putLong(code.length + strings.length);
+    buffer.putLong(dataStart).putLong(code.length + strings.length);
+    buffer.putInt(7).putInt(7).putInt(2).putInt(0);
+
+    putFixedLengthString(buffer, "__text", 16);
+    putFixedLengthString(buffer, "__TEXT", 16);
+    buffer.putLong(0).putLong(code.length).putInt(dataStart);
+    buffer.putInt(0).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0);
+
+    putFixedLengthString(buffer, "__debug_str", 16);
+    putFixedLengthString(buffer, "__DWARF", 16);
+    buffer.putLong(0).putLong(strings.length).putInt(dataStart + code.length);
+    buffer.putInt(0).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0);
+
+    buffer.put(code);
+    buffer.put(strings);
+    buffer.position(0);
+    return buffer;
+  }
+
+  @Test
+  public void testMacho() {
+    String debugStrings = "/some/compilation/directory\0";
+    Optional<ImmutableMap<String, DebugSection>> sections =
+        new DebugSectionFinder().find(createMacho(debugStrings));
+    assertDebugSections(
+        Optional.of(ImmutableMap.of("__debug_str", ImmutableSet.of(STRINGS))),
+        sections);
+
+    // Only the string section's contents are covered.
+    ByteBuffer body = sections.get().get("__debug_str").body;
+    byte[] contents = new byte[body.remaining()];
+    body.get(contents);
+    assertThat(new String(contents, Charsets.US_ASCII), equalTo(debugStrings));
+  }
+
   @Test
   public void testUnrecognizedData() {
     assertDebugSections(
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class InferMergeReportsStepTest {
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  @Test
+  public void reportsAreMergedVerbatimInOrder() throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    Path first = Paths.get("a/report.json");
+    Path second = Paths.get("b/report.json");
+    Path empty = Paths.get("c/report.json");
+    filesystem.createParentDirs(first);
+    filesystem.createParentDirs(second);
+    filesystem.createParentDirs(empty);
+    filesystem.writeContentsToPath(
+        "[{\"bug_type\": \"NULL_DEREFERENCE\", \"line\": 12, \"trace\": [1, 2.5]}]",
+        first);
+    filesystem.writeContentsToPath(
+        "[{\"bug_type\": \"MEMORY_LEAK\", \"line\": 3, \"visible\": true, \"key\": null}, []]",
+        second);
+    filesystem.writeContentsToPath("[]", empty);
+
+    Path destination = Paths.get("report.json");
+    new InferMergeReportsStep(
+        filesystem,
+        ImmutableSortedSet.of(first, second, empty),
+        destination)
+        .execute(TestExecutionContext.newInstance());
+
+    // Integers stay integers, rather than being rewritten as doubles.
+    assertThat(
+        filesystem.readFileIfItExists(destination),
+        equalTo(
+            Optional.of(
+                "[{\"bug_type\":\"NULL_DEREFERENCE\",\"line\":12,\"trace\":[1,2.5]}," +
+                "{\"bug_type\":\"MEMORY_LEAK\",\"line\":3,\"visible\":true,\"key\":null},[]]")));
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Function;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class LineMarkerRewritingThreadTest {
+
+  private static final Function<String, Iterable<String>> PROCESSOR =
+      new Function<String, Iterable<String>>() {
+        @Override
+        public Iterable<String> apply(String line) {
+          return ImmutableList.of(line.replace("buck-out/foo", "foo"));
+        }
+      };
+
+  @Test
+  public void onlyLineMarkersAreRewritten() throws IOException {
+    assertEquals(
+        "# 1 \"foo/a.h\"\n" +
+        "int buck-out/foo;\n" +
+        "#pragma once buck-out/foo\n" +
+        "  # 2 \"buck-out/foo/b.h\"\n" +
+        "# 3 \"foo/c.h\" 2\n",
+        rewrite(
+            "# 1 \"buck-out/foo/a.h\"\n" +
+            "int buck-out/foo;\n" +
+            "#pragma once buck-out/foo\n" +
+            "  # 2 \"buck-out/foo/b.h\"\n" +
+            "# 3 \"buck-out/foo/c.h\" 2"));
+  }
+
+  @Test
+  public void lineMarkersCanSpanReads() throws IOException {
+    StringBuilder input = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      String code = Strings.repeat("x", i % 97) + "\n";
+      input.append(code).append("# ").append(i).append(" \"buck-out/foo/").append(i).append("\"\n");
+      expected.append(code).append("# ").append(i).append(" \"foo/").append(i).append("\"\n");
+    }
+
+    assertEquals(expected.toString(), rewrite(input.toString()));
+  }
+
+  private static String rewrite(String input) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LineMarkerRewritingThread.rewrite(
+        new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+        out,
+        PROCESSOR);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class SharedLibraryInterfaceStepTest {
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  @Test
+  public void interfaceHasOnlyTheExportedSymbols() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "shared_library_interface", tmp);
+    workspace.setUp();
+    ProjectFilesystem filesystem = new ProjectFilesystem(workspace.getDestPath());
+
+    // The library defines a hidden and a static function, and refers to an undefined one, none of
+    // which should show up.
+    Path output = Paths.get("libfoo.so.interface");
+    new SharedLibraryInterfaceStep(filesystem, Paths.get("libfoo.so"), output)
+        .execute(TestExecutionContext.newInstance());
+
+    assertThat(
+        filesystem.readLines(output),
+        contains(
+            "foo STT_FUNC STB_GLOBAL STV_DEFAULT",
+            "foo_data STT_OBJECT STB_GLOBAL STV_DEFAULT 16",
+            "weak_foo STT_FUNC STB_WEAK STV_DEFAULT"));
+  }
+
+  @Test
+  public void interfaceHasTheVersionOfEachSymbol() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "shared_library_interface", tmp);
+    workspace.setUp();
+    ProjectFilesystem filesystem = new ProjectFilesystem(workspace.getDestPath());
+
+    // The library defines foo at two versions, the older of which is hidden, and each version is
+    // itself an absolute symbol.
+    Path output = Paths.get("libversioned.so.interface");
+    new SharedLibraryInterfaceStep(filesystem, Paths.get("libversioned.so"), output)
+        .execute(TestExecutionContext.newInstance());
+
+    assertThat(
+        filesystem.readLines(output),
+        contains(
+            "FOO_1.0 STT_OBJECT STB_GLOBAL STV_DEFAULT 0 @@FOO_1.0",
+            "FOO_2.0 STT_OBJECT STB_GLOBAL STV_DEFAULT 0 @@FOO_2.0",
+            "bar STT_FUNC STB_GLOBAL STV_DEFAULT @@FOO_1.0",
+            "foo STT_FUNC STB_GLOBAL STV_DEFAULT @@FOO_2.0",
+            "foo STT_FUNC STB_GLOBAL STV_DEFAULT @FOO_1.0"));
+  }
+
+  @Test
+  public void nonElfFilesHaveNoExportedSymbols() {
+    assertThat(
+        SharedLibraryInterfaceStep.getExportedSymbols(
+            ByteBuffer.wrap("not an ELF file".getBytes(Charsets.UTF_8))),
+        equalTo(Optional.<ImmutableSortedSet<String>>absent()));
+  }
+
+  @Test
+  public void nonElfFilesAreRepresentedByTheirHash() throws IOException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    Path input = Paths.get("libfoo.dylib");
+    filesystem.writeContentsToPath("not an ELF file", input);
+
+    Path output = Paths.get("libfoo.dylib.interface");
+    new SharedLibraryInterfaceStep(filesystem, input, output)
+        .execute(TestExecutionContext.newInstance());
+
+    assertThat(filesystem.readLines(output), contains(filesystem.computeSha1(input)));
+  }
+
+}
@@ -123,4 +123,34 @@ public class ElfTest {
 
   }
 
+  @Test
+  public void symbolTable() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "samples", tmp);
+    workspace.setUp();
+
+    Path elfPath = workspace.resolve(Paths.get("le64.o"));
+    try (FileChannel channel = FileChannel.open(elfPath)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      Elf elf = new Elf(buffer);
+      ElfSection section = elf.getSectionByName(".symtab").get();
+      ElfSection strings = elf.getSectionByIndex((int) section.header.sh_link);
+      ElfSymbolTable symbolTable = ElfSymbolTable.parse(elf.header.ei_class, section.body);
+
+      Optional<ElfSymbolTable.Entry> main = Optional.absent();
+      for (ElfSymbolTable.Entry entry : symbolTable.entries) {
+        if (strings.lookupString(entry.st_name).equals("main")) {
+          main = Optional.of(entry);
+        }
+      }
+      assertTrue(main.isPresent());
+      assertTrue(main.get().isDefined());
+      assertEquals(ElfSymbolTable.STType.STT_FUNC, main.get().getType());
+      assertEquals(ElfSymbolTable.STBind.STB_GLOBAL, main.get().getBinding());
+      assertEquals(ElfSymbolTable.STVisibility.STV_DEFAULT, main.get().getVisibility());
+      assertEquals(6, main.get().st_size);
+    }
+
+  }
+
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ConcurrentZipWriterTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void writesEveryZipWithItsEntriesInOrder() throws IOException {
+    ConcurrentZipWriter writer = new ConcurrentZipWriter(2);
+    for (int i = 0; i < 5; i++) {
+      ImmutableList.Builder<ConcurrentZipWriter.Entry> entries = ImmutableList.builder();
+      for (int j = 0; j < 3; j++) {
+        entries.add(
+            new ConcurrentZipWriter.Entry(
+                "entry" + j,
+                ("zip " + i + " entry " + j).getBytes(StandardCharsets.UTF_8)));
+      }
+      writer.write(tmp.getRoot().toPath().resolve("zip" + i + ".zip"), entries.build());
+    }
+    writer.finish();
+
+    for (int i = 0; i < 5; i++) {
+      Path zip = tmp.getRoot().toPath().resolve("zip" + i + ".zip");
+      try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+        ImmutableList<? extends ZipEntry> entries =
+            ImmutableList.copyOf(Collections.list(zipFile.entries()));
+        assertEquals(3, entries.size());
+        for (int j = 0; j < 3; j++) {
+          assertEquals("entry" + j, entries.get(j).getName());
+          try (InputStream in = zipFile.getInputStream(entries.get(j))) {
+            assertEquals(
+                "zip " + i + " entry " + j,
+                new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class DalvikAwareZipSplitterTest {
+
+  private static final ImmutableList<Class<?>> CLASSES = ImmutableList.of(
+      DalvikAwareZipSplitter.class,
+      DalvikAwareOutputStreamHelper.class,
+      DalvikStatsCache.class,
+      DalvikStatsStore.class,
+      DalvikStatsTool.class,
+      DefaultZipSplitter.class,
+      SecondaryDexHelper.class,
+      ConcurrentZipWriter.class);
+
+  @Rule
+  public TemporaryPaths tmpDir = new TemporaryPaths();
+
+  @Test
+  public void splittingOnSeveralThreadsWithAStoreIsTheSameAsOnOne() throws IOException {
+    Path in = tmpDir.getRoot().resolve("in.jar");
+    long totalSize = 0;
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(in))) {
+      for (Class<?> type : CLASSES) {
+        byte[] bytes = readClass(type);
+        totalSize += DalvikStatsTool.getEstimate(new ByteArrayInputStream(bytes))
+            .estimatedLinearAllocSize;
+        out.putNextEntry(new ZipEntry(type.getName().replace('.', '/') + ".class"));
+        out.write(bytes);
+      }
+    }
+
+    Path store = tmpDir.getRoot().resolve("stats/stats.bin");
+    ImmutableMap<String, ImmutableList<String>> expected =
+        split(in, "serial", totalSize / 3, Optional.<Path>absent(), 1);
+    assertTrue(expected.size() > 2);
+    assertEquals(expected, split(in, "parallel", totalSize / 3, Optional.of(store), 3));
+    assertTrue(Files.exists(store));
+    assertEquals(expected, split(in, "stored", totalSize / 3, Optional.of(store), 3));
+  }
+
+  /**
+   * @return the entries of each zip, and the report of each zip, by file name.
+   */
+  private ImmutableMap<String, ImmutableList<String>> split(
+      Path in,
+      String name,
+      long linearAllocLimit,
+      Optional<Path> store,
+      int threadCount) throws IOException {
+    Path outDir = tmpDir.newFolder(name);
+    Path reportDir = tmpDir.newFolder(name + "-report");
+    Path primary = outDir.resolve("primary.jar");
+    List<Path> secondaries =
+        new DalvikAwareZipSplitterFactory(
+            linearAllocLimit,
+            ImmutableSet.<String>of(),
+            store,
+            threadCount)
+            .newInstance(
+                new ProjectFilesystem(tmpDir.getRoot()),
+                Collections.singleton(in),
+                primary,
+                outDir,
+                "secondary-%d.jar",
+                new Predicate<String>() {
+                  @Override
+                  public boolean apply(String input) {
+                    return input.contains("DalvikStatsTool");
+                  }
+                },
+                ImmutableSet.<String>of(),
+                ImmutableSet.<String>of(),
+                ZipSplitter.DexSplitStrategy.MAXIMIZE_PRIMARY_DEX_SIZE,
+                ZipSplitter.CanaryStrategy.INCLUDE_CANARIES,
+                reportDir)
+            .execute();
+
+    ImmutableMap.Builder<String, ImmutableList<String>> result = ImmutableMap.builder();
+    for (Path zip : ImmutableList.<Path>builder().add(primary).addAll(secondaries).build()) {
+      result.put(zip.getFileName().toString(), readEntries(zip));
+      result.put(
+          zip.getFileName() + ".txt",
+          ImmutableList.copyOf(Files.readAllLines(
+              reportDir.resolve(zip.getFileName() + ".txt"),
+              StandardCharsets.UTF_8)));
+    }
+    return result.build();
+  }
+
+  private static ImmutableList<String> readEntries(Path zip) throws IOException {
+    ImmutableList.Builder<String> entries = ImmutableList.builder();
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      for (ZipEntry entry : Collections.list(zipFile.entries())) {
+        try (InputStream in = zipFile.getInputStream(entry)) {
+          entries.add(entry.getName() + " " + ByteStreams.toByteArray(in).length);
+        }
+      }
+    }
+    return entries.build();
+  }
+
+  private static byte[] readClass(Class<?> type) throws IOException {
+    String resourceName = type.getName().replace('.', '/') + ".class";
+    try (InputStream in = ClassLoader.getSystemResourceAsStream(resourceName)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class DalvikStatsStoreTest {
+
+  private static final HashCode FOO = Hashing.sha1().hashString("Foo", StandardCharsets.UTF_8);
+  private static final HashCode BAR = Hashing.sha1().hashString("Bar", StandardCharsets.UTF_8);
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void statsSurviveBeingSavedAndReadAgain() throws IOException {
+    Path file = tmp.getRoot().toPath().resolve("stats/stats.bin");
+    DalvikStatsStore store = new DalvikStatsStore(file);
+    assertFalse(store.get(FOO).isPresent());
+
+    DalvikStatsTool.MethodReference init =
+        new DalvikStatsTool.MethodReference("java/lang/Object", "<init>", "()V");
+    DalvikStatsTool.MethodReference append = new DalvikStatsTool.MethodReference(
+        "java/lang/StringBuilder",
+        "append",
+        "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+    store.put(FOO, new DalvikStatsTool.Stats(123, ImmutableSet.of(init, append)));
+    store.put(BAR, new DalvikStatsTool.Stats(45, ImmutableSet.of(init)));
+    store.save();
+
+    DalvikStatsStore reread = new DalvikStatsStore(file);
+    Optional<DalvikStatsTool.Stats> foo = reread.get(FOO);
+    assertTrue(foo.isPresent());
+    assertEquals(123, foo.get().estimatedLinearAllocSize);
+    assertEquals(ImmutableSet.of(init, append), foo.get().methodReferences);
+    Optional<DalvikStatsTool.Stats> bar = reread.get(BAR);
+    assertTrue(bar.isPresent());
+    assertEquals(45, bar.get().estimatedLinearAllocSize);
+    assertEquals(ImmutableSet.of(init), bar.get().methodReferences);
+  }
+
+  @Test
+  public void onlyWritesTheFileWhenStatsWereAdded() throws IOException {
+    Path file = tmp.getRoot().toPath().resolve("stats.bin");
+    DalvikStatsStore store = new DalvikStatsStore(file);
+    store.get(FOO);
+    store.save();
+
+    assertFalse(Files.exists(file));
+  }
+
+  @Test
+  public void aCorruptFileIsIgnored() throws IOException {
+    Path file = tmp.getRoot().toPath().resolve("stats.bin");
+    Files.write(file, new byte[] {0, 0, 0, 1, 0, 0});
+
+    DalvikStatsStore store = new DalvikStatsStore(file);
+    assertFalse(store.get(FOO).isPresent());
+    store.put(FOO, DalvikStatsTool.Stats.ZERO);
+    store.save();
+
+    assertTrue(new DalvikStatsStore(file).get(FOO).isPresent());
+  }
+
+  @Test
+  public void oneStorePerFile() {
+    Path file = tmp.getRoot().toPath().resolve("stats.bin");
+    assertTrue(DalvikStatsStore.forFile(file) == DalvikStatsStore.forFile(file));
+  }
+}
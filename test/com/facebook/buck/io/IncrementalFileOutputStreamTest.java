@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class IncrementalFileOutputStreamTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path file;
+  private byte[] original;
+
+  @Before
+  public void setUp() throws IOException {
+    file = tmp.getRoot().toPath().resolve("out");
+    // Larger than the buffer that existing bytes are read into.
+    original = new byte[200 * 1024];
+    new Random(42).nextBytes(original);
+    Files.write(file, original);
+  }
+
+  @Test
+  public void keepsTheBytesBeforeTheFirstChange() throws IOException {
+    byte[] changed = Arrays.copyOf(original, original.length);
+    changed[150 * 1024] ^= 1;
+
+    IncrementalFileOutputStream out = write(changed, 1000);
+
+    assertArrayEquals(changed, Files.readAllBytes(file));
+    assertEquals(150 * 1024, out.getUnchangedBytes());
+    assertEquals(changed.length, out.getSize());
+  }
+
+  @Test
+  public void truncatesAFileThatWasLonger() throws IOException {
+    byte[] shorter = Arrays.copyOf(original, 1234);
+
+    IncrementalFileOutputStream out = write(shorter, 100);
+
+    assertArrayEquals(shorter, Files.readAllBytes(file));
+    assertEquals(1234, out.getUnchangedBytes());
+  }
+
+  @Test
+  public void extendsAFileThatWasShorter() throws IOException {
+    byte[] longer = Arrays.copyOf(original, original.length + 100);
+    longer[longer.length - 1] = 42;
+
+    IncrementalFileOutputStream out = write(longer, 64 * 1024 + 1);
+
+    assertArrayEquals(longer, Files.readAllBytes(file));
+    assertEquals(original.length, out.getUnchangedBytes());
+  }
+
+  @Test
+  public void createsAFileThatDoesNotExist() throws IOException {
+    Files.delete(file);
+
+    IncrementalFileOutputStream out = write(original, 4096);
+
+    assertArrayEquals(original, Files.readAllBytes(file));
+    assertEquals(0, out.getUnchangedBytes());
+  }
+
+  @Test
+  public void leavesOtherHardLinksToTheFileAlone() throws IOException {
+    Path link = tmp.getRoot().toPath().resolve("link");
+    Files.createLink(link, file);
+    byte[] changed = Arrays.copyOf(original, original.length);
+    changed[changed.length - 1] ^= 1;
+
+    write(changed, 4096);
+
+    assertArrayEquals(changed, Files.readAllBytes(file));
+    assertArrayEquals(original, Files.readAllBytes(link));
+  }
+
+  private IncrementalFileOutputStream write(byte[] bytes, int chunkSize) throws IOException {
+    IncrementalFileOutputStream out = new IncrementalFileOutputStream(file);
+    try {
+      for (int i = 0; i < bytes.length; i += chunkSize) {
+        out.write(bytes, i, Math.min(chunkSize, bytes.length - i));
+      }
+    } finally {
+      out.close();
+    }
+    return out;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+public class IncrementalJavacStepIntegrationTest {
+
+  private static final FileTime EPOCH = FileTime.fromMillis(0);
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private Path classes;
+  private Path state;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRootPath());
+    classes = Paths.get("out/classes");
+    state = Paths.get("out/state.json");
+    filesystem.mkdirs(Paths.get("src/p"));
+
+    write("A", "public class A { public int value() { return 1; } }");
+    write("B", "public class B { int twice() { return 2 * new A().value(); } }");
+    write("C", "public class C {}");
+  }
+
+  @Test
+  public void unchangedSourcesAreNotRecompiled() throws IOException, InterruptedException {
+    assertEquals(0, compile("A", "B", "C"));
+    assertTrue(filesystem.isFile(state));
+    markAllClassesAsOld();
+
+    write("A", "public class A { public int value() { return 2; } }");
+    assertEquals(0, compile("A", "B", "C"));
+
+    assertNotEquals(EPOCH, lastModified("A"));
+    assertEquals(EPOCH, lastModified("B"));
+    assertEquals(EPOCH, lastModified("C"));
+  }
+
+  @Test
+  public void usersOfAChangedAbiAreRecompiled() throws IOException, InterruptedException {
+    assertEquals(0, compile("A", "B", "C"));
+    markAllClassesAsOld();
+
+    write("A", "public class A { public int value() { return 1; } public void added() {} }");
+    assertEquals(0, compile("A", "B", "C"));
+
+    assertNotEquals(EPOCH, lastModified("A"));
+    assertNotEquals(EPOCH, lastModified("B"));
+    assertEquals(EPOCH, lastModified("C"));
+  }
+
+  @Test
+  public void usersOfSubclassesOfAChangedAbiAreRecompiled()
+      throws IOException, InterruptedException {
+    write("A", "public class A { public int value() { return 1; } }");
+    write("B", "public class B extends A {}");
+    write("C", "public class C { int value() { return new B().value(); } }");
+    assertEquals(0, compile("A", "B", "C"));
+
+    // C only refers to B, whose class file doesn't change when a method is removed from A. So
+    // unless C is recompiled too the removal goes unnoticed until it fails at runtime.
+    write("A", "public class A {}");
+    assertEquals(1, compile("A", "B", "C"));
+    assertFalse(filesystem.isFile(state));
+  }
+
+  @Test
+  public void changedConstantsCauseAFullRecompilation() throws IOException, InterruptedException {
+    write("C", "public class C { public static final int SIZE = 1; }");
+    assertEquals(0, compile("A", "B", "C"));
+    markAllClassesAsOld();
+
+    write("C", "public class C { public static final int SIZE = 2; }");
+    assertEquals(0, compile("A", "B", "C"));
+
+    assertNotEquals(EPOCH, lastModified("A"));
+    assertNotEquals(EPOCH, lastModified("B"));
+    assertNotEquals(EPOCH, lastModified("C"));
+  }
+
+  @Test
+  public void classesOfRemovedSourcesAreDeleted() throws IOException, InterruptedException {
+    assertEquals(0, compile("A", "B", "C"));
+    assertTrue(filesystem.isFile(classes.resolve("p/C.class")));
+
+    assertEquals(0, compile("A", "B"));
+    assertFalse(filesystem.isFile(classes.resolve("p/C.class")));
+    assertTrue(filesystem.isFile(classes.resolve("p/B.class")));
+  }
+
+  @Test
+  public void failedCompilationForcesAFullRecompilationNextTime()
+      throws IOException, InterruptedException {
+    assertEquals(0, compile("A", "B", "C"));
+
+    write("C", "public class C { syntax error }");
+    assertEquals(1, compile("A", "B", "C"));
+    assertFalse(filesystem.isFile(state));
+
+    write("C", "public class C {}");
+    markAllClassesAsOld();
+    assertEquals(0, compile("A", "B", "C"));
+    assertNotEquals(EPOCH, lastModified("A"));
+    assertTrue(filesystem.isFile(state));
+  }
+
+  @Test
+  public void stateFromBeforeSupertypesWereRecordedForcesAFullRecompilation()
+      throws IOException, InterruptedException {
+    assertEquals(0, compile("A", "B", "C"));
+    ObjectMapper mapper = new ObjectMapper();
+    JsonNode oldState = mapper.readTree(filesystem.readFileIfItExists(state).get());
+    for (JsonNode source : oldState.get("sources")) {
+      ((ObjectNode) source).remove("classSupertypes");
+    }
+    filesystem.writeContentsToPath(mapper.writeValueAsString(oldState), state);
+    markAllClassesAsOld();
+
+    assertEquals(0, compile("A", "B", "C"));
+    assertNotEquals(EPOCH, lastModified("A"));
+    assertNotEquals(EPOCH, lastModified("B"));
+    assertNotEquals(EPOCH, lastModified("C"));
+  }
+
+  private int compile(String... classNames) throws IOException, InterruptedException {
+    ImmutableSet.Builder<Path> srcs = ImmutableSet.builder();
+    for (String className : classNames) {
+      srcs.add(source(className));
+    }
+    ExecutionContext context = TestExecutionContext.newInstance();
+    return new IncrementalJavacStep(
+        classes,
+        state,
+        Optional.<Path>absent(),
+        srcs.build(),
+        Optional.<Path>absent(),
+        ImmutableSet.<Path>of(),
+        JavaCompilationConstants.DEFAULT_JAVAC_OPTIONS,
+        BuildTargetFactory.newInstance("//src/p:p"),
+        Optional.<JavacStep.SuggestBuildRules>absent(),
+        new SourcePathResolver(new BuildRuleResolver()),
+        filesystem)
+        .execute(context);
+  }
+
+  private void write(String className, String body) throws IOException {
+    filesystem.writeContentsToPath("package p;\n" + body + "\n", source(className));
+  }
+
+  private Path source(String className) {
+    return Paths.get("src/p/" + className + ".java");
+  }
+
+  private void markAllClassesAsOld() throws IOException {
+    for (Path classFile : filesystem.getFilesUnderPath(classes)) {
+      filesystem.setLastModifiedTime(classFile, EPOCH);
+    }
+  }
+
+  private FileTime lastModified(String className) throws IOException {
+    return FileTime.fromMillis(
+        filesystem.getLastModifiedTime(classes.resolve("p/" + className + ".class")));
+  }
+}
@@ -22,6 +22,7 @@ import com.facebook.buck.java.runner.FileClassPathRunner;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.test.TestRunnerWorkerPool;
 import com.facebook.buck.test.selectors.TestSelectorList;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.MoreAsserts;
@@ -92,7 +93,8 @@ public class JUnitStepTest {
         /* testRuleTimeoutMs*/ Optional.<Long>absent(),
         /* stdOutLogLevel */ Optional.<Level>absent(),
         /* stdErrLogLevel */ Optional.<Level>absent(),
-        /* pathToJavAgent */ Optional.<String>absent());
+        /* pathToJavAgent */ Optional.<String>absent(),
+        /* testRunnerWorkerPool */ Optional.<TestRunnerWorkerPool>absent());
 
     ExecutionContext executionContext = EasyMock.createMock(ExecutionContext.class);
     EasyMock.expect(executionContext.getVerbosity()).andReturn(Verbosity.ALL);
@@ -171,7 +173,8 @@ public class JUnitStepTest {
         /* testRuleTimeoutMs*/ Optional.<Long>absent(),
         /* stdOutLogLevel */ Optional.<Level>absent(),
         /* stdErrLogLevel */ Optional.<Level>absent(),
-        /* pathToJavaAgent */ Optional.<String> absent());
+        /* pathToJavaAgent */ Optional.<String> absent(),
+        /* testRunnerWorkerPool */ Optional.<TestRunnerWorkerPool>absent());
 
     TestConsole console = new TestConsole(Verbosity.ALL);
     ExecutionContext executionContext = TestExecutionContext.newBuilder()
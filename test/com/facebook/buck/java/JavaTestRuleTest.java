@@ -24,9 +24,12 @@ import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.TargetDevice;
+import com.facebook.buck.test.TestDurations;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
 import org.hamcrest.Matchers;
@@ -113,6 +116,38 @@ public class JavaTestRuleTest {
         Matchers.<BuildRule>contains(firstOrderDep, transitiveDep));
   }
 
+  @Test
+  public void testClassesAreShardedByHowLongTheyTookLastTime() {
+    TestDurations durations = new TestDurations(
+        ImmutableMap.<String, Long>of(),
+        ImmutableMap.of("Slow", 100L, "Medium", 60L, "Fast", 30L, "Faster", 10L));
+
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("Slow"), ImmutableSet.of("Medium", "Fast", "Faster")),
+        JavaTest.shardTestClasses(
+            ImmutableSet.of("Fast", "Faster", "Medium", "Slow"),
+            /* shards */ 2,
+            durations));
+  }
+
+  @Test
+  public void classesWithoutADurationAreAssumedToTakeTheAverageTime() {
+    TestDurations durations = new TestDurations(
+        ImmutableMap.<String, Long>of(),
+        ImmutableMap.of("A", 10L, "B", 30L));
+
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("B", "A"), ImmutableSet.of("C", "D")),
+        JavaTest.shardTestClasses(ImmutableSet.of("A", "B", "C", "D"), /* shards */ 2, durations));
+  }
+
+  @Test
+  public void thereAreNeverMoreShardsThanTestClasses() {
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("A")),
+        JavaTest.shardTestClasses(ImmutableSet.of("A"), /* shards */ 4, TestDurations.empty()));
+  }
+
   private JavaTest newRule(ImmutableList<String> vmArgs) {
     return (JavaTest) JavaTestBuilder
         .createBuilder(BuildTargetFactory.newInstance("//example:test"))
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.junit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.ProjectWorkspace.ProcessResult;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class ReuseJvmsIntegrationTest {
+
+  @Rule
+  public DebuggableTemporaryFolder temporaryFolder = new DebuggableTemporaryFolder();
+
+  @Test
+  public void testsInTheSameJvmDoNotShareStaticState() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "reuse_jvms", temporaryFolder);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand(
+        "test",
+        "--num-threads", "1",
+        "//:FirstTest",
+        "//:SecondTest");
+    result.assertSuccess("Each test should get its own copy of Counter");
+    assertThat(result.getStderr(), containsString("2 Passed"));
+    assertTrue(
+        Files.exists(
+            workspace.getPath(
+                "buck-out/gen/__java_test_SecondTest_output__/com.example.SecondTest.xml")));
+    assertTrue(Files.exists(workspace.getPath("buck-out/log/test-runner-workers.log")));
+  }
+
+  @Test
+  public void failuresAreReportedFromPooledJvms() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "reuse_jvms", temporaryFolder);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand("test", "//:FailingTest");
+    result.assertTestFailure();
+    assertThat(result.getStderr(), containsString("1 Failed"));
+  }
+}
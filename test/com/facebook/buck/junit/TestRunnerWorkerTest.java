@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestRunnerWorkerTest {
+
+  @Test
+  public void jobsSeeTheirOwnEnvironmentAndLeaveTheWorkersAsItWas()
+      throws IOException, InterruptedException {
+    assumeTrue(new File("/bin/sh").canExecute());
+    Map<String, String> original = new HashMap<>(System.getenv());
+    Map<String, String> environment = new HashMap<>(original);
+    environment.put("TMP", "/tmp/job");
+
+    assertTrue(TestRunnerWorker.setEnvironment(environment));
+    try {
+      assertEquals("/tmp/job", System.getenv("TMP"));
+      assertEquals(environment, System.getenv());
+      ProcessBuilder builder = new ProcessBuilder("/bin/sh", "-c", "echo -n $TMP");
+      assertEquals("/tmp/job", builder.environment().get("TMP"));
+      assertEquals("/tmp/job", readOutput(builder));
+    } finally {
+      assertTrue(TestRunnerWorker.setEnvironment(original));
+    }
+
+    assertEquals(original, System.getenv());
+    assertEquals(original.get("TMP"), System.getenv("TMP"));
+    if (!original.containsKey("TMP")) {
+      assertNull(System.getenv("TMP"));
+    }
+  }
+
+  private static String readOutput(ProcessBuilder builder)
+      throws IOException, InterruptedException {
+    Process process = builder.start();
+    String output =
+        new String(ByteStreams.toByteArray(process.getInputStream()), StandardCharsets.UTF_8);
+    process.waitFor();
+    return output;
+  }
+}
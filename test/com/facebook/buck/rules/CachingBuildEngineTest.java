@@ -1354,6 +1354,121 @@ public class CachingBuildEngineTest extends EasyMockSupport {
     assertEquals(BuildRuleSuccessType.MATCHING_DEP_FILE_RULE_KEY, result.getSuccess());
   }
 
+  @Test
+  public void manifestFetchesFromCacheWhenOnlyUnusedInputsChange() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem(tmp.getRoot());
+    InMemoryArtifactCache cache = new InMemoryArtifactCache();
+    BuildContext buildContext =
+        FakeBuildContext.newBuilder()
+            .setArtifactCache(cache)
+            .setJavaPackageFinder(new FakeJavaPackageFinder())
+            .setActionGraph(new ActionGraph(ImmutableList.<BuildRule>of()))
+            .build();
+    BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+    Path input = Paths.get("input_file");
+    Path unused = Paths.get("unused_file");
+    Path output = Paths.get("output");
+    filesystem.writeContentsToPath("input", input);
+    filesystem.writeContentsToPath("unused", unused);
+
+    // Build locally, which stores the artifact and the manifest.
+    ManifestBuildRule rule = new ManifestBuildRule(filesystem, target, input, unused, output);
+    BuildResult result = newManifestBuildEngine(filesystem, rule).build(buildContext, rule).get();
+    assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getSuccess());
+    RuleKey firstRuleKey = rule.getRuleKey();
+
+    // On a fresh checkout, where only the unused input has changed, the rule key misses the cache
+    // but the manifest finds the artifact.
+    filesystem.deleteRecursivelyIfExists(BuildInfo.getPathToMetadataDirectory(target));
+    filesystem.deleteFileAtPath(output);
+    filesystem.writeContentsToPath("changed", unused);
+    rule = new ManifestBuildRule(filesystem, target, input, unused, output);
+    assertThat(rule.getRuleKey(), Matchers.not(equalTo(firstRuleKey)));
+    result = newManifestBuildEngine(filesystem, rule).build(buildContext, rule).get();
+    assertEquals(BuildRuleSuccessType.FETCHED_FROM_CACHE_MANIFEST_BASED, result.getSuccess());
+    assertEquals(Optional.of("built"), filesystem.readFirstLine(output));
+
+    // But a change to the used input means building locally.
+    filesystem.deleteRecursivelyIfExists(BuildInfo.getPathToMetadataDirectory(target));
+    filesystem.deleteFileAtPath(output);
+    filesystem.writeContentsToPath("changed", input);
+    rule = new ManifestBuildRule(filesystem, target, input, unused, output);
+    result = newManifestBuildEngine(filesystem, rule).build(buildContext, rule).get();
+    assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getSuccess());
+  }
+
+  @Test
+  public void predictedDepFileFetchesFromCacheWithoutManifest() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem(tmp.getRoot());
+    InMemoryArtifactCache cache = new InMemoryArtifactCache();
+    BuildContext buildContext =
+        FakeBuildContext.newBuilder()
+            .setArtifactCache(cache)
+            .setJavaPackageFinder(new FakeJavaPackageFinder())
+            .setActionGraph(new ActionGraph(ImmutableList.<BuildRule>of()))
+            .build();
+    BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+    Path input = Paths.get("input_file");
+    Path unused = Paths.get("unused_file");
+    Path output = Paths.get("output");
+    filesystem.writeContentsToPath("input", input);
+    filesystem.writeContentsToPath("unused", unused);
+
+    // Build locally, which also stores the artifact using its dep-file rule key.
+    ManifestBuildRule rule = new ManifestBuildRule(filesystem, target, input, unused, output);
+    BuildResult result = newManifestBuildEngine(filesystem, rule).build(buildContext, rule).get();
+    assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getSuccess());
+    RuleKey depFileRuleKey =
+        buildContext.createOnDiskBuildInfoFor(target, filesystem)
+            .getRuleKey(BuildInfo.METADATA_KEY_FOR_DEP_FILE_RULE_KEY)
+            .get();
+
+    // Copy only that artifact to a fresh cache, as if the manifest had never been stored.
+    Path artifact = tmp.newFile("artifact.zip").toPath();
+    CacheResult cacheResult = cache.fetch(depFileRuleKey, artifact);
+    assertThat(cacheResult.getType(), equalTo(CacheResultType.HIT));
+    InMemoryArtifactCache freshCache = new InMemoryArtifactCache();
+    freshCache.store(ImmutableSet.of(depFileRuleKey), cacheResult.getMetadata(), artifact);
+    buildContext =
+        FakeBuildContext.newBuilder()
+            .setArtifactCache(freshCache)
+            .setJavaPackageFinder(new FakeJavaPackageFinder())
+            .setActionGraph(new ActionGraph(ImmutableList.<BuildRule>of()))
+            .build();
+
+    // On a fresh checkout, where only the unused input has changed, a rule which predicts its
+    // inputs finds the artifact using them.
+    filesystem.deleteRecursivelyIfExists(BuildInfo.getPathToMetadataDirectory(target));
+    filesystem.deleteFileAtPath(output);
+    filesystem.writeContentsToPath("changed", unused);
+    rule =
+        new ManifestBuildRule(
+            filesystem,
+            target,
+            input,
+            unused,
+            output,
+            /* predictsInputs */ true);
+    result = newManifestBuildEngine(filesystem, rule).build(buildContext, rule).get();
+    assertEquals(BuildRuleSuccessType.FETCHED_FROM_CACHE_PREDICTED_DEP_FILE, result.getSuccess());
+    assertEquals(Optional.of("built"), filesystem.readFirstLine(output));
+  }
+
+  private static CachingBuildEngine newManifestBuildEngine(
+      ProjectFilesystem filesystem,
+      AbstractBuildRule rule) {
+    DefaultFileHashCache fileHashCache = new DefaultFileHashCache(filesystem);
+    return new CachingBuildEngine(
+        MoreExecutors.newDirectExecutorService(),
+        fileHashCache,
+        CachingBuildEngine.BuildMode.SHALLOW,
+        CachingBuildEngine.DepFiles.CACHE,
+        filesystem,
+        NOOP_RULE_KEY_FACTORY,
+        NOOP_RULE_KEY_FACTORY,
+        new DependencyFileRuleKeyBuilderFactory(fileHashCache, rule.getResolver()));
+  }
+
   @Test
   public void depFileInputChangeCausesRebuild() throws Exception {
     final ProjectFilesystem filesystem = new FakeProjectFilesystem(tmp.getRoot());
@@ -2197,6 +2312,88 @@ public class CachingBuildEngineTest extends EasyMockSupport {
     public boolean useDependencyFileRuleKeys() {
       return true;
     }
+    @Override
+    public Optional<ImmutableList<Path>> getInputsBeforeBuilding(FileHashCache fileHashCache) {
+      return Optional.absent();
+    }
+    @Override
+    public Optional<ImmutableMultimap<String, String>> getSymlinkTreeInputMapBeforeBuilding(
+        FileHashCache fileHashCache) {
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * A rule whose dep file only lists one of its two inputs, and which may predict that it will.
+   */
+  private static class ManifestBuildRule extends DepFileBuildRule {
+
+    @AddToRuleKey
+    private final SourcePath input;
+    @AddToRuleKey
+    private final SourcePath unused;
+    private final Path output;
+    private final boolean predictsInputs;
+
+    public ManifestBuildRule(
+        ProjectFilesystem filesystem,
+        BuildTarget target,
+        Path input,
+        Path unused,
+        Path output) {
+      this(filesystem, target, input, unused, output, /* predictsInputs */ false);
+    }
+
+    public ManifestBuildRule(
+        ProjectFilesystem filesystem,
+        BuildTarget target,
+        Path input,
+        Path unused,
+        Path output,
+        boolean predictsInputs) {
+      super(
+          new FakeBuildRuleParamsBuilder(target)
+              .setProjectFilesystem(filesystem)
+              .setFileHashCache(new DefaultFileHashCache(filesystem))
+              .build(),
+          new SourcePathResolver(new BuildRuleResolver()));
+      this.input = new PathSourcePath(filesystem, input);
+      this.unused = new PathSourcePath(filesystem, unused);
+      this.output = output;
+      this.predictsInputs = predictsInputs;
+    }
+
+    @Override
+    public ImmutableList<Step> getBuildSteps(
+        BuildContext context,
+        BuildableContext buildableContext) {
+      buildableContext.recordArtifact(output);
+      return ImmutableList.<Step>of(
+          new WriteFileStep(getProjectFilesystem(), "built", output, /* executable */ false));
+    }
+
+    @Override
+    public ImmutableList<Path> getInputsAfterBuildingLocally() {
+      return ImmutableList.of(getResolver().getPath(input));
+    }
+
+    @Override
+    public Optional<ImmutableMultimap<String, String>> getSymlinkTreeInputMap() {
+      return Optional.absent();
+    }
+
+    @Override
+    public Optional<ImmutableList<Path>> getInputsBeforeBuilding(FileHashCache fileHashCache) {
+      if (!predictsInputs) {
+        return Optional.absent();
+      }
+      return Optional.of(getInputsAfterBuildingLocally());
+    }
+
+    @Override
+    public Path getPathToOutput() {
+      return output;
+    }
   }
 
   private static class RuleWithSteps extends AbstractBuildRule {
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class ManifestTest {
+
+  @Test
+  public void entriesSurviveWritingAndReading() throws IOException {
+    Manifest.Entry first = new Manifest.Entry(
+        ImmutableList.of("foo.cpp", "foo.h"),
+        Optional.<ImmutableMultimap<String, String>>absent(),
+        new RuleKey("aaaa"));
+    Manifest.Entry second = new Manifest.Entry(
+        ImmutableList.of("foo.cpp", "bar.h"),
+        Optional.of(ImmutableMultimap.of("bar.h", "buck-out/headers/bar.h")),
+        new RuleKey("bbbb"));
+    Manifest manifest = new Manifest();
+    manifest.addEntry(first);
+    manifest.addEntry(second);
+
+    assertEquals(ImmutableList.of(second, first), roundTrip(manifest).getEntries());
+  }
+
+  @Test
+  public void readdingAnEntryMakesItTheMostRecent() throws IOException {
+    Manifest.Entry first = new Manifest.Entry(
+        ImmutableList.of("foo.cpp"),
+        Optional.<ImmutableMultimap<String, String>>absent(),
+        new RuleKey("aaaa"));
+    Manifest.Entry second = new Manifest.Entry(
+        ImmutableList.of("bar.cpp"),
+        Optional.<ImmutableMultimap<String, String>>absent(),
+        new RuleKey("bbbb"));
+    Manifest manifest = new Manifest();
+    manifest.addEntry(first);
+    manifest.addEntry(second);
+    manifest.addEntry(first);
+
+    assertEquals(ImmutableList.of(first, second), manifest.getEntries());
+  }
+
+  private static Manifest roundTrip(Manifest manifest) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    manifest.writeTo(out);
+    return Manifest.readFrom(new ByteArrayInputStream(out.toByteArray()));
+  }
+}
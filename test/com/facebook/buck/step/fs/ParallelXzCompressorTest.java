@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.SeekableInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.tukaani.xz.SingleXZInputStream;
+import org.tukaani.xz.XZ;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class ParallelXzCompressorTest {
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  @Test
+  public void producesASingleStreamOfBlocks() throws Exception {
+    byte[] data = createData(5 * BLOCK_SIZE + 123);
+
+    byte[] compressed = compress(data, 4);
+
+    // SingleXZInputStream rejects anything other than exactly one stream.
+    assertArrayEquals(
+        data,
+        ByteStreams.toByteArray(new SingleXZInputStream(new ByteArrayInputStream(compressed))));
+    SeekableXZInputStream seekable =
+        new SeekableXZInputStream(new SeekableByteArrayInputStream(compressed));
+    assertEquals(1, seekable.getStreamCount());
+    assertEquals(6, seekable.getBlockCount());
+    assertEquals(1 << XZ.CHECK_CRC32, seekable.getCheckTypes());
+  }
+
+  @Test
+  public void outputDoesNotDependOnTheNumberOfThreads() throws Exception {
+    byte[] data = createData(3 * BLOCK_SIZE);
+
+    assertArrayEquals(compress(data, 1), compress(data, 3));
+  }
+
+  @Test
+  public void emptyInputProducesAnEmptyStream() throws Exception {
+    byte[] compressed = compress(new byte[0], 2);
+
+    assertEquals(
+        0,
+        ByteStreams.toByteArray(
+            new SingleXZInputStream(new ByteArrayInputStream(compressed))).length);
+  }
+
+  private static byte[] compress(byte[] data, int threadCount)
+      throws IOException, InterruptedException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new ParallelXzCompressor(new LZMA2Options(1), XZ.CHECK_CRC32, BLOCK_SIZE, threadCount)
+        .compress(new ByteArrayInputStream(data), out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Something that compresses, but not to nothing.
+   */
+  private static byte[] createData(int size) {
+    Random random = new Random(42);
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ('a' + random.nextInt(8));
+    }
+    return data;
+  }
+
+  private static class SeekableByteArrayInputStream extends SeekableInputStream {
+    private final byte[] bytes;
+    private int position = 0;
+
+    private SeekableByteArrayInputStream(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public long length() {
+      return bytes.length;
+    }
+
+    @Override
+    public long position() {
+      return position;
+    }
+
+    @Override
+    public void seek(long pos) {
+      position = (int) pos;
+    }
+
+    @Override
+    public int read() {
+      return position < bytes.length ? bytes[position++] & 0xff : -1;
+    }
+  }
+}
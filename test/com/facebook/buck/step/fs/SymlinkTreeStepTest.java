@@ -17,6 +17,7 @@
 package com.facebook.buck.step.fs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.ProjectFilesystem;
@@ -39,7 +40,7 @@ public class SymlinkTreeStepTest {
   public final TemporaryFolder tmpDir = new TemporaryFolder();
 
   @Test
-  public void testSymlinkFiles() throws IOException {
+  public void testSymlinkFiles() throws IOException, InterruptedException {
 
     ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
 
@@ -76,4 +77,73 @@ public class SymlinkTreeStepTest {
 
   }
 
+  @Test
+  public void testIncrementalTreeOnlyChangesWhatDiffers() throws IOException, InterruptedException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    ExecutionContext context = TestExecutionContext.newInstance();
+    Path root = Paths.get("symlink-tree-root");
+    Path source1 = Paths.get("source1");
+    Path source2 = Paths.get("source2");
+    projectFilesystem.writeContentsToPath("foo", source1);
+    projectFilesystem.writeContentsToPath("bar", source2);
+
+    // A stray file is removed when there is no manifest yet.
+    projectFilesystem.mkdirs(root);
+    projectFilesystem.writeContentsToPath("stray", root.resolve("stray"));
+    assertEquals(
+        0,
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(
+                Paths.get("same"), source1,
+                Paths.get("retargeted"), source1,
+                Paths.get("removed/in/directory"), source1),
+            /* incremental */ true).execute(context));
+    assertFalse(projectFilesystem.exists(root.resolve("stray")));
+    assertTrue(projectFilesystem.exists(SymlinkTreeStep.getManifestPath(root)));
+
+    // Replace the link that should be left alone, to see that it isn't touched.
+    projectFilesystem.deleteFileAtPath(root.resolve("same"));
+    projectFilesystem.writeContentsToPath("untouched", root.resolve("same"));
+
+    assertEquals(
+        0,
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(
+                Paths.get("same"), source1,
+                Paths.get("retargeted"), source2,
+                Paths.get("added/link"), source2),
+            /* incremental */ true).execute(context));
+
+    assertEquals(Optional.of("untouched"), projectFilesystem.readFirstLine(root.resolve("same")));
+    assertEquals(Optional.of("bar"), projectFilesystem.readFirstLine(root.resolve("retargeted")));
+    assertEquals(Optional.of("bar"), projectFilesystem.readFirstLine(root.resolve("added/link")));
+    assertFalse(projectFilesystem.exists(root.resolve("removed")));
+  }
+
+  @Test
+  public void testIncrementalTreeOfManyLinks() throws IOException, InterruptedException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    ExecutionContext context = TestExecutionContext.newInstance();
+    Path root = Paths.get("symlink-tree-root");
+    Path source = Paths.get("source");
+    projectFilesystem.writeContentsToPath("foo", source);
+
+    ImmutableMap.Builder<Path, Path> links = ImmutableMap.builder();
+    for (int i = 0; i < 2000; i++) {
+      links.put(Paths.get("dir" + i % 10, "link" + i), source);
+    }
+    assertEquals(
+        0,
+        new SymlinkTreeStep(projectFilesystem, root, links.build(), /* incremental */ true)
+            .execute(context));
+
+    for (int i = 0; i < 2000; i++) {
+      assertTrue(projectFilesystem.isSymLink(root.resolve("dir" + i % 10).resolve("link" + i)));
+    }
+  }
+
 }
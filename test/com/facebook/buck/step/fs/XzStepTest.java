@@ -24,6 +24,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.base.Optional;
 import com.google.common.io.ByteSource;
 
 import org.junit.Rule;
@@ -52,7 +53,7 @@ public class XzStepTest {
   }
 
   @Test
-  public void testXzStep() throws IOException {
+  public void testXzStep() throws IOException, InterruptedException {
     final Path sourceFile =
         TestDataHelper.getTestDataScenario(this, "xz_with_rm_and_check").resolve("xzstep.data");
     final File destinationFile = tmp.newFile("xzstep.data.xz");
@@ -81,4 +82,37 @@ public class XzStepTest {
         "Decompressed file must be identical to original.",
         original.contentEquals(decompressed));
   }
+
+  @Test
+  public void testXzStepWithBlockSize() throws IOException, InterruptedException {
+    final Path sourceFile =
+        TestDataHelper.getTestDataScenario(this, "xz_with_rm_and_check").resolve("xzstep.data");
+    final File destinationFile = tmp.newFile("xzstep.data.xz");
+
+    XzStep step = new XzStep(
+        new ProjectFilesystem(tmp.getRoot().toPath()),
+        sourceFile,
+        destinationFile.toPath(),
+        /* compressionLevel -- for faster testing */ 1,
+        /* keep */ true,
+        XZ.CHECK_CRC32,
+        /* blockSize */ Optional.of(1024),
+        /* threadCount */ Optional.of(4));
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+
+    assertEquals(0, step.execute(context));
+
+    ByteSource original = PathByteSource.asByteSource(sourceFile);
+    ByteSource decompressed = new ByteSource() {
+      @Override
+      public InputStream openStream() throws IOException {
+        return new XZInputStream(new FileInputStream(destinationFile));
+      }
+    };
+
+    assertTrue(
+        "Decompressed file must be identical to original.",
+        original.contentEquals(decompressed));
+  }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.test.result.type.ResultType;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class TestDurationsTest {
+
+  @Test
+  public void recordedDurationsSurviveARoundTrip() throws IOException {
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:test");
+    TestDurations durations = TestDurations.empty();
+    durations.record(
+        new TestResults(
+            target,
+            ImmutableList.of(
+                testCase("com.example.FirstTest", 100L, 20L),
+                testCase("com.example.SecondTest", 5L)),
+            ImmutableSet.<String>of(),
+            ImmutableSet.<String>of()));
+
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    ObjectMapper mapper = new ObjectMapper();
+    durations.writeTo(filesystem, mapper);
+    TestDurations read = TestDurations.readFrom(filesystem, mapper);
+
+    assertEquals(Optional.of(125L), read.getTargetDuration(target));
+    assertEquals(Optional.of(120L), read.getTestCaseDuration("com.example.FirstTest"));
+    assertEquals(Optional.of(5L), read.getTestCaseDuration("com.example.SecondTest"));
+    assertFalse(read.getTestCaseDuration("com.example.ThirdTest").isPresent());
+  }
+
+  @Test
+  public void missingFileMeansNoDurations() {
+    TestDurations read = TestDurations.readFrom(new FakeProjectFilesystem(), new ObjectMapper());
+    assertFalse(read.getTargetDuration(BuildTargetFactory.newInstance("//foo:test")).isPresent());
+  }
+
+  private static TestCaseSummary testCase(String name, long... times) {
+    ImmutableList.Builder<TestResultSummary> results = ImmutableList.builder();
+    for (int i = 0; i < times.length; i++) {
+      results.add(
+          new TestResultSummary(
+              name,
+              "test" + i,
+              ResultType.SUCCESS,
+              times[i],
+              /* message */ null,
+              /* stacktrace */ null,
+              /* stdOut */ null,
+              /* stdErr */ null));
+    }
+    return new TestCaseSummary(name, results.build());
+  }
+}
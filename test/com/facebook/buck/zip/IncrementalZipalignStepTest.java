@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.FakeStep;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class IncrementalZipalignStepTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+
+  @Before
+  public void setUp() {
+    filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    context = TestExecutionContext.newInstance();
+  }
+
+  @Test
+  public void alignsStoredEntriesAndScrubsTimestamps() throws Exception {
+    writeZip("in.apk", "dex contents");
+
+    assertEquals(0, newStep(ImmutableSet.<String>of()).execute(context));
+
+    Path output = tmp.getRoot().toPath().resolve("out.apk");
+    ImmutableList<LocalEntry> entries = readLocalEntries(output);
+    assertEquals(4, entries.size());
+    for (LocalEntry entry : entries) {
+      if (entry.method == ZipEntry.STORED) {
+        assertEquals(entry.name, 0, entry.dataOffset % 4);
+      }
+      assertEquals(entry.name, ZipConstants.DOS_EPOCH_START, entry.dosTime);
+    }
+
+    try (ZipFile zip = new ZipFile(output.toFile())) {
+      assertEquals("arsc", read(zip, "resources.arsc"));
+      assertEquals(ZipEntry.STORED, zip.getEntry("resources.arsc").getMethod());
+      assertEquals("a", read(zip, "a"));
+      assertEquals("png", read(zip, "res/drawable/icon.png"));
+      assertEquals("dex contents", read(zip, "classes.dex"));
+    }
+  }
+
+  @Test
+  public void compressesRequestedEntries() throws Exception {
+    writeZip("in.apk", "dex contents");
+
+    assertEquals(0, newStep(ImmutableSet.of("resources.arsc")).execute(context));
+
+    try (ZipFile zip = new ZipFile(tmp.getRoot().toPath().resolve("out.apk").toFile())) {
+      assertEquals(ZipEntry.DEFLATED, zip.getEntry("resources.arsc").getMethod());
+      assertEquals("arsc", read(zip, "resources.arsc"));
+    }
+  }
+
+  @Test
+  public void rewritingIsTheSameAsWritingAfresh() throws Exception {
+    writeZip("in.apk", "dex contents");
+    assertEquals(0, newStep(ImmutableSet.<String>of()).execute(context));
+
+    writeZip("in.apk", "other dex contents, which are longer");
+    assertEquals(0, newStep(ImmutableSet.<String>of()).execute(context));
+    new IncrementalZipalignStep(
+        filesystem,
+        Paths.get("in.apk"),
+        Paths.get("fresh.apk"),
+        ImmutableSet.<String>of(),
+        new FakeStep("zipalign", "zipalign", 1)).execute(context);
+
+    assertArrayEquals(
+        Files.readAllBytes(tmp.getRoot().toPath().resolve("fresh.apk")),
+        Files.readAllBytes(tmp.getRoot().toPath().resolve("out.apk")));
+    try (ZipFile zip = new ZipFile(tmp.getRoot().toPath().resolve("out.apk").toFile())) {
+      assertEquals("other dex contents, which are longer", read(zip, "classes.dex"));
+    }
+  }
+
+  @Test
+  public void zipsThatCannotBeCopiedRawAreLeftToTheFallback() throws Exception {
+    // Too many entries to count in the end of central directory record, so it is ZIP64.
+    try (ZipOutputStream out =
+             new ZipOutputStream(Files.newOutputStream(tmp.getRoot().toPath().resolve("in.apk")))) {
+      for (int i = 0; i < 0xffff; i++) {
+        out.putNextEntry(new ZipEntry("entry" + i));
+      }
+    }
+    Files.write(tmp.getRoot().toPath().resolve("out.apk"), new byte[] {1, 2, 3});
+
+    assertEquals(
+        42,
+        new IncrementalZipalignStep(
+            filesystem,
+            Paths.get("in.apk"),
+            Paths.get("out.apk"),
+            ImmutableSet.<String>of(),
+            new FakeStep("zipalign", "zipalign", 42)).execute(context));
+    assertFalse(Files.exists(tmp.getRoot().toPath().resolve("out.apk")));
+  }
+
+  private IncrementalZipalignStep newStep(ImmutableSet<String> entriesToCompress) {
+    return new IncrementalZipalignStep(
+        filesystem,
+        Paths.get("in.apk"),
+        Paths.get("out.apk"),
+        entriesToCompress,
+        new FakeStep("zipalign", "zipalign", 1));
+  }
+
+  private void writeZip(String name, String dexContents) throws IOException {
+    try (ZipOutputStream out =
+             new ZipOutputStream(Files.newOutputStream(tmp.getRoot().toPath().resolve(name)))) {
+      putStoredEntry(out, "resources.arsc", "arsc");
+      putStoredEntry(out, "a", "a");
+      out.putNextEntry(new ZipEntry("res/drawable/icon.png"));
+      out.write("png".getBytes(StandardCharsets.UTF_8));
+      out.putNextEntry(new ZipEntry("classes.dex"));
+      out.write(dexContents.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static void putStoredEntry(ZipOutputStream out, String name, String contents)
+      throws IOException {
+    byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(bytes.length);
+    entry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
+    out.putNextEntry(entry);
+    out.write(bytes);
+  }
+
+  private static String read(ZipFile zip, String name) throws IOException {
+    try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+      return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Walks the local file headers of a zip written without data descriptors.
+   */
+  private static ImmutableList<LocalEntry> readLocalEntries(Path zip) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(zip)).order(ByteOrder.LITTLE_ENDIAN);
+    int entryCount;
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      entryCount = zipFile.size();
+    }
+
+    ImmutableList.Builder<LocalEntry> entries = ImmutableList.builder();
+    int position = 0;
+    for (int i = 0; i < entryCount; i++) {
+      assertEquals(ZipEntry.LOCSIG, buffer.getInt(position) & 0xffffffffL);
+      int method = buffer.getShort(position + 8);
+      int dosTime = buffer.getInt(position + 10);
+      int compressedSize = buffer.getInt(position + 18);
+      int nameLength = buffer.getShort(position + 26);
+      int extraLength = buffer.getShort(position + 28);
+      byte[] name = new byte[nameLength];
+      buffer.position(position + 30);
+      buffer.get(name);
+      int dataOffset = position + 30 + nameLength + extraLength;
+      entries.add(
+          new LocalEntry(new String(name, StandardCharsets.UTF_8), method, dosTime, dataOffset));
+      position = dataOffset + compressedSize;
+    }
+    return entries.build();
+  }
+
+  private static class LocalEntry {
+    private final String name;
+    private final int method;
+    private final int dosTime;
+    private final int dataOffset;
+
+    private LocalEntry(String name, int method, int dosTime, int dataOffset) {
+      this.name = name;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.dataOffset = dataOffset;
+    }
+  }
+}
@@ -22,6 +22,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Calendar.SEPTEMBER;
 import static java.util.zip.Deflater.BEST_COMPRESSION;
 import static java.util.zip.Deflater.NO_COMPRESSION;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -50,9 +51,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Enumeration;
@@ -488,4 +492,144 @@ public class ZipOutputStreamTest {
     }
   }
 
+  @Test
+  public void rawEntriesAreCopiedWithoutBeingCompressedAgain() throws IOException {
+    Path source = createZipToCopy();
+    List<RawZipEntry> rawEntries = RawZipEntry.readAll(source).get();
+
+    try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, APPEND_TO_ZIP)) {
+      for (RawZipEntry entry : rawEntries) {
+        out.putRawEntry(entry);
+      }
+    }
+
+    assertCopiedZipHasSameEntries(source, /* sameCompressedSizes */ true);
+  }
+
+  @Test
+  public void rawEntriesAreCompressedAgainWhenOverwriting() throws IOException {
+    Path source = createZipToCopy();
+    List<RawZipEntry> rawEntries = RawZipEntry.readAll(source).get();
+
+    try (CustomZipOutputStream out =
+             ZipOutputStreams.newOutputStream(output, OVERWRITE_EXISTING)) {
+      for (RawZipEntry entry : rawEntries) {
+        out.putRawEntry(entry);
+      }
+    }
+
+    assertCopiedZipHasSameEntries(source, /* sameCompressedSizes */ false);
+  }
+
+  @Test
+  public void rawEntriesKeepTheirExtraFields() throws IOException {
+    Path source = Files.createTempFile("source", ".zip");
+    byte[] text = "It was the best of times, it was the worst of times.".getBytes(UTF_8);
+    // An extra field with an ID that nothing interprets, holding 3 bytes.
+    byte[] extra = new byte[] {(byte) 0xfe, (byte) 0xca, 3, 0, 1, 2, 3};
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+      ZipEntry stored = new ZipEntry("stored.txt");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(text.length);
+      stored.setCrc(Hashing.crc32().hashBytes(text).padToLong());
+      stored.setExtra(extra);
+      out.putNextEntry(stored);
+      out.write(text);
+    }
+
+    // Aligning pads the local extra field, after the extra data that was there.
+    try (CustomZipOutputStream out =
+             ZipOutputStreams.newAligningOutputStream(Files.newOutputStream(output), 4)) {
+      out.putRawEntry(RawZipEntry.readAll(source).get().get(0));
+    }
+
+    RawZipEntry copied = RawZipEntry.readAll(output).get().get(0);
+    assertArrayEquals(extra, copied.getCentralExtra());
+    byte[] localExtra = copied.getLocalExtra();
+    assertThat(localExtra.length - extra.length, lessThan(4));
+    assertArrayEquals(extra, Arrays.copyOf(localExtra, extra.length));
+    assertArrayEquals(text, copied.getData());
+    assertCopiedZipHasSameEntries(source, /* sameCompressedSizes */ true);
+  }
+
+  @Test
+  public void rawEntryNamesAreOnlyDecodedAsUtf8WhenFlaggedAsSuch() throws IOException {
+    Path source = Files.createTempFile("source", ".zip");
+    // Without UTF-8, java.util.zip leaves the language encoding flag clear.
+    try (ZipOutputStream out =
+             new ZipOutputStream(Files.newOutputStream(source), Charset.forName("IBM437"))) {
+      out.putNextEntry(new ZipEntry("caf\u00e9.txt"));
+    }
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output), UTF_8)) {
+      out.putNextEntry(new ZipEntry("caf\u00e9.txt"));
+    }
+
+    assertEquals("caf\u00e9.txt", RawZipEntry.readAll(source).get().get(0).getName());
+    assertEquals("caf\u00e9.txt", RawZipEntry.readAll(output).get().get(0).getName());
+  }
+
+  @Test
+  public void settingTheTimeOfRawEntriesRemovesTimestampExtraFields() throws IOException {
+    Path source = Files.createTempFile("source", ".zip");
+    // An extra field with an ID that nothing interprets, holding 1 byte.
+    byte[] extra = new byte[] {(byte) 0xfe, (byte) 0xca, 1, 0, 42};
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+      ZipEntry entry = new ZipEntry("a.txt");
+      entry.setExtra(extra);
+      // Written as an extended timestamp extra field.
+      entry.setLastModifiedTime(FileTime.fromMillis(1234567890000L));
+      out.putNextEntry(entry);
+    }
+
+    RawZipEntry read = RawZipEntry.readAll(source).get().get(0);
+    assertThat(read.getLocalExtra().length, greaterThan(extra.length));
+    RawZipEntry scrubbed = read.withTime(0);
+    assertArrayEquals(extra, scrubbed.getLocalExtra());
+    assertArrayEquals(extra, scrubbed.getCentralExtra());
+  }
+
+  private Path createZipToCopy() throws IOException {
+    Path source = Files.createTempFile("source", ".zip");
+    byte[] text = "It was the best of times, it was the worst of times.".getBytes(UTF_8);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+      // A compression level that differs from ours, so that recompressing would be noticed.
+      out.setLevel(NO_COMPRESSION);
+      out.putNextEntry(new ZipEntry("deflated.txt"));
+      out.write(text);
+
+      ZipEntry stored = new ZipEntry("stored.txt");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(text.length);
+      stored.setCrc(Hashing.crc32().hashBytes(text).padToLong());
+      out.putNextEntry(stored);
+      out.write(text);
+
+      out.putNextEntry(new ZipEntry("empty/"));
+    }
+    return source;
+  }
+
+  private void assertCopiedZipHasSameEntries(Path source, boolean sameCompressedSizes)
+      throws IOException {
+    try (java.util.zip.ZipFile expected = new java.util.zip.ZipFile(source.toFile());
+         java.util.zip.ZipFile actual = new java.util.zip.ZipFile(output.toFile())) {
+      List<String> expectedNames = Lists.newArrayList();
+      for (Enumeration<? extends ZipEntry> entries = expected.entries();
+           entries.hasMoreElements(); ) {
+        ZipEntry expectedEntry = entries.nextElement();
+        expectedNames.add(expectedEntry.getName());
+        ZipEntry actualEntry = actual.getEntry(expectedEntry.getName());
+        assertEquals(expectedEntry.getCrc(), actualEntry.getCrc());
+        assertEquals(expectedEntry.getSize(), actualEntry.getSize());
+        if (sameCompressedSizes) {
+          assertEquals(expectedEntry.getCompressedSize(), actualEntry.getCompressedSize());
+        }
+        assertArrayEquals(
+            ByteStreams.toByteArray(expected.getInputStream(expectedEntry)),
+            ByteStreams.toByteArray(actual.getInputStream(actualEntry)));
+      }
+      assertEquals(expectedNames.size(), actual.size());
+    }
+  }
+
 }